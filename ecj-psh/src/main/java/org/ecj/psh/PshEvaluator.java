@@ -16,6 +16,8 @@
 
 package org.ecj.psh;
 
+import org.ecj.psh.util.FitnessCache;
+
 import ec.EvolutionState;
 import ec.gp.koza.KozaFitness;
 import ec.simple.SimpleEvaluator;
@@ -30,11 +32,15 @@ import ec.util.Parameter;
 public class PshEvaluator extends SimpleEvaluator {
 
 	public final static String P_IDEAL_THRESHOLD = "ideal-threshold";
+	public final static String P_FITNESS_CACHE_SIZE = "fitness-cache-size";
 	
 	/** Threshold of standardized fitness (mean absolute error) 
 	 * to which individuals are treated as ideal */
 	public float idealThreshold;
 	
+	/** Cache of fitnesses of evaluated programs, null if disabled */
+	public FitnessCache fitnessCache;
+	
 	/**
 	 * Sets up the interpreters for each thread.
 	 */
@@ -43,6 +49,11 @@ public class PshEvaluator extends SimpleEvaluator {
 		Parameter def = PshDefaults.base();
 		idealThreshold = state.parameters.getFloatWithDefault(
 				base.push(P_IDEAL_THRESHOLD), def.push(P_IDEAL_THRESHOLD), 0.0f);
+		// number of programs in fitness cache, 0 disables the cache
+		int fitnessCacheSize = state.parameters.getIntWithDefault(
+				base.push(P_FITNESS_CACHE_SIZE), def.push(P_FITNESS_CACHE_SIZE), 0);
+		if (fitnessCacheSize > 0)
+			fitnessCache = new FitnessCache(fitnessCacheSize);
 	}
 	
 	/**
@@ -16,11 +16,15 @@
 
 package org.ecj.psh;
 
+import java.util.ArrayList;
+
 import org.spiderland.Psh.Interpreter;
+import org.spiderland.Psh.Profile;
 
 import ec.EvolutionState;
 import ec.Prototype;
 import ec.simple.SimpleEvolutionState;
+import ec.util.MersenneTwisterFast;
 import ec.util.Parameter;
 
 public class PshEvolutionState extends SimpleEvolutionState {
@@ -29,6 +33,9 @@ public class PshEvolutionState extends SimpleEvolutionState {
 
 	/** Interpreter used in evaluating individuals */
 	public Interpreter[] interpreter;
+
+	/** All interpreters created by newInterpreter, including helper ones */
+	protected ArrayList<Interpreter> allInterpreters = new ArrayList<Interpreter>();
 	
 	/**
 	 * Unlike for other setup() methods, ignore the base; it will always be
@@ -39,16 +46,51 @@ public class PshEvolutionState extends SimpleEvolutionState {
 	public void setup(final EvolutionState state, final Parameter base) {
 				
 		int numOfInterpreters = random.length;
-		Parameter p = PshDefaults.base().push(P_INTERPRETER);
 
 		interpreter = new Interpreter[numOfInterpreters];
 		for (int i = 0; i < numOfInterpreters; i++) {
-			interpreter[i] = (Interpreter) (parameters
-					.getInstanceForParameterEq(p, null, Interpreter.class));
-			interpreter[i].Initialize(random[i]);
-			interpreter[i].setup(this, p);
+			interpreter[i] = newInterpreter(random[i]);
 		}
 		super.setup(this, base);
 	}
 
+	/**
+	 * Creates and sets up a new interpreter which uses the given random number
+	 * generator.
+	 */
+	public Interpreter newInterpreter(MersenneTwisterFast random) {
+		Parameter p = PshDefaults.base().push(P_INTERPRETER);
+		Interpreter newInterpreter = (Interpreter) (parameters
+				.getInstanceForParameterEq(p, null, Interpreter.class));
+		newInterpreter.Initialize(random);
+		newInterpreter.setup(this, p);
+		synchronized (allInterpreters) {
+			allInterpreters.add(newInterpreter);
+		}
+		return newInterpreter;
+	}
+
+	/**
+	 * Merges the execution profiles of all interpreters and clears them, so
+	 * the next call covers only the executions since this one. May be called
+	 * only while no interpreter is running.
+	 * 
+	 * @return the merged profile or null if profiling is disabled
+	 */
+	public Profile collectProfile() {
+		Profile total = null;
+		synchronized (allInterpreters) {
+			for (Interpreter i : allInterpreters) {
+				Profile profile = i.getProfile();
+				if (profile == null)
+					continue;
+				if (total == null)
+					total = new Profile(1);
+				total.Add(profile);
+				profile.Clear();
+			}
+		}
+		return total;
+	}
+
 }
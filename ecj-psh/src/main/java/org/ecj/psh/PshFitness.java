@@ -0,0 +1,80 @@
+/*
+* Copyright 2012 Tomasz Kamiński
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.ecj.psh;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.ecj.psh.util.ProgramCodec;
+
+import ec.EvolutionState;
+import ec.Fitness;
+import ec.gp.koza.KozaFitness;
+
+/**
+ * Koza fitness which remembers whether the evaluation of the individual has
+ * been stopped early. Such a standardized fitness is only a lower bound of
+ * the real one, which is known to be worse than the error bound of the
+ * problem.
+ * 
+ * @author Tomasz Kamiński
+ * 
+ */
+public class PshFitness extends KozaFitness {
+	private static final long serialVersionUID = 1L;
+
+	/** True if not all test cases have been evaluated */
+	public boolean bound;
+
+	@Override
+	public String fitnessToStringForHumans() {
+		return super.fitnessToStringForHumans() + (bound ? " Bound" : "");
+	}
+
+	/**
+	 * Writes the standardized fitness, the hits as a zigzag varint (mostly a
+	 * single byte) and the bound flag.
+	 */
+	@Override
+	public void writeFitness(final EvolutionState state,
+			final DataOutput dataOutput) throws IOException {
+		dataOutput.writeFloat(standardizedFitness);
+		ProgramCodec.writeVarint(dataOutput, (hits << 1) ^ (hits >> 31));
+		dataOutput.writeBoolean(bound);
+	}
+
+	@Override
+	public void readFitness(final EvolutionState state,
+			final DataInput dataInput) throws IOException {
+		standardizedFitness = dataInput.readFloat();
+		int zigzag = ProgramCodec.readVarint(dataInput);
+		hits = (zigzag >>> 1) ^ -(zigzag & 1);
+		bound = dataInput.readBoolean();
+	}
+
+	@Override
+	public void setToMeanOf(EvolutionState state, Fitness[] fitnesses) {
+		super.setToMeanOf(state, fitnesses);
+		bound = false;
+		for (int i = 0; i < fitnesses.length; i++)
+			if (fitnesses[i] instanceof PshFitness
+					&& ((PshFitness) fitnesses[i]).bound)
+				bound = true;
+	}
+
+}
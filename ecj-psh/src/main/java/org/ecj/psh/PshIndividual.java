@@ -16,9 +16,12 @@
 
 package org.ecj.psh;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.LineNumberReader;
 
+import org.ecj.psh.util.ProgramCodec;
 import org.spiderland.Psh.Program;
 
 import ec.EvolutionState;
@@ -46,7 +49,7 @@ public class PshIndividual extends Individual {
 	@Override
 	public PshIndividual clone() {
 		PshIndividual ind = (PshIndividual) super.clone();
-		// deep-clone involves copying entire program code
+		// sub-programs are shared with the clone and copied on write
 		ind.program = new Program(this.program);
 		return ind;
 	}
@@ -76,9 +79,7 @@ public class PshIndividual extends Individual {
 
 	@Override
 	public int hashCode() {
-		// FIXME Program isn't hashed properly. But I wonder whether we need this
-		// as long as we don't bother with identical individuals chosen randomly
-		// during reproduction step?
+		// structural hash of the program, consistent with equals
 		return this.program.hashCode();
 	}
 
@@ -109,6 +110,28 @@ public class PshIndividual extends Individual {
 		}
 	}
 	
+	/**
+	 * Used in writeIndividual method, e.g. by slaves and partial checkpoints.
+	 * The program is written by ProgramCodec.
+	 */
+	@Override
+	public void writeGenotype(EvolutionState state, DataOutput dataOutput)
+			throws IOException {
+		ProgramCodec.write(this.program, dataOutput);
+	}
+
+	/**
+	 * Used in readIndividual method. Reads programs written by ProgramCodec.
+	 */
+	@Override
+	public void readGenotype(EvolutionState state, DataInput dataInput)
+			throws IOException {
+		int format = dataInput.readUnsignedByte();
+		if (format != ProgramCodec.FORMAT)
+			throw new IOException("Unknown program format " + format);
+		ProgramCodec.read(this.program, dataInput);
+	}
+
 	/**
 	 * Size of the program
 	 */
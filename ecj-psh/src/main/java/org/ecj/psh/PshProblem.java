@@ -16,11 +16,14 @@
 
 package org.ecj.psh;
 
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ecj.psh.util.FitnessCache;
 import org.ecj.psh.util.Simplifier;
-import org.spiderland.Psh.Interpreter;
-import org.spiderland.Psh.Program;
+import org.spiderland.Psh.Bytecode;
 
 import ec.EvolutionState;
+import ec.Fitness;
 import ec.Individual;
 import ec.Problem;
 import ec.simple.SimpleProblemForm;
@@ -35,6 +38,22 @@ import ec.util.Parameter;
 public abstract class PshProblem extends Problem implements SimpleProblemForm {
 
 	public static final String P_PSHPROBLEM = "problem";
+	public static final String P_ERRORBOUND = "error-bound";
+
+	/**
+	 * Bound of the mean error above which the evaluation of an individual may
+	 * be stopped, infinity if individuals are always evaluated on all test
+	 * cases. Individuals worse than the bound get only a lower bound of their
+	 * fitness, which is enough as long as they would lose every selection
+	 * anyway.
+	 */
+	public double errorBound = Double.POSITIVE_INFINITY;
+
+	/** Number of evaluations stopped early, shared among clones */
+	protected AtomicLong boundedEvaluations;
+
+	/** Number of test case executions saved by the bound, shared among clones */
+	protected AtomicLong savedExecutions;
 
 	/**
 	 * PshProblem defines a default base so your subclass doesn't absolutely
@@ -52,6 +71,57 @@ public abstract class PshProblem extends Problem implements SimpleProblemForm {
 	public void setup(final EvolutionState state, final Parameter base) {
 		super.setup(state, base);
 		Parameter def = defaultBase();
+
+		if (state.parameters.exists(base.push(P_ERRORBOUND),
+				def.push(P_ERRORBOUND))) {
+			errorBound = state.parameters.getDouble(base.push(P_ERRORBOUND),
+					def.push(P_ERRORBOUND), 0.0);
+			if (errorBound < 0.0)
+				state.output.fatal("Error bound must be >= 0.",
+						base.push(P_ERRORBOUND), def.push(P_ERRORBOUND));
+		}
+		boundedEvaluations = new AtomicLong();
+		savedExecutions = new AtomicLong();
+	}
+
+	/** Returns true if evaluations may be stopped at the error bound */
+	public boolean isBounded() {
+		return errorBound != Double.POSITIVE_INFINITY;
+	}
+
+	/** Number of evaluations stopped early so far */
+	public long getBoundedEvaluations() {
+		return boundedEvaluations.get();
+	}
+
+	/** Number of test case executions saved by the error bound so far */
+	public long getSavedExecutions() {
+		return savedExecutions.get();
+	}
+
+	/**
+	 * Marks whether the fitness of an evaluated individual is only a bound.
+	 * Bounded fitness needs PshFitness.
+	 */
+	protected void markBound(final EvolutionState state, final Individual ind,
+			final boolean bound) {
+		if (ind.fitness instanceof PshFitness)
+			((PshFitness) ind.fitness).bound = bound;
+		else if (bound)
+			state.output.fatal("Stopping evaluations at the error bound "
+					+ "needs org.ecj.psh.PshFitness, not "
+					+ ind.fitness.getClass().getName());
+	}
+
+	/**
+	 * Counts an evaluation stopped early.
+	 * 
+	 * @param skipped
+	 *            number of test cases which haven't been evaluated
+	 */
+	protected void countBound(final int skipped) {
+		boundedEvaluations.incrementAndGet();
+		savedExecutions.addAndGet(skipped);
 	}
 
 	@Override
@@ -60,6 +130,53 @@ public abstract class PshProblem extends Problem implements SimpleProblemForm {
 		return newProblem;
 	}
 
+	/**
+	 * Sets the fitness of an individual from the fitness cache of
+	 * PshEvaluator, if its program has been evaluated before. Programs which
+	 * use random numbers are never cached.
+	 * 
+	 * @return true if the individual has been evaluated from the cache
+	 */
+	protected boolean evaluateFromCache(final EvolutionState state,
+			final Individual ind, final Bytecode program, final int threadnum) {
+		FitnessCache cache = fitnessCache(state, program, threadnum);
+		if (cache == null)
+			return false;
+
+		Fitness fitness = cache.get(program);
+		if (fitness == null)
+			return false;
+
+		ind.fitness = fitness;
+		ind.evaluated = true;
+		return true;
+	}
+
+	/**
+	 * Puts the fitness of an evaluated individual in the fitness cache of
+	 * PshEvaluator.
+	 */
+	protected void cacheFitness(final EvolutionState state,
+			final Individual ind, final Bytecode program, final int threadnum) {
+		FitnessCache cache = fitnessCache(state, program, threadnum);
+		if (cache != null)
+			cache.put(program, ind.fitness);
+	}
+
+	private FitnessCache fitnessCache(final EvolutionState state,
+			final Bytecode program, final int threadnum) {
+		if (!(state.evaluator instanceof PshEvaluator))
+			return null;
+
+		FitnessCache cache = ((PshEvaluator) state.evaluator).fitnessCache;
+		if (cache == null
+				|| ((PshEvolutionState) state).interpreter[threadnum]
+						.UsesRNG(program))
+			return null;
+
+		return cache;
+	}
+
 	@Override
 	public void describe(final EvolutionState state, final Individual ind,
 			final int subpopulation, final int threadnum, final int log) {
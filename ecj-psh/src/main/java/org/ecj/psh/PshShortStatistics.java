@@ -16,20 +16,64 @@
 
 package org.ecj.psh;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.ecj.psh.util.FitnessCache;
+import org.spiderland.Psh.Profile;
+
 import ec.EvolutionState;
 import ec.Individual;
 import ec.gp.koza.KozaFitness;
 import ec.simple.SimpleProblemForm;
 import ec.simple.SimpleShortStatistics;
+import ec.util.Parameter;
 
 /**
- * Subclass of SimpleShortStatics. The only difference is that we write standardized fitnesses to stat file.
+ * Subclass of SimpleShortStatics. The only difference is that we write standardized fitnesses to stat file,
+ * followed by fitness cache hits and misses of the generation if the cache is enabled
+ * and by evaluations stopped at the error bound and test case executions saved if the
+ * problem has an error bound.
+ * If the interpreters profile their executions, the line ends with the number of steps,
+ * mean and max depth of the exec stack and the rate of executions which hit the step
+ * limit; instruction counts and sampled times go to the profile-file, if given.
  * 
  * @author Tomasz Kamiński
  *
  */
 public class PshShortStatistics extends SimpleShortStatistics {
 
+	// fitness cache counters at the end of the previous generation
+	protected long lastCacheHits;
+	protected long lastCacheMisses;
+	// error bound counters at the end of the previous generation
+	protected long lastBoundedEvaluations;
+	protected long lastSavedExecutions;
+
+	public static final String P_PROFILEFILE = "profile-file";
+
+	/** Log of the per instruction profile, -1 if it isn't written */
+	public int profilelog = -1;
+
+	public void setup(final EvolutionState state, final Parameter base) {
+		super.setup(state, base);
+		File profileFile = state.parameters.getFile(base.push(P_PROFILEFILE),
+				null);
+
+		if (profileFile != null)
+			try {
+				profilelog = state.output.addLog(profileFile,
+						!state.parameters.getBoolean(base.push(P_COMPRESS),
+								null, false), state.parameters.getBoolean(
+								base.push(P_COMPRESS), null, false));
+			} catch (IOException i) {
+				state.output.fatal("An IOException occurred while trying to create the log "
+						+ profileFile + ":\n" + i);
+			}
+	}
+
 	/**
 	 * Prints out the statistics, but does not end with a println -- this lets
 	 * overriding methods print additional statistics on the same line
@@ -70,9 +114,73 @@ public class PshShortStatistics extends SimpleShortStatistics {
 							+ ((KozaFitness) best_of_run[x].fitness)
 									.standardizedFitness() + " ", statisticslog);
 		}
+		
+		// fitness cache hits and misses in this generation
+		if (state.evaluator instanceof PshEvaluator
+				&& ((PshEvaluator) state.evaluator).fitnessCache != null) {
+			FitnessCache cache = ((PshEvaluator) state.evaluator).fitnessCache;
+			long hits = cache.getHits();
+			long misses = cache.getMisses();
+			state.output.print("" + (hits - lastCacheHits) + " "
+					+ (misses - lastCacheMisses) + " ", statisticslog);
+			lastCacheHits = hits;
+			lastCacheMisses = misses;
+		}
+
+		// evaluations stopped at the error bound and test case executions
+		// saved in this generation
+		if (state.evaluator.p_problem instanceof PshProblem
+				&& ((PshProblem) state.evaluator.p_problem).isBounded()) {
+			PshProblem problem = (PshProblem) state.evaluator.p_problem;
+			long bounded = problem.getBoundedEvaluations();
+			long saved = problem.getSavedExecutions();
+			state.output.print("" + (bounded - lastBoundedEvaluations) + " "
+					+ (saved - lastSavedExecutions) + " ", statisticslog);
+			lastBoundedEvaluations = bounded;
+			lastSavedExecutions = saved;
+		}
+
+		// interpreter profile of this generation
+		if (state instanceof PshEvolutionState) {
+			Profile profile = ((PshEvolutionState) state).collectProfile();
+			if (profile != null) {
+				state.output.print("" + profile.steps() + " "
+						+ profile.meanDepth() + " " + profile.maxDepth() + " "
+						+ profile.limitHitRate() + " ", statisticslog);
+				if (profilelog != -1)
+					printProfile(state, profile);
+			}
+		}
 		// we're done!
 	}
 	
+	/**
+	 * Writes a line for every executed instruction, the most expensive first:
+	 * generation, instruction, number of executions, mean sampled time and
+	 * estimated total time in nanoseconds.
+	 */
+	protected void printProfile(final EvolutionState state,
+			final Profile profile) {
+		Integer[] order = new Integer[profile.size()];
+		for (int n = 0; n < order.length; n++)
+			order[n] = n;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return Double.compare(profile.totalNanos(b),
+						profile.totalNanos(a));
+			}
+		});
+
+		for (int n : order) {
+			if (profile.count(n) == 0)
+				continue;
+			state.output.println("" + state.generation + " "
+					+ profile.name(n) + " " + profile.count(n) + " "
+					+ profile.meanNanos(n) + " " + profile.totalNanos(n),
+					profilelog);
+		}
+	}
+
 	 /** Logs the best individual of the run. */
 	public void finalStatistics(final EvolutionState state, final int result) {
 //		for (int x = 0; x < state.population.subpops.length; x++) {
@@ -16,18 +16,12 @@
 
 package org.ecj.psh.problem;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Locale;
-import java.util.Scanner;
-
-import org.ecj.psh.PshEvolutionState;
 import org.ecj.psh.PshIndividual;
-import org.ecj.psh.PshProblem;
+import org.ecj.psh.util.Dataset;
+import org.ecj.psh.util.FloatDataset;
+import org.spiderland.Psh.Bytecode;
 import org.spiderland.Psh.Interpreter;
-import org.spiderland.Psh.Program;
+import org.spiderland.Psh.floatStack;
 
 import ec.EvolutionState;
 import ec.Individual;
@@ -40,16 +34,18 @@ import ec.util.Parameter;
  * @author Tomasz Kamiński
  * 
  */
-public class FloatRegressionProblem extends PshProblem {
+public class FloatRegressionProblem extends RegressionProblem {
 	
-	public static final String P_TESTCASES = "test-cases";
 	public static final String P_REPEATFLOATSTACK = "repeat-float-stack"; 
 
-	/** How many times should input number be duplicated in float stack */
+	/** How many times should every input number be duplicated in float stack */
 	public int repeatFloatStack;
 	
 	// symbolic regression test cases
-	public ArrayList<Float[]> testCases;
+	public FloatDataset testCases;
+
+	/** The inputs boxed once for the input stack, inputObjects[column][row] */
+	protected Float[][] inputObjects;
 	
 	
 	@Override
@@ -57,63 +53,54 @@ public class FloatRegressionProblem extends PshProblem {
 		super.setup(state, base);
 		Parameter def = this.defaultBase();
 
-		state.output.message(base.push(P_TESTCASES).toString());
-		state.output.message(def.push(P_TESTCASES).toString());
-		File testCasesFile = state.parameters.getFile(base.push(P_TESTCASES),
-				def.push(P_TESTCASES));
-		state.output.message(testCasesFile.toString());
-		testCases = new ArrayList<Float[]>();
-		FileReader reader = null;
-		try {
-			reader = new FileReader(testCasesFile);
-			Scanner scanner = new Scanner(reader);
-			scanner.useLocale(Locale.US);
-			while (scanner.hasNextFloat()) {
-				float input = scanner.nextFloat();
-				float output = scanner.nextFloat();
-				testCases.add(new Float[]{input,output});
-			}
-		} catch (IOException e) {
-			state.output.fatal("Couldn't read test cases for float symbolic regression.");
-		} finally {
-			if (reader != null)	try {
-					reader.close();
-				} catch (IOException e) { 
-			}
-		}
-		state.output.message("Test cases: ");
-		for (Float[] testCase : testCases) {
-			state.output.message("input = " + testCase[0] + ", output = "
-					+ testCase[1]);
-		}
-		
 		repeatFloatStack = state.parameters.getIntWithDefault(
 				base.push(P_REPEATFLOATSTACK), def.push(P_REPEATFLOATSTACK), 1);
+
+		inputObjects = new Float[testCases.numInputs][testCases.numRows()];
+		for (int c = 0; c < inputObjects.length; c++)
+			for (int r = 0; r < inputObjects[c].length; r++)
+				inputObjects[c][r] = testCases.input(r, c);
 	}
 	
-	private float evaluateTestCase(Interpreter interpreter, Program program, float input, float output) {
-		
+	@Override
+	protected Dataset newDataset(int numInputs, int numOutputs) {
+		testCases = new FloatDataset(numInputs, numOutputs);
+		return testCases;
+	}
+
+	@Override
+	protected double evaluateTestCase(Interpreter interpreter, Bytecode program, int testCase) {
 		interpreter.ClearStacks();
 		
-		// pushing input value to float stack
-		for (int i = 0; i < repeatFloatStack; i++) {
-			interpreter.floatStack().push(input);
+		for (int c = 0; c < testCases.numInputs; c++) {
+			float input = testCases.input(testCase, c);
+
+			// pushing input value to float stack
+			for (int i = 0; i < repeatFloatStack; i++) {
+				interpreter.floatStack().push(input);
+			}
+
+			// setting input value to input stack
+			interpreter.inputStack().push(inputObjects[c][testCase]);
 		}
-		
-		// setting input value to input stack
-		interpreter.inputStack().push((Float)input);
 
 		// executing the program
 		interpreter.Execute(program,
 				interpreter.getExecutionLimit());
 
-		// Penalize individual if there is no result on the stack.
-		if (interpreter.floatStack().size() == 0) {
+		// Penalize individual if there are no results on the stack.
+		floatStack results = interpreter.floatStack();
+		if (results.size() < testCases.numOutputs) {
 			return 1000.0f;
 		}
 
-		// compute result as absolute difference
-		float error = Math.abs(interpreter.floatStack().top() - output);
+		// compute result as absolute difference, the last output is expected
+		// on the top of the stack
+		float error = 0.0f;
+		for (int c = 0; c < testCases.numOutputs; c++) {
+			float result = results.peek(results.size() - testCases.numOutputs + c);
+			error += Math.abs(result - testCases.output(testCase, c));
+		}
 		
 		return error;
 	}
@@ -129,17 +116,20 @@ public class FloatRegressionProblem extends PshProblem {
 			state.output.fatal("This is not PshIndividual instance!");
 		}
 		
-		Interpreter interpreter = ((PshEvolutionState) state).interpreter[threadnum];
-		Program program = ((PshIndividual) ind).program;
+		// the program is encoded and its instructions resolved once for all
+		// test cases
+		Bytecode program = new Bytecode(((PshIndividual) ind).program);
+		if (evaluateFromCache(state, ind, program, threadnum))
+			return;
+
+		double[] errors = new double[testCases.numRows()];
+		boolean exact = evaluateTestCases(state, threadnum, program, errors);
 		
 		float fitness = 0.0f;
 		int hits = 0;
 		
-		for (Float[] testCase : testCases) {
-			float input = testCase[0];
-			float output = testCase[1];
-
-			float error = evaluateTestCase(interpreter, program, input, output);
+		for (int i = 0; i < errors.length; i++) {
+			float error = (float) errors[i];
 			
 			if (error < 0.01)
 				hits++;
@@ -149,13 +139,15 @@ public class FloatRegressionProblem extends PshProblem {
 			fitness = Float.MAX_VALUE;
 		} else {
 			// compute mean absolute error
-			fitness = fitness / (float) testCases.size();
+			fitness = fitness / (float) testCases.numRows();
 		}
 		
 		KozaFitness f = (KozaFitness) ind.fitness; 
 		f.setStandardizedFitness(state, fitness);
 		f.hits = hits;
+		markBound(state, ind, !exact);
 		ind.evaluated = true;
+		cacheFitness(state, ind, program, threadnum);
 	}
 
 }
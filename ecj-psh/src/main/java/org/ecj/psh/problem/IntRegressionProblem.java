@@ -16,18 +16,12 @@
 
 package org.ecj.psh.problem;
 
-import java.io.File;
-import java.io.FileReader;
-import java.io.IOException;
-import java.util.ArrayList;
-import java.util.Locale;
-import java.util.Scanner;
-
-import org.ecj.psh.PshEvolutionState;
 import org.ecj.psh.PshIndividual;
-import org.ecj.psh.PshProblem;
+import org.ecj.psh.util.Dataset;
+import org.ecj.psh.util.IntDataset;
+import org.spiderland.Psh.Bytecode;
 import org.spiderland.Psh.Interpreter;
-import org.spiderland.Psh.Program;
+import org.spiderland.Psh.intStack;
 
 import ec.EvolutionState;
 import ec.Individual;
@@ -40,85 +34,79 @@ import ec.util.Parameter;
  * @author Tomasz Kamiński
  * 
  */
-public class IntRegressionProblem extends PshProblem {
+public class IntRegressionProblem extends RegressionProblem {
 	
-	public static final String P_TESTCASES = "test-cases";
 	public static final String P_REPEATINTSTACK = "repeat-int-stack"; 
 
-	/** How many times should input number be duplicated in int stack */
+	/** How many times should every input number be duplicated in int stack */
 	public int repeatIntStack;
 
 	// symbolic regression test cases
-	public ArrayList<Integer[]> testCases;
+	public IntDataset testCases;
+
+	/** The inputs boxed once for the input stack, inputObjects[column][row] */
+	protected Integer[][] inputObjects;
 		
 	@Override
 	public void setup(final EvolutionState state, final Parameter base) {
 		super.setup(state, base);
 		Parameter def = this.defaultBase();
 
-		state.output.message(base.push(P_TESTCASES).toString());
-		state.output.message(def.push(P_TESTCASES).toString());
-		File testCasesFile = state.parameters.getFile(base.push(P_TESTCASES),
-				def.push(P_TESTCASES));
-		state.output.message(testCasesFile.toString());
-		testCases = new ArrayList<Integer[]>();
-		FileReader reader = null;
-		try {
-			reader = new FileReader(testCasesFile);
-			Scanner scanner = new Scanner(reader);
-			scanner.useLocale(Locale.US);
-			while (scanner.hasNextFloat()) {
-				int input = scanner.nextInt();
-				int output = scanner.nextInt();
-				testCases.add(new Integer[]{input,output});
-			}
-		} catch (IOException e) {
-			state.output.fatal("Couldn't read test cases for integer symbolic regression.");
-		} finally {
-			if (reader != null)	try {
-					reader.close();
-				} catch (IOException e) { 
-			}
-		}
-		state.output.message("Test cases: ");
-		for (Integer[] testCase : testCases) {
-			state.output.message("input = " + testCase[0] + ", output = "
-					+ testCase[1]);
-		}
-		
 		repeatIntStack = state.parameters.getIntWithDefault(
 				base.push(P_REPEATINTSTACK), def.push(P_REPEATINTSTACK), 1);
+
+		inputObjects = new Integer[testCases.numInputs][testCases.numRows()];
+		for (int c = 0; c < inputObjects.length; c++)
+			for (int r = 0; r < inputObjects[c].length; r++)
+				inputObjects[c][r] = testCases.input(r, c);
 		
 	}
 	
-	private int evaluateTestCase(Interpreter interpreter, Program program, int input, int output) {
-		
+	@Override
+	protected Dataset newDataset(int numInputs, int numOutputs) {
+		testCases = new IntDataset(numInputs, numOutputs);
+		return testCases;
+	}
+
+	@Override
+	protected double evaluateTestCase(Interpreter interpreter, Bytecode program, int testCase) {
 		interpreter.ClearStacks();
 
-		// pushing input value to int stack
-		for (int i = 0; i < repeatIntStack; i++) {
-			interpreter.intStack().push(input);
+		for (int c = 0; c < testCases.numInputs; c++) {
+			int input = testCases.input(testCase, c);
+
+			// pushing input value to int stack
+			for (int i = 0; i < repeatIntStack; i++) {
+				interpreter.intStack().push(input);
+			}
+
+			// setting input value to input stack
+			interpreter.inputStack().push(inputObjects[c][testCase]);
 		}
-		
-		// setting input value to input stack
-		interpreter.inputStack().push((Integer)input);
 
 		// executing the program
 		interpreter.Execute(program,
 				interpreter.getExecutionLimit());
 
-		// Penalize individual if there is no result on the stack.
-		if (interpreter.intStack().size() == 0) {
+		// Penalize individual if there are no results on the stack.
+		intStack results = interpreter.intStack();
+		if (results.size() < testCases.numOutputs) {
 			return 1000;
 		}
 
-		// compute result as absolute difference
-		int error = Math.abs(interpreter.intStack().top() - output);
-		
-		if (error == Integer.MIN_VALUE)
-			error = Integer.MAX_VALUE;
+		// compute result as absolute difference, the last output is expected
+		// on the top of the stack
+		long error = 0;
+		for (int c = 0; c < testCases.numOutputs; c++) {
+			int result = results.peek(results.size() - testCases.numOutputs + c);
+			int diff = Math.abs(result - testCases.output(testCase, c));
+			
+			if (diff == Integer.MIN_VALUE)
+				diff = Integer.MAX_VALUE;
+			error += diff;
+		}
 		
-		return error;
+		return (int) Math.min(error, Integer.MAX_VALUE);
 	}
 	
 	@Override
@@ -132,17 +120,20 @@ public class IntRegressionProblem extends PshProblem {
 			state.output.fatal("This is not PshIndividual instance!");
 		}
 		
-		Interpreter interpreter = ((PshEvolutionState) state).interpreter[threadnum];
-		Program program = ((PshIndividual) ind).program;
+		// the program is encoded and its instructions resolved once for all
+		// test cases
+		Bytecode program = new Bytecode(((PshIndividual) ind).program);
+		if (evaluateFromCache(state, ind, program, threadnum))
+			return;
+
+		double[] errors = new double[testCases.numRows()];
+		boolean exact = evaluateTestCases(state, threadnum, program, errors);
 		
 		double meanError = 0.0f;
 		int hits = 0;
 		
-		for (Integer[] testCase : testCases) {
-			int input = testCase[0];
-			int output = testCase[1];
-
-			int error = evaluateTestCase(interpreter, program, input, output);
+		for (int i = 0; i < errors.length; i++) {
+			int error = (int) errors[i];
 			if (error == 0)
 				hits++;
 			
@@ -153,13 +144,15 @@ public class IntRegressionProblem extends PshProblem {
 			meanError = Float.MAX_VALUE;
 		} else {
 			// compute mean absolute error
-			meanError = meanError / (float) testCases.size();
+			meanError = meanError / (float) testCases.numRows();
 		}
 		
 		KozaFitness f = (KozaFitness) ind.fitness; 
 		f.setStandardizedFitness(state, (float)meanError);
 		f.hits = hits;
+		markBound(state, ind, !exact);
 		ind.evaluated = true;
+		cacheFitness(state, ind, program, threadnum);
 	}
 
 }
@@ -0,0 +1,255 @@
+/*
+* Copyright 2012 Tomasz Kamiński
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.ecj.psh.problem;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.ecj.psh.PshEvolutionState;
+import org.ecj.psh.PshProblem;
+import org.ecj.psh.util.Dataset;
+import org.spiderland.Psh.Bytecode;
+import org.spiderland.Psh.Interpreter;
+
+import ec.EvolutionState;
+import ec.util.MersenneTwisterFast;
+import ec.util.Parameter;
+
+/**
+ * Base class for symbolic regression problems. Test cases are read from the
+ * file given by the test-cases parameter; each of them holds num-inputs input
+ * values followed by num-outputs output values. Test cases of a single
+ * individual may be split among several interpreters working in parallel.
+ * Errors are gathered per test case and summed up in the test case order by
+ * subclasses, so results are the same as in the serial evaluation.
+ *
+ * @author Tomasz Kamiński
+ *
+ */
+public abstract class RegressionProblem extends PshProblem {
+
+	public static final String P_TESTCASES = "test-cases";
+	public static final String P_TESTCASESSNAPSHOT = "test-cases-snapshot";
+	public static final String P_NUMINPUTS = "num-inputs";
+	public static final String P_NUMOUTPUTS = "num-outputs";
+	public static final String P_TESTCASETHREADS = "test-case-threads";
+
+	/** Number of interpreters evaluating test cases of one individual */
+	public int testCaseThreads;
+
+	/**
+	 * Additional interpreters for every evaluation thread, the first part of
+	 * the test cases is evaluated with the interpreter of the thread itself
+	 */
+	protected Interpreter[][] testCaseInterpreters;
+
+	/** Workers running the additional interpreters, shared among clones */
+	protected TestCaseWorkers testCaseWorkers;
+
+	/**
+	 * Daemon threads running the additional interpreters. The threads are
+	 * started when they are first needed, so that a problem restored from a
+	 * checkpoint starts them anew.
+	 */
+	protected static class TestCaseWorkers implements Serializable {
+		private static final long serialVersionUID = 1L;
+
+		private final int numThreads;
+		private transient ExecutorService executor;
+
+		public TestCaseWorkers(int numThreads) {
+			this.numThreads = numThreads;
+		}
+
+		public synchronized ExecutorService executor() {
+			if (executor == null)
+				executor = Executors.newFixedThreadPool(numThreads,
+						new ThreadFactory() {
+							public Thread newThread(Runnable r) {
+								Thread thread = new Thread(r);
+								thread.setDaemon(true);
+								return thread;
+							}
+						});
+			return executor;
+		}
+	}
+
+	@Override
+	public void setup(final EvolutionState state, final Parameter base) {
+		super.setup(state, base);
+		Parameter def = this.defaultBase();
+
+		int numInputs = state.parameters.getIntWithDefault(
+				base.push(P_NUMINPUTS), def.push(P_NUMINPUTS), 1);
+		if (numInputs < 1)
+			state.output.fatal("Number of inputs must be >= 1.",
+					base.push(P_NUMINPUTS), def.push(P_NUMINPUTS));
+		int numOutputs = state.parameters.getIntWithDefault(
+				base.push(P_NUMOUTPUTS), def.push(P_NUMOUTPUTS), 1);
+		if (numOutputs < 1)
+			state.output.fatal("Number of outputs must be >= 1.",
+					base.push(P_NUMOUTPUTS), def.push(P_NUMOUTPUTS));
+
+		File testCasesFile = state.parameters.getFile(base.push(P_TESTCASES),
+				def.push(P_TESTCASES));
+		if (testCasesFile == null)
+			state.output.fatal("No test cases file given.",
+					base.push(P_TESTCASES), def.push(P_TESTCASES));
+		// binary snapshot of the parsed test cases for faster restarts
+		File snapshot = null;
+		if (state.parameters.getBoolean(base.push(P_TESTCASESSNAPSHOT),
+				def.push(P_TESTCASESSNAPSHOT), false))
+			snapshot = new File(testCasesFile.getPath() + ".bin");
+
+		state.output.message(testCasesFile.toString());
+		Dataset dataset = newDataset(numInputs, numOutputs);
+		try {
+			dataset.load(testCasesFile, snapshot);
+		} catch (IOException e) {
+			state.output.fatal("Couldn't read test cases: " + e.getMessage());
+		}
+		state.output.message("Test cases: " + dataset.summary());
+
+		testCaseThreads = state.parameters.getIntWithDefault(
+				base.push(P_TESTCASETHREADS), def.push(P_TESTCASETHREADS), 1);
+		if (testCaseThreads < 1)
+			state.output.fatal("Number of test case threads must be >= 1.",
+					base.push(P_TESTCASETHREADS), def.push(P_TESTCASETHREADS));
+
+		if (testCaseThreads > 1) {
+			PshEvolutionState pshState = (PshEvolutionState) state;
+			int numOfThreads = pshState.interpreter.length;
+
+			testCaseInterpreters = new Interpreter[numOfThreads][testCaseThreads - 1];
+			for (int i = 0; i < numOfThreads; i++)
+				for (int j = 0; j < testCaseThreads - 1; j++)
+					// test cases are split only for programs which don't use
+					// random numbers, so the seed doesn't matter
+					testCaseInterpreters[i][j] = pshState
+							.newInterpreter(new MersenneTwisterFast(i
+									* testCaseThreads + j));
+
+			testCaseWorkers = new TestCaseWorkers(numOfThreads
+					* (testCaseThreads - 1));
+		}
+	}
+
+	/**
+	 * Creates an empty dataset for the test cases of the problem.
+	 */
+	protected abstract Dataset newDataset(int numInputs, int numOutputs);
+
+	/**
+	 * Evaluates a single test case.
+	 *
+	 * @return error of the program for the test case
+	 */
+	protected abstract double evaluateTestCase(Interpreter interpreter,
+			Bytecode program, int testCase);
+
+	/**
+	 * Evaluates the test cases of a program. Programs which use random numbers
+	 * are always evaluated serially by the interpreter of the thread. If the
+	 * problem has an error bound, every part of the test cases is evaluated
+	 * only until the error summed over the part exceeds the bound of the
+	 * mean error of all test cases; errors of the skipped test cases are
+	 * left at 0. As the parts are checked separately, results don't depend
+	 * on the timing of the threads.
+	 * 
+	 * @param errors
+	 *            errors of the program for each test case
+	 * @return false if some test cases have been skipped
+	 */
+	protected boolean evaluateTestCases(final EvolutionState state,
+			final int threadnum, final Bytecode program, final double[] errors) {
+		final int numTestCases = errors.length;
+		final double maxError = errorBound * numTestCases;
+		Interpreter interpreter = ((PshEvolutionState) state).interpreter[threadnum];
+
+		int chunks = Math.min(testCaseThreads, numTestCases);
+		if (chunks <= 1 || testCaseWorkers == null
+				|| interpreter.UsesRNG(program)) {
+			return finished(evaluateTestCases(interpreter, program, errors, 0,
+					numTestCases, maxError));
+		}
+
+		ExecutorService executor = testCaseWorkers.executor();
+		List<Future<Integer>> results = new ArrayList<Future<Integer>>(chunks - 1);
+		for (int c = 1; c < chunks; c++) {
+			final Interpreter worker = testCaseInterpreters[threadnum][c - 1];
+			final Bytecode workerProgram = new Bytecode(program);
+			final int from = c * numTestCases / chunks;
+			final int to = (c + 1) * numTestCases / chunks;
+
+			results.add(executor.submit(new Callable<Integer>() {
+				public Integer call() {
+					return evaluateTestCases(worker, workerProgram, errors,
+							from, to, maxError);
+				}
+			}));
+		}
+
+		int skipped = evaluateTestCases(interpreter, program, errors, 0,
+				numTestCases / chunks, maxError);
+
+		try {
+			for (Future<Integer> result : results)
+				skipped += result.get();
+		} catch (InterruptedException e) {
+			state.output.fatal("Interrupted while evaluating test cases.");
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		return finished(skipped);
+	}
+
+	/**
+	 * Evaluates a part of the test cases until their summed error exceeds the
+	 * given one.
+	 * 
+	 * @return number of skipped test cases
+	 */
+	private int evaluateTestCases(Interpreter interpreter, Bytecode program,
+			double[] errors, int from, int to, double maxError) {
+		double error = 0.0;
+		for (int i = from; i < to; i++) {
+			errors[i] = evaluateTestCase(interpreter, program, i);
+			error += errors[i];
+			if (error > maxError)
+				return to - i - 1;
+		}
+		return 0;
+	}
+
+	private boolean finished(int skipped) {
+		if (skipped == 0)
+			return true;
+		countBound(skipped);
+		return false;
+	}
+
+}
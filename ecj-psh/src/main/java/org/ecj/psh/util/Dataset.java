@@ -0,0 +1,222 @@
+/*
+* Copyright 2012 Tomasz Kamiński
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.ecj.psh.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+
+/**
+ * Test cases of a problem stored column-wise in primitive arrays. Every row
+ * of the text file holds the input values followed by the output values,
+ * separated by white space. Line breaks are treated as any other white space,
+ * so a row may span many lines.
+ *
+ * A binary snapshot of the parsed columns may be kept next to the text file;
+ * it is used instead of the text file as long as it is newer.
+ *
+ * @author Tomasz Kamiński
+ *
+ */
+public abstract class Dataset implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	private static final int SNAPSHOT_MAGIC = 0x50736844;
+
+	/** Number of input columns */
+	public final int numInputs;
+
+	/** Number of output columns */
+	public final int numOutputs;
+
+	/** Number of rows (test cases) */
+	protected int numRows;
+
+	protected Dataset(int numInputs, int numOutputs) {
+		this.numInputs = numInputs;
+		this.numOutputs = numOutputs;
+	}
+
+	public int numRows() {
+		return numRows;
+	}
+
+	/**
+	 * Loads the test cases from a text file, or from its snapshot if there is
+	 * an up to date one.
+	 *
+	 * @param snapshot
+	 *            binary snapshot of the file, null if no snapshot should be
+	 *            used. The snapshot is (re)written if it's older than the file.
+	 */
+	public void load(File file, File snapshot) throws IOException {
+		if (snapshot != null && snapshot.exists()
+				&& snapshot.lastModified() >= file.lastModified()) {
+			if (readSnapshot(snapshot))
+				return;
+		}
+
+		parse(file);
+		if (snapshot != null)
+			writeSnapshot(snapshot);
+	}
+
+	/**
+	 * Parses the test cases from a text file.
+	 */
+	public void parse(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file),
+				1 << 16);
+		try {
+			int columns = numInputs + numOutputs;
+			int column = 0;
+			int line = 1;
+			numRows = 0;
+			clear();
+
+			StringBuilder token = new StringBuilder();
+			int c;
+			do {
+				c = in.read();
+				if (c > ' ') {
+					token.append((char) c);
+					continue;
+				}
+
+				if (token.length() > 0) {
+					if (column == 0)
+						ensureCapacity(numRows + 1);
+					try {
+						setValue(numRows, column, token);
+					} catch (NumberFormatException e) {
+						throw new IOException("Bad value \"" + token
+								+ "\" in line " + line + " of " + file);
+					}
+					token.setLength(0);
+					if (++column == columns) {
+						column = 0;
+						numRows++;
+					}
+				}
+				if (c == '\n')
+					line++;
+			} while (c != -1);
+
+			if (column != 0)
+				throw new IOException("Incomplete test case in line "
+						+ (line - 1) + " of " + file);
+		} finally {
+			in.close();
+		}
+		trimToSize();
+	}
+
+	/**
+	 * Reads the test cases from a binary snapshot.
+	 *
+	 * @return false if the snapshot doesn't match the dataset
+	 */
+	public boolean readSnapshot(File snapshot) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(snapshot), 1 << 16));
+		try {
+			if (in.readInt() != SNAPSHOT_MAGIC
+					|| !in.readUTF().equals(getClass().getName())
+					|| in.readInt() != numInputs || in.readInt() != numOutputs)
+				return false;
+
+			numRows = in.readInt();
+			clear();
+			ensureCapacity(numRows);
+			readColumns(in);
+			trimToSize();
+			return true;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes the test cases to a binary snapshot.
+	 */
+	public void writeSnapshot(File snapshot) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(snapshot), 1 << 16));
+		try {
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeUTF(getClass().getName());
+			out.writeInt(numInputs);
+			out.writeInt(numOutputs);
+			out.writeInt(numRows);
+			writeColumns(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Short description of the test cases, used instead of printing all of
+	 * them.
+	 */
+	public String summary() {
+		StringBuilder sb = new StringBuilder();
+		sb.append(numRows).append(" test cases, ").append(numInputs)
+				.append(" input(s), ").append(numOutputs).append(" output(s)");
+		for (int column = 0; column < numInputs + numOutputs; column++) {
+			sb.append(column < numInputs ? "\n  input " + column
+					: "\n  output " + (column - numInputs));
+			sb.append(": ").append(columnSummary(column));
+		}
+		return sb.toString();
+	}
+
+	/** Removes all columns */
+	protected abstract void clear();
+
+	/** Makes room for the given number of rows in every column */
+	protected abstract void ensureCapacity(int rows);
+
+	/** Shrinks the columns to the number of rows */
+	protected abstract void trimToSize();
+
+	/**
+	 * Parses a value of a column, inputs are followed by outputs.
+	 */
+	protected abstract void setValue(int row, int column, CharSequence value)
+			throws NumberFormatException;
+
+	protected abstract void readColumns(DataInputStream in) throws IOException;
+
+	protected abstract void writeColumns(DataOutputStream out)
+			throws IOException;
+
+	/** Range of the values of a column */
+	protected abstract String columnSummary(int column);
+
+	/** New capacity of a column which needs at least the given size */
+	protected static int grow(int capacity, int rows) {
+		return Math.max(rows, Math.max(16, capacity + (capacity >> 1)));
+	}
+
+}
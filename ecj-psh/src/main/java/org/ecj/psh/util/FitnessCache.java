@@ -0,0 +1,94 @@
+/*
+* Copyright 2012 Tomasz Kamiński
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.ecj.psh.util;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.spiderland.Psh.Bytecode;
+
+import ec.Fitness;
+
+/**
+ * Bounded cache of fitnesses of already evaluated programs. The least
+ * recently used program is evicted when the cache is full. The cache may be
+ * used by many evaluation threads at once.
+ *
+ * @author Tomasz Kamiński
+ *
+ */
+public class FitnessCache implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** Maximal number of cached programs */
+	public final int capacity;
+
+	private final LinkedHashMap<Bytecode, Fitness> fitnesses;
+
+	private long hits;
+	private long misses;
+
+	public FitnessCache(final int capacity) {
+		this.capacity = capacity;
+		this.fitnesses = new LinkedHashMap<Bytecode, Fitness>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Bytecode, Fitness> eldest) {
+				return size() > capacity;
+			}
+		};
+	}
+
+	/**
+	 * Returns a copy of the cached fitness of a program, or null if the
+	 * program isn't cached.
+	 */
+	public synchronized Fitness get(Bytecode program) {
+		Fitness fitness = fitnesses.get(program);
+		if (fitness == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return (Fitness) fitness.clone();
+	}
+
+	/**
+	 * Caches a copy of the fitness of a program.
+	 */
+	public synchronized void put(Bytecode program, Fitness fitness) {
+		// the copy shares the code only, without execution caches
+		fitnesses.put(new Bytecode(program), (Fitness) fitness.clone());
+	}
+
+	/** Number of lookups which found the program */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/** Number of lookups which didn't find the program */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public synchronized int size() {
+		return fitnesses.size();
+	}
+
+}
@@ -0,0 +1,118 @@
+/*
+* Copyright 2012 Tomasz Kamiński
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.ecj.psh.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Test cases with integer inputs and outputs.
+ *
+ * @author Tomasz Kamiński
+ *
+ */
+public class IntDataset extends Dataset {
+	private static final long serialVersionUID = 1L;
+
+	/** Input columns, inputs[column][row] */
+	public int[][] inputs;
+
+	/** Output columns, outputs[column][row] */
+	public int[][] outputs;
+
+	public IntDataset(int numInputs, int numOutputs) {
+		super(numInputs, numOutputs);
+		clear();
+	}
+
+	public int input(int row, int column) {
+		return inputs[column][row];
+	}
+
+	public int output(int row, int column) {
+		return outputs[column][row];
+	}
+
+	@Override
+	protected void clear() {
+		inputs = new int[numInputs][0];
+		outputs = new int[numOutputs][0];
+	}
+
+	@Override
+	protected void ensureCapacity(int rows) {
+		for (int c = 0; c < numInputs; c++)
+			if (inputs[c].length < rows)
+				inputs[c] = Arrays.copyOf(inputs[c], grow(inputs[c].length, rows));
+		for (int c = 0; c < numOutputs; c++)
+			if (outputs[c].length < rows)
+				outputs[c] = Arrays.copyOf(outputs[c], grow(outputs[c].length, rows));
+	}
+
+	@Override
+	protected void trimToSize() {
+		for (int c = 0; c < numInputs; c++)
+			inputs[c] = Arrays.copyOf(inputs[c], numRows);
+		for (int c = 0; c < numOutputs; c++)
+			outputs[c] = Arrays.copyOf(outputs[c], numRows);
+	}
+
+	@Override
+	protected void setValue(int row, int column, CharSequence value) {
+		int v = Integer.parseInt(value.toString());
+		if (column < numInputs)
+			inputs[column][row] = v;
+		else
+			outputs[column - numInputs][row] = v;
+	}
+
+	@Override
+	protected void readColumns(DataInputStream in) throws IOException {
+		for (int[] column : inputs)
+			for (int row = 0; row < numRows; row++)
+				column[row] = in.readInt();
+		for (int[] column : outputs)
+			for (int row = 0; row < numRows; row++)
+				column[row] = in.readInt();
+	}
+
+	@Override
+	protected void writeColumns(DataOutputStream out) throws IOException {
+		for (int[] column : inputs)
+			for (int row = 0; row < numRows; row++)
+				out.writeInt(column[row]);
+		for (int[] column : outputs)
+			for (int row = 0; row < numRows; row++)
+				out.writeInt(column[row]);
+	}
+
+	@Override
+	protected String columnSummary(int column) {
+		int[] values = column < numInputs ? inputs[column]
+				: outputs[column - numInputs];
+		int min = Integer.MAX_VALUE;
+		int max = Integer.MIN_VALUE;
+		for (int row = 0; row < numRows; row++) {
+			min = Math.min(min, values[row]);
+			max = Math.max(max, values[row]);
+		}
+		return numRows == 0 ? "-" : "[" + min + ", " + max + "]";
+	}
+
+}
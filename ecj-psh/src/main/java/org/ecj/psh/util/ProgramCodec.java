@@ -0,0 +1,215 @@
+/*
+* Copyright 2012 Tomasz Kamiński
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.ecj.psh.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.spiderland.Psh.Instruction;
+import org.spiderland.Psh.Program;
+
+/**
+ * Binary encoding of Push programs, used by PshIndividual to send programs to
+ * slaves, to other islands and to partial checkpoints. An encoded program
+ * starts with the FORMAT byte, followed by the number of its points and the
+ * points themselves, each starting with a varint tag:
+ *
+ * <ul>
+ * <li>TAG_PROGRAM, number of points, points - a sub-program</li>
+ * <li>TAG_INT, zigzag varint - an integer literal</li>
+ * <li>TAG_FLOAT, raw float bits - a float literal</li>
+ * <li>TAG_DEFINE, varint index, name - an instruction name, which is also
+ * stored in the dictionary under the index</li>
+ * <li>TAG_NAME, name - an instruction name which isn't in the dictionary</li>
+ * <li>TAG_ATOM + n - the n-th name of the dictionary</li>
+ * </ul>
+ *
+ * The dictionary belongs to the stream: every name is spelled out once per
+ * stream (per connection to a slave, per checkpoint) and then sent as a small
+ * number. A reader has to see everything its writer wrote, in the same order,
+ * which is how ECJ uses its streams. Since definitions carry their index, a
+ * stream may be read by a reader which has already seen another stream's
+ * definitions.
+ *
+ * @author Tomasz Kamiński
+ *
+ */
+public class ProgramCodec {
+
+	/** Version of the encoding */
+	public static final int VERSION = 1;
+
+	/** First byte of an encoded program */
+	public static final int FORMAT = 0x80 | VERSION;
+
+	static final int TAG_PROGRAM = 0;
+	static final int TAG_INT = 1;
+	static final int TAG_FLOAT = 2;
+	static final int TAG_DEFINE = 3;
+	static final int TAG_NAME = 4;
+	static final int TAG_ATOM = 5;
+
+	/** Maximal number of names in the dictionary of a stream */
+	public static final int MAX_NAMES = 1 << 12;
+
+	private static final Map<DataOutput, HashMap<String, Integer>> writers = Collections
+			.synchronizedMap(new WeakHashMap<DataOutput, HashMap<String, Integer>>());
+	private static final Map<DataInput, ArrayList<String>> readers = Collections
+			.synchronizedMap(new WeakHashMap<DataInput, ArrayList<String>>());
+
+	/**
+	 * Writes a program.
+	 */
+	public static void write(Program program, DataOutput out)
+			throws IOException {
+		HashMap<String, Integer> names = writers.get(out);
+		if (names == null) {
+			names = new HashMap<String, Integer>();
+			writers.put(out, names);
+		}
+		out.writeByte(FORMAT);
+		write(program, out, names);
+	}
+
+	private static void write(Program program, DataOutput out,
+			HashMap<String, Integer> names) throws IOException {
+		int size = program.size();
+		writeVarint(out, size);
+		for (int n = 0; n < size; n++) {
+			Object o = program.peek(n);
+
+			if (o instanceof Instruction)
+				o = ((Instruction) o).atom();
+
+			if (o instanceof Program) {
+				writeVarint(out, TAG_PROGRAM);
+				write((Program) o, out, names);
+			} else if (o instanceof Integer) {
+				writeVarint(out, TAG_INT);
+				int value = (Integer) o;
+				writeVarint(out, (value << 1) ^ (value >> 31));
+			} else if (o instanceof Number) {
+				writeVarint(out, TAG_FLOAT);
+				out.writeInt(Float.floatToRawIntBits(((Number) o).floatValue()));
+			} else if (o instanceof String) {
+				Integer index = names.get(o);
+				if (index != null) {
+					writeVarint(out, TAG_ATOM + index);
+				} else if (names.size() < MAX_NAMES) {
+					index = names.size();
+					names.put((String) o, index);
+					writeVarint(out, TAG_DEFINE);
+					writeVarint(out, index);
+					out.writeUTF((String) o);
+				} else {
+					writeVarint(out, TAG_NAME);
+					out.writeUTF((String) o);
+				}
+			} else {
+				throw new IOException("Can't encode program point " + o);
+			}
+		}
+	}
+
+	/**
+	 * Reads a program into the given one, whose first byte, which has to be
+	 * FORMAT, has already been read.
+	 */
+	public static void read(Program program, DataInput in) throws IOException {
+		ArrayList<String> names = readers.get(in);
+		if (names == null) {
+			names = new ArrayList<String>();
+			readers.put(in, names);
+		}
+		program.clear();
+		read(program, in, names);
+	}
+
+	private static void read(Program program, DataInput in,
+			ArrayList<String> names) throws IOException {
+		int size = readVarint(in);
+		for (int n = 0; n < size; n++) {
+			int tag = readVarint(in);
+			Object o;
+
+			switch (tag) {
+			case TAG_PROGRAM:
+				Program p = new Program();
+				read(p, in, names);
+				o = p;
+				break;
+			case TAG_INT:
+				int value = readVarint(in);
+				o = Integer.valueOf((value >>> 1) ^ -(value & 1));
+				break;
+			case TAG_FLOAT:
+				o = Float.valueOf(Float.intBitsToFloat(in.readInt()));
+				break;
+			case TAG_DEFINE:
+				int index = readVarint(in);
+				String name = in.readUTF();
+				if (index > names.size() || index >= MAX_NAMES)
+					throw new IOException("Bad name index " + index);
+				if (index == names.size())
+					names.add(name);
+				else
+					names.set(index, name);
+				o = name;
+				break;
+			case TAG_NAME:
+				o = in.readUTF();
+				break;
+			default:
+				if (tag - TAG_ATOM >= names.size())
+					throw new IOException("Undefined name index "
+							+ (tag - TAG_ATOM));
+				o = names.get(tag - TAG_ATOM);
+			}
+
+			// shoving at depth 0 pushes a sub-program without copying it
+			program.shove(o, 0);
+		}
+	}
+
+	/** Writes an int, taken as unsigned, in 7-bit groups, lowest first */
+	public static void writeVarint(DataOutput out, int value)
+			throws IOException {
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	public static int readVarint(DataInput in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+		}
+		throw new IOException("Malformed varint");
+	}
+
+}
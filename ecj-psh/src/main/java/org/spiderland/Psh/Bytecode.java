@@ -0,0 +1,279 @@
+/*
+* Copyright 2012 Tomasz Kamiński
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.spiderland.Psh;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A Push program encoded as a flat array of opcodes. Every point of the
+ * program takes the following slots:
+ *
+ * <ul>
+ * <li>OP_OPEN, index of the matching OP_CLOSE - a sub-program</li>
+ * <li>OP_CLOSE - end of a sub-program</li>
+ * <li>OP_INT, value - an integer literal</li>
+ * <li>OP_FLOAT, raw float bits - a float literal</li>
+ * <li>OP_ATOM + n - the n-th instruction name of the atom dictionary</li>
+ * </ul>
+ *
+ * The whole program is enclosed in one OP_OPEN/OP_CLOSE pair. The encoding
+ * does not depend on any interpreter; Interpreter.Execute(Bytecode, int)
+ * resolves the atom dictionary once and then walks the opcodes without
+ * creating any objects.
+ */
+public class Bytecode implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	static final int OP_OPEN = 0;
+	static final int OP_CLOSE = 1;
+	static final int OP_INT = 2;
+	static final int OP_FLOAT = 3;
+	static final int OP_ATOM = 4;
+
+	protected int _code[];
+	protected int _length;
+
+	/** Instruction names used in the program */
+	protected String _atoms[];
+
+	/** Number of points in the program */
+	protected int _points;
+
+	// Atom dictionary resolved by the interpreter which executed the code
+	// most recently. _resolved is null if the code can't run on the flat exec
+	// stack, in which case _compiled holds the program for the Program path.
+	protected transient Interpreter _resolvedBy;
+	protected transient Instruction _resolved[];
+	protected transient Program _compiled;
+
+	/**
+	 * Encodes a Push program.
+	 *
+	 * @param inProgram
+	 *            The Push program to encode.
+	 */
+
+	public Bytecode(Program inProgram) {
+		ArrayList<String> atoms = new ArrayList<String>();
+		HashMap<String, Integer> atomIndex = new HashMap<String, Integer>();
+
+		// a sub-program takes three slots, any other point at most two
+		_code = new int[3 * inProgram.programsize() + 3];
+		Encode(inProgram, atoms, atomIndex);
+
+		_atoms = atoms.toArray(new String[atoms.size()]);
+	}
+
+	/**
+	 * Constructs a copy of encoded code. The copy shares the opcodes with the
+	 * original but resolves its atoms on its own, so that the copies can be
+	 * executed by different interpreters at the same time.
+	 * 
+	 * @param inOther
+	 *            The code to copy.
+	 */
+
+	public Bytecode(Bytecode inOther) {
+		_code = inOther._code;
+		_length = inOther._length;
+		_atoms = inOther._atoms;
+		_points = inOther._points;
+	}
+
+	private void Encode(Program inProgram, ArrayList<String> ioAtoms,
+			HashMap<String, Integer> ioAtomIndex) {
+		int open = _length;
+
+		Emit(OP_OPEN);
+		Emit(0);
+
+		for (int n = 0; n < inProgram._size; n++) {
+			Object o = inProgram._stack[n];
+
+			_points++;
+
+			if (o instanceof Instruction)
+				o = ((Instruction) o).atom();
+
+			if (o instanceof Program) {
+				Encode((Program) o, ioAtoms, ioAtomIndex);
+			} else if (o instanceof Integer) {
+				Emit(OP_INT);
+				Emit((Integer) o);
+			} else if (o instanceof Number) {
+				Emit(OP_FLOAT);
+				Emit(Float.floatToRawIntBits(((Number) o).floatValue()));
+			} else if (o instanceof String) {
+				Integer index = ioAtomIndex.get(o);
+
+				if (index == null) {
+					index = ioAtoms.size();
+					ioAtoms.add((String) o);
+					ioAtomIndex.put((String) o, index);
+				}
+				Emit(OP_ATOM + index);
+			} else {
+				throw new RuntimeException("Can't encode program point " + o);
+			}
+		}
+
+		_code[open + 1] = _length;
+		Emit(OP_CLOSE);
+	}
+
+	private void Emit(int inValue) {
+		_code[_length++] = inValue;
+	}
+
+	/**
+	 * Returns the position of the point following the one at the given
+	 * position.
+	 */
+	int Next(int inPosition) {
+		int op = _code[inPosition];
+
+		if (op == OP_OPEN)
+			return _code[inPosition + 1] + 1;
+		if (op == OP_INT || op == OP_FLOAT)
+			return inPosition + 2;
+		return inPosition + 1;
+	}
+
+	/**
+	 * Decodes the point at the given position.
+	 */
+	Object Point(int inPosition) {
+		int op = _code[inPosition];
+
+		switch (op) {
+		case OP_OPEN:
+			Program p = new Program();
+			Decode(inPosition, p);
+			return p;
+		case OP_INT:
+			return Integer.valueOf(_code[inPosition + 1]);
+		case OP_FLOAT:
+			return Float.valueOf(Float.intBitsToFloat(_code[inPosition + 1]));
+		default:
+			return _atoms[op - OP_ATOM];
+		}
+	}
+
+	private void Decode(int inOpen, Program ioProgram) {
+		for (int p = inOpen + 2; _code[p] != OP_CLOSE; p = Next(p)) {
+			// shoving at depth 0 pushes a sub-program without copying it
+			ioProgram.shove(Point(p), 0);
+		}
+	}
+
+	/**
+	 * Decodes the program.
+	 *
+	 * @return The Push program this code stands for.
+	 */
+
+	public Program toProgram() {
+		return (Program) Point(0);
+	}
+
+	/**
+	 * Returns the number of points in the program (see Program.programsize).
+	 */
+	public int programsize() {
+		return _points;
+	}
+
+	/**
+	 * Resolves the atom dictionary for an interpreter.
+	 *
+	 * @return The instructions of the atom dictionary (null entries for plain
+	 *         names), or null if the code needs the Program path.
+	 */
+	Instruction[] Resolve(Interpreter inI) {
+		if (_resolvedBy != inI) {
+			_resolvedBy = inI;
+			_resolved = new Instruction[_atoms.length];
+			_compiled = null;
+
+			for (int n = 0; n < _atoms.length; n++) {
+				Instruction i = inI.GetInstruction(_atoms[n]);
+
+				if (i != null && !inI.IsFlatInstruction(_atoms[n], i)) {
+					_resolved = null;
+					break;
+				}
+				_resolved[n] = i;
+			}
+		}
+
+		return _resolved;
+	}
+
+	/**
+	 * Returns the program compiled for the interpreter which resolved the
+	 * code most recently.
+	 */
+	Program Compiled() {
+		if (_compiled == null)
+			_compiled = _resolvedBy.Compile(toProgram());
+
+		return _compiled;
+	}
+
+	/**
+	 * Two codes are equal if they encode equal programs.
+	 */
+	@Override
+	public boolean equals(Object inOther) {
+		if (this == inOther)
+			return true;
+
+		if (!(inOther instanceof Bytecode))
+			return false;
+
+		Bytecode other = (Bytecode) inOther;
+		if (_length != other._length || _atoms.length != other._atoms.length)
+			return false;
+
+		for (int n = 0; n < _length; n++)
+			if (_code[n] != other._code[n])
+				return false;
+
+		for (int n = 0; n < _atoms.length; n++)
+			if (!_atoms[n].equals(other._atoms[n]))
+				return false;
+
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 7;
+		for (int n = 0; n < _length; n++)
+			hash = 41 * hash + _code[n];
+		for (int n = 0; n < _atoms.length; n++)
+			hash = 41 * hash + _atoms[n].hashCode();
+		return hash;
+	}
+
+	public String toString() {
+		return toProgram().toString();
+	}
+
+}
@@ -24,6 +24,26 @@ import java.io.Serializable;
 
 public abstract class Instruction implements Serializable {
 	private static final long serialVersionUID = 1L;
-	
+
+	// Name under which the instruction was defined
+	protected String _name;
+
+	// Interpreter which defined the instruction. Instructions may hold
+	// references to the stacks of that interpreter only.
+	protected transient Interpreter _interpreter;
+
 	public abstract void Execute(Interpreter inI);
+
+	/**
+	 * Returns the atom this instruction stands for in a Push program: the
+	 * instruction name, or the instruction itself if it was never defined in
+	 * an interpreter.
+	 */
+	public Object atom() {
+		return _name != null ? _name : this;
+	}
+
+	public String toString() {
+		return _name != null ? _name : super.toString();
+	}
 }
@@ -16,6 +16,8 @@
 
 package org.spiderland.Psh;
 
+import org.spiderland.Psh.Interpreter.StackType;
+
 import ec.util.MersenneTwisterFast;
 
 //
@@ -30,14 +32,20 @@ import ec.util.MersenneTwisterFast;
 abstract class StackInstruction extends Instruction {
 	private static final long serialVersionUID = 1L;
 
-	protected Stack _stack;
+	protected StackType _stackType;
 
-	StackInstruction(Stack inStack) {
-		_stack = inStack;
+	StackInstruction(StackType inStackType) {
+		_stackType = inStackType;
 	}
-	
-	public void setStack(Stack _inStack) {
-		this._stack = _inStack;
+
+	/**
+	 * Returns the stack the instruction operates on. The stack is looked up in
+	 * the interpreter on every execution, so instructions don't need to be
+	 * updated when the interpreter switches frames.
+	 */
+
+	protected Stack GetStack(Interpreter inI) {
+		return inI.GetStack(_stackType);
 	}
 }
 
@@ -49,14 +57,19 @@ abstract class StackInstruction extends Instruction {
 abstract class ObjectStackInstruction extends Instruction {
 	private static final long serialVersionUID = 1L;
 
-	protected ObjectStack _stack;
+	protected StackType _stackType;
 
-	ObjectStackInstruction(ObjectStack inStack) {
-		_stack = inStack;
+	ObjectStackInstruction(StackType inStackType) {
+		_stackType = inStackType;
 	}
-	
-	public void setStack(ObjectStack _inStack) {
-		this._stack = _inStack;
+
+	/**
+	 * Returns the stack the instruction operates on (see
+	 * StackInstruction.GetStack).
+	 */
+
+	protected ObjectStack GetStack(Interpreter inI) {
+		return (ObjectStack) inI.GetStack(_stackType);
 	}
 }
 
@@ -79,72 +92,78 @@ class Quote extends Instruction {
 class Pop extends StackInstruction {
 	private static final long serialVersionUID = 1L;
 
-	Pop(Stack inStack) {
-		super(inStack);
+	Pop(StackType inStackType) {
+		super(inStackType);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
-		if (_stack.size() > 0)
-			_stack.popdiscard();
+		Stack stack = GetStack(inI);
+
+		if (stack.size() > 0)
+			stack.popdiscard();
 	}
 }
 
 class Flush extends StackInstruction {
 	private static final long serialVersionUID = 1L;
 
-	Flush(Stack inStack) {
-		super(inStack);
+	Flush(StackType inStackType) {
+		super(inStackType);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
-		_stack.clear();
+		GetStack(inI).clear();
 	}
 }
 
 class Dup extends StackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	Dup(Stack inStack) {
-		super(inStack);
+	Dup(StackType inStackType) {
+		super(inStackType);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
-		_stack.dup();
+		GetStack(inI).dup();
 	}
 }
 
 class Rot extends StackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	Rot(Stack inStack) {
-		super(inStack);
+	Rot(StackType inStackType) {
+		super(inStackType);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
-		if (_stack.size() > 2)
-			_stack.rot();
+		Stack stack = GetStack(inI);
+
+		if (stack.size() > 2)
+			stack.rot();
 	}
 }
 
 class Shove extends StackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	Shove(Stack inStack){
-		super(inStack);
+	Shove(StackType inStackType){
+		super(inStackType);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
+		Stack stack = GetStack(inI);
+
 		intStack iStack = inI.intStack();
 		
 		if (iStack.size() > 0) {
 			int index = iStack.pop();
-			if (_stack.size() > 0) {
-				_stack.shove(index);
+			if (stack.size() > 0) {
+				stack.shove(index);
 			}
 			else {
 				iStack.push(index);
@@ -156,32 +175,36 @@ class Shove extends StackInstruction {
 class Swap extends StackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	Swap(Stack inStack) {
-		super(inStack);
+	Swap(StackType inStackType) {
+		super(inStackType);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
-		if (_stack.size() > 1)
-			_stack.swap();
+		Stack stack = GetStack(inI);
+
+		if (stack.size() > 1)
+			stack.swap();
 	}
 }
 
 class Yank extends StackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	Yank(Stack inStack){
-		super(inStack);
+	Yank(StackType inStackType){
+		super(inStackType);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
+		Stack stack = GetStack(inI);
+
 		intStack iStack = inI.intStack();
 		
 		if (iStack.size() > 0) {
 			int index = iStack.pop();
-			if (_stack.size() > 0) {
-				_stack.yank(index);
+			if (stack.size() > 0) {
+				stack.yank(index);
 			}
 			else {
 				iStack.push(index);
@@ -193,18 +216,20 @@ class Yank extends StackInstruction {
 class YankDup extends StackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	YankDup(Stack inStack){
-		super(inStack);
+	YankDup(StackType inStackType){
+		super(inStackType);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
+		Stack stack = GetStack(inI);
+
 		intStack iStack = inI.intStack();
 		
 		if (iStack.size() > 0) {
 			int index = iStack.pop();
-			if (_stack.size() > 0) {
-				_stack.yankdup(index);
+			if (stack.size() > 0) {
+				stack.yankdup(index);
 			}
 			else {
 				iStack.push(index);
@@ -216,14 +241,14 @@ class YankDup extends StackInstruction {
 class Depth extends StackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	Depth(Stack inStack) {
-		super(inStack);
+	Depth(StackType inStackType) {
+		super(inStackType);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
-		intStack stack = inI.intStack();
-		stack.push(_stack.size());
+		intStack istack = inI.intStack();
+		istack.push(GetStack(inI).size());
 	}
 }
 
@@ -277,14 +302,14 @@ class ObjectConstant extends ObjectStackInstruction {
 	
 	Object _value;
 
-	public ObjectConstant(ObjectStack inStack, Object inValue) {
-		super(inStack);
+	public ObjectConstant(StackType inStackType, Object inValue) {
+		super(inStackType);
 		_value = inValue;
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
-		_stack.push(_value);
+		GetStack(inI).push(_value);
 	}
 }
 
@@ -1160,15 +1185,16 @@ class InputInN extends Instruction {
 class InputInAll extends ObjectStackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	InputInAll(ObjectStack inStack) {
-		super(inStack);
+	InputInAll(StackType inStackType) {
+		super(inStackType);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
+		ObjectStack stack = GetStack(inI);
 
-		if (_stack.size() > 0) {
-			for (int index = 0; index < _stack.size(); index++) {
+		if (stack.size() > 0) {
+			for (int index = 0; index < stack.size(); index++) {
 				inI.getInputPusher().pushInput(inI, index);
 			}
 		}
@@ -1178,15 +1204,16 @@ class InputInAll extends ObjectStackInstruction {
 class InputInRev extends ObjectStackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	InputInRev(ObjectStack inStack) {
-		super(inStack);
+	InputInRev(StackType inStackType) {
+		super(inStackType);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
+		ObjectStack stack = GetStack(inI);
 
-		if (_stack.size() > 0) {
-			for (int index = _stack.size() - 1; index >= 0; index--) {
+		if (stack.size() > 0) {
+			for (int index = stack.size() - 1; index >= 0; index--) {
 				inI.getInputPusher().pushInput(inI, index);
 			}
 		}
@@ -1196,21 +1223,23 @@ class InputInRev extends ObjectStackInstruction {
 class InputIndex extends ObjectStackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	InputIndex(ObjectStack inStack) {
-		super(inStack);
+	InputIndex(StackType inStackType) {
+		super(inStackType);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
+		ObjectStack stack = GetStack(inI);
+
 		intStack istack = inI.intStack();
 
-		if (istack.size() > 0 && _stack.size() > 0) {
+		if (istack.size() > 0 && stack.size() > 0) {
 			int index = istack.pop();
 
 			if (index < 0)
 				index = 0;
-			if (index >= _stack.size())
-				index = _stack.size() - 1;
+			if (index >= stack.size())
+				index = stack.size() - 1;
 
 			inI.getInputPusher().pushInput(inI, index);
 		}
@@ -1228,19 +1257,21 @@ class InputIndex extends ObjectStackInstruction {
 class CodeDoRange extends ObjectStackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	CodeDoRange(Interpreter inI) {
-		super(inI.codeStack());
+	CodeDoRange() {
+		super(StackType.CODE_STACK);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
+		ObjectStack stack = GetStack(inI);
+
 		intStack istack = inI.intStack();
 		ObjectStack estack = inI.execStack();
 
-		if (_stack.size() > 0 && istack.size() > 1) {
+		if (stack.size() > 0 && istack.size() > 1) {
 			int stop = istack.pop();
 			int start = istack.pop();
-			Object code = _stack.pop();
+			Object code = stack.pop();
 
 			if (start == stop) {
 				istack.push(start);
@@ -1270,18 +1301,20 @@ class CodeDoRange extends ObjectStackInstruction {
 class CodeDoTimes extends ObjectStackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	CodeDoTimes(Interpreter inI) {
-		super(inI.codeStack());
+	CodeDoTimes() {
+		super(StackType.CODE_STACK);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
+		ObjectStack stack = GetStack(inI);
+
 		intStack istack = inI.intStack();
 		ObjectStack estack = inI.execStack();
 
-		if (_stack.size() > 0 && istack.size() > 0) {
+		if (stack.size() > 0 && istack.size() > 0) {
 			if (istack.top() > 0) {
-				Object bodyObj = _stack.pop();
+				Object bodyObj = stack.pop();
 
 				if (bodyObj instanceof Program) {
 					// insert integer.pop in front of program
@@ -1318,19 +1351,21 @@ class CodeDoTimes extends ObjectStackInstruction {
 class CodeDoCount extends ObjectStackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	CodeDoCount(Interpreter inI) {
-		super(inI.codeStack());
+	CodeDoCount() {
+		super(StackType.CODE_STACK);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
+		ObjectStack stack = GetStack(inI);
+
 		intStack istack = inI.intStack();
 		ObjectStack estack = inI.execStack();
 
-		if (_stack.size() > 0 && istack.size() > 0) {
+		if (stack.size() > 0 && istack.size() > 0) {
 			if (istack.top() > 0) {
 				int stop = istack.pop() - 1;
-				Object bodyObj = _stack.pop();
+				Object bodyObj = stack.pop();
 
 				try {
 					Program doRangeMacroProgram = new Program();
@@ -1405,19 +1440,21 @@ class CodeFromFloat extends Instruction {
 class ExecDoRange extends ObjectStackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	ExecDoRange(Interpreter inI) {
-		super(inI.execStack());
+	ExecDoRange() {
+		super(StackType.EXEC_STACK);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
+		ObjectStack stack = GetStack(inI);
+
 		intStack istack = inI.intStack();
 		ObjectStack estack = inI.execStack();
 
-		if (_stack.size() > 0 && istack.size() > 1) {
+		if (stack.size() > 0 && istack.size() > 1) {
 			int stop = istack.pop();
 			int start = istack.pop();
-			Object code = _stack.pop();
+			Object code = stack.pop();
 
 			if (start == stop) {
 				istack.push(start);
@@ -1448,18 +1485,20 @@ class ExecDoRange extends ObjectStackInstruction {
 class ExecDoTimes extends ObjectStackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	ExecDoTimes(Interpreter inI) {
-		super(inI.execStack());
+	ExecDoTimes() {
+		super(StackType.EXEC_STACK);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
+		ObjectStack stack = GetStack(inI);
+
 		intStack istack = inI.intStack();
 		ObjectStack estack = inI.execStack();
 
-		if (_stack.size() > 0 && istack.size() > 0) {
+		if (stack.size() > 0 && istack.size() > 0) {
 			if (istack.top() > 0) {
-				Object bodyObj = _stack.pop();
+				Object bodyObj = stack.pop();
 
 				if (bodyObj instanceof Program) {
 					// insert integer.pop in front of program
@@ -1495,19 +1534,21 @@ class ExecDoTimes extends ObjectStackInstruction {
 class ExecDoCount extends ObjectStackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	ExecDoCount(Interpreter inI) {
-		super(inI.execStack());
+	ExecDoCount() {
+		super(StackType.EXEC_STACK);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
+		ObjectStack stack = GetStack(inI);
+
 		intStack istack = inI.intStack();
 		ObjectStack estack = inI.execStack();
 
-		if (_stack.size() > 0 && istack.size() > 0) {
+		if (stack.size() > 0 && istack.size() > 0) {
 			if (istack.top() > 0) {
 				int stop = istack.pop() - 1;
-				Object bodyObj = _stack.pop();
+				Object bodyObj = stack.pop();
 
 				try {
 					Program doRangeMacroProgram = new Program();
@@ -1530,16 +1571,18 @@ class ExecDoCount extends ObjectStackInstruction {
 class ExecK extends ObjectStackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	ExecK(ObjectStack inStack) {
-		super(inStack);
+	ExecK(StackType inStackType) {
+		super(inStackType);
 	}
 	
 	@Override
 	public void Execute(Interpreter inI) {
+		ObjectStack stack = GetStack(inI);
+
 		// Removes the second item on the stack
-		if(_stack.size() > 1){
-			_stack.swap();
-			_stack.popdiscard();
+		if(stack.size() > 1){
+			stack.swap();
+			stack.popdiscard();
 		}
 	}
 }
@@ -1549,18 +1592,20 @@ class ExecS extends ObjectStackInstruction {
 	
 	int _maxPointsInProgram;
 	
-	ExecS(ObjectStack inStack, int inMaxPointsInProgram) {
-		super(inStack);
+	ExecS(StackType inStackType, int inMaxPointsInProgram) {
+		super(inStackType);
 		_maxPointsInProgram = inMaxPointsInProgram;
 	}
 	
 	@Override
 	public void Execute(Interpreter inI) {
+		ObjectStack stack = GetStack(inI);
+
 		// Removes the second item on the stack
-		if(_stack.size() > 2){
-			Object a = _stack.pop();
-			Object b = _stack.pop();
-			Object c = _stack.pop();
+		if(stack.size() > 2){
+			Object a = stack.pop();
+			Object b = stack.pop();
+			Object c = stack.pop();
 			Program listBC = new Program();
 
 			listBC.push(b);
@@ -1569,15 +1614,15 @@ class ExecS extends ObjectStackInstruction {
 			if(listBC.programsize() > _maxPointsInProgram){
 				// If the new list is too large, turn into a noop by re-pushing
 				// the popped instructions
-				_stack.push(c);
-				_stack.push(b);
-				_stack.push(a);
+				stack.push(c);
+				stack.push(b);
+				stack.push(a);
 			}
 			else {
 				// If not too big, continue as planned
-				_stack.push(listBC);
-				_stack.push(c);
-				_stack.push(a);
+				stack.push(listBC);
+				stack.push(c);
+				stack.push(a);
 			}
 		}
 	}
@@ -1586,22 +1631,24 @@ class ExecS extends ObjectStackInstruction {
 class ExecY extends ObjectStackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	ExecY(ObjectStack inStack) {
-		super(inStack);
+	ExecY(StackType inStackType) {
+		super(inStackType);
 	}
 	
 	@Override
 	public void Execute(Interpreter inI) {
+		ObjectStack stack = GetStack(inI);
+
 		// Removes the second item on the stack
-		if(_stack.size() > 0){
-			Object a = _stack.pop();
+		if(stack.size() > 0){
+			Object a = stack.pop();
 			Program listExecYA = new Program();
 
 			listExecYA.push("exec.y");
 			listExecYA.push(a);
 			
-			_stack.push(listExecYA);
-			_stack.push(a);
+			stack.push(listExecYA);
+			stack.push(a);
 		}
 	}
 }
@@ -1620,13 +1667,15 @@ class RandomPushCode extends ObjectStackInstruction {
 	
 	MersenneTwisterFast _RNG;
 	
-	RandomPushCode(ObjectStack inStack, MersenneTwisterFast _RNG) {
-		super(inStack);
+	RandomPushCode(StackType inStackType, MersenneTwisterFast _RNG) {
+		super(inStackType);
 		this._RNG = _RNG;
 	}
 	
 	@Override
 	public void Execute(Interpreter inI) {
+		ObjectStack stack = GetStack(inI);
+
 		int randCodeMaxPoints = 0;
 		
 		if (inI.intStack().size() > 0) {
@@ -1642,7 +1691,7 @@ class RandomPushCode extends ObjectStackInstruction {
 			}
 			Program p = inI.RandomCode(randomCodeSize);
 
-			_stack.push(p);
+			stack.push(p);
 		}
 	}
 }
@@ -1651,19 +1700,21 @@ class RandomPushCode extends ObjectStackInstruction {
 class ObjectEquals extends ObjectStackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	ObjectEquals(ObjectStack inStack) {
-		super(inStack);
+	ObjectEquals(StackType inStackType) {
+		super(inStackType);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
+		ObjectStack stack = GetStack(inI);
+
 		booleanStack bstack = inI.boolStack();
 
-		if (_stack.size() > 1) {
-			Object o1 = _stack.pop();
-			Object o2 = _stack.pop();
+		if (stack.size() > 1) {
+			Object o1 = stack.pop();
+			Object o2 = stack.pop();
 
-			bstack.push(o1.equals(o2));
+			bstack.push(ObjectStack.atomEquals(o1, o2));
 		}
 	}
 }
@@ -1671,20 +1722,22 @@ class ObjectEquals extends ObjectStackInstruction {
 class If extends ObjectStackInstruction {
 	private static final long serialVersionUID = 1L;
 	
-	If(ObjectStack inStack) {
-		super(inStack);
+	If(StackType inStackType) {
+		super(inStackType);
 	}
 
 	@Override
 	public void Execute(Interpreter inI) {
+		ObjectStack stack = GetStack(inI);
+
 		booleanStack bstack = inI.boolStack();
 		ObjectStack estack = inI.execStack();
 
-		if (_stack.size() > 1 && bstack.size() > 0) {
+		if (stack.size() > 1 && bstack.size() > 0) {
 			boolean istrue = bstack.pop();
 
-			Object iftrue = _stack.pop();
-			Object iffalse = _stack.pop();
+			Object iftrue = stack.pop();
+			Object iffalse = stack.pop();
 
 			if (istrue)
 				estack.push(iftrue);
@@ -26,9 +26,8 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 
 import org.ecj.psh.PshDefaults;
 
@@ -64,6 +63,9 @@ public class Interpreter implements Prototype {
 
 	public static final String P_GENERATEFLAT = "generate-flat";
 
+	public static final String P_PROFILE = "profile";
+	public static final String P_PROFILESAMPLEINTERVAL = "profile-sample-interval";
+
 	public enum StackType {
 		INT_STACK, FLOAT_STACK, BOOL_STACK, CODE_STACK, NAME_STACK, EXEC_STACK, INPUT_STACK
 	}
@@ -73,10 +75,6 @@ public class Interpreter implements Prototype {
 
 	protected HashMap<String, Instruction> _instructions = new HashMap<String, Instruction>();
 
-	// References to stack instructions. This is needed in order to update stack references
-	// in these instructions
-	protected Map<StackType, List<Instruction>> _stackInstructions = new HashMap<StackType, List<Instruction>>();
-	
 	// All generators
 	protected HashMap<String, AtomGenerator> _generators = new HashMap<String, AtomGenerator>();
 	protected ArrayList<AtomGenerator> _randomGenerators = new ArrayList<AtomGenerator>();
@@ -91,6 +89,15 @@ public class Interpreter implements Prototype {
 
 	protected ObjectStack _inputStack = new ObjectStack();
 
+	// Exec stack of Execute(Bytecode): positions of points in the code
+	protected int _flatExecStack[] = new int[64];
+	protected int _flatExecSize;
+
+	// Names of the instructions added from outside with AddInstruction. We
+	// don't know which stacks they use, so they are never run on the flat
+	// exec stack.
+	protected HashSet<String> _addedInstructions = new HashSet<String>();
+
 	// This arraylist will hold all custom stacks that can be created by the
 	// problem classes
 	protected ArrayList<Stack> _customStacks = new ArrayList<Stack>();
@@ -98,16 +105,24 @@ public class Interpreter implements Prototype {
 	/*
 	 * Since the _inputStack will not change after initialization, it will not
 	 * need a frame stack.
+	 * 
+	 * The stacks of popped frames are kept and reused by the next pushed frame,
+	 * so frames don't allocate once the deepest frame has been reached.
+	 * _frameDepth is the number of frames in use.
 	 */
-	protected ObjectStack _intFrameStack = new ObjectStack();
-	protected ObjectStack _floatFrameStack = new ObjectStack();
-	protected ObjectStack _boolFrameStack = new ObjectStack();
-	protected ObjectStack _codeFrameStack = new ObjectStack();
-	protected ObjectStack _nameFrameStack = new ObjectStack();
+	protected ArrayList<intStack> _intFrameStack = new ArrayList<intStack>();
+	protected ArrayList<floatStack> _floatFrameStack = new ArrayList<floatStack>();
+	protected ArrayList<booleanStack> _boolFrameStack = new ArrayList<booleanStack>();
+	protected ArrayList<ObjectStack> _codeFrameStack = new ArrayList<ObjectStack>();
+	protected ArrayList<ObjectStack> _nameFrameStack = new ArrayList<ObjectStack>();
+	protected int _frameDepth;
 
 	protected int _totalStepsTaken;
 	protected long _evaluationExecutions = 0;
 
+	// Execution profile, null unless profiling is enabled
+	protected Profile _profile;
+
 	protected int _maxRandomCodeSize;
 	protected int _executionLimit;
 	protected int _maxPointsInProgram;
@@ -190,6 +205,13 @@ public class Interpreter implements Prototype {
 		_generateFlatPrograms = state.parameters.getBoolean(
 				base.push(P_GENERATEFLAT), def.push(P_GENERATEFLAT), false);
 
+		// should we profile the executed instructions, timing every n-th one
+		if (state.parameters.getBoolean(base.push(P_PROFILE),
+				def.push(P_PROFILE), false))
+			_profile = new Profile(state.parameters.getIntWithDefault(
+					base.push(P_PROFILESAMPLEINTERVAL),
+					def.push(P_PROFILESAMPLEINTERVAL), 64));
+
 		File instructionListFile = state.parameters.getFile(
 				base.push(P_INSTRUCTIONLIST), def.push(P_INSTRUCTIONLIST));
 		StringBuilder sb = new StringBuilder();
@@ -291,41 +313,38 @@ public class Interpreter implements Prototype {
 		DefineInstruction("code.fromfloat", new CodeFromFloat());
 		DefineInstruction("code.noop", new ExecNoop());
 
-		DefineInstruction("exec.k", AddStackInstruction(new ExecK(_execStack), StackType.EXEC_STACK));
-		DefineInstruction("exec.s", AddStackInstruction(new ExecS(_execStack,
-				getMaxPointsInProgram()), StackType.EXEC_STACK));
-		DefineInstruction("exec.y", AddStackInstruction(new ExecY(_execStack),StackType.EXEC_STACK));
+		DefineInstruction("exec.k", new ExecK(StackType.EXEC_STACK));
+		DefineInstruction("exec.s", new ExecS(StackType.EXEC_STACK, getMaxPointsInProgram()));
+		DefineInstruction("exec.y", new ExecY(StackType.EXEC_STACK));
 		DefineInstruction("exec.noop", new ExecNoop());
 
-		DefineInstruction("exec.do*times", AddStackInstruction(new ExecDoTimes(this), StackType.EXEC_STACK));
-		DefineInstruction("code.do*times", AddStackInstruction(new CodeDoTimes(this), StackType.CODE_STACK));
-		DefineInstruction("exec.do*count", AddStackInstruction(new ExecDoCount(this), StackType.EXEC_STACK));
-		DefineInstruction("code.do*count", AddStackInstruction(new CodeDoCount(this), StackType.CODE_STACK));
-		DefineInstruction("exec.do*range", AddStackInstruction(new ExecDoRange(this), StackType.EXEC_STACK));
-		DefineInstruction("code.do*range", AddStackInstruction(new CodeDoRange(this), StackType.CODE_STACK));
-		DefineInstruction("code.=", AddStackInstruction(new ObjectEquals(_codeStack), StackType.CODE_STACK));
-		DefineInstruction("exec.=", AddStackInstruction(new ObjectEquals(_execStack), StackType.EXEC_STACK));
-		DefineInstruction("code.if", AddStackInstruction(new If(_codeStack), StackType.CODE_STACK));
-		DefineInstruction("exec.if", AddStackInstruction(new If(_execStack), StackType.EXEC_STACK));
-		DefineInstruction("code.rand",
-				AddStackInstruction(new RandomPushCode(_codeStack, this._RNG), StackType.CODE_STACK));
-		DefineInstruction("exec.rand",
-				AddStackInstruction(new RandomPushCode(_execStack, this._RNG), StackType.EXEC_STACK));
+		DefineInstruction("exec.do*times", new ExecDoTimes());
+		DefineInstruction("code.do*times", new CodeDoTimes());
+		DefineInstruction("exec.do*count", new ExecDoCount());
+		DefineInstruction("code.do*count", new CodeDoCount());
+		DefineInstruction("exec.do*range", new ExecDoRange());
+		DefineInstruction("code.do*range", new CodeDoRange());
+		DefineInstruction("code.=", new ObjectEquals(StackType.CODE_STACK));
+		DefineInstruction("exec.=", new ObjectEquals(StackType.EXEC_STACK));
+		DefineInstruction("code.if", new If(StackType.CODE_STACK));
+		DefineInstruction("exec.if", new If(StackType.EXEC_STACK));
+		DefineInstruction("code.rand", new RandomPushCode(StackType.CODE_STACK, this._RNG));
+		DefineInstruction("exec.rand", new RandomPushCode(StackType.EXEC_STACK, this._RNG));
 
 		DefineInstruction("true", new BooleanConstant(true));
 		DefineInstruction("false", new BooleanConstant(false));
 
-		DefineInstruction("input.index", AddStackInstruction(new InputIndex(_inputStack), StackType.INPUT_STACK));
-		DefineInstruction("input.inall", AddStackInstruction(new InputInAll(_inputStack), StackType.INPUT_STACK));
-		DefineInstruction("input.inallrev", AddStackInstruction(new InputInRev(_inputStack), StackType.INPUT_STACK));
-		DefineInstruction("input.stackdepth", AddStackInstruction(new Depth(_inputStack), StackType.INPUT_STACK));
+		DefineInstruction("input.index", new InputIndex(StackType.INPUT_STACK));
+		DefineInstruction("input.inall", new InputInAll(StackType.INPUT_STACK));
+		DefineInstruction("input.inallrev", new InputInRev(StackType.INPUT_STACK));
+		DefineInstruction("input.stackdepth", new Depth(StackType.INPUT_STACK));
 
-		DefineStackInstructions("integer", _intStack, StackType.INT_STACK);
-		DefineStackInstructions("float", _floatStack, StackType.FLOAT_STACK);
-		DefineStackInstructions("boolean", _boolStack, StackType.BOOL_STACK);
-		DefineStackInstructions("name", _nameStack, StackType.NAME_STACK);
-		DefineStackInstructions("code", _codeStack, StackType.CODE_STACK);
-		DefineStackInstructions("exec", _execStack, StackType.EXEC_STACK);
+		DefineStackInstructions("integer", StackType.INT_STACK);
+		DefineStackInstructions("float", StackType.FLOAT_STACK);
+		DefineStackInstructions("boolean", StackType.BOOL_STACK);
+		DefineStackInstructions("name", StackType.NAME_STACK);
+		DefineStackInstructions("code", StackType.CODE_STACK);
+		DefineStackInstructions("exec", StackType.EXEC_STACK);
 
 		DefineInstruction("frame.push", new PushFrame());
 		DefineInstruction("frame.pop", new PopFrame());
@@ -446,78 +465,36 @@ public class Interpreter implements Prototype {
 
 	public void AddInstruction(String inName, Instruction inInstruction) {
 		InstructionAtomGenerator iag = new InstructionAtomGenerator(inName);
+		BindInstruction(inName, inInstruction);
 		_instructions.put(inName, inInstruction);
+		_addedInstructions.add(inName);
 		_generators.put(inName, iag);
 		_randomGenerators.add(iag);
 	}
 
-	protected Instruction AddStackInstruction(Instruction instr, StackType stackType) {
-		if (! _stackInstructions.containsKey(stackType)) {
-			_stackInstructions.put(stackType, new ArrayList<Instruction>());
-		}
-		_stackInstructions.get(stackType).add(instr);
-		return instr;
-	}
-	
 	protected void DefineInstruction(String inName, Instruction inInstruction) {
+		BindInstruction(inName, inInstruction);
 		_instructions.put(inName, inInstruction);
 		_generators.put(inName, new InstructionAtomGenerator(inName));
 	}
 
-	protected void DefineStackInstructions(String inTypeName, Stack inStack, StackType stackType) {
-		DefineInstruction(inTypeName + ".pop", AddStackInstruction(new Pop(inStack), stackType));
-		DefineInstruction(inTypeName + ".swap", AddStackInstruction(new Swap(inStack), stackType));
-		DefineInstruction(inTypeName + ".rot", AddStackInstruction(new Rot(inStack), stackType));
-		DefineInstruction(inTypeName + ".flush", AddStackInstruction(new Flush(inStack), stackType));
-		DefineInstruction(inTypeName + ".dup", AddStackInstruction(new Dup(inStack), stackType));
-		DefineInstruction(inTypeName + ".stackdepth", AddStackInstruction(new Depth(inStack), stackType));
-		DefineInstruction(inTypeName + ".shove", AddStackInstruction(new Shove(inStack), stackType));
-		DefineInstruction(inTypeName + ".yank", AddStackInstruction(new Yank(inStack), stackType));
-		DefineInstruction(inTypeName + ".yankdup", AddStackInstruction(new YankDup(inStack), stackType));
-	}
-
-	protected void UpdateStackInstructions(StackType stackType) {
-		Stack stack = null;
-		switch (stackType) {
-		case INT_STACK:		stack = intStack();	break;
-		case FLOAT_STACK:	stack = floatStack(); break;
-		case BOOL_STACK:	stack = boolStack(); break;
-		case CODE_STACK:	stack = codeStack(); break;
-		case NAME_STACK:	stack = nameStack(); break;
-		case EXEC_STACK:	stack = execStack(); break;
-		case INPUT_STACK:	stack = inputStack();
-		}
-		for (Instruction instr : _stackInstructions.get(stackType)) {
-			if (instr instanceof StackInstruction) {
-				((StackInstruction) instr).setStack(stack);
-			} else if (instr instanceof ObjectStackInstruction) {
-				((ObjectStackInstruction) instr)
-						.setStack((ObjectStack) stack);
-			}
-		}
-	}
-	
-	protected void UpdateStackInstructions() {
-		for (StackType stackType :_stackInstructions.keySet()) {
-			UpdateStackInstructions(stackType);
-		}
+	protected void BindInstruction(String inName, Instruction inInstruction) {
+		inInstruction._name = inName;
+		inInstruction._interpreter = this;
 	}
-	
-	protected void printStackInstructions() {
-		for (Entry<StackType, List<Instruction>> entry : _stackInstructions
-				.entrySet()) {
-			System.out.println("=========== "+entry.getKey());
-			for (Instruction instr : entry.getValue()) {
-				for (Entry<String, Instruction> instrEntry : _instructions.entrySet()) {
-					if (instr.equals(instrEntry.getValue())) {
-						System.out.println(instrEntry.getKey());
-					}
-				}
-			}
-		}
+
+	protected void DefineStackInstructions(String inTypeName, StackType inStackType) {
+		DefineInstruction(inTypeName + ".pop", new Pop(inStackType));
+		DefineInstruction(inTypeName + ".swap", new Swap(inStackType));
+		DefineInstruction(inTypeName + ".rot", new Rot(inStackType));
+		DefineInstruction(inTypeName + ".flush", new Flush(inStackType));
+		DefineInstruction(inTypeName + ".dup", new Dup(inStackType));
+		DefineInstruction(inTypeName + ".stackdepth", new Depth(inStackType));
+		DefineInstruction(inTypeName + ".shove", new Shove(inStackType));
+		DefineInstruction(inTypeName + ".yank", new Yank(inStackType));
+		DefineInstruction(inTypeName + ".yankdup", new YankDup(inStackType));
 	}
-	
-	
+
 	/**
 	 * Sets the parameters for the ERCs.
 	 * 
@@ -580,9 +557,143 @@ public class Interpreter implements Prototype {
 		if (countSteps)
 			_evaluationExecutions++;
 		LoadProgram(inProgram); // Initializes program
-		return Step(inMaxSteps, countSteps);
+		int executed = Step(inMaxSteps, countSteps);
+
+		if (_profile != null && countSteps)
+			_profile.Finish(_execStack.size() > 0);
+
+		return executed;
 	}	
 
+	/**
+	 * Executes an encoded Push program with a given instruction limit.
+	 * 
+	 * @param inMaxSteps
+	 *            The maximum number of instructions allowed to be executed.
+	 * @return The number of instructions executed.
+	 */
+
+	public int Execute(Bytecode inCode, int inMaxSteps) {
+		return Execute(inCode, inMaxSteps, true);
+	}
+
+	/**
+	 * Executes an encoded Push program with a given instruction limit.
+	 * 
+	 * Programs which use only instructions of the data stacks are executed
+	 * directly from the code with no objects created, unless the step limit
+	 * is hit and the remaining points are moved to the exec stack. Such
+	 * programs are not loaded onto the code stack since none of their
+	 * instructions can read it. Other programs, or any program in frame mode,
+	 * are executed as compiled Programs.
+	 * 
+	 * @param inMaxSteps
+	 *            The maximum number of instructions allowed to be executed.
+	 * @param countSteps
+	 *            should steps be counted
+	 * @return The number of instructions executed.
+	 */
+
+	public int Execute(Bytecode inCode, int inMaxSteps, boolean countSteps) {
+		Instruction resolved[] = inCode.Resolve(this);
+
+		if (resolved == null || _useFrames || _execStack.size() > 0)
+			return Execute(inCode.Compiled(), inMaxSteps, countSteps);
+
+		if (countSteps)
+			_evaluationExecutions++;
+
+		int code[] = inCode._code;
+		String atoms[] = inCode._atoms;
+
+		// every point is pushed at most once, so the stack can't outgrow
+		// the program
+		if (_flatExecStack.length <= inCode._points)
+			_flatExecStack = new int[inCode._points + 1];
+
+		_flatExecStack[0] = 0;
+		_flatExecSize = 1;
+
+		int executed = 0;
+		while (inMaxSteps != 0 && _flatExecSize > 0) {
+			if (_profile != null)
+				_profile.Step(_flatExecSize);
+
+			int position = _flatExecStack[--_flatExecSize];
+			int op = code[position];
+
+			if (op >= Bytecode.OP_ATOM) {
+				Instruction i = resolved[op - Bytecode.OP_ATOM];
+
+				if (i == null)
+					_nameStack.push(atoms[op - Bytecode.OP_ATOM]);
+				else if (_profile != null)
+					_profile.Execute(this, i);
+				else
+					i.Execute(this);
+			} else if (op == Bytecode.OP_INT) {
+				_intStack.push(code[position + 1]);
+			} else if (op == Bytecode.OP_FLOAT) {
+				_floatStack.push(Float.intBitsToFloat(code[position + 1]));
+			} else {
+				// push the sub-program points in reverse order
+				int first = _flatExecSize;
+
+				for (int p = position + 2; code[p] != Bytecode.OP_CLOSE; p = inCode
+						.Next(p))
+					_flatExecStack[_flatExecSize++] = p;
+
+				for (int l = first, r = _flatExecSize - 1; l < r; l++, r--) {
+					int tmp = _flatExecStack[l];
+					_flatExecStack[l] = _flatExecStack[r];
+					_flatExecStack[r] = tmp;
+				}
+			}
+			inMaxSteps--;
+			executed++;
+		}
+
+		if (_profile != null && countSteps)
+			_profile.Finish(_flatExecSize > 0);
+
+		for (int n = 0; n < _flatExecSize; n++)
+			_execStack.push(inCode.Point(_flatExecStack[n]));
+		_flatExecSize = 0;
+
+		if (countSteps)
+			_totalStepsTaken += executed;
+
+		return executed;
+	}
+
+	/**
+	 * Tells whether an instruction can be executed on the flat exec stack of
+	 * Execute(Bytecode). Instructions of the code and exec stacks, frame
+	 * instructions, instructions of other interpreters and instructions added
+	 * with AddInstruction need the Program path.
+	 */
+
+	protected boolean IsFlatInstruction(String inName, Instruction inInstruction) {
+		return inInstruction._interpreter == this
+				&& !_addedInstructions.contains(inName)
+				&& !inName.startsWith("code.") && !inName.startsWith("exec.")
+				&& !inName.startsWith("frame.");
+	}
+
+	/**
+	 * Tells whether executing the code may draw numbers from the random number
+	 * generator of the interpreter. Instructions added with AddInstruction are
+	 * assumed to do so.
+	 */
+
+	public boolean UsesRNG(Bytecode inCode) {
+		for (String atom : inCode._atoms) {
+			if (atom.endsWith(".rand") || _addedInstructions.contains(atom))
+				return true;
+		}
+		return false;
+	}
+
 	/**
 	 * Loads a Push program into the interpreter's exec and code stacks.
 	 * 
@@ -595,6 +706,40 @@ public class Interpreter implements Prototype {
 		_execStack.push(inProgram);
 	}
 
+	/**
+	 * Compiles a Push program for this interpreter. The result is a copy of
+	 * the program in which every instruction name is resolved to the
+	 * Instruction defined in this interpreter, so executing it needs no
+	 * instruction lookups. Compiled programs may be executed by this
+	 * interpreter only; other interpreters dispatch their instructions by
+	 * name.
+	 * 
+	 * @param inProgram
+	 *            The program to compile.
+	 * @return The compiled copy of the program.
+	 */
+
+	public Program Compile(Program inProgram) {
+		Program compiled = new Program(inProgram);
+		Resolve(compiled);
+		return compiled;
+	}
+
+	private void Resolve(Program ioProgram) {
+		for (int n = 0; n < ioProgram._size; n++) {
+			Object o = ioProgram._stack[n];
+
+			if (o instanceof Program) {
+				Resolve(ioProgram.Owned(n));
+			} else if (o instanceof String) {
+				Instruction i = _instructions.get(o);
+
+				if (i != null)
+					ioProgram._stack[n] = i;
+			}
+		}
+	}
+
 	/**
 	 * Steps a Push interpreter forward with a given instruction limit.
 	 * 
@@ -626,6 +771,8 @@ public class Interpreter implements Prototype {
 	public int Step(int inMaxSteps, boolean countSteps) {
 		int executed = 0;
 		while (inMaxSteps != 0 && _execStack.size() > 0) {
+			if (_profile != null)
+				_profile.Step(_execStack.size());
 			if (ExecuteInstruction(_execStack.pop()) == -1)
 				throw new InternalError("Can't execute instruction");
 			inMaxSteps--;
@@ -665,23 +812,32 @@ public class Interpreter implements Prototype {
 			_floatStack.push(((Number) inObject).floatValue());
 			return 0;
 		}
-		// We assume that Instruction objects can belong to different
-		// Interpreter instances, so they cannot be executed by other Interpreters.
-		// Moreover, random code generators don't produce such references, so we can 
-		// throw away the following piece of code safely.
-		/*
+		// Instruction objects can belong to different Interpreter instances, so
+		// they are executed directly only by the Interpreter which defined them
+		// (see Compile). Others are dispatched by name.
 		if (inObject instanceof Instruction) {
-			((Instruction) inObject).Execute(this);
-			return 0;
+			Instruction i = (Instruction) inObject;
+
+			if (i._interpreter == this) {
+				if (_profile != null)
+					_profile.Execute(this, i);
+				else
+					i.Execute(this);
+				return 0;
+			}
+
+			inObject = i.atom();
 		}
-		 */
+
 		if (inObject instanceof String) {
 			Instruction i = _instructions.get(inObject);
 
-			if (i != null) {
-				i.Execute(this);
-			} else {
+			if (i == null) {
 				_nameStack.push(inObject);
+			} else if (_profile != null) {
+				_profile.Execute(this, i);
+			} else {
+				i.Execute(this);
 			}
 
 			return 0;
@@ -762,33 +918,55 @@ public class Interpreter implements Prototype {
 	}
 
 	protected void AssignStacksFromFrame() {
-		_floatStack = (floatStack) _floatFrameStack.top();
-		_intStack = (intStack) _intFrameStack.top();
-		_boolStack = (booleanStack) _boolFrameStack.top();
-		_codeStack = (ObjectStack) _codeFrameStack.top();
-		_nameStack = (ObjectStack) _nameFrameStack.top();
-		
-		UpdateStackInstructions();
+		_floatStack = _floatFrameStack.get(_frameDepth - 1);
+		_intStack = _intFrameStack.get(_frameDepth - 1);
+		_boolStack = _boolFrameStack.get(_frameDepth - 1);
+		_codeStack = _codeFrameStack.get(_frameDepth - 1);
+		_nameStack = _nameFrameStack.get(_frameDepth - 1);
 	}
 
 	public void PushStacks() {
-		_floatFrameStack.push(new floatStack());
-		_intFrameStack.push(new intStack());
-		_boolFrameStack.push(new booleanStack());
-		_codeFrameStack.push(new ObjectStack());
-		_nameFrameStack.push(new ObjectStack());
+		if (_frameDepth == _intFrameStack.size()) {
+			_floatFrameStack.add(new floatStack());
+			_intFrameStack.add(new intStack());
+			_boolFrameStack.add(new booleanStack());
+			_codeFrameStack.add(new ObjectStack());
+			_nameFrameStack.add(new ObjectStack());
+		} else {
+			// reuse the stacks of a popped frame
+			_floatFrameStack.get(_frameDepth).clear();
+			_intFrameStack.get(_frameDepth).clear();
+			_boolFrameStack.get(_frameDepth).clear();
+			_codeFrameStack.get(_frameDepth).clear();
+			_nameFrameStack.get(_frameDepth).clear();
+		}
+		_frameDepth++;
 
 		AssignStacksFromFrame();
 	}
 
 	public void PopStacks() {
-		_floatFrameStack.pop();
-		_intFrameStack.pop();
-		_boolFrameStack.pop();
-		_codeFrameStack.pop();
-		_nameFrameStack.pop();
+		// the bottom frame is never popped
+		if (_frameDepth > 1) {
+			_frameDepth--;
 
-		AssignStacksFromFrame();
+			AssignStacksFromFrame();
+		}
+	}
+
+	/**
+	 * Returns the current stack of the given type.
+	 */
+	public Stack GetStack(StackType inStackType) {
+		switch (inStackType) {
+		case INT_STACK:		return _intStack;
+		case FLOAT_STACK:	return _floatStack;
+		case BOOL_STACK:	return _boolStack;
+		case CODE_STACK:	return _codeStack;
+		case NAME_STACK:	return _nameStack;
+		case EXEC_STACK:	return _execStack;
+		default:			return _inputStack;
+		}
 	}
 
 	public void PushFrame() {
@@ -863,6 +1041,12 @@ public class Interpreter implements Prototype {
 	 */
 
 	public void ClearStacks() {
+		// drop the frames left by a program stopped at the execution limit
+		if (_frameDepth > 1) {
+			_frameDepth = 1;
+			AssignStacksFromFrame();
+		}
+
 		_intStack.clear();
 		_floatStack.clear();
 		_execStack.clear();
@@ -872,8 +1056,8 @@ public class Interpreter implements Prototype {
 		_inputStack.clear();
 
 		// Clear all custom stacks
-		for (Stack s : _customStacks) {
-			s.clear();
+		for (int n = 0; n < _customStacks.size(); n++) {
+			_customStacks.get(n).clear();
 		}
 	}
 
@@ -1092,6 +1276,18 @@ public class Interpreter implements Prototype {
 		return _evaluationExecutions;
 	}
 
+	/**
+	 * Returns the execution profile of the interpreter, or null if profiling
+	 * is disabled.
+	 */
+	public Profile getProfile() {
+		return _profile;
+	}
+
+	public void setProfile(Profile _profile) {
+		this._profile = _profile;
+	}
+
 	public abstract class AtomGenerator implements Serializable {
 		private static final long serialVersionUID = 1L;
 
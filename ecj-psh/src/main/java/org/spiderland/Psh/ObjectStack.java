@@ -40,6 +40,22 @@ public class ObjectStack extends Stack {
 
 		return ((ObjectStack) inOther).comparestack(_stack, _size);
 	}
+
+	/**
+	 * Structural hash of the stack items, consistent with equals (an
+	 * Instruction hashes like its name).
+	 */
+	@Override
+	public int hashCode() {
+		int hash = 7;
+		for (int n = 0; n < _size; n++) {
+			Object o = _stack[n];
+			if (o instanceof Instruction)
+				o = ((Instruction) o).atom();
+			hash = 41 * hash + o.hashCode();
+		}
+		return hash;
+	}
 	
 	@Override
 	public ObjectStack clone() {
@@ -57,13 +73,27 @@ public class ObjectStack extends Stack {
 			return false;
 
 		for (int n = 0; n < _size; n++) {
-			if (!_stack[n].equals(inOther[n]))
+			if (!atomEquals(_stack[n], inOther[n]))
 				return false;
 		}
 
 		return true;
 	}
 
+	/**
+	 * Compares two stack items. Instructions resolved by
+	 * Interpreter.Compile compare equal to their names, so compiled and
+	 * uncompiled code can be mixed on the stacks.
+	 */
+	static boolean atomEquals(Object inA, Object inB) {
+		if (inA instanceof Instruction)
+			inA = ((Instruction) inA).atom();
+		if (inB instanceof Instruction)
+			inB = ((Instruction) inB).atom();
+
+		return inA.equals(inB);
+	}
+
 	void resize(int inSize) {
 		Object newstack[] = new Object[inSize];
 
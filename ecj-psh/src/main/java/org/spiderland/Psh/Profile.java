@@ -0,0 +1,229 @@
+/*
+* Copyright 2012 Tomasz Kamiński
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+package org.spiderland.Psh;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Execution profile of an interpreter. Every executed instruction is counted
+ * and every n-th one is timed; the profile also records the depth of the exec
+ * stack at every step and how many executions ran into the step limit.
+ * 
+ * An interpreter without a profile (the default) does no profiling work at
+ * all. Profiles aren't synchronized; each interpreter has its own one and
+ * the profiles are merged with Add.
+ */
+
+public class Profile implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	// Every _sampleInterval-th executed instruction is timed
+	protected int _sampleInterval;
+	protected int _untilSample;
+
+	// Per instruction counters, indexed through _indexOf
+	protected HashMap<String, Integer> _indexOf = new HashMap<String, Integer>();
+	protected String _names[] = new String[16];
+	protected long _counts[] = new long[16];
+	protected long _samples[] = new long[16];
+	protected long _nanos[] = new long[16];
+	protected int _size;
+
+	protected long _executions;
+	protected long _limitHits;
+	protected long _steps;
+	protected long _depthSum;
+	protected int _maxDepth;
+
+	/**
+	 * Creates an empty profile.
+	 * 
+	 * @param inSampleInterval
+	 *            Every how many executed instructions one is timed.
+	 */
+
+	public Profile(int inSampleInterval) {
+		_sampleInterval = Math.max(1, inSampleInterval);
+		_untilSample = _sampleInterval;
+	}
+
+	/**
+	 * Executes and counts an instruction, timing it if it's sampled.
+	 */
+
+	void Execute(Interpreter inI, Instruction inInstruction) {
+		int n = Index(inInstruction.toString());
+
+		_counts[n]++;
+		if (--_untilSample > 0) {
+			inInstruction.Execute(inI);
+			return;
+		}
+
+		_untilSample = _sampleInterval;
+		long start = System.nanoTime();
+		inInstruction.Execute(inI);
+		_nanos[n] += System.nanoTime() - start;
+		_samples[n]++;
+	}
+
+	/**
+	 * Records a step taken with the given depth of the exec stack.
+	 */
+
+	void Step(int inDepth) {
+		_steps++;
+		_depthSum += inDepth;
+		if (inDepth > _maxDepth)
+			_maxDepth = inDepth;
+	}
+
+	/**
+	 * Records a finished execution of a program.
+	 * 
+	 * @param inLimitHit
+	 *            true if the program was stopped by the step limit.
+	 */
+
+	void Finish(boolean inLimitHit) {
+		_executions++;
+		if (inLimitHit)
+			_limitHits++;
+	}
+
+	private int Index(String inName) {
+		Integer index = _indexOf.get(inName);
+
+		if (index != null)
+			return index;
+
+		if (_size == _names.length) {
+			int capacity = 2 * _size;
+			_names = Arrays.copyOf(_names, capacity);
+			_counts = Arrays.copyOf(_counts, capacity);
+			_samples = Arrays.copyOf(_samples, capacity);
+			_nanos = Arrays.copyOf(_nanos, capacity);
+		}
+		_names[_size] = inName;
+		_indexOf.put(inName, _size);
+		return _size++;
+	}
+
+	/**
+	 * Adds the counters of another profile to this one.
+	 */
+
+	public void Add(Profile inOther) {
+		for (int n = 0; n < inOther._size; n++) {
+			int m = Index(inOther._names[n]);
+
+			_counts[m] += inOther._counts[n];
+			_samples[m] += inOther._samples[n];
+			_nanos[m] += inOther._nanos[n];
+		}
+		_executions += inOther._executions;
+		_limitHits += inOther._limitHits;
+		_steps += inOther._steps;
+		_depthSum += inOther._depthSum;
+		_maxDepth = Math.max(_maxDepth, inOther._maxDepth);
+	}
+
+	/**
+	 * Resets all counters.
+	 */
+
+	public void Clear() {
+		for (int n = 0; n < _size; n++) {
+			_counts[n] = 0;
+			_samples[n] = 0;
+			_nanos[n] = 0;
+		}
+		_executions = 0;
+		_limitHits = 0;
+		_steps = 0;
+		_depthSum = 0;
+		_maxDepth = 0;
+	}
+
+	/**
+	 * Returns the number of instructions seen by the profile.
+	 */
+
+	public int size() {
+		return _size;
+	}
+
+	public String name(int inIndex) {
+		return _names[inIndex];
+	}
+
+	/**
+	 * Returns how many times the instruction has been executed.
+	 */
+
+	public long count(int inIndex) {
+		return _counts[inIndex];
+	}
+
+	/**
+	 * Returns the mean time of the sampled executions of the instruction in
+	 * nanoseconds, or 0 if none has been sampled.
+	 */
+
+	public double meanNanos(int inIndex) {
+		return _samples[inIndex] == 0 ? 0.0 : (double) _nanos[inIndex]
+				/ _samples[inIndex];
+	}
+
+	/**
+	 * Returns the estimated time spent in the instruction in nanoseconds.
+	 */
+
+	public double totalNanos(int inIndex) {
+		return meanNanos(inIndex) * _counts[inIndex];
+	}
+
+	public long executions() {
+		return _executions;
+	}
+
+	/**
+	 * Returns the fraction of executions stopped by the step limit.
+	 */
+
+	public double limitHitRate() {
+		return _executions == 0 ? 0.0 : (double) _limitHits / _executions;
+	}
+
+	public long steps() {
+		return _steps;
+	}
+
+	/**
+	 * Returns the mean depth of the exec stack over all steps.
+	 */
+
+	public double meanDepth() {
+		return _steps == 0 ? 0.0 : (double) _depthSum / _steps;
+	}
+
+	public int maxDepth() {
+		return _maxDepth;
+	}
+}
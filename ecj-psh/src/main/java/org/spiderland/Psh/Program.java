@@ -25,6 +25,21 @@ import java.io.Serializable;
 public class Program extends ObjectStack implements Serializable {
 	private static final long serialVersionUID = 1L;
 
+	// Cached point counts: _pointEnd[n] is the index (counted as in Subtree)
+	// just past the points inside the n-th item, so the points of a
+	// sub-program at n are _pointEnd[n - 1] .. _pointEnd[n] - 1 (starting
+	// from _size for the first item). Null if the program has been modified
+	// since the counts were computed; the array itself is never changed, so
+	// it may be shared with copies and other threads. Sub-programs are owned
+	// by their program and may only be modified through it (ReplaceSubtree,
+	// Flatten), so that the counts of every program on the path get dropped.
+	protected transient volatile int _pointEnd[];
+
+	// True if the program may be an item of more than one program. Copies of
+	// a program share its sub-programs instead of copying them, so a shared
+	// program must not be modified; a program about to modify a shared item
+	// replaces it with its own copy first (see Owned).
+	protected boolean _shared;
 
 	/**
 	 * Constructs an empty Program. 
@@ -35,14 +50,27 @@ public class Program extends ObjectStack implements Serializable {
 
 	
 	/**
-	 * Constructs a copy of an existing Program.
+	 * Constructs a copy of an existing Program. Only the top level of the
+	 * program is copied, its sub-programs become shared by both programs and
+	 * are copied when one of the programs modifies them.
 	 * 
 	 * @param inOther
 	 *            The Push program to copy.
 	 */
 
 	public Program(Program inOther) {
-		inOther.CopyTo(this);
+		if (inOther._size >= _maxsize)
+			resize(inOther._size + _blocksize);
+
+		for (int n = 0; n < inOther._size; n++) {
+			Object o = inOther._stack[n];
+
+			if (o instanceof Program)
+				((Program) o)._shared = true;
+			_stack[n] = o;
+		}
+		_size = inOther._size;
+		_pointEnd = inOther._pointEnd;
 	}
 
 	/**
@@ -112,6 +140,7 @@ public class Program extends ObjectStack implements Serializable {
 					
 					// This makes printing stacks very ugly. For now, will store
 					// program instructions as strings, as was done before.
+					// Interpreter.Compile resolves them before execution.
 					/*
 					Instruction i = _interpreter._instructions.get(token);
 					if (i != null)
@@ -140,21 +169,111 @@ public class Program extends ObjectStack implements Serializable {
 		throw new Exception("no closing brace found for program");
 	}
 
+	/**
+	 * Returns the point counts of the items, computing them if needed.
+	 */
+	protected int[] PointEnd() {
+		int pointEnd[] = _pointEnd;
+
+		if (pointEnd == null) {
+			pointEnd = new int[_size];
+
+			int end = _size;
+			for (int n = 0; n < _size; n++) {
+				Object o = _stack[n];
+				if (o instanceof Program)
+					end += ((Program) o).programsize();
+				pointEnd[n] = end;
+			}
+			_pointEnd = pointEnd;
+		}
+
+		return pointEnd;
+	}
+
+	/**
+	 * Drops the cached point counts, must be called before the items of the
+	 * program change.
+	 */
+	protected void Modified() {
+		if (_shared)
+			throw new RuntimeException("Modifying a shared program " + this);
+
+		_pointEnd = null;
+	}
+
+	/**
+	 * Returns the sub-program at the given item, replacing it with a copy
+	 * first if it is shared with other programs, so that it can be modified.
+	 */
+	Program Owned(int inItem) {
+		Program sub = (Program) _stack[inItem];
+
+		if (sub._shared) {
+			sub = new Program(sub);
+			_stack[inItem] = sub;
+		}
+
+		return sub;
+	}
+
+	/**
+	 * Returns the number of points in the items from start (inclusive) to end
+	 * (exclusive), including their subprograms.
+	 */
+	private int PointsBetween(int inStart, int inEnd) {
+		if (inStart >= inEnd)
+			return 0;
+
+		int pointEnd[] = PointEnd();
+		int before = inStart == 0 ? _size : pointEnd[inStart - 1];
+
+		return inEnd - inStart + pointEnd[inEnd - 1] - before;
+	}
+
+	/**
+	 * Returns the item whose sub-program holds the given point (index >=
+	 * _size), or -1 if there is no such point.
+	 */
+	private int ItemOfPoint(int inIndex) {
+		int pointEnd[] = PointEnd();
+
+		if (_size == 0 || inIndex >= pointEnd[_size - 1])
+			return -1;
+
+		// the first item ending after the point, items without points
+		// (atoms and empty programs) end where the previous item does
+		int low = 0;
+		int high = _size - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (pointEnd[mid] > inIndex)
+				high = mid;
+			else
+				low = mid + 1;
+		}
+
+		return low;
+	}
+
+	/**
+	 * Returns the index of the first point of the sub-program at the given
+	 * item.
+	 */
+	private int FirstPoint(int inItem) {
+		return inItem == 0 ? _size : _pointEnd[inItem - 1];
+	}
+
 	/**
 	 * Returns the size of the program and all subprograms.
 	 * 
 	 * @return The size of the program.
 	 */
 	public int programsize() {
-		int size = _size;
-
-		for (int n = 0; n < _size; n++) {
-			Object o = _stack[n];
-			if (o instanceof Program)
-				size += ((Program) o).programsize();
-		}
+		if (_size == 0)
+			return 0;
 
-		return size;
+		return PointEnd()[_size - 1];
 	}
 	
 	/**
@@ -168,15 +287,8 @@ public class Program extends ObjectStack implements Serializable {
 			start += _size;
 		if (start >= _size)
 			return 0;
-		int size = _size - start;
 
-		for (int n = start; n < _size; n++) {
-			Object o = _stack[n];
-			if (o instanceof Program)
-				size += ((Program) o).programsize();
-		}
-		
-		return size;
+		return PointsBetween(start, _size);
 	}
 	
 	/**
@@ -195,15 +307,8 @@ public class Program extends ObjectStack implements Serializable {
 		if (start + range > _size) {
 			range = _size - start;
 		}
-		int size = range;
-
-		for (int n = start; n < start + range && n < _size; n++) {
-			Object o = _stack[n];
-			if (o instanceof Program)
-				size += ((Program) o).programsize();
-		}
 
-		return size;
+		return PointsBetween(start, start + range);
 	}
 
 	/**
@@ -235,27 +340,14 @@ public class Program extends ObjectStack implements Serializable {
 	 */
 
 	public Object Subtree(int inIndex) {
-		if (inIndex < _size) {
+		if (inIndex < _size)
 			return _stack[inIndex];
-		} else {
-			int startIndex = _size;
 
-			for (int n = 0; n < _size; n++) {
-				Object o = _stack[n];
-
-				if (o instanceof Program) {
-					Program sub = (Program) o;
-					int length = sub.programsize();
-
-					if (inIndex - startIndex < length)
-						return sub.Subtree(inIndex - startIndex);
+		int item = ItemOfPoint(inIndex);
+		if (item == -1)
+			return null;
 
-					startIndex += length;
-				}
-			}
-		}
-
-		return null;
+		return ((Program) _stack[item]).Subtree(inIndex - FirstPoint(item));
 	}
 
 	/**
@@ -270,28 +362,18 @@ public class Program extends ObjectStack implements Serializable {
 
 	public boolean ReplaceSubtree(int inIndex, Object inReplacement) {
 		if (inIndex < _size) {
+			Modified();
 			_stack[inIndex] = cloneforprogram(inReplacement);
 			return true;
-		} else {
-			int startIndex = _size;
-
-			for (int n = 0; n < _size; n++) {
-				Object o = _stack[n];
-
-				if (o instanceof Program) {
-					Program sub = (Program) o;
-					int length = sub.programsize();
-
-					if (inIndex - startIndex < length)
-						return sub.ReplaceSubtree(inIndex - startIndex,
-								inReplacement);
-
-					startIndex += length;
-				}
-			}
 		}
 
-		return false;
+		int item = ItemOfPoint(inIndex);
+		if (item == -1)
+			return false;
+
+		int first = FirstPoint(item);
+		Modified();
+		return Owned(item).ReplaceSubtree(inIndex - first, inReplacement);
 	}
 
 	public void Flatten(int inIndex) {
@@ -318,24 +400,80 @@ public class Program extends ObjectStack implements Serializable {
 				}
 			}
 		} else {
-			int startIndex = _size;
+			int item = ItemOfPoint(inIndex);
 
-			for (int n = 0; n < _size; n++) {
-				Object o = _stack[n];
+			if (item != -1) {
+				int first = FirstPoint(item);
+				Modified();
+				Owned(item).Flatten(inIndex - first);
+			}
+		}
+	}
 
-				if (o instanceof Program) {
-					Program sub = (Program) o;
-					int length = sub.programsize();
+	//
+	// Stack operations, which drop the cached point counts
+	//
 
-					if (inIndex - startIndex < length) {
-						sub.Flatten(inIndex - startIndex);
-						break;
-					}
+	@Override
+	public Program clone() {
+		Program program = (Program) super.clone();
+		// the clone's items are copies
+		program._shared = false;
+		return program;
+	}
 
-					startIndex += length;
-				}
-			}
-		}
+	@Override
+	public void clear() {
+		Modified();
+		super.clear();
+	}
+
+	@Override
+	public void popdiscard() {
+		Modified();
+		super.popdiscard();
+	}
+
+	@Override
+	public Object pop() {
+		Modified();
+		return super.pop();
+	}
+
+	@Override
+	public void push(Object inValue) {
+		Modified();
+		super.push(inValue);
+	}
+
+	@Override
+	public void shove(Object obj, int n) {
+		Modified();
+		super.shove(obj, n);
+	}
+
+	@Override
+	public void shove(int inIndex) {
+		Modified();
+		super.shove(inIndex);
+	}
+
+	@Override
+	public void swap() {
+		Modified();
+		super.swap();
+	}
+
+	@Override
+	public void rot() {
+		Modified();
+		super.rot();
+	}
+
+	@Override
+	public void yank(int inIndex) {
+		Modified();
+		super.yank(inIndex);
 	}
 
 	/**
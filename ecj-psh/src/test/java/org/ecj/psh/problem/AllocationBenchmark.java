@@ -0,0 +1,94 @@
+package org.ecj.psh.problem;
+
+import java.lang.management.ManagementFactory;
+
+import org.ecj.psh.PshEvolutionState;
+import org.ecj.psh.util.InterpreterBenchmark;
+import org.spiderland.Psh.Bytecode;
+import org.spiderland.Psh.Interpreter;
+import org.spiderland.Psh.Program;
+
+import com.sun.management.ThreadMXBean;
+
+import ec.Evolve;
+
+/**
+ * Measures the bytes FloatRegressionProblem allocates per test case while it
+ * runs the initial population of the float regression problems, which should
+ * be none once the interpreter's stacks have grown to size. Not a unit test:
+ * run its main method from the ecj-psh directory on a JVM that supports
+ * thread allocation counting.
+ */
+public class AllocationBenchmark {
+
+	/**
+	 * Arguments: the number of individuals (1000), the number of warm-up
+	 * rounds (5) and the problem directories (problems/floatreg0 to
+	 * floatreg3).
+	 */
+	public static void main(String[] args) {
+		int populationSize = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int warmup = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		String[] problems = InterpreterBenchmark.PROBLEMS;
+		if (args.length > 2) {
+			problems = new String[args.length - 2];
+			System.arraycopy(args, 2, problems, 0, problems.length);
+		}
+
+		ThreadMXBean threads = (ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		if (!threads.isThreadAllocatedMemorySupported()) {
+			System.out.println("Thread allocation counting is not supported");
+			return;
+		}
+		threads.setThreadAllocatedMemoryEnabled(true);
+		long thread = Thread.currentThread().getId();
+
+		// what reading the counter allocates by itself
+		long overhead = Long.MAX_VALUE;
+		for (int n = 0; n < 1000; n++) {
+			long start = threads.getThreadAllocatedBytes(thread);
+			overhead = Math.min(overhead,
+					threads.getThreadAllocatedBytes(thread) - start);
+		}
+
+		for (int p = 0; p < problems.length; p++) {
+			PshEvolutionState state = InterpreterBenchmark.setup(problems[p],
+					populationSize);
+			FloatRegressionProblem problem = (FloatRegressionProblem) state.evaluator.p_problem;
+			Interpreter interpreter = state.interpreter[0];
+			Program[] programs = InterpreterBenchmark.programs(state);
+			Bytecode[] bytecodes = new Bytecode[programs.length];
+			for (int n = 0; n < programs.length; n++)
+				bytecodes[n] = new Bytecode(programs[n]);
+			int testCases = problem.testCases.numRows();
+
+			for (int r = 0; r < warmup; r++)
+				for (int n = 0; n < bytecodes.length; n++)
+					for (int t = 0; t < testCases; t++)
+						problem.evaluateTestCase(interpreter, bytecodes[n], t);
+
+			long total = 0;
+			int allocating = 0;
+			for (int n = 0; n < bytecodes.length; n++) {
+				long start = threads.getThreadAllocatedBytes(thread);
+				for (int t = 0; t < testCases; t++)
+					problem.evaluateTestCase(interpreter, bytecodes[n], t);
+				long bytes = threads.getThreadAllocatedBytes(thread) - start
+						- overhead;
+				if (bytes > 0) {
+					total += bytes;
+					allocating++;
+				}
+			}
+
+			System.out.println(problems[p] + ": " + programs.length
+					+ " programs x " + testCases + " test cases, "
+					+ (double) total / (programs.length * testCases)
+					+ " bytes per test case, " + allocating
+					+ " programs allocated, " + total + " bytes in all");
+			Evolve.cleanup(state);
+		}
+	}
+
+}
@@ -0,0 +1,90 @@
+package org.ecj.psh.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DatasetTest {
+
+	File file;
+	File snapshot;
+
+	@Before
+	public void prepare() throws IOException {
+		file = File.createTempFile("testcases", ".txt");
+		snapshot = new File(file.getPath() + ".bin");
+	}
+
+	@After
+	public void cleanup() {
+		file.delete();
+		snapshot.delete();
+	}
+
+	protected void write(String content) throws IOException {
+		FileWriter writer = new FileWriter(file);
+		writer.write(content);
+		writer.close();
+	}
+
+	@Test
+	public void dataset_test_parse_columns() throws Exception {
+		write("-5\t18\n-4.5  1e2 \n\n3 2.25");
+
+		FloatDataset dataset = new FloatDataset(1, 1);
+		dataset.parse(file);
+
+		assertEquals(3, dataset.numRows());
+		assertArrayEquals(new float[] { -5, -4.5f, 3 }, dataset.inputs[0], 0);
+		assertArrayEquals(new float[] { 18, 100, 2.25f }, dataset.outputs[0], 0);
+	}
+
+	@Test
+	public void dataset_test_parse_multiple_columns() throws Exception {
+		write("1 2 3\n4 5 6\n");
+
+		IntDataset dataset = new IntDataset(2, 1);
+		dataset.parse(file);
+
+		assertEquals(2, dataset.numRows());
+		assertEquals(4, dataset.input(1, 0));
+		assertEquals(5, dataset.input(1, 1));
+		assertEquals(3, dataset.output(0, 0));
+	}
+
+	@Test(expected = IOException.class)
+	public void dataset_test_incomplete_row() throws Exception {
+		write("1 2\n3\n");
+
+		new IntDataset(1, 1).parse(file);
+	}
+
+	@Test
+	public void dataset_test_snapshot() throws Exception {
+		write("1 2 3\n4 5 6\n");
+
+		FloatDataset dataset = new FloatDataset(2, 1);
+		dataset.load(file, snapshot);
+		assertTrue(snapshot.exists());
+
+		FloatDataset restored = new FloatDataset(2, 1);
+		assertTrue(restored.readSnapshot(snapshot));
+		assertEquals(2, restored.numRows());
+		assertArrayEquals(dataset.inputs[1], restored.inputs[1], 0);
+		assertArrayEquals(dataset.outputs[0], restored.outputs[0], 0);
+
+		// snapshot of a dataset with different columns isn't used
+		assertFalse(new FloatDataset(1, 2).readSnapshot(snapshot));
+		assertFalse(new IntDataset(2, 1).readSnapshot(snapshot));
+	}
+
+}
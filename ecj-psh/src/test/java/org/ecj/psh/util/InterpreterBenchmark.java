@@ -0,0 +1,150 @@
+package org.ecj.psh.util;
+
+import org.ecj.psh.PshEvolutionState;
+import org.ecj.psh.PshIndividual;
+import org.ecj.psh.problem.FloatRegressionProblem;
+import org.spiderland.Psh.Bytecode;
+import org.spiderland.Psh.Interpreter;
+import org.spiderland.Psh.Program;
+import org.spiderland.Psh.floatStack;
+
+import ec.EvolutionState;
+import ec.Evolve;
+import ec.Individual;
+
+/**
+ * Compares the three ways of running the initial population of the float
+ * regression problems over their test cases: the programs as parsed, the
+ * programs compiled by Interpreter.Compile and the programs as Bytecode. Not
+ * a unit test: run its main method from the ecj-psh directory.
+ */
+public class InterpreterBenchmark {
+
+	public static final String[] PROBLEMS = { "problems/floatreg0",
+			"problems/floatreg1", "problems/floatreg2", "problems/floatreg3" };
+
+	static final String[] PATHS = { "Program", "compiled", "Bytecode" };
+
+	PshEvolutionState state;
+	FloatRegressionProblem problem;
+	Interpreter interpreter;
+	Program[] programs;
+	Program[] compiled;
+	Bytecode[] bytecodes;
+
+	public InterpreterBenchmark(String problemDir, int populationSize) {
+		state = setup(problemDir, populationSize);
+		problem = (FloatRegressionProblem) state.evaluator.p_problem;
+		interpreter = state.interpreter[0];
+		programs = programs(state);
+		compiled = new Program[programs.length];
+		bytecodes = new Bytecode[programs.length];
+		for (int n = 0; n < programs.length; n++) {
+			compiled[n] = interpreter.Compile(programs[n]);
+			bytecodes[n] = new Bytecode(programs[n]);
+		}
+	}
+
+	/**
+	 * Sets up the problem in the given directory with a fixed seed and creates
+	 * its initial population.
+	 */
+	public static PshEvolutionState setup(String problemDir,
+			int populationSize) {
+		String[] args = { "-file", problemDir + "/problem.params", "-p",
+				"seed.0=4357", "-p", "pop.subpop.0.size=" + populationSize };
+		EvolutionState state = Evolve.initialize(
+				Evolve.loadParameterDatabase(args), 0);
+		state.startFresh();
+		return (PshEvolutionState) state;
+	}
+
+	/** Returns the programs of the first subpopulation. */
+	public static Program[] programs(EvolutionState state) {
+		Individual[] inds = state.population.subpops[0].individuals;
+		Program[] programs = new Program[inds.length];
+		for (int n = 0; n < inds.length; n++)
+			programs[n] = ((PshIndividual) inds[n]).program;
+		return programs;
+	}
+
+	/**
+	 * Arguments: the number of individuals (1000), the number of rounds (20)
+	 * and the problem directories (problems/floatreg0 to floatreg3).
+	 */
+	public static void main(String[] args) {
+		int populationSize = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+		String[] problems = PROBLEMS;
+		if (args.length > 2) {
+			problems = new String[args.length - 2];
+			System.arraycopy(args, 2, problems, 0, problems.length);
+		}
+
+		for (int p = 0; p < problems.length; p++) {
+			InterpreterBenchmark benchmark = new InterpreterBenchmark(
+					problems[p], populationSize);
+			int testCases = benchmark.problem.testCases.numRows();
+			double[] errors = new double[PATHS.length];
+			long[] times = new long[PATHS.length];
+			// the first round only warms up
+			for (int r = 0; r <= rounds; r++)
+				for (int path = 0; path < PATHS.length; path++) {
+					long start = System.nanoTime();
+					errors[path] = benchmark.run(path);
+					if (r > 0)
+						times[path] += System.nanoTime() - start;
+				}
+
+			StringBuilder line = new StringBuilder(problems[p] + ": "
+					+ populationSize + " programs x " + testCases
+					+ " test cases,");
+			for (int path = 0; path < PATHS.length; path++)
+				line.append(" " + PATHS[path] + " " + times[path] / rounds
+						/ 1000 + " us");
+			if (errors[0] != errors[1] || errors[0] != errors[2])
+				line.append(" (total errors differ: " + errors[0] + " "
+						+ errors[1] + " " + errors[2] + ")");
+			System.out.println(line);
+			Evolve.cleanup(benchmark.state);
+		}
+	}
+
+	/**
+	 * Runs every program over every test case the way FloatRegressionProblem
+	 * does and returns the total error of the programs that do not use the
+	 * random number generator.
+	 */
+	double run(int path) {
+		int numInputs = problem.testCases.numInputs;
+		int numOutputs = problem.testCases.numOutputs;
+		int limit = interpreter.getExecutionLimit();
+		double total = 0;
+		for (int n = 0; n < programs.length; n++) {
+			boolean random = interpreter.UsesRNG(bytecodes[n]);
+			for (int t = 0; t < problem.testCases.numRows(); t++) {
+				interpreter.ClearStacks();
+				for (int i = 0; i < numInputs; i++) {
+					float input = problem.testCases.input(t, i);
+					for (int k = 0; k < problem.repeatFloatStack; k++)
+						interpreter.floatStack().push(input);
+					interpreter.inputStack().push((Float) input);
+				}
+				if (path == 0)
+					interpreter.Execute(programs[n], limit);
+				else if (path == 1)
+					interpreter.Execute(compiled[n], limit);
+				else
+					interpreter.Execute(bytecodes[n], limit);
+				floatStack results = interpreter.floatStack();
+				if (random || results.size() < numOutputs)
+					continue;
+				for (int o = 0; o < numOutputs; o++)
+					total += Math.abs(results.peek(results.size() - numOutputs
+							+ o) - problem.testCases.output(t, o));
+			}
+		}
+		return total;
+	}
+
+}
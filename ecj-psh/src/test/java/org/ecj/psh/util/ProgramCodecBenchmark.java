@@ -0,0 +1,97 @@
+package org.ecj.psh.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.spiderland.Psh.Interpreter;
+import org.spiderland.Psh.Program;
+
+import ec.util.MersenneTwisterFast;
+
+/**
+ * Compares the size and the speed of the binary and the text encoding of
+ * random programs. Not a unit test: run its main method.
+ */
+public class ProgramCodecBenchmark {
+
+	Program[] programs;
+
+	public ProgramCodecBenchmark(int numPrograms, int programSize)
+			throws Exception {
+		Interpreter interpreter = new Interpreter();
+		interpreter.Initialize(new MersenneTwisterFast(1));
+		interpreter.SetInstructions(new Program(
+				"( registered.float registered.integer registered.exec input.makeinputs1 )"));
+		interpreter.SetRandomParameters(-100, 100, 1, -10, 10, 0.01f, 50, 100);
+		programs = new Program[numPrograms];
+		for (int n = 0; n < programs.length; n++)
+			programs[n] = interpreter.RandomCode(programSize);
+	}
+
+	/**
+	 * Arguments: the number of programs (500), their size (50) and the number
+	 * of rounds (20).
+	 */
+	public static void main(String[] args) throws Exception {
+		int numPrograms = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		int programSize = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+		int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+		ProgramCodecBenchmark benchmark = new ProgramCodecBenchmark(
+				numPrograms, programSize);
+
+		long textBytes = 0, binaryBytes = 0;
+		long textTime = 0, binaryTime = 0;
+		for (int r = 0; r < rounds; r++) {
+			long start = System.nanoTime();
+			textBytes = benchmark.roundTripText();
+			textTime += System.nanoTime() - start;
+
+			start = System.nanoTime();
+			binaryBytes = benchmark.roundTripBinary();
+			binaryTime += System.nanoTime() - start;
+		}
+
+		System.out.println("ProgramCodec: " + numPrograms + " programs of "
+				+ programSize + " points, text " + textBytes + " bytes "
+				+ textTime / rounds / 1000 + " us, binary " + binaryBytes
+				+ " bytes " + binaryTime / rounds / 1000 + " us");
+	}
+
+	long roundTripText() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (int n = 0; n < programs.length; n++) {
+			byte[] code = programs[n].toString().getBytes("UTF-8");
+			out.writeInt(code.length);
+			out.write(code);
+		}
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		Program program = new Program();
+		for (int n = 0; n < programs.length; n++) {
+			byte[] code = new byte[in.readInt()];
+			in.readFully(code);
+			program.Parse(new String(code, "UTF-8"));
+		}
+		return bytes.size();
+	}
+
+	long roundTripBinary() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (int n = 0; n < programs.length; n++)
+			ProgramCodec.write(programs[n], out);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		Program program = new Program();
+		for (int n = 0; n < programs.length; n++) {
+			in.readUnsignedByte();
+			ProgramCodec.read(program, in);
+		}
+		return bytes.size();
+	}
+
+}
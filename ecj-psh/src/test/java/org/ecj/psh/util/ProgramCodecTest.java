@@ -0,0 +1,96 @@
+package org.ecj.psh.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import org.ecj.psh.PshFitness;
+import org.ecj.psh.PshIndividual;
+import org.junit.Before;
+import org.junit.Test;
+import org.spiderland.Psh.Interpreter;
+import org.spiderland.Psh.Program;
+
+import ec.util.MersenneTwisterFast;
+
+public class ProgramCodecTest {
+
+	Program[] programs;
+
+	@Before
+	public void prepare() throws Exception {
+		Interpreter interpreter = new Interpreter();
+		interpreter.Initialize(new MersenneTwisterFast(1));
+		interpreter.SetInstructions(new Program(
+				"( registered.float registered.integer registered.exec input.makeinputs1 )"));
+		interpreter.SetRandomParameters(-100, 100, 1, -10, 10, 0.01f, 50, 100);
+		programs = new Program[500];
+		for (int n = 0; n < programs.length; n++)
+			programs[n] = interpreter.RandomCode(50);
+	}
+
+	protected PshIndividual individual(Program program) {
+		PshIndividual ind = new PshIndividual();
+		ind.program = program;
+		return ind;
+	}
+
+	@Test
+	public void codec_test_round_trip() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		for (int n = 0; n < programs.length; n++)
+			individual(programs[n]).writeGenotype(null, out);
+		individual(new Program("( -7 2147483647 -1.5 ( ) foo ( ( foo ) ) )"))
+				.writeGenotype(null, out);
+
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		PshIndividual ind = individual(new Program());
+		for (int n = 0; n < programs.length; n++) {
+			ind.readGenotype(null, in);
+			assertEquals(programs[n], ind.program);
+		}
+		ind.readGenotype(null, in);
+		assertEquals(new Program("( -7 2147483647 -1.5 ( ) foo ( ( foo ) ) )"),
+				ind.program);
+		assertEquals(-1, in.read());
+	}
+
+	@Test(expected = IOException.class)
+	public void codec_test_rejects_text() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		byte[] code = "( 1 integer.+ ( 2.5 float.dup ) )".getBytes("UTF-8");
+		out.writeInt(code.length);
+		out.write(code);
+
+		individual(new Program()).readGenotype(null, new DataInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+	@Test
+	public void codec_test_fitness() throws Exception {
+		PshFitness fitness = new PshFitness();
+		fitness.setStandardizedFitness(null, 12.5f);
+		fitness.hits = 300;
+		fitness.bound = true;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		fitness.writeFitness(null, new DataOutputStream(bytes));
+		assertEquals(7, bytes.size());
+
+		PshFitness read = new PshFitness();
+		read.readFitness(null, new DataInputStream(new ByteArrayInputStream(
+				bytes.toByteArray())));
+		assertEquals(12.5f, read.standardizedFitness(), 0);
+		assertEquals(300, read.hits);
+		assertTrue(read.bound);
+	}
+
+}
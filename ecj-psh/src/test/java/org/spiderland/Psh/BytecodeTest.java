@@ -0,0 +1,80 @@
+package org.spiderland.Psh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ec.util.MersenneTwisterFast;
+
+public class BytecodeTest {
+
+	Interpreter interpreter = null;
+
+	@Before
+	public void prepare() throws RuntimeException, Exception {
+		interpreter = new Interpreter();
+		interpreter.Initialize(new MersenneTwisterFast());
+		interpreter.SetInstructions(new Program("( registered.float registered.integer registered.exec input.makeinputs1 )"));
+	}
+
+	@Test
+	public void bytecode_test_round_trip() throws Exception {
+		Program p = new Program("( 1 ( 2.5 float.+ ( ) x ) ( ( -3 ) ) integer.dup )");
+		Bytecode code = new Bytecode(p);
+
+		assertEquals(p, code.toProgram());
+		assertEquals(p.programsize(), code.programsize());
+		assertEquals(p.toString(), code.toString());
+	}
+
+	@Test
+	public void bytecode_test_equals() throws Exception {
+		Program p = new Program("( 1 ( 2.5 float.+ ) integer.dup )");
+		Bytecode code = new Bytecode(p);
+		Bytecode same = new Bytecode(new Program("( 1 ( 2.5 float.+ ) integer.dup )"));
+
+		assertEquals(same, code);
+		assertEquals(same.hashCode(), code.hashCode());
+		assertEquals(p.hashCode(), interpreter.Compile(p).hashCode());
+		assertFalse(code.equals(new Bytecode(new Program("( 1 ( 2.5 float.- ) integer.dup )"))));
+		assertFalse(code.equals(new Bytecode(new Program("( 1 ( 2.5 ) float.+ integer.dup )"))));
+	}
+
+	@Test
+	public void bytecode_test_execute_flat() throws Exception {
+		do_execute_test("( 1 2 integer.dup 1.0 ( 2.0 float.dup x ) float.+ input.in0 integer.* )", -1);
+	}
+
+	@Test
+	public void bytecode_test_execute_step_limit() throws Exception {
+		do_execute_test("( 1 2 ( integer.+ 3 ( 4 5 ) ) integer.* 6 )", 4);
+	}
+
+	@Test
+	public void bytecode_test_execute_exec_instructions() throws Exception {
+		do_execute_test("( 3 exec.do*times ( 2 integer.* ) exec.dup 1 )", 50);
+	}
+
+	protected void do_execute_test(String program, int maxSteps) throws Exception {
+		Program p = new Program(program);
+
+		interpreter.ClearStacks();
+		interpreter.inputStack().push(7);
+		int expectedSteps = interpreter.Execute(p, maxSteps);
+		intStack expectedIntStack = interpreter.intStack().clone();
+		floatStack expectedFloatStack = interpreter.floatStack().clone();
+		ObjectStack expectedNameStack = interpreter.nameStack().clone();
+		ObjectStack expectedExecStack = interpreter.execStack().clone();
+
+		interpreter.ClearStacks();
+		interpreter.inputStack().push(7);
+		assertEquals(expectedSteps, interpreter.Execute(new Bytecode(p), maxSteps));
+		assertEquals(expectedIntStack, interpreter.intStack());
+		assertEquals(expectedFloatStack, interpreter.floatStack());
+		assertEquals(expectedNameStack, interpreter.nameStack());
+		assertEquals(expectedExecStack, interpreter.execStack());
+	}
+
+}
@@ -2,6 +2,7 @@ package org.spiderland.Psh;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -20,11 +21,6 @@ public class InterpreterTest {
 //		System.out.println(interpreter.GetRegisteredInstructionsString());
 	}
 
-//	@Test
-	public void interpreter_test_print_stack_instructions() {
-		interpreter.printStackInstructions();
-	}
-	
 	@Test
 	public void interpreter_test_push_stacks() throws Exception {
 		interpreter.ClearStacks();
@@ -56,6 +52,101 @@ public class InterpreterTest {
 				
 	}
 	
+	@Test
+	public void interpreter_test_reuse_frames() throws Exception {
+		Program p = new Program("( 1 ( 2 integer.dup integer.stackdepth ( 3 float.stackdepth ) ) integer.+ )");
+		interpreter.SetUseFrames(true);
+		interpreter.ClearStacks();
+		intStack bottomIntStack = interpreter.intStack();
+
+		// stopped inside of a frame
+		interpreter.Execute(p, 8);
+		assertNotSame(bottomIntStack, interpreter.intStack());
+
+		interpreter.ClearStacks();
+		assertSame(bottomIntStack, interpreter.intStack());
+		interpreter.Execute(p);
+		intStack expectedIntStack = interpreter.intStack().clone();
+
+		// stacks of the reused frames must be empty
+		interpreter.ClearStacks();
+		interpreter.Execute(p);
+		assertEquals(expectedIntStack, interpreter.intStack());
+		assertSame(bottomIntStack, interpreter.intStack());
+	}
+
+	@Test
+	public void interpreter_test_compiled_program() throws Exception {
+		Program p = new Program("( 1 2 integer.dup 1.0 ( 2.0 float.dup x ) float.+ )");
+		Program compiled = interpreter.Compile(p);
+
+		assertEquals(p, compiled);
+		assertEquals(p.toString(), compiled.toString());
+
+		interpreter.ClearStacks();
+		interpreter.Execute(p);
+		intStack expectedIntStack = interpreter.intStack().clone();
+		floatStack expectedFloatStack = interpreter.floatStack().clone();
+		ObjectStack expectedNameStack = interpreter.nameStack().clone();
+
+		interpreter.ClearStacks();
+		interpreter.Execute(compiled);
+		assertEquals(expectedIntStack, interpreter.intStack());
+		assertEquals(expectedFloatStack, interpreter.floatStack());
+		assertEquals(expectedNameStack, interpreter.nameStack());
+	}
+
+	@Test
+	public void interpreter_test_compiled_program_foreign_interpreter() throws Exception {
+		Program compiled = interpreter.Compile(new Program("( 1 2 integer.+ 3 integer.dup )"));
+
+		Interpreter other = new Interpreter();
+		other.Initialize(new MersenneTwisterFast());
+		other.SetInstructions(new Program("( registered.integer )"));
+		other.Execute(compiled);
+
+		intStack expectedIntStack = new intStack();
+		expectedIntStack.push(3);
+		expectedIntStack.push(3);
+		expectedIntStack.push(3);
+
+		assertEquals(expectedIntStack, other.intStack());
+		assertEquals(0, interpreter.intStack().size());
+	}
+
+	@Test
+	public void interpreter_test_profile() throws Exception {
+		Program p = new Program("( 1.0 2.0 float.dup float.+ float.+ )");
+		interpreter.setProfile(new Profile(1));
+		interpreter.ClearStacks();
+
+		// one step for the program itself and one for each of its points
+		interpreter.Execute(new Bytecode(p), 100);
+		assertEquals(5.0f, interpreter.floatStack().top(), 0.0f);
+		interpreter.ClearStacks();
+		interpreter.Execute(p, 3);
+
+		Profile profile = interpreter.getProfile();
+		assertEquals(9, profile.steps());
+		assertEquals(5, profile.maxDepth());
+		assertEquals(2, profile.executions());
+		assertEquals(0.5, profile.limitHitRate(), 0.0);
+
+		long dups = 0, adds = 0;
+		for (int n = 0; n < profile.size(); n++) {
+			if (profile.name(n).equals("float.dup"))
+				dups = profile.count(n);
+			if (profile.name(n).equals("float.+"))
+				adds = profile.count(n);
+		}
+		assertEquals(1, dups);
+		assertEquals(2, adds);
+
+		profile.Clear();
+		assertEquals(0, profile.steps());
+		assertEquals(0, profile.executions());
+	}
+
 	@Test
 	public void some_test() throws Exception {
 		
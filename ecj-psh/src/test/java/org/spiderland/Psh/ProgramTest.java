@@ -162,5 +162,53 @@ public class ProgramTest extends TestCase {
 		assertEquals(new Program("( (4 5 C (F)) )"),p.Copy(-1, 345));
 		assertEquals(new Program("( )"),p.Copy(234, 4565));		
 	}
+
+	public void testCachedPointCounts() throws Exception {
+		Program p = new Program( "( A ( ) ( B ( C ( ) D ) 1 ) 2 ( ( E ) ) )" );
+		assertSamePoints( new Program( p.toString() ), p );
+
+		// modify the nested programs after the counts have been computed
+		p.ReplaceSubtree( 7, new Program( "( X ( Y Z ) )" ) );
+		assertSamePoints( new Program( p.toString() ), p );
+
+		p.Flatten( 6 );
+		assertSamePoints( new Program( p.toString() ), p );
+
+		p.ReplaceSubtree( p.programsize() - 1, "W" );
+		p.push( new Program( "( 3 ( 4 ) )" ) );
+		assertSamePoints( new Program( p.toString() ), p );
+		assertEquals( new Program( "( A ( ) ( B C ( ) D ( X ( Y Z ) ) ) 2 ( ( W ) ) ( 3 ( 4 ) ) )" ), p );
+	}
+
+	public void testCopyOnWrite() throws Exception {
+		Program p = new Program( "( A ( B ( C D ) ) ( E ) )" );
+		Program q = new Program( p );
+
+		// the copies share their sub-programs until one of them changes
+		assertSame( p.peek( 1 ), q.peek( 1 ) );
+
+		q.ReplaceSubtree( 6, "X" );
+		q.Flatten( 4 );
+		assertEquals( new Program( "( A ( B ( C D ) ) ( E ) )" ), p );
+		assertEquals( new Program( "( A ( B C X ) ( E ) )" ), q );
+		assertSame( p.peek( 2 ), q.peek( 2 ) );
+		assertNotSame( p.peek( 1 ), q.peek( 1 ) );
+
+		try {
+			((Program) p.peek( 1 )).push( "Y" );
+			fail( "shared program modified" );
+		} catch ( RuntimeException e ) {
+		}
+	}
+
+	private void assertSamePoints( Program expected, Program p ) {
+		assertEquals( expected.programsize(), p.programsize() );
+		for ( int n = 0; n < expected.programsize() + 1; n++ ) {
+			assertEquals( expected.Subtree( n ), p.Subtree( n ) );
+			assertEquals( expected.SubtreeSize( n ), p.SubtreeSize( n ) );
+		}
+		for ( int n = 0; n < expected.size(); n++ )
+			assertEquals( expected.programsize( n, 2 ), p.programsize( n, 2 ) );
+	}
 	
 }
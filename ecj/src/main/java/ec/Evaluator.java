@@ -63,7 +63,9 @@ public abstract class Evaluator implements Singleton
     
     /** Evaluates the fitness of an entire population.  You will
         have to determine how to handle multiple threads on your own,
-        as this is a very domain-specific thing. */
+        as this is a very domain-specific thing.  When you're done, call
+        ec.select.FitnessSnapshot.invalidateAll(state), so that breeding doesn't
+        select from fitnesses snapshot before or during evaluation. */
     public abstract void evaluatePopulation(final EvolutionState state);
 
     /** Returns true if an ideal individual has been found or some
@@ -10,8 +10,12 @@ import ec.util.ParameterDatabase;
 import ec.util.Parameter;
 import ec.util.MersenneTwisterFast;
 import ec.util.Output;
+import ec.util.Checkpoint;
+import ec.util.ThreadPool;
 import java.io.IOException;
 import java.util.Vector;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /* 
  * EvolutionState.java
@@ -87,6 +91,14 @@ import java.util.Vector;
  <tr><td valign=top><tt>checkpoint</tt><br>
  <font size=-1>bool = <tt>true</tt> or <tt>false</tt> (default)</td>
  <td valign=top>(should we checkpoint?)</td></tr>
+
+ <tr><td valign=top><tt>checkpoint-async</tt><br>
+ <font size=-1>bool = <tt>true</tt> or <tt>false</tt> (default)</td>
+ <td valign=top>(should checkpoints be compressed and written to disk in the background?  See ec.util.Checkpoint)</td></tr>
+
+ <tr><td valign=top><tt>checkpoint-full-modulo</tt><br>
+ <font size=-1>int &gt;= 1 (default is 1)</font></td>
+ <td valign=top>(every how many checkpoints should the whole EvolutionState be written out?  The checkpoints in between hold everything but the individuals, the parameter database and the output, serialized as usual, and then the individuals in their compact binary form; the parameter database and the output are taken from the last full checkpoint.  See ec.util.Checkpoint)</td></tr>
  
  <tr><td valign=top><tt>prefix</tt><br>
  <font size=-1>String</font></td>
@@ -168,6 +180,10 @@ public class EvolutionState implements Singleton
     /** The requested number of threads to be used in evaluation, excepting perhaps a "parent" thread which gathers the other threads.  If evalthreads = 1, then the system should not be multithreaded during evaluation. Don't modify this during a run.*/
     public int evalthreads;  // how many threads to use in evaluation
 
+    /** Worker threads shared by the multithreaded parts of the run (evaluation and breeding), kept alive
+        from generation to generation.  Killed when the run finishes. */
+    public ThreadPool pool = new ThreadPool();
+
     /** Should we checkpoint at all? */
     public boolean checkpoint;
 
@@ -177,6 +193,29 @@ public class EvolutionState implements Singleton
     /** The requested number of generations that should pass before we write out a checkpoint file. */
     public int checkpointModulo;
 
+    /** Should checkpoint files be compressed and written out in the background? */
+    public boolean checkpointAsync;
+
+    /** Every how many checkpoints should the whole EvolutionState be written out?  The checkpoints
+        in between serialize everything but the individuals (written in their compact binary form),
+        the parameter database and the output (taken from the last full checkpoint).  1 means every
+        checkpoint is a full one. */
+    public int checkpointFullModulo;
+
+    /** The file name of the last full checkpoint, which the following partial checkpoints
+        refer to, or null if none has been written yet.  Maintained by ec.util.Checkpoint. */
+    public String lastFullCheckpoint;
+
+    /** The number of partial checkpoints written since the last full one.  Maintained by ec.util.Checkpoint. */
+    public int checkpointsSinceFull;
+
+    /** Writes this run's checkpoint files in the background, one at a time and in order, or null if
+        it hasn't been started.  Maintained by ec.util.Checkpoint. */
+    public transient ExecutorService checkpointWriter;
+
+    /** The last checkpoint file handed to checkpointWriter.  Maintained by ec.util.Checkpoint. */
+    public transient Future lastCheckpointWrite;
+
     /** An amount to add to each random number generator seed to "offset" it -- often this is simply the job number.  
         If you are using more random number generators
         internally than the ones initially created for you in the EvolutionState, you might want to create them with the seed
@@ -250,6 +289,8 @@ public class EvolutionState implements Singleton
     public final static String P_CHECKPOINTPREFIX = "prefix";
     public final static String P_CHECKPOINTMODULO = "checkpoint-modulo";
     public final static String P_CHECKPOINT = "checkpoint";
+    public final static String P_CHECKPOINTASYNC = "checkpoint-async";
+    public final static String P_CHECKPOINTFULLMODULO = "checkpoint-full-modulo";
 
     /** This will be called to create your evolution state; immediately
         after the constructor is called,
@@ -281,6 +322,14 @@ public class EvolutionState implements Singleton
         checkpointModulo = parameters.getInt(p,null,1);
         if (checkpointModulo==0)
             output.fatal("The checkpoint modulo must be an integer >0.",p);
+
+        p = new Parameter(P_CHECKPOINTASYNC);
+        checkpointAsync = parameters.getBoolean(p,null,false);
+
+        p = new Parameter(P_CHECKPOINTFULLMODULO);
+        checkpointFullModulo = parameters.getIntWithDefault(p,null,1);
+        if (checkpointFullModulo<1)
+            output.fatal("The checkpoint full modulo must be an integer >0.",p);
         
         p = new Parameter(P_GENERATIONS);
         numGenerations = parameters.getInt(p,null,1);
@@ -372,5 +421,7 @@ public class EvolutionState implements Singleton
             }
         
         finish(result);
+        Checkpoint.waitForCheckpoints(this);
+        pool.kill();
         }
     }
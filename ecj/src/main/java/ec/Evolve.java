@@ -346,6 +346,12 @@ public class Evolve
             parameters.getInstanceForParameter(new Parameter(P_STATE),null,
                 EvolutionState.class);
         state.parameters = parameters;
+        // nobody will ask which parameters were used, so don't bother recording it
+        if (!parameters.getBoolean(new Parameter(P_PRINTUSEDPARAMETERS),null,false) &&
+            !parameters.getBoolean(new Parameter(P_PRINTACCESSEDPARAMETERS),null,false) &&
+            !parameters.getBoolean(new Parameter(P_PRINTUNUSEDPARAMETERS),null,false) &&
+            !parameters.getBoolean(new Parameter(P_PRINTUNACCESSEDPARAMETERS),null,false))
+            parameters.setTracking(false);
         state.random = random;
         state.output = output;
         state.evalthreads = evalthreads;
@@ -90,6 +90,10 @@ public class Subpopulation implements Group
 
     /** Do we allow duplicates? */
     public int numDuplicateRetries;
+
+    /** The fitnesses of the individuals as last loaded by ec.select.FitnessSnapshot.get(...), if any.
+        Not checkpointed: it's simply rebuilt when it's next needed. */
+    public transient volatile ec.select.FitnessSnapshot fitnessSnapshot;
     
     public static final String P_SUBPOPULATION = "subpop";
     public static final String P_FILE = "file";
@@ -120,6 +124,7 @@ public class Subpopulation implements Group
             Subpopulation p = (Subpopulation)clone();
             p.species = species;  // don't throw it away...maybe this is a bad idea...
             p.individuals = new Individual[individuals.length];  // empty
+            p.fitnessSnapshot = null;
             return p;   
             }
         catch (CloneNotSupportedException e) { throw new InternalError(); } // never happens
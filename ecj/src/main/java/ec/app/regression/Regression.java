@@ -33,6 +33,9 @@ import ec.simple.*;
  <tr><td valign=top><i>base</i>.<tt>size</tt><br>
  <font size=-1>int >= 1</font></td>
  <td valign=top>(the size of the training set)</td></tr>
+ <tr><td valign=top><i>base</i>.<tt>batch</tt><br>
+ <font size=-1>boolean (default = true)</font></td>
+ <td valign=top>(evaluate trees over the whole training set at once with GPNode.evalBatch(...) when all their nodes can do so, rather than once per training point)</td></tr>
  </table>
 
  <p><b>Parameter bases</b><br>
@@ -48,6 +51,7 @@ import ec.simple.*;
 public class Regression extends GPProblem implements SimpleProblemForm
     {
     public static final String P_SIZE = "size";
+    public static final String P_BATCH = "batch";
 
     public double currentValue;
     public int trainingSetSize;
@@ -62,6 +66,12 @@ public class Regression extends GPProblem implements SimpleProblemForm
     // we'll need to deep clone this one though.
     public RegressionData input;
 
+    public boolean batch;
+
+    // per-clone working space for batch evaluation, created when first needed
+    GPBatch gpBatch;
+    double[] batchResults;
+
     public double func(double x)
         { return x*x*x*x + x*x*x + x*x + x; }
 
@@ -73,6 +83,8 @@ public class Regression extends GPProblem implements SimpleProblemForm
         Regression myobj = (Regression) (super.clone());
 
         myobj.input = (RegressionData)(input.clone());
+        myobj.gpBatch = null;
+        myobj.batchResults = null;
         return myobj;
         }
 
@@ -84,6 +96,7 @@ public class Regression extends GPProblem implements SimpleProblemForm
 
         trainingSetSize = state.parameters.getInt(base.push(P_SIZE),null,1);
         if (trainingSetSize<1) state.output.fatal("Training Set Size must be an integer greater than 0", base.push(P_SIZE)); 
+        batch = state.parameters.getBoolean(base.push(P_BATCH),null,true);
 
         // Compute our inputs so they can be copied with clone later
         
@@ -114,11 +127,31 @@ public class Regression extends GPProblem implements SimpleProblemForm
             int hits = 0;
             double sum = 0.0;
             double result;
+            double value;
+            GPNode root = ((GPIndividual)ind).trees[0].child;
+
+            // if we can, compute the tree's value for all the training points at once
+            double[] values = null;
+            if (batch && root.subtreeCanEvalBatch())
+                {
+                if (gpBatch == null)
+                    {
+                    gpBatch = new GPBatch(trainingSetSize);
+                    batchResults = new double[trainingSetSize];
+                    }
+                root.evalBatch(state,threadnum,batchResults,0,gpBatch,stack,((GPIndividual)ind),this);
+                values = batchResults;
+                }
+
             for (int y=0;y<trainingSetSize;y++)
                 {
-                currentValue = inputs[y];
-                ((GPIndividual)ind).trees[0].child.eval(
-                    state,threadnum,input,stack,((GPIndividual)ind),this);
+                if (values != null) value = values[y];
+                else
+                    {
+                    currentValue = inputs[y];
+                    root.eval(state,threadnum,input,stack,((GPIndividual)ind),this);
+                    value = input.x;
+                    }
 
                 // It's possible to get NaN because cos(infinity) and
                 // sin(infinity) are undefined (hence cos(exp(3000)) zings ya!)
@@ -131,9 +164,9 @@ public class Regression extends GPProblem implements SimpleProblemForm
                 final double PROBABLY_ZERO = 1.11E-15;
                 final double BIG_NUMBER = 1.0e15;  // the same as lilgp uses
 
-                result = Math.abs(outputs[y] - input.x);
+                result = Math.abs(outputs[y] - value);
 
-                if (! (result < BIG_NUMBER ) )   // *NOT* (input.x >= BIG_NUMBER)
+                if (! (result < BIG_NUMBER ) )   // *NOT* (value >= BIG_NUMBER)
                     result = BIG_NUMBER;
 
                 // very slight math errors can creep in when evaluating
@@ -154,4 +187,47 @@ public class Regression extends GPProblem implements SimpleProblemForm
             ind.evaluated = true;
             }
         }
+
+    /** Benchmarks batch evaluation against evaluating trees once per training point.
+        Takes the same arguments as ec.Evolve (for example, <tt>-file erc.params -p eval.problem.size=1000</tt>),
+        builds the initial population, and evaluates it over and over both ways, checking that
+        every individual gets the same fitness either way. */
+    public static void main(String[] args)
+        {
+        EvolutionState state = Evolve.initialize(Evolve.loadParameterDatabase(args), 0);
+        state.startFresh();
+        Regression problem = (Regression)(state.evaluator.p_problem.clone());
+        Individual[] inds = state.population.subpops[0].individuals;
+        float[] fitnesses = new float[inds.length];
+        int numBatch = 0;
+        for(int i=0;i<inds.length;i++)
+            if (((GPIndividual)inds[i]).trees[0].child.subtreeCanEvalBatch()) numBatch++;
+
+        for(int pass=0;pass<10;pass++)  // the first passes warm up
+            {
+            long[] times = new long[2];
+            for(int b=0;b<2;b++)
+                {
+                problem.batch = (b == 1);
+                long time = System.nanoTime();
+                for(int i=0;i<inds.length;i++)
+                    {
+                    inds[i].evaluated = false;
+                    problem.evaluate(state, inds[i], 0, 0);
+                    }
+                times[b] = System.nanoTime() - time;
+                for(int i=0;i<inds.length;i++)
+                    {
+                    float f = ((KozaFitness)(inds[i].fitness)).standardizedFitness();
+                    if (b == 0) fitnesses[i] = f;
+                    else if (Float.floatToIntBits(f) != Float.floatToIntBits(fitnesses[i]))
+                        state.output.fatal("Individual " + i + " has fitness " + fitnesses[i] + " one point at a time but " + f + " in batch.");
+                    }
+                }
+            state.output.message("Pass " + pass + ": " + inds.length + " individuals (" + numBatch + " in batch), " +
+                problem.trainingSetSize + " training points.  One point at a time: " + (times[0] / 1000000.0) +
+                " ms.  Batch: " + (times[1] / 1000000.0) + " ms.");
+            }
+        Evolve.cleanup(state);
+        }
     }
@@ -55,6 +55,25 @@ public class Add extends GPNode
         children[1].eval(state,thread,input,stack,individual,problem);
         rd.x = result + rd.x;
         }
+
+    public boolean canEvalBatch() { return true; }
+
+    public void evalBatch(final EvolutionState state,
+        final int thread,
+        final double[] result,
+        final int depth,
+        final GPBatch batch,
+        final ADFStack stack,
+        final GPIndividual individual,
+        final Problem problem)
+        {
+        double[] second = batch.buffer(depth);
+        children[0].evalBatch(state,thread,result,depth+1,batch,stack,individual,problem);
+        children[1].evalBatch(state,thread,second,depth+1,batch,stack,individual,problem);
+        final int length = batch.length;
+        for(int i=0;i<length;i++)
+            result[i] = result[i] + second[i];
+        }
     }
 
 
@@ -62,6 +62,26 @@ public class Div extends GPNode
             rd.x = rd.x / result;
             }
         }
+
+    public boolean canEvalBatch() { return true; }
+
+    public void evalBatch(final EvolutionState state,
+        final int thread,
+        final double[] result,
+        final int depth,
+        final GPBatch batch,
+        final ADFStack stack,
+        final GPIndividual individual,
+        final Problem problem)
+        {
+        double[] second = batch.buffer(depth);
+        children[0].evalBatch(state,thread,result,depth+1,batch,stack,individual,problem);
+        children[1].evalBatch(state,thread,second,depth+1,batch,stack,individual,problem);
+        final int length = batch.length;
+        // the answer is 1.0 wherever the denominator is 0.0
+        for(int i=0;i<length;i++)
+            result[i] = (second[i]==0.0 ? 1.0 : result[i] / second[i]);
+        }
     }
 
 
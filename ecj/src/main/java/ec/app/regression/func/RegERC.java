@@ -103,6 +103,20 @@ public class RegERC extends ERC
         RegressionData rd = ((RegressionData)(input));
         rd.x = value;
         }
+
+    public boolean canEvalBatch() { return true; }
+
+    public void evalBatch(final EvolutionState state,
+        final int thread,
+        final double[] result,
+        final int depth,
+        final GPBatch batch,
+        final ADFStack stack,
+        final GPIndividual individual,
+        final Problem problem)
+        {
+        java.util.Arrays.fill(result, 0, batch.length, value);
+        }
     }
 
 
@@ -51,6 +51,23 @@ public class Sin extends GPNode
         children[0].eval(state,thread,input,stack,individual,problem);
         rd.x = /*Strict*/Math.sin(rd.x);
         }
+
+    public boolean canEvalBatch() { return true; }
+
+    public void evalBatch(final EvolutionState state,
+        final int thread,
+        final double[] result,
+        final int depth,
+        final GPBatch batch,
+        final ADFStack stack,
+        final GPIndividual individual,
+        final Problem problem)
+        {
+        children[0].evalBatch(state,thread,result,depth+1,batch,stack,individual,problem);
+        final int length = batch.length;
+        for(int i=0;i<length;i++)
+            result[i] = /*Strict*/Math.sin(result[i]);
+        }
     }
 
 
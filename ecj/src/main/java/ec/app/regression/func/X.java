@@ -49,6 +49,20 @@ public class X extends GPNode
         RegressionData rd = ((RegressionData)(input));
         rd.x = ((Regression)problem).currentValue;
         }
+
+    public boolean canEvalBatch() { return true; }
+
+    public void evalBatch(final EvolutionState state,
+        final int thread,
+        final double[] result,
+        final int depth,
+        final GPBatch batch,
+        final ADFStack stack,
+        final GPIndividual individual,
+        final Problem problem)
+        {
+        System.arraycopy(((Regression)problem).inputs, 0, result, 0, batch.length);
+        }
     }
 
 
@@ -8,6 +8,7 @@
 package ec.coevolve;
 import ec.*;
 import ec.util.*;
+import ec.select.FitnessSnapshot;
 
 /** 
  * CompetitiveEvaluator.java
@@ -222,6 +223,8 @@ public class CompetitiveEvaluator extends Evaluator
             }
     
         prob.postprocessPopulation(state, state.population, style == STYLE_SINGLE_ELIMINATION);
+
+        FitnessSnapshot.invalidateAll(state);
         }
     
     public void evalSingleElimination( final EvolutionState state,
@@ -9,6 +9,7 @@ package ec.coevolve;
 
 import ec.*;
 import ec.util.*;
+import ec.select.FitnessSnapshot;
 
 /** 
  * MultiPopCoevolutionaryEvaluator.java
@@ -168,6 +169,9 @@ public class MultiPopCoevolutionaryEvaluator extends Evaluator
         ((GroupedProblemForm)p_problem).postprocessPopulation(state, state.population, false);
 
         afterCoevolutionaryEvaluation( state, state.population, (GroupedProblemForm)p_problem );
+
+        // the selection methods snapshot the fitnesses from before this evaluation
+        FitnessSnapshot.invalidateAll(state);
         }
 
     protected void beforeCoevolutionaryEvaluation( final EvolutionState state,
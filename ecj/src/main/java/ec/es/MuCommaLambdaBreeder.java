@@ -248,31 +248,29 @@ public class MuCommaLambdaBreeder extends Breeder
             }
         else
             {
-            Thread[] t = new Thread[state.breedthreads];
+            Runnable[] r = new Runnable[state.breedthreads];
                 
-            // start up the threads
             for(int y=0;y<state.breedthreads;y++)
                 {
-                MuLambdaBreederThread r = new MuLambdaBreederThread();
-                r.threadnum = y;
-                r.newpop = newpop;
-                r.numinds = numinds[y];
-                r.from = from[y];
-                r.me = this;
-                r.state = state;
-                t[y] = new Thread(r);
-                t[y].start();
+                MuLambdaBreederThread t = new MuLambdaBreederThread();
+                t.threadnum = y;
+                t.newpop = newpop;
+                t.numinds = numinds[y];
+                t.from = from[y];
+                t.me = this;
+                t.state = state;
+                r[y] = t;
                 }
                 
-            // gather the threads
-            for(int y=0;y<state.breedthreads;y++) try
-                                                      {
-                                                      t[y].join();
-                                                      }
-                catch(InterruptedException e)
-                    {
-                    state.output.fatal("Whoa! The main breeding thread got interrupted!  Dying...");
-                    }
+            // run the threads in the pool and gather them
+            try
+                {
+                state.pool.runAll(r);
+                }
+            catch(InterruptedException e)
+                {
+                state.output.fatal("Whoa! The main breeding thread got interrupted!  Dying...");
+                }
             }
 
         return postProcess(newpop,state.population,state);
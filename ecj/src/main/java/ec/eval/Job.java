@@ -38,6 +38,7 @@ public class Job
     int type;
 
     boolean sent = false;
+    long sentTime;  // System.nanoTime() when the job was handed to a slave, used by NIOSlaveConnection
     Individual[] inds;   // original individuals
     Individual[] newinds;  // individuals that were returned -- may be different individuals!
     int[] subPops; 
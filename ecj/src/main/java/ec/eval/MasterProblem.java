@@ -34,6 +34,12 @@ import java.io.*;
  <i>jobSize</i> individuals be submitted via evaluate(), and then sends them all off in a group,
  called a <i>job</i>, to the remote slave.  In other situations (coevolution, or no prepareToEvaluate())
  the MasterProblem sends off individuals immediately.
+
+ <p>With <i>adaptive-job-size</i>, <i>jobSize</i> is only the largest job size.  Each job is instead sized
+ to keep a slave busy for about <i>job-time</i> milliseconds, going by the rolling evaluation rate of the
+ slaves, and near the end of a generation, jobs are made smaller so that the last individuals are spread
+ over all the slaves rather than left to a few stragglers (see SlaveMonitor.jobSize(...)).  The monitor's
+ statistics(), printed when it shuts down, show the mean job size and how many jobs were cut.
  
  <p>It may be the case that no Slave has space in its queue to accept a new job containing, among others,
  your new individual.  In this case, calling evaluate() will block until one comes available.  You can avoid
@@ -68,6 +74,21 @@ import java.io.*;
  <td valign=top>(how large should a job be at most?)<br>
  </td></tr>
 
+ <tr><td valign=top><i>base.</i><tt>adaptive-job-size</tt><br>
+ <font size=-1>boolean, default false</font></td>
+ <td valign=top>(should the job size adapt to how fast the slaves evaluate individuals?)<br>
+ </td></tr>
+
+ <tr><td valign=top><i>base.</i><tt>min-job-size</tt><br>
+ <font size=-1>integer &gt; 0, default 1</font></td>
+ <td valign=top>(with adaptive job sizes, how large should a job be at least?)<br>
+ </td></tr>
+
+ <tr><td valign=top><i>base.</i><tt>job-time</tt><br>
+ <font size=-1>integer &gt; 0, default 1000</font></td>
+ <td valign=top>(with adaptive job sizes, about how many milliseconds should a slave spend on a job?)<br>
+ </td></tr>
+
 
  <!-- technically these are handled by the SlaveMonitor -->
 
@@ -83,6 +104,10 @@ import java.io.*;
  <font size=-1>int</font></td>
  <td valign=top>(the maximum load (number of jobs) per slave at any point in time)<br>
  </td></tr>
+ <tr><td valign=top><tt>eval.master.nio</tt><br>
+ <font size=-1>boolean, default false</font></td>
+ <td valign=top>(whether to talk to all the slaves from one thread with an NIOSlaveMonitor, rather than from two threads per slave)<br>
+ </td></tr>
 
  </table>
 
@@ -94,8 +119,15 @@ public class MasterProblem extends Problem implements SimpleProblemForm, Grouped
     {
     public static final String P_DEBUG_INFO = "debug-info";
     public static final String P_JOB_SIZE = "job-size";
+    public static final String P_ADAPTIVE_JOB_SIZE = "adaptive-job-size";
+    public static final String P_MIN_JOB_SIZE = "min-job-size";
+    public static final String P_JOB_TIME = "job-time";
         
     int jobSize;
+    boolean adaptiveJobSize;
+    int minJobSize;
+    int jobTime;
+    int currentJobSize;  // size of the job being filled
     boolean showDebugInfo;
     public Problem problem;
     public boolean batchMode;
@@ -110,6 +142,9 @@ public class MasterProblem extends Problem implements SimpleProblemForm, Grouped
         c.monitor = monitor;
         c.batchMode = batchMode;
         c.jobSize = jobSize; 
+        c.adaptiveJobSize = adaptiveJobSize;
+        c.minJobSize = minJobSize;
+        c.jobTime = jobTime;
         c.showDebugInfo = showDebugInfo;
 
         // deep-cloned stuff
@@ -129,6 +164,14 @@ public class MasterProblem extends Problem implements SimpleProblemForm, Grouped
         if (jobSize<=0)
             state.output.fatal("The job size must be an integer > 0.", base.push(P_JOB_SIZE));
 
+        adaptiveJobSize = state.parameters.getBoolean(base.push(P_ADAPTIVE_JOB_SIZE),null,false);
+        minJobSize = state.parameters.getIntWithDefault(base.push(P_MIN_JOB_SIZE),null,1);
+        if (minJobSize<=0 || minJobSize>jobSize)
+            state.output.fatal("The minimum job size must be an integer > 0 and no larger than the job size.", base.push(P_MIN_JOB_SIZE));
+        jobTime = state.parameters.getIntWithDefault(base.push(P_JOB_TIME),null,1000);
+        if (jobTime<=0)
+            state.output.fatal("The job time must be an integer > 0.", base.push(P_JOB_TIME));
+
         batchMode = false;
         }
 
@@ -158,8 +201,10 @@ public class MasterProblem extends Problem implements SimpleProblemForm, Grouped
         {
         if (jobSize > 1 && batchMode == true)    // chunked evaluation mechanism
             {
+            if (queue.size() == 0)
+                currentJobSize = (adaptiveJobSize ? monitor.jobSize(state, minJobSize, jobSize, jobTime) : jobSize);
             queue.add(new QueueIndividual(ind, subpopulation));
-            if (queue.size() >= jobSize)
+            if (queue.size() >= currentJobSize)
                 flush(state, threadnum);
             }
         else    /// ordinary evaluation mechanism  
@@ -287,7 +332,9 @@ public class MasterProblem extends Problem implements SimpleProblemForm, Grouped
         {
         if(showDebugInfo)
             state.output.message(Thread.currentThread().getName() + "Spawning the server thread.");
-        monitor = new SlaveMonitor(state, showDebugInfo);
+        if (state.parameters.getBoolean(new Parameter(SlaveMonitor.P_EVALMASTERNIO),null,false))
+            monitor = new NIOSlaveMonitor(state, showDebugInfo);
+        else monitor = new SlaveMonitor(state, showDebugInfo);
         }
 
     /** Reinitialize contacts with the slaves */
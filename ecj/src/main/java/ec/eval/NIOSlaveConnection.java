@@ -0,0 +1,300 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+
+package ec.eval;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import ec.*;
+
+/**
+ * NIOSlaveConnection.java
+ *
+
+ This class holds the state of one slave talking to a NIOSlaveMonitor: its channel, the bytes
+ read from the slave but not parsed yet, the messages waiting to be sent, and the queue of jobs the
+ slave has been asked to evaluate.  Unlike SlaveConnection, it has no threads of its own.  Jobs are
+ encoded by the threads which schedule them; everything else is done by the monitor's event loop.
+
+ <p>The slave's replies aren't framed, so a reply can only be parsed once all of it has arrived.
+ The connection parses one individual at a time; if an individual is cut short (readIndividual(...)
+ or readFitness(...) runs into an EOFException), it is parsed again from the start when more bytes
+ come in.
+
+ <P>Generally NIOSlaveConnection is only seen by NIOSlaveMonitor.
+
+ * @author Sean Luke
+ * @version 1.0
+ */
+
+class NIOSlaveConnection
+    {
+    static final int INITIAL_BUFFER_SIZE = 1 << 16;
+
+    /** Name of the slave process, null until the slave has introduced itself */
+    String slaveName;
+
+    SocketChannel channel;
+    SelectionKey key;
+
+    // bytes read from the slave, in write mode between reads
+    ByteBuffer in = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+
+    // reads from the unparsed bytes in 'in' (which must be in read mode)
+    DataInputStream dataIn = new DataInputStream(new InputStream()
+        {
+        public int read()
+            {
+            if (!in.hasRemaining()) return -1;
+            return in.get() & 0xFF;
+            }
+
+        public int read(byte[] b, int off, int len)
+            {
+            if (len == 0) return 0;
+            if (!in.hasRemaining()) return -1;
+            len = Math.min(len, in.remaining());
+            in.get(b, off, len);
+            return len;
+            }
+        });
+
+    // messages to send, the first one may be partly sent
+    ConcurrentLinkedQueue outgoing = new ConcurrentLinkedQueue();
+
+    // given that we expect the slave to return the evaluated individuals in the exact same order,
+    // the jobs need to be represented as a queue.
+    ConcurrentLinkedQueue jobs = new ConcurrentLinkedQueue();
+
+    // the job being read, and the next of its individuals to read
+    Job reading;
+    int readingIndex;
+
+    // set when the connection is dropped, guarded by synchronizing on the connection
+    boolean closed;
+
+    // statistics, only updated by the event loop
+    long connectedAt = System.nanoTime();
+    long jobsDone;
+    long individualsDone;
+    long bytesSent;
+    long bytesReceived;
+    long totalLatency;  // nanoseconds between scheduling a job and reading its last individual
+    long maxLatency;
+    long lastFinished;  // when the slave finished its last job
+
+    NIOSlaveConnection(SocketChannel channel)
+        {
+        this.channel = channel;
+        }
+
+    public String toString() { return "Slave(" + slaveName + ")"; }
+
+    /** Returns the number of jobs that the slave is in charge of. */
+    public int numJobs()
+        {
+        return jobs.size();
+        }
+
+    /** Encodes a job the way SlaveConnection would write it. */
+    static ByteBuffer encode(EvolutionState state, Job job) throws IOException
+        {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream dataOut = new DataOutputStream(bytes);
+        if( job.type == Slave.V_EVALUATESIMPLE )
+            {
+            dataOut.writeByte(Slave.V_EVALUATESIMPLE);
+            }
+        else
+            {
+            dataOut.writeByte(Slave.V_EVALUATEGROUPED);
+            dataOut.writeBoolean(job.countVictoriesOnly);
+            }
+        dataOut.writeInt(job.inds.length);
+        for(int x=0;x<job.subPops.length;x++)
+            dataOut.writeInt(job.subPops[x]);
+        for(int i=0;i<job.inds.length;i++)
+            {
+            job.inds[i].writeIndividual(state, dataOut);
+            dataOut.writeBoolean(job.updateFitness[i]);
+            }
+        dataOut.flush();
+        return ByteBuffer.wrap(bytes.toByteArray());
+        }
+
+    /** Adds a job and its encoded message to the queues, unless the connection has been dropped.
+        Returns false if it has. */
+    synchronized boolean enqueue(Job job, ByteBuffer message)
+        {
+        if (closed) return false;
+        job.sent = true;
+        job.sentTime = System.nanoTime();
+        jobs.add(job);
+        outgoing.add(message);
+        return true;
+        }
+
+    /** Writes as much of the outgoing messages as the channel takes without blocking, and
+        asks the selector to tell us when it takes more if something is left.  Only called
+        by the event loop. */
+    void write() throws IOException
+        {
+        ByteBuffer message;
+        while((message = (ByteBuffer)(outgoing.peek())) != null)
+            {
+            bytesSent += channel.write(message);
+            if (message.hasRemaining()) break;
+            outgoing.poll();
+            }
+        key.interestOps(message == null ? SelectionKey.OP_READ :
+            SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+    /** Reads what the slave has sent.  Returns false if the slave has closed the connection.
+        Only called by the event loop. */
+    boolean read() throws IOException
+        {
+        if (!in.hasRemaining())
+            {
+            ByteBuffer b = ByteBuffer.allocate(in.capacity() * 2);
+            in.flip();
+            b.put(in);
+            in = b;
+            }
+        int n = channel.read(in);
+        if (n < 0) return false;
+        bytesReceived += n;
+        return true;
+        }
+
+    /** Reads the slave's name from the unparsed bytes.  Returns false if not all of it has arrived. */
+    boolean parseName() throws IOException
+        {
+        in.flip();
+        int start = in.position();
+        try
+            {
+            slaveName = dataIn.readUTF();
+            return true;
+            }
+        catch (EOFException e)
+            {
+            in.position(start);
+            return false;
+            }
+        finally
+            {
+            in.compact();
+            }
+        }
+
+    /** Parses as many individuals as have fully arrived, and returns the jobs whose
+        individuals have all been read and copied back, if any, or null.  Only called by the event loop. */
+    java.util.List parseJobs(EvolutionState state, SlaveMonitor monitor) throws IOException
+        {
+        java.util.List done = null;
+        in.flip();
+        try
+            {
+            while(in.hasRemaining())
+                {
+                if (reading == null)
+                    {
+                    reading = (Job)(jobs.peek());
+                    if (reading == null)
+                        throw new IOException("Slave sent data without being given a job");
+                    ///// COPY THE INDIVIDUALS FORWARD INTO NEWINDS, see SlaveConnection.readLoop()
+                    reading.copyIndividualsForward();
+                    readingIndex = 0;
+                    }
+
+                int start = in.position();
+                try
+                    {
+                    readIndividual(state, reading.newinds[readingIndex]);
+                    }
+                catch (EOFException e)
+                    {
+                    // not all of it is here yet: start over with a fresh copy when there's more
+                    in.position(start);
+                    reading.newinds[readingIndex] = (Individual)(reading.inds[readingIndex].clone());
+                    break;
+                    }
+
+                if (++readingIndex == reading.newinds.length)
+                    {
+                    reading.copyIndividualsBack(state);
+                    jobs.poll();
+
+                    long now = System.nanoTime();
+                    long latency = now - reading.sentTime;
+                    totalLatency += latency;
+                    if (latency > maxLatency) maxLatency = latency;
+                    jobsDone++;
+                    individualsDone += reading.inds.length;
+                    // the slave started on the job when it got it, or when it finished the previous one
+                    monitor.recordJob(reading, Math.max(reading.sentTime, lastFinished), now);
+                    lastFinished = now;
+
+                    if (done == null) done = new java.util.ArrayList();
+                    done.add(reading);
+                    reading = null;
+                    }
+                }
+            }
+        finally
+            {
+            in.compact();
+            }
+        return done;
+        }
+
+    void readIndividual(EvolutionState state, Individual ind) throws IOException
+        {
+        byte val = dataIn.readByte();
+        if (val == Slave.V_INDIVIDUAL)
+            {
+            ind.readIndividual(state, dataIn);
+            }
+        else if (val == Slave.V_FITNESS)
+            {
+            ind.evaluated = dataIn.readBoolean();
+            ind.fitness.readFitness(state,dataIn);
+            }
+        else if (val == Slave.V_NOTHING)
+            {
+            // do nothing
+            }
+        }
+
+    /** Marks the connection as dropped and returns the jobs it was in charge of. */
+    synchronized java.util.List close()
+        {
+        closed = true;
+        java.util.List lost = new java.util.ArrayList(jobs);
+        jobs.clear();
+        outgoing.clear();
+        reading = null;
+        if (key != null) key.cancel();
+        try { channel.close(); } catch (IOException e) { }
+        return lost;
+        }
+
+    /** One line of statistics about the slave */
+    String statistics()
+        {
+        double seconds = (System.nanoTime() - connectedAt) / 1.0e9;
+        return toString() + ": " + jobsDone + " jobs, " + individualsDone + " individuals (" +
+            (seconds > 0 ? (long)(individualsDone / seconds) : 0) + "/s), mean latency " +
+            (jobsDone > 0 ? totalLatency / jobsDone / 1000000 : 0) + " ms, max latency " +
+            maxLatency / 1000000 + " ms, " + bytesSent / 1024 + " KB sent, " +
+            bytesReceived / 1024 + " KB received";
+        }
+    }
@@ -0,0 +1,386 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+
+package ec.eval;
+
+import ec.*;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import ec.util.*;
+import ec.steadystate.QueueIndividual;
+
+/**
+ * NIOSlaveMonitor.java
+ *
+
+ <P>NIOSlaveMonitor is a SlaveMonitor which talks to all of its slaves from a single thread, using
+ a java.nio Selector, instead of running a reader and a writer thread per slave.  It speaks the same
+ protocol as SlaveMonitor, so the slaves are ordinary ec.eval.Slave processes.  It's meant for masters
+ with many slaves (hundreds of slave processes), where SlaveMonitor spends its time switching
+ between threads and waiting on locks.
+
+ <p>The threads which schedule jobs encode them into messages themselves, then hand them to the
+ event loop, which writes them out as far as the sockets take them without blocking.  The event loop
+ reads the slaves' replies and copies the individuals back.
+
+ <p>Every slave accepts at most <tt>eval.masterproblem.max-jobs-per-slave</tt> jobs at a time.  The
+ monitor keeps one <i>credit</i> per free job slot of each slave in a queue: scheduling a job takes
+ a credit (blocking until there is one), and a finished job puts its credit back at the end of the
+ queue, so jobs go to the slaves which return them first.
+
+ <p>When the monitor shuts down, it prints the number of jobs and individuals each slave has evaluated,
+ the mean and maximum latency between scheduling a job and getting its results back, and the
+ number of bytes sent and received.  statistics() returns the same thing at any time.
+
+ <p>Compression is not supported: <tt>eval.compression</tt> must be false.
+
+ <p><b>Parameters</b><br>
+ <table>
+ <tr><td valign=top><tt>eval.master.nio</tt><br>
+ <font size=-1>boolean, default false</font></td>
+ <td valign=top>(should MasterProblem use an NIOSlaveMonitor rather than a SlaveMonitor?)<br>
+ </td></tr>
+ </table>
+
+ * @author Sean Luke
+ * @version 1.0
+ */
+
+public class NIOSlaveMonitor extends SlaveMonitor
+    {
+    ServerSocketChannel server;
+    Selector selector;
+
+    // all connected slaves
+    List connections = new CopyOnWriteArrayList();
+
+    // one entry per free job slot of a slave
+    LinkedBlockingQueue credits = new LinkedBlockingQueue();
+
+    // connections with new messages to send
+    ConcurrentLinkedQueue pending = new ConcurrentLinkedQueue();
+
+    // individuals which came back, for steady state evolution
+    LinkedBlockingQueue evaluated = new LinkedBlockingQueue();
+
+    // jobs scheduled but not finished yet, guarded by synchronizing on itself when waiting
+    AtomicInteger outstanding = new AtomicInteger();
+
+    public NIOSlaveMonitor( final EvolutionState state, boolean showDebugInfo )
+        {
+        super(state, showDebugInfo, false);
+
+        if (useCompression)
+            state.output.fatal("The NIO transport can't compress its streams, so you must set eval.compression=false.",
+                new Parameter(P_EVALCOMPRESSION));
+        if (maxJobsPerSlave <= 0)
+            state.output.fatal("The maximum number of jobs per slave must be an integer > 0.",
+                new Parameter(P_MAXIMUMNUMBEROFCONCURRENTJOBSPERSLAVE));
+
+        int port = state.parameters.getInt(
+            new Parameter( P_EVALMASTERPORT ),null);
+
+        try
+            {
+            selector = Selector.open();
+            server = ServerSocketChannel.open();
+            server.socket().setReuseAddress(true);
+            server.socket().bind(new InetSocketAddress(port));
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            }
+        catch( IOException e )
+            {
+            state.output.fatal("Unable to bind to port " + port + ": " + e);
+            }
+
+        thread = new Thread(new Runnable()
+            {
+            public void run()
+                {
+                Thread.currentThread().setName("NIOSlaveMonitor::    ");
+                while (!isShutdownInProgress())
+                    {
+                    try
+                        {
+                        selector.select();
+                        }
+                    catch (IOException e)
+                        {
+                        state.output.fatal("The slave monitor's selector failed: " + e);
+                        }
+                    if (isShutdownInProgress()) break;
+
+                    // new messages to send
+                    NIOSlaveConnection c;
+                    while((c = (NIOSlaveConnection)(pending.poll())) != null)
+                        {
+                        if (c.closed) continue;
+                        try { c.write(); }
+                        catch (IOException e) { drop(c, e); }
+                        }
+
+                    Iterator i = selector.selectedKeys().iterator();
+                    while(i.hasNext())
+                        {
+                        SelectionKey key = (SelectionKey)(i.next());
+                        i.remove();
+                        if (!key.isValid()) continue;
+                        if (key.isAcceptable())
+                            {
+                            accept();
+                            continue;
+                            }
+                        c = (NIOSlaveConnection)(key.attachment());
+                        try
+                            {
+                            if (key.isWritable())
+                                c.write();
+                            if (key.isValid() && key.isReadable())
+                                {
+                                if (!c.read())
+                                    drop(c, null);
+                                else if (c.slaveName == null)
+                                    {
+                                    if (c.parseName())
+                                        register(c);
+                                    }
+                                else finished(c, c.parseJobs(state, NIOSlaveMonitor.this));
+                                }
+                            }
+                        catch (IOException e) { drop(c, e); }
+                        }
+                    }
+                debug( Thread.currentThread().getName() + " The monitor is shutting down." );
+                }
+            });
+        thread.start();
+        }
+
+    // accepts a slave, which then has to introduce itself
+    void accept()
+        {
+        try
+            {
+            SocketChannel channel = server.accept();
+            if (channel == null) return;
+            debug(Thread.currentThread().getName() + " Slave attempts to connect." );
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            NIOSlaveConnection c = new NIOSlaveConnection(channel);
+            c.key = channel.register(selector, SelectionKey.OP_READ, c);
+            }
+        catch (IOException e) { }
+        }
+
+    // sends the slave its random seed and makes it available for jobs
+    void register(NIOSlaveConnection c) throws IOException
+        {
+        ByteBuffer seed = ByteBuffer.allocate(4);
+        seed.putInt(randomSeed);
+        seed.flip();
+        randomSeed+=SEED_INCREMENT;
+        c.outgoing.add(seed);
+        c.write();
+
+        connections.add(c);
+        for(int x=0;x<maxJobsPerSlave;x++)
+            credits.add(c);
+        state.output.systemMessage( "Slave " + c.slaveName + " connected successfully." );
+        }
+
+    // puts back the credits of finished jobs and lets the waiting threads know
+    void finished(NIOSlaveConnection c, List jobs)
+        {
+        if (jobs == null) return;
+        for(int i=0;i<jobs.size();i++)
+            {
+            Job job = (Job)(jobs.get(i));
+            credits.add(c);
+            if( state instanceof ec.steadystate.SteadyStateEvolutionState )
+                {
+                // see SlaveMonitor.notifySlaveAvailability(...)
+                for(int x=0; x<job.inds.length;x++)
+                    evaluated.add( new QueueIndividual(job.inds[x], job.subPops[x]) );
+                }
+            }
+        if (outstanding.addAndGet(-jobs.size()) == 0)
+            synchronized(outstanding) { outstanding.notifyAll(); }
+        }
+
+    // drops a slave which failed or went away, and gives its jobs to the other slaves
+    void drop(NIOSlaveConnection c, IOException e)
+        {
+        if (c.closed) return;
+        final List lost = c.close();
+        connections.remove(c);
+        credits.removeAll(Collections.singleton(c));
+        if (c.slaveName == null) return;  // never registered
+        state.output.systemMessage( c.toString() + " Slave is shutting down...." + (e == null ? "" : " (" + e + ")"));
+        debug(c.statistics());
+        if (lost.isEmpty()) return;
+
+        // we can't wait for a free slave here, because the event loop is what frees them
+        Thread rescheduler = new Thread(new Runnable()
+            {
+            public void run()
+                {
+                for(int i=0;i<lost.size();i++)
+                    {
+                    Job job = (Job)(lost.get(i));
+                    job.sent = false;  // reuse
+                    job.newinds = null;
+                    assign(state, job);
+                    }
+                }
+            });
+        rescheduler.setDaemon(true);
+        rescheduler.start();
+        }
+
+    /**
+       Shuts down the slave monitor (also shuts down all slaves).
+    */
+    public void shutdown()
+        {
+        setShutdownInProgress(true);
+        selector.wakeup();
+        try { thread.join(); }
+        catch (InterruptedException e) { }
+        try { server.close(); } catch (IOException e) { }
+
+        // the event loop is gone, so just block until the slaves have got everything
+        for(int i=0;i<connections.size();i++)
+            {
+            NIOSlaveConnection c = (NIOSlaveConnection)(connections.get(i));
+            try
+                {
+                c.key.cancel();
+                selector.selectNow();  // actually deregisters the channel
+                c.channel.configureBlocking(true);
+                c.outgoing.add(ByteBuffer.wrap(new byte[] { Slave.V_SHUTDOWN }));
+                ByteBuffer message;
+                while((message = (ByteBuffer)(c.outgoing.poll())) != null)
+                    while(message.hasRemaining())
+                        c.bytesSent += c.channel.write(message);
+                }
+            catch (IOException e) { }  // it's going away anyway
+            c.close();
+            state.output.systemMessage(c.statistics());
+            }
+        connections.clear();
+        try { selector.close(); } catch (IOException e) { }
+        if (showDebugInfo || getAdaptiveJobs() > 0)
+            state.output.systemMessage(super.statistics());
+        }
+
+    /**
+       Schedules a job for execution on one of the available slaves.  The monitor waits until at least one
+       slave has space for the job.
+    */
+    public void scheduleJobForEvaluation( final EvolutionState state, Job job )
+        {
+        if (isShutdownInProgress()) return;  // no more jobs allowed.
+        outstanding.incrementAndGet();
+        assign(state, job);
+        }
+
+    // encodes the job and hands it to the next slave with a free job slot
+    void assign(final EvolutionState state, Job job)
+        {
+        ByteBuffer message = null;
+        try
+            {
+            message = NIOSlaveConnection.encode(state, job);
+            }
+        catch (IOException e)
+            {
+            state.output.fatal("Caught impossible IOException while encoding a job: " + e);
+            }
+
+        while(!isShutdownInProgress())
+            {
+            NIOSlaveConnection c;
+            try
+                {
+                debug("Waiting for an available slave." );
+                c = (NIOSlaveConnection)(credits.take());
+                }
+            catch (InterruptedException e) { return; }
+            message.rewind();
+            if (c.enqueue(job, message))  // else it's been dropped, so try the next one
+                {
+                debug( "Got a slave available for work." );
+                pending.add(c);
+                selector.wakeup();
+                return;
+                }
+            }
+        }
+
+    /**
+       This method returns only when all jobs which have been scheduled have been finished.
+       See SlaveMonitor.waitForAllSlavesToFinishEvaluating(...).
+    */
+    public void waitForAllSlavesToFinishEvaluating( final EvolutionState state )
+        {
+        synchronized(outstanding)
+            {
+            while(outstanding.get() != 0)
+                {
+                debug("Waiting for slaves to finish their jobs." );
+                if (!waitOnMonitor(outstanding)) break;
+                }
+            }
+        debug("All slaves have finished their jobs." );
+        }
+
+    public boolean evaluatedIndividualAvailable()
+        {
+        return !evaluated.isEmpty();
+        }
+
+    /** Blocks until an individual comes available */
+    public QueueIndividual waitForIndividual()
+        {
+        while(true)
+            {
+            try
+                {
+                return (QueueIndividual)(evaluated.take());
+                }
+            catch (InterruptedException e) { }
+            }
+        }
+
+    /** Returns the number of free job slots over all slaves */
+    int numAvailableSlaves()
+        {
+        return credits.size();
+        }
+
+    int numSlaves()
+        {
+        return connections.size();
+        }
+
+    /** Returns the summary of SlaveMonitor.statistics(), then one line of statistics per connected slave:
+        jobs and individuals evaluated, individuals per second, mean and maximum latency, and bytes sent and received. */
+    public String statistics()
+        {
+        StringBuffer buf = new StringBuffer(super.statistics()).append("\n");
+        for(int i=0;i<connections.size();i++)
+            buf.append(((NIOSlaveConnection)(connections.get(i))).statistics()).append("\n");
+        return buf.toString();
+        }
+    }
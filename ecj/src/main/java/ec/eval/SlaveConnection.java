@@ -57,6 +57,9 @@ class SlaveConnection
     // the jobs need to be represented as a queue.
     private LinkedList jobs = new LinkedList();
 
+    // when the slave finished its last job, only used by the reader thread
+    long lastFinished;
+
     /**
        The constructor also creates the queue storing the jobs that the slave
        has been asked to evaluate.  It also creates and launches the worker
@@ -193,6 +196,7 @@ class SlaveConnection
                 {
                 // send the job
                 debug("" + Thread.currentThread().getName() + "Sending Job");
+                job.sentTime = System.nanoTime();
                 if( job.type == Slave.V_EVALUATESIMPLE )
                     {
                     // Tell the server we're evaluating a SimpleProblemForm
@@ -290,6 +294,11 @@ class SlaveConnection
             // Now we have all the individuals in so we're good.  Copy them back into the original individuals
             job.copyIndividualsBack(state);
 
+            // the slave started on the job when it got it, or when it finished the previous one
+            long now = System.nanoTime();
+            slaveMonitor.recordJob(job, Math.max(job.sentTime, lastFinished), now);
+            lastFinished = now;
+
 
             ///// LAST STEP: LET OTHERS KNOW WE'RE DONE AND AVAILABLE FOR ANOTHER JOB
 
@@ -42,7 +42,13 @@ public class SlaveMonitor
     public static final String P_EVALMASTERPORT = "eval.master.port";
     public static final String P_EVALCOMPRESSION = "eval.compression";
     public static final String P_MAXIMUMNUMBEROFCONCURRENTJOBSPERSLAVE = "eval.masterproblem.max-jobs-per-slave";
+    public static final String P_EVALMASTERNIO = "eval.master.nio";
     public static final int SEED_INCREMENT = 7919; // a large value (prime for fun) bigger than expected number of threads per slave
+    /** How much a newly finished job counts in the rolling evaluation rate */
+    public static final double RATE_WEIGHT = 0.2;
+    /** Adaptive jobs are no larger than the individuals left to submit in a generation divided by
+        TAIL_SPLIT times the number of slaves, so the tail of a generation is spread over all the slaves. */
+    public static final int TAIL_SPLIT = 2;
 
     public EvolutionState state;
     
@@ -103,6 +109,15 @@ public class SlaveMonitor
        that a slave can be entrusted with at each time).
     */
     public SlaveMonitor( final EvolutionState state, boolean showDebugInfo )
+        {
+        this(state, showDebugInfo, true);
+        }
+
+    /**
+       Reads the parameters common to all monitors, and if <i>listen</i> is true, opens the server socket
+       and starts the thread which accepts the slaves.  Subclasses with their own transport pass false.
+    */
+    protected SlaveMonitor( final EvolutionState state, boolean showDebugInfo, boolean listen )
         {
         this.showDebugInfo = showDebugInfo;
         this.state = state;
@@ -115,6 +130,10 @@ public class SlaveMonitor
 
         useCompression = state.parameters.getBoolean(new Parameter(P_EVALCOMPRESSION),null,false);
                 
+        randomSeed = (int)(System.currentTimeMillis());
+
+        if (!listen) return;
+
         try
             {
             servSock = new ServerSocket(port);
@@ -123,8 +142,6 @@ public class SlaveMonitor
             {
             state.output.fatal("Unable to bind to port " + port + ": " + e);
             }
-                
-        randomSeed = (int)(System.currentTimeMillis());
 
         // spawn the thread
         thread = new Thread(new Runnable()
@@ -228,6 +245,107 @@ public class SlaveMonitor
             }
         }
 
+    // statistics of the finished jobs and the adaptive job sizes, see recordJob(...) and jobSize(...)
+    Object statisticsLock = new Object[0];  // arrays are serializable
+    long jobsFinished;
+    long individualsFinished;
+    double rate;  // rolling evaluation rate of a slave in individuals per second, 0 until the first job has finished
+    long adaptiveJobs;
+    long tailJobs;
+    int countedGeneration = -1;
+    int unsubmitted;  // individuals of countedGeneration which haven't been put into adaptive jobs yet
+
+    /**
+       Called when a slave has finished a job.  The slave worked on the job from <i>start</i> to <i>end</i>
+       (System.nanoTime()), that is, since it received the job or finished its previous one, whichever is later.
+    */
+    void recordJob(Job job, long start, long end)
+        {
+        synchronized(statisticsLock)
+            {
+            jobsFinished++;
+            individualsFinished += job.inds.length;
+            if (end > start)
+                {
+                double r = job.inds.length * 1.0e9 / (end - start);
+                rate = (rate == 0 ? r : (1 - RATE_WEIGHT) * rate + RATE_WEIGHT * r);
+                }
+            }
+        }
+
+    /** Returns the number of connected slaves */
+    int numSlaves()
+        {
+        synchronized(allSlaves) { return allSlaves.size(); }
+        }
+
+    /**
+       Returns the size of the next job for MasterProblem's adaptive job sizing, between <i>minSize</i> and
+       <i>maxSize</i>.  A job should keep a slave busy for about <i>jobTime</i> milliseconds at the rolling
+       evaluation rate, but near the end of a generation, jobs are cut so that the remaining individuals
+       are spread over all the slaves (see TAIL_SPLIT).  The individuals of the returned size are considered
+       submitted.
+    */
+    public int jobSize(final EvolutionState state, int minSize, int maxSize, int jobTime)
+        {
+        int slaves = Math.max(1, numSlaves());
+        synchronized(statisticsLock)
+            {
+            int size = maxSize;
+            if (rate > 0)
+                size = (int)Math.min(size, Math.max(1, rate * jobTime / 1000.0));
+
+            if (!(state instanceof ec.steadystate.SteadyStateEvolutionState))
+                {
+                if (countedGeneration != state.generation)
+                    {
+                    // a new generation: the evaluator will hand us all the individuals
+                    countedGeneration = state.generation;
+                    unsubmitted = 0;
+                    for(int x=0;x<state.population.subpops.length;x++)
+                        unsubmitted += state.population.subpops[x].individuals.length;
+                    }
+                int tail = (unsubmitted + TAIL_SPLIT * slaves - 1) / (TAIL_SPLIT * slaves);
+                if (tail < size)
+                    {
+                    size = tail;
+                    tailJobs++;
+                    }
+                }
+
+            if (size < minSize) size = minSize;
+            unsubmitted = Math.max(0, unsubmitted - size);
+            adaptiveJobs++;
+            return size;
+            }
+        }
+
+    /** Returns the number of jobs the slaves have finished */
+    public long getJobsFinished() { synchronized(statisticsLock) { return jobsFinished; } }
+
+    /** Returns the number of individuals the slaves have evaluated */
+    public long getIndividualsFinished() { synchronized(statisticsLock) { return individualsFinished; } }
+
+    /** Returns the rolling evaluation rate of a slave, in individuals per second, or 0 if no job has finished yet */
+    public double getEvaluationRate() { synchronized(statisticsLock) { return rate; } }
+
+    /** Returns the number of adaptive jobs, and of those, the number which were cut to spread the
+        tail of a generation over the slaves */
+    public long getAdaptiveJobs() { synchronized(statisticsLock) { return adaptiveJobs; } }
+    public long getTailJobs() { synchronized(statisticsLock) { return tailJobs; } }
+
+    /** Returns a summary of the jobs the slaves have evaluated */
+    public String statistics()
+        {
+        synchronized(statisticsLock)
+            {
+            return "Slaves finished " + jobsFinished + " jobs, " + individualsFinished + " individuals (mean job size " +
+                (jobsFinished == 0 ? 0 : individualsFinished / (double)jobsFinished) + "), rolling rate per slave " +
+                (long)rate + " individuals/s" +
+                (adaptiveJobs == 0 ? "" : ", " + adaptiveJobs + " adaptive jobs of which " + tailJobs + " were cut at the end of a generation");
+            }
+        }
+
     /**
        Shuts down the slave monitor (also shuts down all slaves).
     */
@@ -256,6 +374,10 @@ public class SlaveMonitor
                 }
             notifyMonitor(allSlaves);
             }
+
+        // the statistics are only of interest when tuning adaptive job sizes or debugging
+        if (showDebugInfo || getAdaptiveJobs() > 0)
+            state.output.systemMessage(statistics());
         }
 
     /**
@@ -8,6 +8,7 @@
 package ec.exchange;
 import ec.*;
 import ec.util.*;
+import ec.select.FitnessSnapshot;
 import java.io.*;
 
 /* 
@@ -393,6 +394,7 @@ public class InterPopulationExchange extends Exchanger
                 selected[indeces[i]] = true;
                 }
             exchangeInformation[x].indsToDieSelectionMethod.finishProducing( state, x, 0 );
+            FitnessSnapshot.invalidate( state, x );  // the immigrants are about to replace them
 
             for( int y = 0 ; y < nImmigrants[x] ; y++ )
                 {
@@ -9,8 +9,11 @@ package ec.exchange;
 import java.util.*;
 import java.io.*;
 import java.net.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import ec.*;
 import ec.util.*;
+import ec.select.FitnessSnapshot;
 
 /* 
  * IslandExchange.java
@@ -125,6 +128,24 @@ import ec.util.*;
  * <p> ...this sets up a special process which just spawns a server, and doesn't do
  * all the setup of an evolutionary run.  Of course as usual, for each of the 
  * clients, you'll run <tt>java ec.Evolve ...</tt> instead.
+ *
+ * <p>Normally an island writes its emigrants to the other islands' sockets itself, so
+ * a slow or stuck island makes the islands sending to it wait, and the mailbox looks for
+ * immigrants by polling its sockets.  If the server asks for <i>queued</i> migration, an island
+ * instead copies its emigrants into a bounded queue per destination island, and a sender
+ * thread per destination writes them out in the background; when a queue is full, its
+ * oldest emigrants are dropped rather than waiting.  The mailbox has a reader thread per
+ * incoming island which blocks on its socket and queues the immigrants as they arrive, and
+ * after breeding the island takes whatever has arrived, without waiting for anything.
+ * Emigrants are stamped with the time they were selected, and immigrants older than
+ * <tt>max-migrant-age</tt> milliseconds by the time they are taken are dropped (the islands'
+ * clocks should then be roughly in step).  The island also checks for the server's signals
+ * without waiting on its socket.  When the run is over, each island prints the number of
+ * emigrants sent and dropped per destination, the largest depth its send queues reached, the
+ * time emigrants spent in the queues, the number of immigrants received, merged and dropped,
+ * and their mean and maximum migration latency (the time from selection on the sending
+ * island to arrival).  statistics() returns the same thing at any time.  Queued migration
+ * cannot be synchronous.
 
  <p><b>Parameters</b><br>
  <p><i>Note:</i> some of these parameters are only necessary for creating
@@ -173,6 +194,16 @@ import ec.util.*;
  <td valign=top>
  <i>client</i>: Whether the communication with other islands should be compressed or not.  Compressing uses more CPU, but it may also significantly reduce communication.
  </td></tr>
+ <tr><td valign=top><tt><i>base</i>.max-migrant-age</tt><br>
+ <font size=-1>int >= 0 (default = 0)</font></td>
+ <td valign=top>
+ <i>client</i>: With queued migration, immigrants which were selected more than this many milliseconds ago are dropped rather than merged.  0 means that immigrants never get too old.
+ </td></tr>
+ <tr><td valign=top><tt><i>base</i>.send-queue-capacity</tt><br>
+ <font size=-1>int >= 1 (default = 4)</font></td>
+ <td valign=top>
+ <i>client</i>: With queued migration, the number of batches of emigrants (one batch per subpopulation and migration) waiting to be sent to each destination island.  When the queue is full, the oldest batch is dropped.
+ </td></tr>
  <tr><td valign=top><tt><i>base</i>.i-am-server</tt><br>
  <font size=-1>bool = <tt>true</tt> or <tt>false</tt> (default)</font></td>
  <td valign=top>
@@ -183,6 +214,11 @@ import ec.util.*;
  <td valign=top>
  <i>server</i>: Are we doing a synchronous island model?  If so, the server's modulo and offset override any client's stated modulo and offset.
  </td></tr>
+ <tr><td valign=top><tt><i>base</i>.queued</tt><br>
+ <font size=-1>bool = <tt>true</tt> or <tt>false</tt> (default)</font></td>
+ <td valign=top>
+ <i>server</i>: Should the islands queue their emigrants and send them in the background, and take their immigrants without waiting?  Cannot be combined with <tt>sync</tt>.
+ </td></tr>
  <tr><td valign=top><tt><i>base</i>.num-islands</tt><br>
  <font size=-1>int >= 1</font></td>
  <td valign=top>
@@ -285,6 +321,12 @@ public class IslandExchange extends Exchanger
     /** The selection method for deciding individuals to be replaced by immigrants */
     public static final String P_SELECT_TO_DIE_METHOD = "select-to-die";
 
+    /** How old (in milliseconds) queued immigrants may get before they're dropped */
+    public static final String P_MAX_MIGRANT_AGE = "max-migrant-age";
+
+    /** How many batches of emigrants may wait to be sent to each island */
+    public static final String P_SEND_QUEUE_CAPACITY = "send-queue-capacity";
+
     /** How long we sleep in between attempts to connect or look for signals */
     public static final int SLEEP_TIME = 100;
 
@@ -346,6 +388,14 @@ public class IslandExchange extends Exchanger
     // SERIALIZE
     public SelectionMethod indsToDieSelectionMethod;
 
+    /** how old (in milliseconds) queued immigrants may get, 0 for no limit */
+    // SERIALIZE
+    public long maxMigrantAge;
+
+    /** how many batches of emigrants may wait to be sent to each island */
+    // SERIALIZE
+    public int sendQueueCapacity;
+
     // the mailbox of the current client (exchanger)
     IslandExchangeMailbox mailbox;
 
@@ -359,6 +409,9 @@ public class IslandExchange extends Exchanger
     /** synchronous or asynchronous communication */
     public boolean synchronous;
 
+    /** whether emigrants are queued and sent in the background */
+    public boolean queued;
+
     /** how often to send individuals */
     public int modulo;
 
@@ -380,6 +433,10 @@ public class IslandExchange extends Exchanger
     // information on the availability of the different islands
     boolean[] running;
 
+    // with queued migration, the senders to the destination islands and their threads
+    IslandExchangeSender[] senders;
+    Thread[] senderThreads;
+
     // the capacity of the mailboxes
 //    int mailboxCapacity;
 
@@ -549,6 +606,17 @@ public class IslandExchange extends Exchanger
             ownId = state.parameters.getStringWithDefault( p, null, "" );
             if( ownId.equals("") )
                 state.output.fatal( "Could not get the Id of the island.", p );
+
+            // the limits of queued migration
+            p = base.push( P_MAX_MIGRANT_AGE );
+            maxMigrantAge = state.parameters.getLongWithDefault( p, null, 0 );
+            if( maxMigrantAge < 0 )
+                state.output.fatal( "The maximum age of migrants must be >= 0.", p );
+
+            p = base.push( P_SEND_QUEUE_CAPACITY );
+            sendQueueCapacity = state.parameters.getIntWithDefault( p, null, 4 );
+            if( sendQueueCapacity < 1 )
+                state.output.fatal( "The capacity of the send queues must be >= 1.", p );
             }
         }
 
@@ -567,6 +635,8 @@ public class IslandExchange extends Exchanger
         out.writeInt(serverPort);
         out.writeInt(clientPort);
         out.writeBoolean(iAmServer);
+        out.writeLong(maxMigrantAge);
+        out.writeInt(sendQueueCapacity);
         }
 
     /** Custom serialization */
@@ -584,6 +654,8 @@ public class IslandExchange extends Exchanger
         serverPort = in.readInt();
         clientPort = in.readInt();
         iAmServer = in.readBoolean();
+        maxMigrantAge = in.readLong();
+        sendQueueCapacity = in.readInt();
         }
     
     
@@ -685,15 +757,23 @@ public class IslandExchange extends Exchanger
             // read from the server the modulo, offset and size it has to use.
             // this parameters allow an extendable/modifiable version where different
             // islands send different number of individuals (based on the size of their populations)
-            synchronous = ( fromServer.readInt() == 1 );
+            int mode = fromServer.readInt();
+            synchronous = ( mode == IslandExchangeServer.MODE_SYNCHRONOUS );
+            queued = ( mode == IslandExchangeServer.MODE_QUEUED );
             if( synchronous )
                 {
                 state.output.message( "The communication will be synchronous." );
                 }
+            else if( queued )
+                {
+                state.output.message( "The communication will be asynchronous, with emigrants queued and sent in the background." );
+                }
             else
                 {
                 state.output.message( "The communication will be asynchronous." );
                 }
+            // the mailbox waits for this before it starts receiving
+            mailbox.setQueued( queued );
             modulo = fromServer.readInt();
             offset = fromServer.readInt();
             size = fromServer.readInt();
@@ -706,6 +786,11 @@ public class IslandExchange extends Exchanger
             outWriters = new DataOutputStream[ number_of_destination_islands ];
             running = new boolean[ number_of_destination_islands ];
             outgoingIds = new String[ number_of_destination_islands ];
+            if( queued )
+                {
+                senders = new IslandExchangeSender[ number_of_destination_islands ];
+                senderThreads = new Thread[ number_of_destination_islands ];
+                }
 
             // open connections to each of the destination islands
             for( int y = 0 ; y < number_of_destination_islands ; y++ )
@@ -757,6 +842,14 @@ public class IslandExchange extends Exchanger
                     outWriters[y].flush();
             
                     running[y] = true;
+
+                    if( queued )
+                        {
+                        senders[y] = new IslandExchangeSender( state, outgoingIds[y], outWriters[y], sendQueueCapacity, chatty );
+                        senderThreads[y] = new Thread( senders[y], "IslandExchangeSender::" + outgoingIds[y] );
+                        senderThreads[y].setDaemon( true );
+                        senderThreads[y].start();
+                        }
                     }
                 catch( IOException e )
                     {
@@ -830,6 +923,13 @@ public class IslandExchange extends Exchanger
             ( ( modulo == 0 ) || ( ( ( state.generation - offset ) % modulo ) == 0 ) ) )
             {
 
+            // leave the sending to the senders
+            if( queued )
+                {
+                queueEmigrants( state );
+                return state.population;
+                }
+
             // send the individuals!!!!
 
             // for each of the islands where we have to send individuals
@@ -877,6 +977,34 @@ public class IslandExchange extends Exchanger
 
         }
 
+    /** With queued migration, selects the emigrants for each of the destination islands and hands
+        copies of them to the island's sender, which sends them in the background. */
+    void queueEmigrants( EvolutionState state )
+        {
+        long now = System.currentTimeMillis();
+        for( int x = 0 ; x < number_of_destination_islands ; x++ )
+            {
+            if( !running[x] || !senders[x].running )
+                continue;
+
+            if (chatty) state.output.message( "Queueing " + size + " emigrants to island " + outgoingIds[x] );
+
+            for( int subpop = 0 ; subpop < state.population.subpops.length ; subpop++ )
+                {
+                // copy them, because the population will have changed by the time they're written out
+                Individual[] emigrants = new Individual[ size ];
+                immigrantsSelectionMethod.prepareToProduce( state, subpop, 0 );
+                for( int y = 0 ; y < size ; y++ )
+                    {
+                    int index = immigrantsSelectionMethod.produce( subpop, state, 0 );
+                    emigrants[y] = (Individual)( state.population.subpops[subpop].individuals[index].clone() );
+                    }
+                immigrantsSelectionMethod.finishProducing( state, subpop, 0 );
+                senders[x].send( new IslandExchangeMigration( subpop, emigrants, now ) );
+                }
+            }
+        }
+
 
     public Population postBreedingExchangePopulation(EvolutionState state)
         {
@@ -929,6 +1057,19 @@ public class IslandExchange extends Exchanger
             //state.output.message( "Synchronized. Reading individuals...." );
             }
 
+        // take whatever has arrived, without waiting for anything
+        if( queued )
+            {
+            Individual[][] immigrants = mailbox.takeImmigrants( maxMigrantAge );
+            for( int x = 0 ; x < immigrants.length ; x++ )
+                if( immigrants[x].length > 0 )
+                    {
+                    if (chatty) state.output.message( "Immigrating " + immigrants[x].length + " individuals from mailbox for subpopulation " + x );
+                    replaceWithImmigrants( state, x, immigrants[x], immigrants[x].length );
+                    }
+            return state.population;
+            }
+
         // synchronize, because immigrants is also accessed by the mailbox thread
         synchronized( mailbox.immigrants )
             {
@@ -938,34 +1079,7 @@ public class IslandExchange extends Exchanger
                     {
                     if (chatty) state.output.message( "Immigrating " +  mailbox.nImmigrants[x] + " individuals from mailbox for subpopulation " + x );
 
-                    boolean[] selected = new boolean[ state.population.subpops[x].individuals.length ];
-                    int[] indeces = new int[ mailbox.nImmigrants[x] ];
-                    for( int i = 0 ; i < selected.length ; i++ )
-                        selected[i] = false;
-                    indsToDieSelectionMethod.prepareToProduce( state, x, 0 );
-                    for( int i = 0 ; i < mailbox.nImmigrants[x] ; i++ )
-                        {
-                        do {
-                            indeces[i] = indsToDieSelectionMethod.produce( x, state, 0 );
-                            } while( selected[indeces[i]] );
-                        selected[indeces[i]] = true;
-                        }
-                    indsToDieSelectionMethod.finishProducing( state, x, 0 );
-
-                    // there is no need to check for the differences in size: the mailbox.immigrants,
-                    // state.population.subpops and the mailbox.person2die should have the same size
-                    for( int y = 0 ; y < mailbox.nImmigrants[x] ; y++ )
-                        {
-
-                        // read the individual
-                        state.population.subpops[x].
-                            individuals[ indeces[y] ] = mailbox.immigrants[x][y];
-
-                        // reset the evaluated flag (the individuals are not evaluated in the current island */
-                        state.population.subpops[x].
-                            individuals[ indeces[y] ].evaluated = false;
-
-                        }
+                    replaceWithImmigrants( state, x, mailbox.immigrants[x], mailbox.nImmigrants[x] );
 
                     // reset the number of immigrants in the mailbox for the current subpopulation
                     // this doesn't need another synchronization, because the thread is already synchronized
@@ -979,6 +1093,41 @@ public class IslandExchange extends Exchanger
         return state.population;
         }
 
+    /** Replaces individuals picked by the select-to-die selection method in subpopulation x
+        with the first n of the given immigrants. */
+    void replaceWithImmigrants( EvolutionState state, int x, Individual[] immigrants, int n )
+        {
+        boolean[] selected = new boolean[ state.population.subpops[x].individuals.length ];
+        int[] indeces = new int[ n ];
+        for( int i = 0 ; i < selected.length ; i++ )
+            selected[i] = false;
+        indsToDieSelectionMethod.prepareToProduce( state, x, 0 );
+        for( int i = 0 ; i < n ; i++ )
+            {
+            do {
+                indeces[i] = indsToDieSelectionMethod.produce( x, state, 0 );
+                } while( selected[indeces[i]] );
+            selected[indeces[i]] = true;
+            }
+        indsToDieSelectionMethod.finishProducing( state, x, 0 );
+        FitnessSnapshot.invalidate( state, x );  // the immigrants are about to replace them
+
+        // there is no need to check for the differences in size: the mailbox.immigrants,
+        // state.population.subpops and the mailbox.person2die should have the same size
+        for( int y = 0 ; y < n ; y++ )
+            {
+
+            // read the individual
+            state.population.subpops[x].
+                individuals[ indeces[y] ] = immigrants[y];
+
+            // reset the evaluated flag (the individuals are not evaluated in the current island */
+            state.population.subpops[x].
+                individuals[ indeces[y] ].evaluated = false;
+
+            }
+        }
+
     // if the GOODBYE message sent by the server gets read in the wrong place, this
     // variable is set to true
     boolean alreadyReadGoodBye = false;
@@ -1009,6 +1158,11 @@ public class IslandExchange extends Exchanger
         // if it did, check whether it should exit or not
         try
             {
+            // with queued migration, don't wait on the socket if there's nothing there
+            if( queued && !alreadyReadGoodBye && fromServer.available() == 0 )
+                return null;
+
+
             // read a line. if it is successful, it means that the server sent a FOUND message
             // (this is the only message the server sends right now), and it should set the flag
             // for exiting next time when in this procedure
@@ -1077,6 +1231,15 @@ public class IslandExchange extends Exchanger
             {
             }
 
+        // stop the senders, dropping whatever they haven't sent yet
+        if( queued )
+            {
+            state.output.message( statistics() );
+            for( int x = 0 ; x < number_of_destination_islands ; x++ )
+                if( senders[x] != null )
+                    senders[x].shutDown();
+            }
+
         state.output.message( "Shutting down the mailbox" );
         // close the mailbox and wait for the thread to terminate
         mailbox.shutDown();
@@ -1104,6 +1267,20 @@ public class IslandExchange extends Exchanger
                 }
             }
 
+        // the senders are done once their sockets are closed
+        if( queued )
+            for( int x = 0 ; x < number_of_destination_islands ; x++ )
+                if( senderThreads[x] != null )
+                    {
+                    try
+                        {
+                        senderThreads[x].join();
+                        }
+                    catch( InterruptedException e )
+                        {
+                        }
+                    }
+
         // if the island also hosts the server, wait till it terminates
         if( iAmServer )
             {
@@ -1120,6 +1297,23 @@ public class IslandExchange extends Exchanger
 
         }
 
+    /** With queued migration, returns the migration statistics of this island: per destination island,
+        the emigrants sent and dropped, the largest depth the send queue reached, and the mean and maximum time
+        emigrants waited to be sent; then the immigrants received, merged, dropped because they were too old,
+        and dropped because the mailbox was full, the mean and maximum migration latency, and the largest number
+        of batches which arrived between two generations. */
+    public String statistics()
+        {
+        StringBuffer buf = new StringBuffer( "Island " + ownId + " migration statistics:" );
+        if( senders != null )
+            for( int x = 0 ; x < senders.length ; x++ )
+                if( senders[x] != null )
+                    buf.append( "\n" ).append( senders[x].statistics() );
+        if( mailbox != null )
+            buf.append( "\n" ).append( mailbox.statistics() );
+        return buf.toString();
+        }
+
     /* (non-Javadoc)
      * @see ec.EvolutionState#finish(int)
      */
@@ -1208,6 +1402,25 @@ class IslandExchangeMailbox implements Runnable
     
     boolean chatty;
 
+    // whether the migration is queued, and whether we've been told yet, guarded by synchronizing on the mailbox
+    boolean queued;
+    boolean modeKnown;
+    boolean shuttingDown;
+
+    // with queued migration, the immigrants received but not taken yet, and the threads receiving them
+    ConcurrentLinkedQueue arrivals = new ConcurrentLinkedQueue();
+    Thread[] readers;
+
+    // statistics of queued migration, guarded by synchronizing on the mailbox
+    long batchesReceived;
+    long immigrantsReceived;
+    long immigrantsMerged;
+    long immigrantsStale;
+    long immigrantsOverflowed;
+    long totalLatency;
+    long maxLatency;
+    int maxBacklog;
+
     /**
        Public constructor used to initialize most of the parameters of the mailbox:
        state_p : the EvolutionState, used mainly for displaying messages
@@ -1325,6 +1538,26 @@ class IslandExchangeMailbox implements Runnable
 
         state.output.message( "All islands have connected to my client." );
 
+        // the island tells us how the immigrants will come once the server has told it
+        synchronized( this )
+            {
+            while( !modeKnown && !shuttingDown )
+                {
+                try
+                    {
+                    wait();
+                    }
+                catch( InterruptedException e )
+                    {
+                    }
+                }
+            }
+        if( queued )
+            {
+            receiveQueued();
+            return;
+            }
+
         // variable used for deciding (based on the synchronized variable "syncVar") when to exit
         boolean shouldExit = false;
 
@@ -1470,7 +1703,12 @@ class IslandExchangeMailbox implements Runnable
             }
         while( !shouldExit );
 
-        // close the sockets (don't care about the running, but deal with exceptions)
+        closeSockets();
+        }
+
+    // closes the sockets (don't care about the running, but deal with exceptions)
+    void closeSockets()
+        {
         try
             {
             // close the ServerSocket
@@ -1509,6 +1747,168 @@ class IslandExchangeMailbox implements Runnable
             syncVar = Boolean.TRUE;
             }
 
+        synchronized( this )
+            {
+            shuttingDown = true;
+            notifyAll();
+            }
+
+        }
+
+    /** Tells the mailbox whether the migration is queued, which it waits for before it starts receiving. */
+    public synchronized void setQueued( boolean queued )
+        {
+        this.queued = queued;
+        modeKnown = true;
+        notifyAll();
+        }
+
+    /** With queued migration: receives the immigrants with a thread per incoming island, which blocks on
+        its socket, until the mailbox is shut down. */
+    void receiveQueued()
+        {
+        readers = new Thread[ n_incoming ];
+        for( int x = 0 ; x < n_incoming ; x++ )
+            {
+            if( !running[x] )
+                continue;
+            final int from = x;
+            readers[x] = new Thread( new Runnable()
+                {
+                public void run()
+                    {
+                    receive( from );
+                    }
+                }, "IslandExchangeMailbox::" + incomingIds[x] );
+            readers[x].setDaemon( true );
+            readers[x].start();
+            }
+
+        synchronized( this )
+            {
+            while( !shuttingDown )
+                {
+                try
+                    {
+                    wait();
+                    }
+                catch( InterruptedException e )
+                    {
+                    }
+                }
+            }
+
+        // closing the sockets stops the readers
+        closeSockets();
+        for( int x = 0 ; x < n_incoming ; x++ )
+            {
+            if( readers[x] == null )
+                continue;
+            try
+                {
+                readers[x].join();
+                }
+            catch( InterruptedException e )
+                {
+                }
+            }
+        }
+
+    // reads batches of immigrants from island x until its socket is closed
+    void receive( int x )
+        {
+        try
+            {
+            inSockets[x].setSoTimeout( 0 );
+            while( true )
+                {
+                int subpop = dataInput[x].readInt();
+                int how_many_to_come = dataInput[x].readInt();
+                long selected = dataInput[x].readLong();
+
+                Individual[] inds = new Individual[ how_many_to_come ];
+                for( int ind = 0 ; ind < how_many_to_come ; ind++ )
+                    inds[ind] = state.population.subpops[subpop].species.newIndividual( state, dataInput[x] );
+
+                long latency = System.currentTimeMillis() - selected;
+                if (chatty) state.output.message( "Received " + how_many_to_come + " immigrants for subpopulation " + subpop +
+                    " from island " + incomingIds[x] + " after " + latency + " ms" );
+                synchronized( this )
+                    {
+                    batchesReceived++;
+                    immigrantsReceived += how_many_to_come;
+                    totalLatency += latency;
+                    if( latency > maxLatency )
+                        maxLatency = latency;
+                    }
+                arrivals.add( new IslandExchangeMigration( subpop, inds, selected ) );
+                }
+            }
+        catch( IOException e )
+            {
+            running[x] = false;
+            boolean quiet;
+            synchronized( this )
+                {
+                quiet = shuttingDown;
+                }
+            if( !quiet )
+                state.output.message( "Island " + incomingIds[x] + " stopped sending immigrants" );
+            }
+        }
+
+    /** With queued migration: takes the immigrants which have arrived so far, without waiting for any, and
+        returns them per subpopulation.  Immigrants selected more than maxAge milliseconds ago are dropped (unless
+        maxAge is 0), and so are the immigrants which arrived first if there are more than the mailbox holds. */
+    public Individual[][] takeImmigrants( long maxAge )
+        {
+        long now = System.currentTimeMillis();
+        ArrayList[] taken = new ArrayList[ immigrants.length ];
+        for( int x = 0 ; x < taken.length ; x++ )
+            taken[x] = new ArrayList();
+        int batches = 0;
+        long stale = 0;
+
+        IslandExchangeMigration migration;
+        while( ( migration = (IslandExchangeMigration)( arrivals.poll() ) ) != null )
+            {
+            batches++;
+            if( maxAge > 0 && now - migration.selected > maxAge )
+                stale += migration.individuals.length;
+            else
+                taken[migration.subpop].addAll( Arrays.asList( migration.individuals ) );
+            }
+
+        Individual[][] result = new Individual[ taken.length ][];
+        long merged = 0;
+        long overflowed = 0;
+        for( int x = 0 ; x < taken.length ; x++ )
+            {
+            // keep the ones which arrived last
+            int keep = Math.min( taken[x].size(), immigrants[x].length );
+            result[x] = (Individual[])( taken[x].subList( taken[x].size() - keep, taken[x].size() ).toArray( new Individual[ keep ] ) );
+            merged += keep;
+            overflowed += taken[x].size() - keep;
+            }
+
+        synchronized( this )
+            {
+            immigrantsMerged += merged;
+            immigrantsStale += stale;
+            immigrantsOverflowed += overflowed;
+            if( batches > maxBacklog )
+                maxBacklog = batches;
+            }
+        return result;
+        }
+
+    /** One line of statistics about the queued immigrants */
+    public synchronized String statistics()
+        {
+        return "    from " + n_incoming + " islands: " + immigrantsReceived + " immigrants received in " + batchesReceived +
+            " batches, mean latency " + ( batchesReceived > 0 ? totalLatency / batchesReceived : 0 ) + " ms, max latency " +
+            maxLatency + " ms, " + immigrantsMerged + " merged, " + immigrantsStale + " too old, " + immigrantsOverflowed +
+            " over capacity, max backlog " + maxBacklog + " batches";
         }
 
     /**
@@ -1523,6 +1923,135 @@ class IslandExchangeMailbox implements Runnable
 
     }
 
+/** A batch of migrants for one subpopulation, with the time (System.currentTimeMillis()) they were
+    selected on the island which sent them.  LocalIslands also notes the generation they were sent in. */
+class IslandExchangeMigration
+    {
+    int subpop;
+    Individual[] individuals;
+    long selected;
+    int generation;
+
+    IslandExchangeMigration( int subpop, Individual[] individuals, long selected )
+        {
+        this.subpop = subpop;
+        this.individuals = individuals;
+        this.selected = selected;
+        }
+    }
+
+/** With queued migration, an IslandExchangeSender writes the emigrants for one destination island on
+    a thread of its own, so the island never waits for the destination island or the network.  The emigrants
+    wait in a bounded queue; when it's full, the oldest batch is dropped to make room.  Each batch is written
+    as the subpopulation, the number of individuals, the time they were selected, and the individuals. */
+class IslandExchangeSender implements Runnable
+    {
+    // tells the thread to stop
+    static final IslandExchangeMigration STOP = new IslandExchangeMigration( -1, new Individual[0], 0 );
+
+    EvolutionState state;
+    String id;
+    DataOutputStream out;
+    boolean chatty;
+    ArrayBlockingQueue queue;
+
+    // false once the sender has stopped or the connection has failed
+    volatile boolean running = true;
+    volatile boolean stopping = false;
+
+    // statistics, guarded by synchronizing on the sender
+    long batchesSent;
+    long emigrantsSent;
+    long emigrantsDropped;
+    long totalQueued;
+    long maxQueued;
+    int maxDepth;
+
+    IslandExchangeSender( EvolutionState state, String id, DataOutputStream out, int capacity, boolean chatty )
+        {
+        this.state = state;
+        this.id = id;
+        this.out = out;
+        this.chatty = chatty;
+        queue = new ArrayBlockingQueue( capacity );
+        }
+
+    /** Queues a batch of emigrants without waiting, dropping the oldest batches if the queue is full. */
+    public void send( IslandExchangeMigration migration )
+        {
+        while( !queue.offer( migration ) )
+            {
+            IslandExchangeMigration old = (IslandExchangeMigration)( queue.poll() );
+            if( old != null )
+                synchronized( this )
+                    {
+                    emigrantsDropped += old.individuals.length;
+                    }
+            }
+        synchronized( this )
+            {
+            if( queue.size() > maxDepth )
+                maxDepth = queue.size();
+            }
+        }
+
+    public void run()
+        {
+        try
+            {
+            while( true )
+                {
+                IslandExchangeMigration migration = (IslandExchangeMigration)( queue.take() );
+                if( migration == STOP )
+                    break;
+
+                out.writeInt( migration.subpop );
+                out.writeInt( migration.individuals.length );
+                out.writeLong( migration.selected );
+                for( int y = 0 ; y < migration.individuals.length ; y++ )
+                    migration.individuals[y].writeIndividual( state, out );
+                out.flush();
+
+                long queued = System.currentTimeMillis() - migration.selected;
+                synchronized( this )
+                    {
+                    batchesSent++;
+                    emigrantsSent += migration.individuals.length;
+                    totalQueued += queued;
+                    if( queued > maxQueued )
+                        maxQueued = queued;
+                    }
+                }
+            }
+        catch( InterruptedException e )
+            {
+            }
+        catch( IOException e )
+            {
+            if( !stopping )
+                state.output.warning( "Could not send emigrants to island " + id + ", not sending any more: " + e );
+            }
+        running = false;
+        queue.clear();
+        }
+
+    /** Drops the emigrants which haven't been sent yet and stops the thread once it's done with the current batch. */
+    public void shutDown()
+        {
+        stopping = true;
+        queue.clear();
+        queue.offer( STOP );
+        }
+
+    /** One line of statistics about the emigrants sent to the island */
+    public synchronized String statistics()
+        {
+        return "    to " + id + ": " + emigrantsSent + " emigrants sent in " + batchesSent + " batches, " + emigrantsDropped +
+            " dropped, max queue depth " + maxDepth + ", mean time queued " + ( batchesSent > 0 ? totalQueued / batchesSent : 0 ) +
+            " ms, max time queued " + maxQueued + " ms" + ( running ? "" : " (stopped)" );
+        }
+    }
+
 /**
    The IslandExchangeServer is the class that manages the main server that coordinates all the islands. The class
    implements Runnable (for running on a different thread).
@@ -1592,6 +2121,14 @@ class IslandExchangeServer implements Runnable
     /** Whether the execution should be synchronous or asynchronous */
     public static final String P_SYNCHRONOUS = "sync";
 
+    /** Whether the islands should queue their emigrants and send them in the background */
+    public static final String P_QUEUED = "queued";
+
+    /** The mode sent to the islands: asynchronous, synchronous or queued */
+    public static final int MODE_ASYNCHRONOUS = 0;
+    public static final int MODE_SYNCHRONOUS = 1;
+    public static final int MODE_QUEUED = 2;
+
     /** The run message to be sent to the clients */
     public static final String RUN = "run";
 
@@ -1668,6 +2205,9 @@ class IslandExchangeServer implements Runnable
     // int global_modulo, global_offset;
     boolean synchronous;
 
+    // whether the islands send their emigrants in the background
+    boolean queued;
+
     // how many individuals asked to be synchronized (when it reaches the total number of
     // running clients, the server resets this variable and allows everybody to continue running)
     boolean[] who_is_synchronized;
@@ -1716,6 +2256,11 @@ class IslandExchangeServer implements Runnable
         // get the value of the synchronous parameter (default is false)
         synchronous = state.parameters.getBoolean( p, null, false );
 
+        // queued migration doesn't wait for anybody, so it can't be synchronous
+        queued = state.parameters.getBoolean( base.push( P_QUEUED ), null, false );
+        if( queued && synchronous )
+            state.output.fatal( "Queued migration cannot be synchronous.", base.push( P_QUEUED ), p );
+
         // if synchronous, read the other two global parameters
         if( synchronous )
             {
@@ -1738,7 +2283,8 @@ state.output.fatal( "Parameter not found, or it has an incorrect value.", p );
         else
             {
 
-            state.output.message( "The communication will be asynchronous." );
+            state.output.message( "The communication will be asynchronous" +
+                ( queued ? ", with emigrants queued and sent in the background." : "." ) );
 
             }
 
@@ -2017,11 +2563,13 @@ state.output.fatal( "Parameter not found, or it has an incorrect value.", p );
 
                 try
                     {
-                    // send the synchronous, modulo, offset and size information to the current islands
+                    // send the mode (synchronous, asynchronous or queued), modulo, offset and size information to the current islands
                     if( synchronous )
-                        dataOut[x].writeInt( 1 );
+                        dataOut[x].writeInt( MODE_SYNCHRONOUS );
+                    else if( queued )
+                        dataOut[x].writeInt( MODE_QUEUED );
                     else
-                        dataOut[x].writeInt( 0 );
+                        dataOut[x].writeInt( MODE_ASYNCHRONOUS );
                     dataOut[x].writeInt( ieii.modulo );
                     dataOut[x].writeInt( ieii.offset );
                     dataOut[x].writeInt( ieii.size );
@@ -0,0 +1,374 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+
+package ec.exchange;
+import java.util.*;
+import ec.*;
+import ec.util.*;
+import ec.select.FitnessSnapshot;
+
+/*
+ * LocalIslandExchange.java
+ */
+
+/**
+ * LocalIslandExchange is the Exchanger of the islands run in a single JVM by LocalIslands.  It
+ * works like InterPopulationExchange, except that the "islands" are whole EvolutionStates rather than
+ * subpopulations: every few generations, an island selects some individuals from each of its
+ * subpopulations and sends copies of them to the same subpopulation of its destination islands,
+ * and after breeding it replaces some of its newly-bred individuals with the migrants which have
+ * come in.  The migrants are handed over through LocalIslands' queues, without being serialized.
+ *
+ * <p>The topology is either a <tt>ring</tt> (island #n sends to island #n+1, and the last one to
+ * the first), <tt>complete</tt> (every island sends to all the others), or <tt>custom</tt>, in which
+ * case every island lists its destinations.  Like in IslandExchange, any island may have its own
+ * selection methods, modulo, start and size, falling back to the defaults.
+ *
+ * <p>When an island finds the ideal individual and quits, the other islands quit as well if
+ * <tt>quit-on-run-complete</tt> is true.  When the run is over, every island prints how many migrants it
+ * sent, received, merged and had dropped.
+ *
+ <p><b>Parameters</b><br>
+ <table>
+ <tr><td valign=top><tt><i>base</i>.chatty</tt><br>
+ <font size=-1>boolean, default = true</font></td>
+ <td valign=top> Should we be verbose or silent about our exchanges?
+ </td></tr>
+ <tr><td valign=top><tt><i>base</i>.topology</tt><br>
+ <font size=-1>String: <tt>ring</tt> (default), <tt>complete</tt>, or <tt>custom</tt></font></td>
+ <td valign=top> Which islands send migrants to which.
+ </td></tr>
+ <tr><td valign=top><tt><i>base</i>.island.<i>n</i>.num-dest</tt><br>
+ <font size=-1>int >= 0</font></td>
+ <td valign=top> With the <tt>custom</tt> topology: the number of islands that island #n sends migrants to.
+ </td></tr>
+ <tr><td valign=top><tt><i>base</i>.island.<i>n</i>.dest.<i>m</i></tt><br>
+ <font size=-1>int >= 0</font></td>
+ <td valign=top> With the <tt>custom</tt> topology: island #n's destination #m is this island.
+ </td></tr>
+ <tr><td valign=top><tt><i>base</i>.island.<i>n</i>.select</tt><br>
+ <font size=-1>classname, inherits and != ec.SelectionMethod</font></td>
+ <td valign=top> The selection method used by island #n for picking migrants.  If not set, uses the default parameter below.
+ </td></tr>
+ <tr><td valign=top><tt><i>base</i>.select</tt><br>
+ <font size=-1>classname, inherits and != ec.SelectionMethod</font></td>
+ <td valign=top> Default parameter: the selection method used by an island for picking migrants.
+ </td></tr>
+ <tr><td valign=top><tt><i>base</i>.island.<i>n</i>.select-to-die</tt><br>
+ <font size=-1>classname, inherits and != ec.SelectionMethod (Default is random selection)</font></td>
+ <td valign=top> The selection method used by island #n for picking individuals to be replaced by migrants.  If not set, uses the default parameter below.
+ </td></tr>
+ <tr><td valign=top><tt><i>base</i>.select-to-die</tt><br>
+ <font size=-1>classname, inherits and != ec.SelectionMethod (Default is random selection)</font></td>
+ <td valign=top> Default parameter: the selection method used by an island for picking individuals to be replaced by migrants.
+ </td></tr>
+ <tr><td valign=top><tt><i>base</i>.island.<i>n</i>.mod</tt><br>
+ <font size=-1>int >= 1</font></td>
+ <td valign=top> The number of generations that island #n waits between sending migrants.  If not set, uses the default parameter below.
+ </td></tr>
+ <tr><td valign=top><tt><i>base</i>.mod</tt><br>
+ <font size=-1>int >= 1 (default = 1)</font></td>
+ <td valign=top> Default parameter: the number of generations an island waits between sending migrants.
+ </td></tr>
+ <tr><td valign=top><tt><i>base</i>.island.<i>n</i>.start</tt><br>
+ <font size=-1>int >= 0</font></td>
+ <td valign=top> The generation when island #n begins sending migrants.  If not set, uses the default parameter below.
+ </td></tr>
+ <tr><td valign=top><tt><i>base</i>.start</tt><br>
+ <font size=-1>int >= 0 (default = 0)</font></td>
+ <td valign=top> Default parameter: the generation when an island begins sending migrants.
+ </td></tr>
+ <tr><td valign=top><tt><i>base</i>.island.<i>n</i>.size</tt><br>
+ <font size=-1>int >= 1</font></td>
+ <td valign=top> The number of migrants (per subpopulation) that island #n sends to each destination at one time.  If not set, uses the default parameter below.
+ </td></tr>
+ <tr><td valign=top><tt><i>base</i>.size</tt><br>
+ <font size=-1>int >= 1 (default = 1)</font></td>
+ <td valign=top> Default parameter: the number of migrants (per subpopulation) that an island sends to each destination at one time.
+ </td></tr>
+ </table>
+
+ <p><b>Parameter bases</b><br>
+ <table>
+ <tr><td valign=top><tt><i>base</i>.island.<i>n</i>.select</tt><br>
+ <td>selection method for island #n's migrants</td></tr>
+ </table>
+ *
+ * @author Sean Luke
+ * @version 1.0
+ */
+
+public class LocalIslandExchange extends Exchanger
+    {
+    /** The topology */
+    public static final String P_TOPOLOGY = "topology";
+
+    /** Ring topology */
+    public static final String V_RING = "ring";
+
+    /** Complete topology */
+    public static final String V_COMPLETE = "complete";
+
+    /** Topology given by the islands' destinations */
+    public static final String V_CUSTOM = "custom";
+
+    /** The island delimiter */
+    public static final String P_ISLAND = "island";
+
+    /** The number of destinations of an island */
+    public static final String P_DEST_FOR_ISLAND = "num-dest";
+
+    /** The prefix for destinations */
+    public static final String P_DEST = "dest";
+
+    /** The parameter for the modulo (how many generations should pass between consecutive sendings of individuals */
+    public static final String P_MODULO = "mod";
+
+    /** The number of emigrants to be sent */
+    public static final String P_SIZE = "size";
+
+    /** How many generations to pass at the beginning of the evolution before the first emigration */
+    public static final String P_OFFSET = "start";
+
+    /** The selection method for sending individuals to other islands */
+    public static final String P_SELECT_METHOD = "select";
+
+    /** The selection method for deciding individuals to be replaced by immigrants */
+    public static final String P_SELECT_TO_DIE_METHOD = "select-to-die";
+
+    /** Whether or not we're chatty */
+    public static final String P_CHATTY = "chatty";
+
+    /** My parameter base */
+    public Parameter base;
+
+    // the islands we belong to, and our number
+    transient LocalIslands islands;
+    int island;
+
+    /** The islands we send migrants to */
+    public int[] destinations;
+
+    /** The selection method for emigrants */
+    public SelectionMethod immigrantsSelectionMethod;
+
+    /** The selection method for individuals to be replaced by immigrants */
+    public SelectionMethod indsToDieSelectionMethod;
+
+    public int modulo;
+    public int offset;
+    public int size;
+    public boolean chatty;
+
+    // statistics
+    long sent;
+    long received;
+    long merged;
+    long dropped;
+
+    public void setup( final EvolutionState state, final Parameter _base )
+        {
+        base = _base;
+
+        islands = LocalIslands.islandsOf(state);
+        if( islands == null )
+            state.output.fatal( "LocalIslandExchange only works with islands started by ec.exchange.LocalIslands." );
+        island = islands.indexOf(state);
+        int numIslands = islands.numIslands();
+
+        Parameter p = base.push( P_ISLAND ).push( "" + island );
+
+        // synchronous senders wait for room in the queues, which only happens after everybody's done sending
+        int numsubpops = state.parameters.getInt( new Parameter( ec.Initializer.P_POP ).push( ec.Population.P_SIZE ), null, 1 );
+        if( islands.isSynchronous() && islands.queueCapacity() < numsubpops )
+            state.output.fatal( "With synchronous migration, the capacity of the queues must be at least the number of subpopulations.",
+                base.push( LocalIslands.P_QUEUE_CAPACITY ) );
+
+        chatty = state.parameters.getBoolean(base.push(P_CHATTY), null, true);
+
+        // read the selection method
+        immigrantsSelectionMethod = (SelectionMethod)
+            state.parameters.getInstanceForParameter( p.push( P_SELECT_METHOD ), base.push(P_SELECT_METHOD), ec.SelectionMethod.class );
+        immigrantsSelectionMethod.setup( state, p.push(P_SELECT_METHOD) );
+
+        // read the selection method
+        if( state.parameters.exists( p.push( P_SELECT_TO_DIE_METHOD ), base.push(P_SELECT_TO_DIE_METHOD ) ) )
+            indsToDieSelectionMethod = (SelectionMethod)
+                state.parameters.getInstanceForParameter( p.push( P_SELECT_TO_DIE_METHOD ), base.push( P_SELECT_TO_DIE_METHOD ), ec.SelectionMethod.class );
+        else // use RandomSelection
+            indsToDieSelectionMethod = new ec.select.RandomSelection();
+        indsToDieSelectionMethod.setup( state, p.push(P_SELECT_TO_DIE_METHOD));
+
+        modulo = state.parameters.getIntWithDefault( p.push( P_MODULO ), base.push( P_MODULO ), 1 );
+        if( modulo < 1 )
+            state.output.fatal( "The modulo must be >= 1.", p.push( P_MODULO ), base.push( P_MODULO ) );
+
+        offset = state.parameters.getIntWithDefault( p.push( P_OFFSET ), base.push( P_OFFSET ), 0 );
+        if( offset < 0 )
+            state.output.fatal( "The start must be >= 0.", p.push( P_OFFSET ), base.push( P_OFFSET ) );
+
+        size = state.parameters.getIntWithDefault( p.push( P_SIZE ), base.push( P_SIZE ), 1 );
+        if( size < 1 )
+            state.output.fatal( "The size must be >= 1.", p.push( P_SIZE ), base.push( P_SIZE ) );
+
+        // the topology
+        String topology = state.parameters.getStringWithDefault( base.push( P_TOPOLOGY ), null, V_RING );
+        if( topology.equalsIgnoreCase( V_RING ) )
+            {
+            destinations = ( numIslands > 1 ? new int[] { ( island + 1 ) % numIslands } : new int[0] );
+            }
+        else if( topology.equalsIgnoreCase( V_COMPLETE ) )
+            {
+            destinations = new int[ numIslands - 1 ];
+            for( int i = 0, j = 0 ; i < numIslands ; i++ )
+                if( i != island )
+                    destinations[j++] = i;
+            }
+        else if( topology.equalsIgnoreCase( V_CUSTOM ) )
+            {
+            int numDest = state.parameters.getInt( p.push( P_DEST_FOR_ISLAND ), null, 0 );
+            if( numDest < 0 )
+                state.output.fatal( "Parameter not found, or it has an incorrect value.", p.push( P_DEST_FOR_ISLAND ) );
+            destinations = new int[ numDest ];
+            for( int j = 0 ; j < numDest ; j++ )
+                {
+                destinations[j] = state.parameters.getInt( p.push( P_DEST ).push( "" + j ), null, 0 );
+                if( destinations[j] < 0 || destinations[j] >= numIslands || destinations[j] == island )
+                    state.output.fatal( "Parameter not found, or it has an incorrect value.", p.push( P_DEST ).push( "" + j ) );
+                }
+            }
+        else state.output.fatal( "Unknown topology " + topology + ", should be " + V_RING + ", " + V_COMPLETE + " or " + V_CUSTOM + ".",
+            base.push( P_TOPOLOGY ) );
+        }
+
+    /** Does nothing: the islands are already there. */
+    public void initializeContacts(EvolutionState state)
+        {
+        }
+
+    /** Islands run by LocalIslands can't be restarted from a checkpoint. */
+    public void reinitializeContacts(EvolutionState state)
+        {
+        islands = LocalIslands.islandsOf(state);
+        if( islands == null )
+            state.output.fatal( "Islands started by ec.exchange.LocalIslands can't be restarted from a checkpoint." );
+        }
+
+    public Population preBreedingExchangePopulation(EvolutionState state)
+        {
+        // send only if my modulo and offset are appropriate for this generation
+        if( state.generation < offset || ( state.generation - offset ) % modulo != 0 )
+            return state.population;
+
+        long now = System.currentTimeMillis();
+        for( int x = 0 ; x < destinations.length ; x++ )
+            {
+            if (chatty) state.output.message( "Sending " + size + " emigrants to island " + destinations[x] );
+
+            for( int subpop = 0 ; subpop < state.population.subpops.length ; subpop++ )
+                {
+                // copy them, because the destination will change them
+                Individual[] emigrants = new Individual[ size ];
+                immigrantsSelectionMethod.prepareToProduce( state, subpop, 0 );
+                for( int y = 0 ; y < size ; y++ )
+                    {
+                    int index = immigrantsSelectionMethod.produce( subpop, state, 0 );
+                    emigrants[y] = (Individual)( state.population.subpops[subpop].individuals[index].clone() );
+                    }
+                immigrantsSelectionMethod.finishProducing( state, subpop, 0 );
+
+                IslandExchangeMigration migration = new IslandExchangeMigration( subpop, emigrants, now );
+                migration.generation = state.generation;
+                int lost = islands.send( island, destinations[x], migration );
+                if( lost >= 0 )
+                    {
+                    sent += size;
+                    dropped += lost;
+                    }
+                }
+            }
+
+        return state.population;
+        }
+
+    public Population postBreedingExchangePopulation(EvolutionState state)
+        {
+        if( islands.isSynchronous() )
+            islands.synchronize();
+
+        List taken = islands.take( island, state.generation );
+        if( taken.isEmpty() )
+            return state.population;
+
+        // gather the migrants per subpopulation
+        ArrayList[] immigrants = new ArrayList[ state.population.subpops.length ];
+        for( int x = 0 ; x < immigrants.length ; x++ )
+            immigrants[x] = new ArrayList();
+        for( int i = 0 ; i < taken.size() ; i++ )
+            {
+            IslandExchangeMigration migration = (IslandExchangeMigration)( taken.get( i ) );
+            immigrants[migration.subpop].addAll( Arrays.asList( migration.individuals ) );
+            received += migration.individuals.length;
+            }
+
+        for( int x = 0 ; x < immigrants.length ; x++ )
+            {
+            // keep the last ones if there are too many, so that we don't go into an infinite loop below
+            int len = state.population.subpops[x].individuals.length;
+            int n = Math.min( immigrants[x].size(), len - 1 );
+            if( n <= 0 )
+                continue;
+            dropped += immigrants[x].size() - n;
+            merged += n;
+
+            if (chatty) state.output.message( "Immigrating " + n + " individuals for subpopulation " + x );
+
+            boolean[] selected = new boolean[ len ];
+            int[] indeces = new int[ n ];
+            indsToDieSelectionMethod.prepareToProduce( state, x, 0 );
+            for( int i = 0 ; i < n ; i++ )
+                {
+                do {
+                    indeces[i] = indsToDieSelectionMethod.produce( x, state, 0 );
+                    } while( selected[indeces[i]] );
+                selected[indeces[i]] = true;
+                }
+            indsToDieSelectionMethod.finishProducing( state, x, 0 );
+            FitnessSnapshot.invalidate( state, x );  // the immigrants are about to replace them
+
+            for( int y = 0 ; y < n ; y++ )
+                {
+                Individual ind = (Individual)( immigrants[x].get( immigrants[x].size() - n + y ) );
+                ind.evaluated = false;  // the individuals are not evaluated in the current island
+                state.population.subpops[x].individuals[ indeces[y] ] = ind;
+                }
+            }
+
+        return state.population;
+        }
+
+    /** Tells the run to quit if another island has found the ideal individual (and quit-on-run-complete is true). */
+    public String runComplete(EvolutionState state)
+        {
+        int found = islands.foundIdeal( island, state.generation );
+        if( found == -1 )
+            return null;
+        if( state.quitOnRunComplete )
+            return "Exit: Island " + found + " found the perfect individual.";
+        return null;
+        }
+
+    /** Stops the island, so that nobody waits for it any more, and prints its migration statistics. */
+    public void closeContacts(EvolutionState state, int result)
+        {
+        // we found it ourselves unless we quit because somebody else did
+        islands.stop( island, result == EvolutionState.R_SUCCESS &&
+            islands.foundIdeal( island, Integer.MAX_VALUE ) == -1 );
+        state.output.message( "Island " + island + ": " + sent + " migrants sent, " + received + " received, " +
+            merged + " merged, " + dropped + " dropped" );
+        }
+    }
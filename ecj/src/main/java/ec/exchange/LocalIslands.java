@@ -0,0 +1,343 @@
+/*
+  Copyright 2006 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+
+package ec.exchange;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import ec.*;
+import ec.util.*;
+
+/*
+ * LocalIslands.java
+ */
+
+/**
+ * LocalIslands runs an island model inside a single JVM: it sets up one EvolutionState
+ * per island, runs each of them on its own thread, and lets them exchange migrants through
+ * bounded in-memory queues, so there are no sockets, no server and no serialization.  The
+ * islands use LocalIslandExchange as their exchanger, which decides who sends what to whom;
+ * LocalIslands just holds the queues.  This is meant for machines with many cores, where
+ * running an IslandExchange process per core wastes a lot of memory and time.
+ *
+ * <p>You start it like ec.Evolve, with the same arguments:
+ <p><pre>
+ java ec.exchange.LocalIslands -file islands.params -p ...
+ </pre>
+ *
+ * <p>Every island loads the parameters afresh, so it has a parameter database of its own.
+ * Island #n's output and checkpoint files are prefixed with <tt>island.</tt><i>n</i><tt>.</tt>,
+ * and its random number generators get the seeds of job #n would get in ec.Evolve (the seeds
+ * plus n times the number of generators), so the islands' seeds don't depend on the order in which
+ * they start.  You'll usually want <tt>evalthreads</tt> and <tt>breedthreads</tt> to be 1, since
+ * every island already has a thread of its own.  LocalIslands doesn't iterate over jobs, and the
+ * islands can't be restarted from checkpoints.
+ *
+ * <p>Each island has a queue per island sending to it.  When migration is asynchronous, a sender
+ * never waits: if the queue is full, the oldest batch of migrants in it is dropped.  When it is
+ * synchronous, every island waits for the others at the end of every generation, senders wait for
+ * room in the queues, and an island only takes the migrants sent up to its current generation, in the
+ * order of the sending islands.  Synchronous runs therefore always come out the same for the same seeds.
+ *
+ <p><b>Parameters</b><br>
+ <table>
+ <tr><td valign=top><tt>exch.num-islands</tt><br>
+ <font size=-1>int >= 1</font></td>
+ <td valign=top>(The number of islands)</td></tr>
+ <tr><td valign=top><tt>exch.sync</tt><br>
+ <font size=-1>boolean, default = false</font></td>
+ <td valign=top>(Should the islands migrate synchronously?)</td></tr>
+ <tr><td valign=top><tt>exch.queue-capacity</tt><br>
+ <font size=-1>int >= 1, default = 4</font></td>
+ <td valign=top>(How many batches of migrants (one batch per subpopulation and migration) may wait in the queue from one island to another.  With synchronous migration, this should be at least the number of subpopulations.)</td></tr>
+ </table>
+ *
+ * @author Sean Luke
+ * @version 1.0
+ */
+
+public class LocalIslands
+    {
+    /** The number of islands */
+    public static final String P_NUM_ISLANDS = "num-islands";
+
+    /** Whether the islands migrate synchronously */
+    public static final String P_SYNCHRONOUS = "sync";
+
+    /** How many batches of migrants may wait from one island to another */
+    public static final String P_QUEUE_CAPACITY = "queue-capacity";
+
+    /** How long a synchronous sender waits before checking whether the destination is still running */
+    public static final int SEND_TIMEOUT = 100;
+
+    // the islands of all the LocalIslands in the JVM, by their EvolutionStates
+    static Map registry = Collections.synchronizedMap(new IdentityHashMap());
+
+    /** Returns the LocalIslands which runs the given island, or null if it isn't run by one. */
+    public static LocalIslands islandsOf(EvolutionState state)
+        {
+        return (LocalIslands)(registry.get(state));
+        }
+
+    // what we know about each island
+    class Island
+        {
+        EvolutionState state;
+        // the queues from the other islands, by sending island, created as needed
+        ArrayBlockingQueue[] incoming = new ArrayBlockingQueue[numIslands];
+        // set when the island has stopped
+        volatile boolean done;
+        }
+
+    Island[] islands;
+    int numIslands;
+    boolean synchronous;
+    int capacity;
+
+    // the island which found the ideal individual and its generation, or -1
+    volatile int found = -1;
+    int foundGeneration;
+
+    // synchronous migration: the islands still running, how many of them have arrived at the
+    // end of this generation, and the generation number, all guarded by synchronizing on this
+    int parties;
+    int arrived;
+    long round;
+
+    public LocalIslands(int numIslands, boolean synchronous, int capacity)
+        {
+        this.numIslands = numIslands;
+        this.synchronous = synchronous;
+        this.capacity = capacity;
+        islands = new Island[numIslands];
+        for(int i = 0; i < numIslands; i++)
+            islands[i] = new Island();
+        parties = numIslands;
+        }
+
+    /** The number of islands */
+    public int numIslands() { return numIslands; }
+
+    /** Whether the islands migrate synchronously */
+    public boolean isSynchronous() { return synchronous; }
+
+    /** How many batches of migrants may wait from one island to another */
+    public int queueCapacity() { return capacity; }
+
+    /** Makes the given EvolutionState island #island. */
+    public void register(EvolutionState state, int island)
+        {
+        islands[island].state = state;
+        registry.put(state, this);
+        }
+
+    /** Returns the number of the island with the given EvolutionState, or -1. */
+    public int indexOf(EvolutionState state)
+        {
+        for(int i = 0; i < numIslands; i++)
+            if (islands[i].state == state) return i;
+        return -1;
+        }
+
+    synchronized ArrayBlockingQueue queue(int destination, int source)
+        {
+        ArrayBlockingQueue q = islands[destination].incoming[source];
+        if (q == null)
+            q = islands[destination].incoming[source] = new ArrayBlockingQueue(capacity);
+        return q;
+        }
+
+    /** Sends a batch of migrants from island source to island destination.  Returns the number of
+        migrants dropped to make room, or -1 if the destination has stopped. */
+    int send(int source, int destination, IslandExchangeMigration migration)
+        {
+        Island dest = islands[destination];
+        ArrayBlockingQueue q = queue(destination, source);
+        int dropped = 0;
+        if (synchronous)
+            {
+            while(!dest.done)
+                {
+                try
+                    {
+                    if (q.offer(migration, SEND_TIMEOUT, TimeUnit.MILLISECONDS))
+                        return 0;
+                    }
+                catch (InterruptedException e) { }
+                }
+            return -1;
+            }
+        else
+            {
+            if (dest.done) return -1;
+            while(!q.offer(migration))
+                {
+                IslandExchangeMigration old = (IslandExchangeMigration)(q.poll());
+                if (old != null) dropped += old.individuals.length;
+                }
+            return dropped;
+            }
+        }
+
+    /** Takes the migrants which have been sent to island destination, in the order of the sending
+        islands.  With synchronous migration, only the migrants sent up to the given generation are taken. */
+    List take(int destination, int generation)
+        {
+        List taken = new ArrayList();
+        Island dest = islands[destination];
+        for(int source = 0; source < numIslands; source++)
+            {
+            ArrayBlockingQueue q;
+            synchronized(this) { q = dest.incoming[source]; }
+            if (q == null) continue;
+            IslandExchangeMigration migration;
+            while((migration = (IslandExchangeMigration)(q.peek())) != null &&
+                (!synchronous || migration.generation <= generation))
+                taken.add(q.poll());
+            }
+        return taken;
+        }
+
+    /** With synchronous migration, waits until all the islands still running have called this. */
+    public synchronized void synchronize()
+        {
+        long r = round;
+        if (++arrived >= parties)
+            {
+            advance();
+            return;
+            }
+        while(round == r)
+            {
+            try { wait(); }
+            catch (InterruptedException e) { }
+            }
+        }
+
+    void advance()
+        {
+        arrived = 0;
+        round++;
+        notifyAll();
+        }
+
+    /** Marks the island as stopped: nobody waits for it or sends to it any more.  If it found
+        the ideal individual, the other islands are told about it. */
+    public synchronized void stop(int island, boolean foundIdeal)
+        {
+        if (islands[island].done) return;
+        islands[island].done = true;
+        for(int source = 0; source < numIslands; source++)
+            if (islands[island].incoming[source] != null)
+                islands[island].incoming[source].clear();
+        if (foundIdeal && found == -1)
+            {
+            foundGeneration = islands[island].state.generation;
+            found = island;
+            }
+        parties--;
+        if (parties > 0 && arrived >= parties)
+            advance();
+        }
+
+    /** Returns the island which found the ideal individual and stopped, as far as the given island is concerned,
+        or -1.  With synchronous migration, the island only hears about it in the generation after the one in which
+        the ideal individual was found, so that all the islands stop at the same point. */
+    public int foundIdeal(int island, int generation)
+        {
+        int f = found;
+        if (f == -1 || f == island) return -1;
+        if (synchronous)
+            synchronized(this)
+                {
+                if (generation <= foundGeneration) return -1;
+                }
+        return f;
+        }
+
+    /** Runs the islands given the command-line arguments of ec.Evolve, and returns when all of them are done. */
+    public static void run(final String[] args)
+        {
+        ParameterDatabase parameters = Evolve.loadParameterDatabase(args);
+        Parameter base = new Parameter(EvolutionState.P_EXCHANGER);
+
+        int numIslands = parameters.getInt(base.push(P_NUM_ISLANDS), null, 1);
+        if (numIslands < 1)
+            Output.initialError("The number of islands must be >= 1.", base.push(P_NUM_ISLANDS));
+        boolean synchronous = parameters.getBoolean(base.push(P_SYNCHRONOUS), null, false);
+        int capacity = parameters.getIntWithDefault(base.push(P_QUEUE_CAPACITY), null, 4);
+        if (capacity < 1)
+            Output.initialError("The capacity of the migration queues must be >= 1.", base.push(P_QUEUE_CAPACITY));
+
+        final LocalIslands islands = new LocalIslands(numIslands, synchronous, capacity);
+
+        // set up all the islands before any of them starts, so that they can all be found
+        for(int i = 0; i < numIslands; i++)
+            {
+            if (parameters == null)
+                parameters = Evolve.loadParameterDatabase(args);
+            EvolutionState state = Evolve.initialize(parameters, i);  // the island number is the seed increment
+            state.output.systemMessage("Island: " + i);
+            state.job = new Object[1];
+            state.job[0] = new Integer(0);
+            state.runtimeArguments = args;
+            String prefix = "island." + i + ".";
+            state.output.setFilePrefix(prefix);
+            state.checkpointPrefix = prefix + state.checkpointPrefix;
+            islands.register(state, i);
+            parameters = null;
+            }
+
+        Thread[] threads = new Thread[numIslands];
+        for(int i = 0; i < numIslands; i++)
+            {
+            final int island = i;
+            threads[i] = new Thread(new Runnable()
+                {
+                public void run()
+                    {
+                    EvolutionState state = islands.islands[island].state;
+                    try
+                        {
+                        state.run(EvolutionState.C_STARTED_FRESH);
+                        Evolve.cleanup(state);
+                        }
+                    catch (Throwable e)  // such as an out of memory error caused by this island
+                        {
+                        // report it in the island's logs, but let the other islands go on
+                        StringWriter trace = new StringWriter();
+                        e.printStackTrace(new PrintWriter(trace));
+                        state.output.error("Island " + island + " died because of:\n" + trace);
+                        state.output.flush();
+                        }
+                    finally
+                        {
+                        islands.stop(island, false);
+                        registry.remove(state);
+                        }
+                    }
+                }, "Island " + i);
+            threads[i].start();
+            }
+
+        for(int i = 0; i < numIslands; i++)
+            {
+            try
+                {
+                threads[i].join();
+                }
+            catch (InterruptedException e) { }
+            }
+        }
+
+    public static void main(String[] args)
+        {
+        run(args);
+        System.exit(0);
+        }
+    }
@@ -0,0 +1,59 @@
+/*
+  Copyright 2006 by Sean Luke
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+
+package ec.gp;
+
+/*
+ * GPBatch.java
+ */
+
+/**
+ * GPBatch holds the working space for evaluating a GP tree over many fitness cases at
+ * once with GPNode.evalBatch(...).  Each node computes its results for all the cases into
+ * an array of doubles handed to it by its parent.  A node which has more than one child
+ * lets its first child compute into that same array, and borrows buffer(depth) for its
+ * second child, where depth is its own depth in the tree.  No other node in the middle of
+ * being evaluated is at that depth, so the buffers may be reused over and over, and
+ * evaluating a tree allocates nothing once the buffers are large enough.  A node with more
+ * than two children must fold them into its result one at a time.
+ *
+ * <p>A GPBatch isn't thread-safe: give each thread (typically, each clone of the GPProblem)
+ * its own.
+ *
+ * @author Sean Luke
+ * @version 1.0
+ */
+
+public class GPBatch
+    {
+    /** The number of fitness cases */
+    public int length;
+
+    // buffers[depth] is borrowed by nodes at that depth
+    double[][] buffers = new double[0][];
+
+    public GPBatch(int length)
+        {
+        this.length = length;
+        }
+
+    /** Returns the buffer for nodes at the given depth (the root is at depth 0) to compute
+        their second child into.  It holds at least <i>length</i> doubles. */
+    public double[] buffer(int depth)
+        {
+        if (depth >= buffers.length)
+            {
+            double[][] b = new double[Math.max(depth + 1, buffers.length * 2)][];
+            System.arraycopy(buffers, 0, b, 0, buffers.length);
+            buffers = b;
+            }
+        double[] b = buffers[depth];
+        if (b == null || b.length < length)
+            b = buffers[depth] = new double[length];
+        return b;
+        }
+    }
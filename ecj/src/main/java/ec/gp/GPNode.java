@@ -1387,5 +1387,64 @@ public abstract class GPNode implements GPNodeParent, Prototype
         final ADFStack stack,
         final GPIndividual individual,
         final Problem problem);
+
+    /** Returns true if this node implements evalBatch(...).  By default, false. */
+    public boolean canEvalBatch() { return false; }
+
+    /** Returns true if every node in the subtree rooted at this node implements
+        evalBatch(...), so that the subtree may be evaluated in batch.  O(n). */
+    public boolean subtreeCanEvalBatch()
+        {
+        if (!canEvalBatch()) return false;
+        for(int x=0;x<children.length;x++)
+            if (!children[x].subtreeCanEvalBatch()) return false;
+        return true;
+        }
+
+    /** Evaluates the node over all the fitness cases at once, rather than once per case
+        with eval(...), and puts the results for cases 0 through batch.length-1 in
+        <tt>result</tt>.  <tt>depth</tt> is the node's depth in the tree (0 for the root).
+        The problem decides what the cases are, and nodes which read them (such as
+        variables) get them from the problem.  This is meant for nodes which compute
+        doubles with no side effects, so they don't need a GPData: then the node does the
+        same arithmetic on a whole array at a time, which is much faster than walking the
+        tree once per case, and which the JIT can often vectorize.
+        
+        <p>The node should evaluate its first child into <tt>result</tt> and its second
+        child, if any, into batch.buffer(depth), passing depth+1 to both of them.  For
+        example, an Add node might be written as
+        
+        * <tt><pre>public void evalBatch(final EvolutionState state,
+        *                     final int thread,
+        *                     final double[] result,
+        *                     final int depth,
+        *                     final GPBatch batch,
+        *                     final ADFStack stack,
+        *                     final GPIndividual individual,
+        *                     final Problem problem)
+        *    {
+        *    double[] second = batch.buffer(depth);
+        *    children[0].evalBatch(state,thread,result,depth+1,batch,stack,individual,problem);
+        *    children[1].evalBatch(state,thread,second,depth+1,batch,stack,individual,problem);
+        *    for(int i=0;i&lt;batch.length;i++)
+        *        result[i] = result[i] + second[i];
+        *    }
+        </pre></tt>
+        
+        <p>If you implement this method, override canEvalBatch() to return true.
+        By default this method issues a fatal error.
+    */
+
+    public void evalBatch(final EvolutionState state,
+        final int thread,
+        final double[] result,
+        final int depth,
+        final GPBatch batch,
+        final ADFStack stack,
+        final GPIndividual individual,
+        final Problem problem)
+        {
+        state.output.fatal("The node " + toStringForError() + " cannot be evaluated in batch.");
+        }
     }
 
@@ -10,6 +10,7 @@ import java.io.*;
 import ec.util.DecodeReturn;
 import ec.util.Parameter;
 import ec.util.Code;
+import ec.util.ThreadPool;
 import ec.Fitness;
 import ec.EvolutionState;
 import java.util.*;
@@ -372,14 +373,35 @@ public class MultiObjectiveFitness extends Fitness
      * Divides an array of Individuals into the Pareto front and the "nonFront" (everyone else). 
      * The Pareto front is returned.  You may provide ArrayLists for the front and a nonFront.
      * If you provide null for the front, an ArrayList will be created for you.  If you provide
-     * null for the nonFront, non-front individuals will not be added to it.  This algorithm is
-     * O(n^2).
+     * null for the nonFront, non-front individuals will not be added to it.  Both keep the
+     * order of inds.  See NonDominatedSort: with two objectives this is O(n log n), in general it's
+     * O(n^2) in the worst case.  If some fitness overrides paretoDominates(...), the individuals
+     * are compared with it instead, which is O(n^2), and the order of the lists may differ.
      */
     public static ArrayList partitionIntoParetoFront(Individual[] inds, ArrayList front, ArrayList nonFront)
         {
         if (front == null)
             front = new ArrayList();
-                        
+        if (inds.length == 0)
+            return front;
+        if (!NonDominatedSort.canRank(inds))
+            return partitionIntoParetoFrontByComparison(inds, front, nonFront);
+                
+        int[] ranks = NonDominatedSort.rank(NonDominatedSort.objectiveMatrix(inds),
+            ((MultiObjectiveFitness)(inds[0].fitness)).objectives.length, true, null, 1);
+        for (int i = 0; i < inds.length; i++)
+            {
+            if (ranks[i] == 0)
+                front.add(inds[i]);
+            else if (nonFront != null)
+                nonFront.add(inds[i]);
+            }
+        return front;
+        }
+
+    // partitionIntoParetoFront(...) with paretoDominates(...).  This algorithm is O(n^2).
+    static ArrayList partitionIntoParetoFrontByComparison(Individual[] inds, ArrayList front, ArrayList nonFront)
+        {
         // put the first guy in the front
         front.add(inds[0]);
                 
@@ -422,9 +444,23 @@ public class MultiObjectiveFitness extends Fitness
 
 
     /** Divides inds into pareto front ranks (each an ArrayList), and returns them, in order,
-        stored in an ArrayList. */
+        stored in an ArrayList.  Each rank keeps the order of inds.  See NonDominatedSort.  If
+        some fitness overrides paretoDominates(...), the ranks are peeled off one after the other
+        with partitionIntoParetoFront(...) instead. */
     public static ArrayList partitionIntoRanks(Individual[] inds)
         {
+        return partitionIntoRanks(inds, null, 1);
+        }
+
+
+    /** Divides inds into pareto front ranks (each an ArrayList), and returns them, in order,
+        stored in an ArrayList.  The ranking is done by numThreads threads of the given pool,
+        unless some fitness overrides paretoDominates(...). */
+    public static ArrayList partitionIntoRanks(Individual[] inds, ThreadPool pool, int numThreads)
+        {
+        if (NonDominatedSort.canRank(inds))
+            return NonDominatedSort.partitionIntoRanks(inds, pool, numThreads);
+
         Individual[] dummy = new Individual[0];
         ArrayList frontsByRank = new ArrayList();
 
@@ -432,7 +468,7 @@ public class MultiObjectiveFitness extends Fitness
             {
             ArrayList front = new ArrayList();
             ArrayList nonFront = new ArrayList();
-            MultiObjectiveFitness.partitionIntoParetoFront(inds, front, nonFront);
+            partitionIntoParetoFrontByComparison(inds, front, nonFront);
                         
             // build inds out of remainder
             inds = (Individual[]) nonFront.toArray(dummy);
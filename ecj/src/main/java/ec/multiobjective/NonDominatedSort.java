@@ -0,0 +1,383 @@
+/*
+  Copyright 2006 by Sean Luke
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package ec.multiobjective;
+
+import java.util.*;
+import ec.*;
+import ec.util.*;
+
+/*
+ * NonDominatedSort.java
+ */
+
+/**
+ * NonDominatedSort divides individuals into Pareto front ranks.  It is used by
+ * MultiObjectiveFitness.partitionIntoRanks(...) and partitionIntoParetoFront(...),
+ * unless some fitness overrides paretoDominates(...) (see canRank(...)).
+ *
+ * <p>The objectives of the individuals are first copied into a single packed float array
+ * (one row of objectives per individual, negated if they are maximized, so that lower is
+ * always better).  The rows are then sorted lexicographically, so that an individual can
+ * only be dominated by individuals which come before it.  The individuals are placed
+ * into the fronts in that order: each goes into the first front none of whose members
+ * dominates it, which is found by binary search over the fronts (this is the
+ * Efficient Non-dominated Sort, ENS-BS, of Zhang et al.).  Each front keeps a packed
+ * copy of the rows of its members, which are compared with the newcomer from the last to the first.
+ * With two objectives only the last member of a front needs to be looked at, so the
+ * whole sort is O(n log n).  In general it is O(m n^2) in the worst case, but usually much
+ * better, and it needs O(mn) memory.
+ *
+ * <p>When given a ThreadPool and more than one thread, the sort handles the individuals
+ * in blocks: the threads search the fronts for the individuals of a block in parallel,
+ * then the block is checked against itself and placed into the fronts in one go.
+ *
+ * <p>The main(...) method benchmarks the sort on random individuals and checks its results.
+ *
+ * @author Sean Luke
+ * @version 1.0
+ */
+
+public class NonDominatedSort
+    {
+    /** The number of individuals per thread in a block of a parallel sort. */
+    public static final int BLOCK_SIZE = 256;
+
+    // the packed objectives of all the individuals, lower is better
+    final float[] objectives;
+    final int numObjectives;
+    final int numInds;
+    // the highest rank handed out: everyone at this rank or beyond is put there
+    final int maxRank;
+
+    int[] ranks;
+    int numFronts;
+    int[] frontSizes = new int[8];
+    float[][] frontObjectives = new float[8][];
+
+    NonDominatedSort(float[] objectives, int numObjectives, int numInds, int maxRank)
+        {
+        this.objectives = objectives;
+        this.numObjectives = numObjectives;
+        this.numInds = numInds;
+        this.maxRank = maxRank;
+        ranks = new int[numInds];
+        }
+
+    /** Returns true if the individuals may be ranked by comparing their objectives directly,
+        that is, if none of their fitnesses overrides MultiObjectiveFitness.paretoDominates(...). */
+    public static boolean canRank(Individual[] inds)
+        {
+        Class checked = null;
+        for(int i = 0; i < inds.length; i++)
+            {
+            Class c = inds[i].fitness.getClass();
+            if (c == checked) continue;
+            try
+                {
+                if (c.getMethod("paretoDominates", new Class[] { MultiObjectiveFitness.class }).getDeclaringClass()
+                    != MultiObjectiveFitness.class)
+                    return false;
+                }
+            catch (NoSuchMethodException e) { return false; }  // never happens
+            checked = c;
+            }
+        return true;
+        }
+
+    /** Returns the objectives of the individuals, packed into one array, one row of
+        getNumObjectives() values per individual.  The objectives are negated if they are
+        maximized, so lower is always better. */
+    public static float[] objectiveMatrix(Individual[] inds)
+        {
+        if (inds.length == 0) return new float[0];
+        MultiObjectiveFitness first = (MultiObjectiveFitness)(inds[0].fitness);
+        int m = first.objectives.length;
+        float[] matrix = new float[inds.length * m];
+        for(int i = 0; i < inds.length; i++)
+            {
+            MultiObjectiveFitness f = (MultiObjectiveFitness)(inds[i].fitness);
+            if (f.maximize != first.maximize)
+                throw new RuntimeException(
+                    "Attempt made to compare two multiobjective fitnesses; but one expects higher values to be better and the other expectes lower values to be better.");
+            if (f.objectives.length != m)
+                throw new RuntimeException("Attempt made to compare two multiobjective fitnesses; but they have different numbers of objectives.");
+            for(int o = 0; o < m; o++)
+                matrix[i * m + o] = (f.maximize ? -f.objectives[o] : f.objectives[o]);
+            }
+        return matrix;
+        }
+
+    /** Returns the Pareto front rank of each individual, given their packed objectives
+        (see objectiveMatrix(...)).  Ranks start at 0.  If firstFrontOnly is true, everyone who
+        is not in the front gets rank 1.  If pool is not null and numThreads is more than 1, the
+        sort runs in parallel on the pool. */
+    public static int[] rank(float[] objectives, int numObjectives, boolean firstFrontOnly, ThreadPool pool, int numThreads)
+        {
+        int numInds = (numObjectives == 0 ? 0 : objectives.length / numObjectives);
+        NonDominatedSort sort = new NonDominatedSort(objectives, numObjectives, numInds,
+            firstFrontOnly ? 1 : Integer.MAX_VALUE);
+        int[] order = sort.lexicographicOrder();
+        if (pool == null || numThreads < 2 || numInds < 2 * BLOCK_SIZE)
+            sort.sort(order);
+        else sort.sort(order, pool, numThreads);
+        return sort.ranks;
+        }
+
+    /** Divides the individuals into Pareto front ranks, each an ArrayList of individuals
+        in the order they appear in inds, and returns the ranks in order. */
+    public static ArrayList partitionIntoRanks(Individual[] inds, ThreadPool pool, int numThreads)
+        {
+        ArrayList frontsByRank = new ArrayList();
+        if (inds.length == 0) return frontsByRank;
+        int[] ranks = rank(objectiveMatrix(inds), ((MultiObjectiveFitness)(inds[0].fitness)).objectives.length,
+            false, pool, numThreads);
+
+        int[] sizes = new int[inds.length + 1];
+        int numRanks = 0;
+        for(int i = 0; i < ranks.length; i++)
+            {
+            sizes[ranks[i]]++;
+            if (ranks[i] >= numRanks) numRanks = ranks[i] + 1;
+            }
+        for(int r = 0; r < numRanks; r++)
+            frontsByRank.add(new ArrayList(sizes[r]));
+        for(int i = 0; i < inds.length; i++)
+            ((ArrayList)(frontsByRank.get(ranks[i]))).add(inds[i]);
+        return frontsByRank;
+        }
+
+    // sorts the individuals lexicographically by their objectives, ties by index, so that
+    // every individual comes after all the ones which dominate it
+    int[] lexicographicOrder()
+        {
+        int[] order = new int[numInds];
+        for(int i = 0; i < numInds; i++) order[i] = i;
+        QuickSort.qsort(order, new SortComparatorL()
+            {
+            public boolean lt(long a, long b) { return compare((int)a, (int)b) < 0; }
+            public boolean gt(long a, long b) { return compare((int)a, (int)b) > 0; }
+            });
+        return order;
+        }
+
+    int compare(int a, int b)
+        {
+        int ra = a * numObjectives;
+        int rb = b * numObjectives;
+        for(int o = 0; o < numObjectives; o++)
+            {
+            if (objectives[ra + o] < objectives[rb + o]) return -1;
+            if (objectives[ra + o] > objectives[rb + o]) return 1;
+            }
+        return a - b;
+        }
+
+    final boolean dominates(float[] as, int a, float[] bs, int b)
+        {
+        return dominates(as, a, bs, b, numObjectives);
+        }
+
+    /** Returns true if row a of the packed objectives as Pareto dominates row b of bs (lower is better). */
+    public static boolean dominates(float[] as, int a, float[] bs, int b, int numObjectives)
+        {
+        int ra = a * numObjectives;
+        int rb = b * numObjectives;
+        boolean better = false;
+        for(int o = 0; o < numObjectives; o++)
+            {
+            float x = as[ra + o];
+            float y = bs[rb + o];
+            if (x > y) return false;
+            if (x < y) better = true;
+            }
+        return better;
+        }
+
+    // returns true if a member of front k dominates individual i, looking at the members who
+    // came last first.  Since the individuals come in lexicographic order, with two objectives
+    // the last member of a front has the lowest second objective, so it's the only one to check
+    // (and with one objective all the members of a front are the same).
+    final boolean frontDominates(int k, int i)
+        {
+        float[] f = frontObjectives[k];
+        int last = frontSizes[k] - 1;
+        if (numObjectives <= 2)
+            return dominates(f, last, objectives, i);
+        for(int j = last; j >= 0; j--)
+            if (dominates(f, j, objectives, i))
+                return true;
+        return false;
+        }
+
+    // returns the lowest rank individual i may have given the fronts so far.  If a member of front k
+    // dominates i, so does a member of every earlier front, so we can do a binary search.
+    final int lowestRank(int i)
+        {
+        int lo = 0;
+        int hi = Math.min(numFronts, maxRank);
+        while(lo < hi)
+            {
+            int mid = (lo + hi) >>> 1;
+            if (frontDominates(mid, i)) lo = mid + 1;
+            else hi = mid;
+            }
+        return lo;
+        }
+
+    // puts individual i into front r
+    void place(int i, int r)
+        {
+        ranks[i] = r;
+        if (r >= maxRank) return;  // nobody needs to know
+        if (r == numFronts)
+            {
+            if (numFronts == frontSizes.length)
+                {
+                frontSizes = resize(frontSizes, numFronts * 2);
+                float[][] f = new float[numFronts * 2][];
+                System.arraycopy(frontObjectives, 0, f, 0, numFronts);
+                frontObjectives = f;
+                }
+            frontObjectives[numFronts] = new float[numObjectives * 4];
+            numFronts++;
+            }
+        float[] f = frontObjectives[r];
+        int size = frontSizes[r];
+        if ((size + 1) * numObjectives > f.length)
+            {
+            float[] g = new float[f.length * 2];
+            System.arraycopy(f, 0, g, 0, size * numObjectives);
+            f = frontObjectives[r] = g;
+            }
+        System.arraycopy(objectives, i * numObjectives, f, size * numObjectives, numObjectives);
+        frontSizes[r] = size + 1;
+        }
+
+    static int[] resize(int[] array, int length)
+        {
+        int[] a = new int[length];
+        System.arraycopy(array, 0, a, 0, array.length);
+        return a;
+        }
+
+    // places the individuals one by one
+    void sort(int[] order)
+        {
+        for(int x = 0; x < numInds; x++)
+            place(order[x], lowestRank(order[x]));
+        }
+
+    // places the individuals block by block.  The threads find the lowest ranks of the
+    // individuals of a block given the earlier blocks, then the block is checked against
+    // itself: an individual's rank is one more than the highest rank of those dominating it.
+    void sort(final int[] order, ThreadPool pool, int numThreads)
+        {
+        final int[] lowest = new int[BLOCK_SIZE * numThreads];
+        final int[] block = new int[2];
+        Runnable[] runnables = new Runnable[numThreads];
+        for(int t = 0; t < numThreads; t++)
+            {
+            final int start = t * BLOCK_SIZE;
+            runnables[t] = new Runnable()
+                {
+                public void run()
+                    {
+                    int end = Math.min(start + BLOCK_SIZE, block[1] - block[0]);
+                    for(int x = start; x < end; x++)
+                        lowest[x] = lowestRank(order[block[0] + x]);
+                    }
+                };
+            }
+
+        for(int from = 0; from < numInds; from += lowest.length)
+            {
+            int to = Math.min(from + lowest.length, numInds);
+            block[0] = from;
+            block[1] = to;
+            try
+                {
+                pool.runAll(runnables);
+                }
+            catch (InterruptedException e)
+                {
+                throw new RuntimeException("Interrupted while sorting into Pareto fronts");
+                }
+
+            for(int x = from; x < to; x++)
+                {
+                int i = order[x];
+                int r = lowest[x - from];
+                for(int y = from; y < x; y++)
+                    {
+                    int j = order[y];
+                    if (ranks[j] >= r && dominates(objectives, j, objectives, i))
+                        r = ranks[j] + 1;
+                    }
+                place(i, Math.min(r, maxRank));
+                }
+            }
+        }
+
+    /** Benchmarks the sort on random individuals, serially and in parallel.  Up to 20000 individuals,
+        it also checks the ranks against the definition (no dominators: rank 0, otherwise one more
+        than the highest rank of the dominators), which takes much longer than the sort.
+        Arguments: number of individuals, number of objectives, number of threads. */
+    public static void main(String[] args) throws InterruptedException
+        {
+        int[] sizes = { 10000, 20000, 50000, 100000 };
+        int[] numObjectives = { 2, 3, 5 };
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        if (args.length > 0) sizes = new int[] { Integer.parseInt(args[0]) };
+        if (args.length > 1) numObjectives = new int[] { Integer.parseInt(args[1]) };
+        if (args.length > 2) numThreads = Integer.parseInt(args[2]);
+
+        ThreadPool pool = new ThreadPool();
+        MersenneTwisterFast random = new MersenneTwisterFast(4357);
+        for(int s = 0; s < sizes.length; s++)
+            for(int o = 0; o < numObjectives.length; o++)
+                {
+                int n = sizes[s];
+                int m = numObjectives[o];
+                // points scattered around the plane x1 + ... + xm = 1, in steps of 0.01 so there are ties
+                float[] objectives = new float[n * m];
+                for(int i = 0; i < n; i++)
+                    {
+                    double sum = 0;
+                    for(int k = 0; k < m; k++)
+                        sum += (objectives[i * m + k] = random.nextInt(100) + 1);
+                    double scale = 1 + random.nextDouble();
+                    for(int k = 0; k < m; k++)
+                        objectives[i * m + k] = (float)(Math.floor(objectives[i * m + k] / sum * scale * 100) / 100);
+                    }
+
+                rank(objectives, m, false, null, 1);  // warm up
+                long time = System.currentTimeMillis();
+                int[] ranks = rank(objectives, m, false, null, 1);
+                long serial = System.currentTimeMillis() - time;
+                time = System.currentTimeMillis();
+                int[] parallel = rank(objectives, m, false, pool, numThreads);
+                long threaded = System.currentTimeMillis() - time;
+
+                int numRanks = 0;
+                for(int i = 0; i < n; i++)
+                    numRanks = Math.max(numRanks, ranks[i] + 1);
+                boolean correct = Arrays.equals(ranks, parallel);
+                NonDominatedSort check = new NonDominatedSort(objectives, m, n, Integer.MAX_VALUE);
+                for(int i = 0; i < n && n <= 20000 && correct; i++)
+                    {
+                    int r = 0;
+                    for(int j = 0; j < n; j++)
+                        if (check.dominates(objectives, j, objectives, i) && ranks[j] + 1 > r)
+                            r = ranks[j] + 1;
+                    correct = (r == ranks[i]);
+                    }
+                System.out.println(n + " individuals, " + m + " objectives, " + numRanks + " ranks: " +
+                    serial + " ms, " + numThreads + " threads " + threaded + " ms" + (correct ? "" : ", WRONG RANKS"));
+                }
+        pool.kill();
+        }
+    }
@@ -77,38 +77,33 @@ public class NSGA2Evaluator extends SimpleEvaluator
     public Individual[] buildArchive(EvolutionState state, int subpop)
         {
         Individual[] dummy = new Individual[0];
-        ArrayList ranks = assignFrontRanks(state.population.subpops[subpop]);
+        ArrayList ranks = assignFrontRanks(state, state.population.subpops[subpop]);
                 
         ArrayList newSubpopulation = new ArrayList();
         int size = ranks.size();
         for(int i = 0; i < size; i++)
             {
             Individual[] rank = (Individual[])((ArrayList)(ranks.get(i))).toArray(dummy);
-            assignSparsity(rank);
+            assignSparsity(state, rank);
             if (rank.length + newSubpopulation.size() >= originalPopSize[subpop])
                 {
-                // first sort the rank by sparsity
-                ec.util.QuickSort.qsort(rank, new SortComparator()
+                // sort the rank by sparsity, but only as far as the m sparsest individuals, which
+                // end up at the top, and put them in the new population, sparsest first
+                final double[] sparsity = new double[rank.length];
+                int[] order = new int[rank.length];
+                for(int j = 0; j < rank.length; j++)
                     {
-                    public boolean lt(Object a, Object b)
-                        {
-                        Individual i1 = (Individual) a;
-                        Individual i2 = (Individual) b;
-                        return (((NSGA2MultiObjectiveFitness) i1.fitness).sparsity > ((NSGA2MultiObjectiveFitness) i2.fitness).sparsity);
-                        }
-
-                    public boolean gt(Object a, Object b)
-                        {
-                        Individual i1 = (Individual) a;
-                        Individual i2 = (Individual) b;
-                        return (((NSGA2MultiObjectiveFitness) i1.fitness).sparsity < ((NSGA2MultiObjectiveFitness) i2.fitness).sparsity);
-                        }
-                    });
-
-                // then put the m sparsest individuals in the new population
+                    sparsity[j] = ((NSGA2MultiObjectiveFitness) rank[j].fitness).sparsity;
+                    order[j] = j;
+                    }
                 int m = originalPopSize[subpop] - newSubpopulation.size();
-                for(int j = 0 ; j < m; j++)
-                    newSubpopulation.add(rank[j]);
+                QuickSort.partialQsort(order, rank.length - m, new SortComparatorL()
+                    {
+                    public boolean lt(long a, long b) { return sparsity[(int)a] < sparsity[(int)b]; }
+                    public boolean gt(long a, long b) { return sparsity[(int)a] > sparsity[(int)b]; }
+                    });
+                for(int j = rank.length - 1; j >= rank.length - m; j--)
+                    newSubpopulation.add(rank[order[j]]);
                                 
                 // and bail
                 break;
@@ -137,9 +132,19 @@ public class NSGA2Evaluator extends SimpleEvaluator
     /** Divides inds into ranks and assigns each individual's rank to be the rank it was placed into.
         Each front is an ArrayList. */
     public ArrayList assignFrontRanks(Subpopulation subpop)
+        {
+        return assignFrontRanks(null, subpop);
+        }
+
+
+    /** Divides inds into ranks and assigns each individual's rank to be the rank it was placed into,
+        using the evaluation threads if state isn't null.  Each front is an ArrayList. */
+    public ArrayList assignFrontRanks(EvolutionState state, Subpopulation subpop)
         {
         Individual[] inds = subpop.individuals;
-        ArrayList frontsByRank = MultiObjectiveFitness.partitionIntoRanks(inds);
+        ArrayList frontsByRank = (state == null ?
+            MultiObjectiveFitness.partitionIntoRanks(inds) :
+            MultiObjectiveFitness.partitionIntoRanks(inds, state.pool, state.evalthreads));
 
         int numRanks = frontsByRank.size();
         for(int rank = 0; rank < numRanks; rank++)
@@ -154,56 +159,97 @@ public class NSGA2Evaluator extends SimpleEvaluator
 
 
 
+    /** Fronts smaller than this have their sparsity computed in a single thread. */
+    public static final int MIN_PARALLEL_FRONT_SIZE = 1000;
+
     /**
      * Computes and assigns the sparsity values of a given front.
      */
     public void assignSparsity(Individual[] front)
         {
-        int numObjectives = ((NSGA2MultiObjectiveFitness) front[0].fitness).getObjectives().length;
-                
-        for (int i = 0; i < front.length; i++)
-            ((NSGA2MultiObjectiveFitness) front[i].fitness).sparsity = 0;
+        assignSparsity(null, front);
+        }
+
 
-        for (int i = 0; i < numObjectives; i++)
+    /**
+     * Computes and assigns the sparsity values of a given front.  Each objective is copied into an
+     * array of its own and sorted there.  If state isn't null and the front is large enough, the
+     * objectives are handled in parallel by the evaluation threads.  The front is left in its order.
+     */
+    public void assignSparsity(EvolutionState state, final Individual[] front)
+        {
+        final NSGA2MultiObjectiveFitness typical = (NSGA2MultiObjectiveFitness) front[0].fitness;
+        final int numObjectives = typical.getObjectives().length;
+        final double[][] sparsities = new double[numObjectives][];
+
+        int numThreads = 1;
+        if (state != null && front.length >= MIN_PARALLEL_FRONT_SIZE)
+            numThreads = Math.min(state.evalthreads, numObjectives);
+        
+        Runnable[] runnables = new Runnable[numThreads];
+        for(int t = 0; t < numThreads; t++)
             {
-            final int o = i;
-            // 1. Sort front by each objective.
-            // 2. Sum the manhattan distance of an individual's neighbours over
-            // each objective.
-            // NOTE: No matter which objectives objective you sort by, the
-            // first and last individuals will always be the same (they maybe
-            // interchanged though). This is because a Pareto front's
-            // objective values are strictly increasing/decreasing.
-            ec.util.QuickSort.qsort(front, new SortComparator()
+            final int first = t;
+            final int step = numThreads;
+            runnables[t] = new Runnable()
                 {
-                public boolean lt(Object a, Object b)
-                    {
-                    Individual i1 = (Individual) a;
-                    Individual i2 = (Individual) b;
-                    return (((NSGA2MultiObjectiveFitness) i1.fitness).getObjective(o) < ((NSGA2MultiObjectiveFitness) i2.fitness).getObjective(o));
-                    }
-
-                public boolean gt(Object a, Object b)
+                public void run()
                     {
-                    Individual i1 = (Individual) a;
-                    Individual i2 = (Individual) b;
-                    return (((NSGA2MultiObjectiveFitness) i1.fitness).getObjective(o) > ((NSGA2MultiObjectiveFitness) i2.fitness).getObjective(o));
+                    for(int o = first; o < numObjectives; o += step)
+                        sparsities[o] = sparsity(front, o, typical.maxObjective[o] - typical.minObjective[o]);
                     }
-                });
+                };
+            }
+        if (numThreads == 1)
+            runnables[0].run();
+        else
+            {
+            try
+                {
+                state.pool.runAll(runnables);
+                }
+            catch(InterruptedException e)
+                {
+                state.output.fatal("Whoa! The main evaluation thread got interrupted while computing sparsities!  Dying...");
+                }
+            }
 
-            // Compute and assign sparsity.
-            // the first and last individuals are the sparsest.
-            ((NSGA2MultiObjectiveFitness) front[0].fitness).sparsity = Double.POSITIVE_INFINITY;
-            ((NSGA2MultiObjectiveFitness) front[front.length - 1].fitness).sparsity = Double.POSITIVE_INFINITY;
-            for (int j = 1; j < front.length - 1; j++)
+        // add up the objectives' shares, in order.  The first and last individuals along any objective
+        // are the sparsest.
+        for (int i = 0; i < front.length; i++)
+            {
+            double s = 0;
+            for (int o = 0; o < numObjectives; o++)
                 {
-                NSGA2MultiObjectiveFitness f_j = (NSGA2MultiObjectiveFitness) (front[j].fitness);
-                NSGA2MultiObjectiveFitness f_jplus1 = (NSGA2MultiObjectiveFitness) (front[j+1].fitness);
-                NSGA2MultiObjectiveFitness f_jminus1 = (NSGA2MultiObjectiveFitness) (front[j-1].fitness);
-                                
-                // store the NSGA2Sparsity in sparsity
-                f_j.sparsity += (f_jplus1.getObjective(o) - f_jminus1.getObjective(o)) / (f_j.maxObjective[o] - f_j.minObjective[o]);
+                if (sparsities[o][i] == Double.POSITIVE_INFINITY) s = Double.POSITIVE_INFINITY;
+                else s += sparsities[o][i];
                 }
+            ((NSGA2MultiObjectiveFitness) front[i].fitness).sparsity = s;
+            }
+        }
+
+
+    /** Returns each individual's share of the sparsity along the given objective: the distance between its neighbors
+        along it divided by its range, or infinity for the first and last individuals.  The individuals are
+        sorted by their objective values, ties by their position in the front, packed into longs. */
+    double[] sparsity(Individual[] front, int o, float range)
+        {
+        float[] values = new float[front.length];
+        long[] sorted = new long[front.length];
+        for (int i = 0; i < front.length; i++)
+            {
+            values[i] = ((NSGA2MultiObjectiveFitness) front[i].fitness).getObjective(o);
+            int bits = Float.floatToIntBits(values[i]);
+            bits ^= (bits >> 31) & 0x7fffffff;  // so that the ints are in the same order as the floats
+            sorted[i] = (((long) bits) << 32) | i;
             }
+        Arrays.sort(sorted);
+
+        double[] sparsity = new double[front.length];
+        sparsity[(int) sorted[0]] = Double.POSITIVE_INFINITY;
+        sparsity[(int) sorted[front.length - 1]] = Double.POSITIVE_INFINITY;
+        for (int j = 1; j < front.length - 1; j++)
+            sparsity[(int) sorted[j]] = (values[(int) sorted[j+1]] - values[(int) sorted[j-1]]) / range;
+        return sparsity;
         }
-    }
\ No newline at end of file
+    }
@@ -0,0 +1,282 @@
+/*
+  Copyright 2010 by Sean Luke and George Mason University
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+package ec.multiobjective.spea2;
+
+import ec.util.*;
+
+/*
+ * NearestNeighbors.java
+ */
+
+/**
+ * NearestNeighbors is a k-d tree over the objectives of a set of individuals, packed
+ * into one float array as by ec.multiobjective.NonDominatedSort.objectiveMatrix(...).
+ * SPEA2 uses it to find the distance of each individual to its k-th nearest neighbor,
+ * which it used to look up in a full matrix of distances.  Building the tree takes
+ * O(n log n) time and O(n) memory, and a query usually takes about O(k log n).
+ *
+ * <p>Distances are sums of squared differences of the objectives, computed just like
+ * MultiObjectiveFitness.sumSquaredObjectiveDistance(...), so they come out exactly the same.
+ * Individuals may be removed from the tree, after which queries don't find them any more.
+ * Queries may run in several threads at once, but not while individuals are removed.
+ *
+ * @author Sean Luke
+ * @version 1.0
+ */
+
+public class NearestNeighbors
+    {
+    /** The largest number of individuals in a leaf of the tree */
+    public static final int LEAF_SIZE = 8;
+
+    final float[] objectives;
+    final int numObjectives;
+    final int numInds;
+    boolean[] removed;
+
+    // the individuals, arranged so that every node of the tree covers a range of them
+    int[] points;
+    // the nodes: the range of points covered, and for inner nodes the dimension and value
+    // they are split on and their children (the root is node 0)
+    int numNodes;
+    int[] nodeFrom, nodeTo, nodeDimension, nodeLeft, nodeRight;
+    float[] nodeSplit;
+
+    public NearestNeighbors(float[] objectives, int numObjectives)
+        {
+        this.objectives = objectives;
+        this.numObjectives = numObjectives;
+        numInds = (numObjectives == 0 ? 0 : objectives.length / numObjectives);
+        removed = new boolean[numInds];
+        points = new int[numInds];
+        for(int i = 0; i < numInds; i++) points[i] = i;
+
+        int maxNodes = Math.max(1, 4 * numInds / LEAF_SIZE + 1);
+        nodeFrom = new int[maxNodes];
+        nodeTo = new int[maxNodes];
+        nodeDimension = new int[maxNodes];
+        nodeLeft = new int[maxNodes];
+        nodeRight = new int[maxNodes];
+        nodeSplit = new float[maxNodes];
+        build(0, numInds);
+        }
+
+    // builds the subtree covering points[from...to-1] and returns its node
+    int build(int from, int to)
+        {
+        int node = numNodes++;
+        nodeFrom[node] = from;
+        nodeTo[node] = to;
+        nodeLeft[node] = nodeRight[node] = -1;
+        if (to - from <= LEAF_SIZE) return node;
+
+        // split on the dimension in which the points are spread the most
+        int dimension = 0;
+        float spread = -1;
+        for(int o = 0; o < numObjectives; o++)
+            {
+            float min = Float.POSITIVE_INFINITY, max = Float.NEGATIVE_INFINITY;
+            for(int x = from; x < to; x++)
+                {
+                float v = objectives[points[x] * numObjectives + o];
+                if (v < min) min = v;
+                if (v > max) max = v;
+                }
+            if (max - min > spread) { spread = max - min; dimension = o; }
+            }
+        if (spread <= 0) return node;  // they're all the same
+
+        int middle = (from + to) >>> 1;
+        select(from, to - 1, middle, dimension);
+        nodeDimension[node] = dimension;
+        nodeSplit[node] = objectives[points[middle] * numObjectives + dimension];
+        int left = build(from, middle);
+        int right = build(middle, to);
+        nodeLeft[node] = left;
+        nodeRight[node] = right;
+        return node;
+        }
+
+    // rearranges points[lo...hi] so that points[k] is where it would be if they were sorted by the
+    // given dimension, with nothing greater before it and nothing smaller after it
+    void select(int lo, int hi, int k, int dimension)
+        {
+        while(lo < hi)
+            {
+            float pivot = objectives[points[(lo + hi) >>> 1] * numObjectives + dimension];
+            int i = lo, j = hi;
+            while(i <= j)
+                {
+                while(objectives[points[i] * numObjectives + dimension] < pivot) i++;
+                while(objectives[points[j] * numObjectives + dimension] > pivot) j--;
+                if (i <= j)
+                    {
+                    int tmp = points[i]; points[i] = points[j]; points[j] = tmp;
+                    i++; j--;
+                    }
+                }
+            if (k <= j) hi = j;
+            else if (k >= i) lo = i;
+            else return;
+            }
+        }
+
+    /** The number of individuals in the tree, including removed ones */
+    public int size() { return numInds; }
+
+    /** Removes individual i from the tree. */
+    public void remove(int i) { removed[i] = true; }
+
+    /** Returns true if individual i has been removed. */
+    public boolean isRemoved(int i) { return removed[i]; }
+
+    /** Returns the sum squared distance between individuals a and b. */
+    public double distance(int a, int b)
+        {
+        int ra = a * numObjectives;
+        int rb = b * numObjectives;
+        double s = 0;
+        for(int o = 0; o < numObjectives; o++)
+            {
+            double d = (objectives[ra + o] - objectives[rb + o]);
+            s += d * d;
+            }
+        return s;
+        }
+
+    /** Returns the sum squared distance from individual i to its k-th nearest neighbor (k = 1 is the nearest) among
+        those not removed, or infinity if there aren't that many.  If includeSelf is true, individual i is counted as
+        its own nearest neighbor, at distance 0. */
+    public double kthNearest(int i, int k, boolean includeSelf)
+        {
+        return new Query(k).kthNearest(i, includeSelf);
+        }
+
+    /** Returns the nearest neighbor of individual i among those not removed, or -1 if there is none. */
+    public int nearest(int i)
+        {
+        Query q = new Query(1);
+        q.search(0, i, false);
+        return q.size == 0 ? -1 : q.neighbors[0];
+        }
+
+    /** Returns the sum squared distance from every individual to its k-th nearest neighbor, counting
+        itself as its own nearest neighbor.  If pool isn't null, numThreads threads of it do the work. */
+    public double[] kthNearest(final int k, ThreadPool pool, int numThreads)
+        {
+        final double[] result = new double[numInds];
+        if (pool == null || numThreads < 2 || numInds < numThreads * LEAF_SIZE)
+            {
+            Query q = new Query(k);
+            for(int i = 0; i < numInds; i++)
+                result[i] = q.kthNearest(i, true);
+            return result;
+            }
+
+        Runnable[] runnables = new Runnable[numThreads];
+        for(int t = 0; t < numThreads; t++)
+            {
+            final int from = (int)((long)numInds * t / numThreads);
+            final int to = (int)((long)numInds * (t + 1) / numThreads);
+            runnables[t] = new Runnable()
+                {
+                public void run()
+                    {
+                    Query q = new Query(k);
+                    for(int i = from; i < to; i++)
+                        result[i] = q.kthNearest(i, true);
+                    }
+                };
+            }
+        try
+            {
+            pool.runAll(runnables);
+            }
+        catch (InterruptedException e)
+            {
+            throw new RuntimeException("Interrupted while looking for nearest neighbors");
+            }
+        return result;
+        }
+
+    // a k nearest neighbor search: a max-heap of the k nearest neighbors found so far
+    class Query
+        {
+        double[] distances;
+        int[] neighbors;
+        int size;
+
+        Query(int k)
+            {
+            distances = new double[k];
+            neighbors = new int[k];
+            }
+
+        double kthNearest(int i, boolean includeSelf)
+            {
+            size = 0;
+            search(0, i, includeSelf);
+            return size < distances.length ? Double.POSITIVE_INFINITY : distances[0];
+            }
+
+        void search(int node, int i, boolean includeSelf)
+            {
+            if (nodeLeft[node] == -1)
+                {
+                for(int x = nodeFrom[node]; x < nodeTo[node]; x++)
+                    {
+                    int j = points[x];
+                    if (removed[j] || (j == i && !includeSelf)) continue;
+                    double d = distance(i, j);
+                    if (size < distances.length) add(d, j);
+                    else if (d < distances[0]) replaceTop(d, j);
+                    }
+                return;
+                }
+
+            float diff = objectives[i * numObjectives + nodeDimension[node]] - nodeSplit[node];
+            int near = (diff < 0 ? nodeLeft[node] : nodeRight[node]);
+            int far = (diff < 0 ? nodeRight[node] : nodeLeft[node]);
+            search(near, i, includeSelf);
+            // everyone on the far side is at least diff away
+            if (size < distances.length || (double)diff * diff < distances[0])
+                search(far, i, includeSelf);
+            }
+
+        void add(double d, int j)
+            {
+            int x = size++;
+            while(x > 0)
+                {
+                int parent = (x - 1) >>> 1;
+                if (distances[parent] >= d) break;
+                distances[x] = distances[parent];
+                neighbors[x] = neighbors[parent];
+                x = parent;
+                }
+            distances[x] = d;
+            neighbors[x] = j;
+            }
+
+        void replaceTop(double d, int j)
+            {
+            int x = 0;
+            while(true)
+                {
+                int child = 2 * x + 1;
+                if (child >= size) break;
+                if (child + 1 < size && distances[child + 1] > distances[child]) child++;
+                if (distances[child] <= d) break;
+                distances[x] = distances[child];
+                neighbors[x] = neighbors[child];
+                x = child;
+                }
+            distances[x] = d;
+            neighbors[x] = j;
+            }
+        }
+    }
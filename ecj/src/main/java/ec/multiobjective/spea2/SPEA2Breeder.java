@@ -59,6 +59,70 @@ public class SPEA2Breeder extends SimpleBreeder
         }
 
 
+    /** Removes individuals from the archive, one at a time, until archiveSize of them are left, and returns
+        those left in their order.  The one removed is always the one closest to its nearest neighbor among those
+        left, or in case of a tie, to its second nearest neighbor, and so on.  The neighbors are looked up in a
+        NearestNeighbors tree, and only the individuals whose nearest neighbor was removed need to look again. */
+    public ArrayList truncateArchive(ArrayList archive, int archiveSize)
+        {
+        Individual[] inds = (Individual[])(archive.toArray(new Individual[archive.size()]));
+        int n = inds.length;
+        NearestNeighbors neighbors = new NearestNeighbors(NonDominatedSort.objectiveMatrix(inds),
+            ((MultiObjectiveFitness)inds[0].fitness).getNumObjectives());
+
+        int[] nearest = new int[n];
+        double[] distance = new double[n];
+        for(int i = 0; i < n; i++)
+            {
+            nearest[i] = neighbors.nearest(i);
+            distance[i] = (nearest[i] == -1 ? Double.POSITIVE_INFINITY : neighbors.distance(i, nearest[i]));
+            }
+
+        int[] tied = new int[n];
+        for(int left = n; left > archiveSize; left--)
+            {
+            // find the individuals closest to their nearest neighbors
+            int numTied = 0;
+            double min = Double.POSITIVE_INFINITY;
+            for(int i = 0; i < n; i++)
+                {
+                if (neighbors.isRemoved(i)) continue;
+                if (distance[i] < min) { min = distance[i]; numTied = 0; }
+                if (distance[i] == min) tied[numTied++] = i;
+                }
+                        
+            // break ties by the second nearest neighbors, and so on
+            for(int k = 2; numTied > 1 && k < left; k++)
+                {
+                int stillTied = 0;
+                min = Double.POSITIVE_INFINITY;
+                for(int t = 0; t < numTied; t++)
+                    {
+                    double d = neighbors.kthNearest(tied[t], k, false);
+                    if (d < min) { min = d; stillTied = 0; }
+                    if (d == min) tied[stillTied++] = tied[t];
+                    }
+                numTied = stillTied;
+                }
+
+            int closest = tied[0];
+            neighbors.remove(closest);
+            for(int i = 0; i < n; i++)
+                if (nearest[i] == closest && !neighbors.isRemoved(i))
+                    {
+                    nearest[i] = neighbors.nearest(i);
+                    distance[i] = (nearest[i] == -1 ? Double.POSITIVE_INFINITY : neighbors.distance(i, nearest[i]));
+                    }
+            }
+
+        ArrayList truncated = new ArrayList(archiveSize);
+        for(int i = 0; i < n; i++)
+            if (!neighbors.isRemoved(i))
+                truncated.add(inds[i]);
+        return truncated;
+        }
+
+
     public void buildArchive(EvolutionState state, Individual[] oldInds, Individual[] newInds, int archiveSize)
         {
         Individual[] dummy = new Individual[0];
@@ -82,37 +146,9 @@ public class SPEA2Breeder extends SimpleBreeder
             }
                         
 
-        // step 3: if the archive is OVERFULL, iterate as follows:
-        //              step 3a: remove the k-closest individual in the archive
-        SPEA2Evaluator evaluator = ((SPEA2Evaluator)(state.evaluator));
-        Individual[] inds = (Individual[])(archive.toArray(dummy));
-                
-        while(currentArchiveSize > archiveSize)
-            {
-            Individual closest = (Individual)(archive.get(0));
-            int closestIndex = 0;
-            double[] closestD = calculateDistancesFromIndividual(closest, oldInds);
-                        
-            for(int i = 1; i < currentArchiveSize; i++)
-                {
-                Individual competitor = (Individual)(archive.get(i));
-                double[] competitorD = calculateDistancesFromIndividual(competitor, oldInds);
-                                
-                for(int k = 0; k < oldInds.length; k++)
-                    {
-                    if (closestD[i] > competitorD[i])
-                        { closest = competitor ; closestD = competitorD;  closestIndex = k; break; }
-                    else if (closestD[i] < competitorD[i])
-                        { break; }
-                    }
-                }
-                        
-            // remove him destructively -- put the top guy in his place and remove the top guy.  This is O(1)
-            archive.set(closestIndex, archive.get(archive.size()-1));
-            archive.remove(archive.size()-1);
-                        
-            currentArchiveSize--;
-            }
+        // step 3: if the archive is OVERFULL, remove the individuals closest to the others
+        if (currentArchiveSize > archiveSize)
+            archive = truncateArchive(archive, archiveSize);
                                                 
         // step 4: put clones of the archive in the new individuals
         Object[] obj = archive.toArray();
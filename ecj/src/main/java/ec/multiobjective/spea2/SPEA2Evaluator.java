@@ -38,58 +38,133 @@ public class SPEA2Evaluator extends SimpleEvaluator
             }
         }
 
+    /** The number of individuals compared at a time with each individual, so that they stay in the cache */
+    public static final int TILE_SIZE = 512;
+
     /** Computes the strength of individuals, then the raw fitness (wimpiness) and kth-closest sparsity
-        measure.  Finally, computes the final fitness of the individuals.  */
+        measure.  Finally, computes the final fitness of the individuals.  The objectives are packed
+        into one array, and the work is split among the evaluation threads, unless some fitness
+        overrides paretoDominates(...): then strength and raw fitness are computed with it.  The kth-closest
+        individuals are looked up in a NearestNeighbors tree rather than in a matrix of all the distances.  */
     public void computeAuxiliaryData(EvolutionState state, Individual[] inds)
         {
-        double[][] distances = calculateDistances(state, inds);
-                        
-        // For each individual calculate the strength
-        for(int y=0;y<inds.length;y++)
+        if (inds.length == 0) return;
+        int numObjectives = ((MultiObjectiveFitness)inds[0].fitness).getNumObjectives();
+        float[] objectives = NonDominatedSort.objectiveMatrix(inds);
+
+        // For each individual calculate the strength, then the raw fitness (the sum of the
+        // strengths of the individuals dominating it)
+        int[] strength = new int[inds.length];
+        double[] raw = new double[inds.length];
+        if (NonDominatedSort.canRank(inds))
             {
-            // Calculate the node strengths
-            int myStrength = 0;
-            for(int z=0;z<inds.length;z++)
-                if (((SPEA2MultiObjectiveFitness)inds[y].fitness).paretoDominates((MultiObjectiveFitness)inds[z].fitness)) 
-                    myStrength++;
-            ((SPEA2MultiObjectiveFitness)inds[y].fitness).strength = myStrength;
-            } //For each individual y calculate the strength
-                
+            compareAll(state, objectives, numObjectives, strength, null);
+            compareAll(state, objectives, numObjectives, strength, raw);
+            }
+        else compareAllByParetoDominates(inds, strength, raw);
+
         // calculate k value
         int kTH = (int) Math.sqrt(inds.length);  // note that the first element is k=1, not k=0 
-        
-        // For each individual calculate the Raw fitness and kth-distance
+
+        // calc k-th nearest neighbor distances.  As in a row of calculateDistances(...), every
+        // individual is its own nearest neighbor.
+        double[] kthDistances = new NearestNeighbors(objectives, numObjectives).kthNearest(kTH, state.pool, state.evalthreads);
+
         for(int y=0;y<inds.length;y++)
             {
-            double fitness = 0;
-            for(int z=0;z<inds.length;z++)
-                {
-                // Raw fitness 
-                if ( ((SPEA2MultiObjectiveFitness)inds[z].fitness).paretoDominates((MultiObjectiveFitness)inds[y].fitness) )
-                    {
-                    fitness += ((SPEA2MultiObjectiveFitness)inds[z].fitness).strength;
-                    }
-                } // For each individual z calculate RAW fitness distances
-            // Set SPEA2 raw fitness value for each individual
-                                    
             SPEA2MultiObjectiveFitness indYFitness = ((SPEA2MultiObjectiveFitness)inds[y].fitness);
+            indYFitness.strength = strength[y];
                         
-            // Density component
-                        
-            // calc k-th nearest neighbor distance.
             // distances are squared, so we need to take the square root.
-            double kthDistance = Math.sqrt(orderStatistics(distances[y], kTH, state.random[0]));
+            double kthDistance = Math.sqrt(kthDistances[y]);
                         
             // Set SPEA2 k-th NN distance value for each individual
             indYFitness.kthNNDistance = 1.0 / ( 2 + kthDistance);
                         
             // Set SPEA2 fitness value for each individual
-            indYFitness.fitness = fitness + indYFitness.kthNNDistance;
+            indYFitness.fitness = raw[y] + indYFitness.kthNNDistance;
+            }
+        }
+
+
+    /** Computes the strength and the raw fitness of each individual with paretoDominates(...), for
+        fitnesses which override it and so can't be compared on their packed objectives. */
+    void compareAllByParetoDominates(Individual[] inds, int[] strength, double[] raw)
+        {
+        for(int y=0;y<inds.length;y++)
+            for(int z=0;z<inds.length;z++)
+                if (((SPEA2MultiObjectiveFitness)inds[y].fitness).paretoDominates((MultiObjectiveFitness)inds[z].fitness)) 
+                    strength[y]++;
+
+        for(int y=0;y<inds.length;y++)
+            for(int z=0;z<inds.length;z++)
+                if (((SPEA2MultiObjectiveFitness)inds[z].fitness).paretoDominates((MultiObjectiveFitness)inds[y].fitness))
+                    raw[y] += strength[z];
+        }
+
+    /** Compares every individual with every other one, given their packed objectives (see 
+        NonDominatedSort.objectiveMatrix(...)).  If raw is null, the strength of each individual (the
+        number of individuals it dominates) is put into strength.  Else the raw fitness of each
+        individual (the sum of the strengths of those dominating it) is put into raw.  The individuals
+        are compared with TILE_SIZE others at a time, and split among the evaluation threads. */
+    void compareAll(EvolutionState state, final float[] objectives, final int numObjectives, final int[] strength, final double[] raw)
+        {
+        final int numInds = strength.length;
+        int numThreads = Math.max(1, Math.min(state.evalthreads, numInds / TILE_SIZE));
+        Runnable[] runnables = new Runnable[numThreads];
+        for(int t = 0; t < numThreads; t++)
+            {
+            final int from = (int)((long)numInds * t / numThreads);
+            final int to = (int)((long)numInds * (t + 1) / numThreads);
+            runnables[t] = new Runnable()
+                {
+                public void run()
+                    {
+                    for(int tile = 0; tile < numInds; tile += TILE_SIZE)
+                        {
+                        int end = Math.min(tile + TILE_SIZE, numInds);
+                        for(int y = from; y < to; y++)
+                            {
+                            if (raw == null)
+                                {
+                                int s = 0;
+                                for(int z = tile; z < end; z++)
+                                    if (NonDominatedSort.dominates(objectives, y, objectives, z, numObjectives))
+                                        s++;
+                                strength[y] += s;
+                                }
+                            else
+                                {
+                                double r = 0;
+                                for(int z = tile; z < end; z++)
+                                    if (NonDominatedSort.dominates(objectives, z, objectives, y, numObjectives))
+                                        r += strength[z];
+                                raw[y] += r;
+                                }
+                            }
+                        }
+                    }
+                };
+            }
+
+        if (numThreads == 1)
+            runnables[0].run();
+        else
+            {
+            try
+                {
+                state.pool.runAll(runnables);
+                }
+            catch(InterruptedException e)
+                {
+                state.output.fatal("Whoa! The main evaluation thread got interrupted while computing SPEA2 strengths!  Dying...");
+                }
             }
         }
     
         
-    /** Returns a matrix of sum squared distances from each individual to each other individual. */
+    /** Returns a matrix of sum squared distances from each individual to each other individual.
+        This takes O(n^2) memory: computeAuxiliaryData(...) doesn't use it any more. */
     public double[][] calculateDistances(EvolutionState state, Individual[] inds)
         {
         double[][] distances = new double[inds.length][inds.length];
@@ -46,6 +46,10 @@ import ec.*;
  <tr><td valign=top><i>base.</i><tt>cooling-rate</tt><br>
  <font size=-1> double = some smaller number (defaults to 0.0 which causes BoltzmannSelection to behave just as FitProportionateSelection would)</font></td>
  <td valign=top>(how slow, or fast, do you want to cool the annealing fitness proportions?)</td></tr>
+
+ <tr><td valign=top><i>base.</i><tt>alias</tt><br>
+ <font size=-1>bool = <tt>true</tt> or <tt>false</tt> (default)</font></td>
+ <td valign=top>(should individuals be picked from an alias table rather than by binary search?  See FitProportionateSelection.)</td></tr>
  
  </table> 
 
@@ -120,18 +124,19 @@ public class BoltzmannSelection extends FitProportionateSelection
         final int thread)
         {
         // load fitnesses
-        fitnesses = new float[s.population.subpops[subpopulation].individuals.length];
+        float[] snapshot = FitnessSnapshot.get(s, subpopulation).fitnesses;
+        fitnesses = new float[snapshot.length];
         for(int x=0;x<fitnesses.length;x++)
             {
             fitnesses[x] = (float) boltzmannExpectedValue(
-                ((Individual)(s.population.subpops[subpopulation].individuals[x])).fitness.fitness(), 
+                snapshot[x], 
                 s); // adjust the fitness proportion according to current temperature.
             if (fitnesses[x] < 0) // uh oh
                 s.output.fatal("Discovered a negative fitness value.  BoltzmannnSelection requires that all fitness values be non-negative(offending subpopulation #" + subpopulation + ")");
             }
         
-        // organize the distribution.  All zeros in fitness is fine
-        RandomChoice.organizeDistribution(fitnesses, true);
+        // organize the distribution
+        organizeDistribution();
         }
 
     private double boltzmannExpectedValue(double fitness, final EvolutionState s)
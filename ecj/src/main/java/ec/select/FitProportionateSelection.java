@@ -32,6 +32,13 @@ import ec.*;
  <p><b>Typical Number of Individuals Produced Per <tt>produce(...)</tt> call</b><br>
  Always 1.
 
+ <p><b>Parameters</b><br>
+ <table>
+ <tr><td valign=top><i>base.</i><tt>alias</tt><br>
+ <font size=-1>bool = <tt>true</tt> or <tt>false</tt> (default)</font></td>
+ <td valign=top>(should individuals be picked from an alias table, in constant time per pick, rather than by binary search of the cumulative fitnesses?  An alias table draws different individuals from the same random numbers.)</td></tr>
+ </table>
+
  <p><b>Default Base</b><br>
  select.fitness-proportionate
 
@@ -44,31 +51,64 @@ public class FitProportionateSelection extends SelectionMethod
     {
     /** Default base */
     public static final String P_FITNESSPROPORTIONATE = "fitness-proportionate";
-    /** Normalized, totalized fitnesses for the population */
+    /** Alias table parameter */
+    public static final String P_ALIAS = "alias";
+    /** Normalized, totalized fitnesses for the population, or if alias is true, fitnesses
+        organized into an alias table (see ec.util.RandomChoice).  The alias table may be
+        shared with other selection methods, so don't modify it. */
     public float[] fitnesses;
+    /** The aliases which go with the fitnesses, if alias is true */
+    public int[] aliases;
+    /** Are individuals picked from an alias table? */
+    public boolean alias;
 
     public Parameter defaultBase()
         {
         return SelectDefaults.base().push(P_FITNESSPROPORTIONATE);
         }
 
+    public void setup(final EvolutionState state, final Parameter base)
+        {
+        super.setup(state,base);
+
+        Parameter def = defaultBase();
+        alias = state.parameters.getBoolean(base.push(P_ALIAS),def.push(P_ALIAS),false);
+        }
+
     // don't need clone etc. 
 
     public void prepareToProduce(final EvolutionState s,
         final int subpopulation,
         final int thread)
         {
-        // load fitnesses
-        fitnesses = new float[s.population.subpops[subpopulation].individuals.length];
-        for(int x=0;x<fitnesses.length;x++)
-            {
-            fitnesses[x] = ((Individual)(s.population.subpops[subpopulation].individuals[x])).fitness.fitness();
-            if (fitnesses[x] < 0) // uh oh
-                s.output.fatal("Discovered a negative fitness value.  FitProportionateSelection requires that all fitness values be non-negative(offending subpopulation #" + subpopulation + ")");
-            }
+        // the distribution is shared with everyone else selecting from this subpopulation
+        FitnessSnapshot snapshot = FitnessSnapshot.get(s, subpopulation);
+        if (snapshot.negative >= 0) // uh oh
+            s.output.fatal("Discovered a negative fitness value.  FitProportionateSelection requires that all fitness values be non-negative(offending subpopulation #" + subpopulation + ")");
         
         // organize the distribution.  All zeros in fitness is fine
-        RandomChoice.organizeDistribution(fitnesses, true);
+        if (alias)
+            {
+            // the alias table is shared with everyone else selecting from this subpopulation
+            fitnesses = snapshot.aliasProbabilities();
+            aliases = snapshot.aliases();
+            }
+        else
+            {
+            fitnesses = (float[])(snapshot.fitnesses.clone());
+            RandomChoice.organizeDistribution(fitnesses, true);
+            }
+        }
+
+    /** Organizes fitnesses into an alias table if alias is true, else into a cumulative
+        distribution.  Subclasses which compute their own fitnesses call this. */
+    protected void organizeDistribution()
+        {
+        // All zeros in fitness is fine
+        if (alias)
+            aliases = RandomChoice.organizeAliasDistribution(fitnesses, true);
+        else
+            RandomChoice.organizeDistribution(fitnesses, true);
         }
 
     public int produce(final int subpopulation,
@@ -76,6 +116,9 @@ public class FitProportionateSelection extends SelectionMethod
         final int thread)
         {
         // Pick and return an individual from the population
+        if (alias)
+            return RandomChoice.pickFromAliasDistribution(
+                fitnesses,aliases,state.random[thread].nextDouble());
         return RandomChoice.pickFromDistribution(
             fitnesses,state.random[thread].nextFloat());
         }
@@ -87,5 +130,6 @@ public class FitProportionateSelection extends SelectionMethod
         // release the distributions so we can quickly 
         // garbage-collect them if necessary
         fitnesses = null;
+        aliases = null;
         }
     }
@@ -0,0 +1,244 @@
+/*
+  Copyright 2006 by Sean Luke
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+
+package ec.select;
+import ec.*;
+import ec.simple.SimpleFitness;
+import ec.gp.koza.KozaFitness;
+import ec.util.*;
+
+/*
+ * FitnessSnapshot.java
+ */
+
+/**
+ * A FitnessSnapshot holds the fitness() values of all the individuals of a subpopulation
+ * in a single float array, so that selection methods may work from contiguous memory rather
+ * than calling fitness() over and over.  The snapshot is shared by all the selection methods
+ * and breeding threads working on the subpopulation: the first one to ask for it with
+ * get(...) builds it (in parallel if the subpopulation is large), and the others just use it.
+ *
+ * <p>A snapshot is good for the generation in which it was built, and for the array of
+ * individuals it was built from.  Some evaluators (such as MultiPopCoevolutionaryEvaluator)
+ * select individuals while they are still evaluating, so an Evaluator must call
+ * invalidateAll(...) once it has finished evaluating the population.  If individuals are
+ * replaced in that array after evaluation, the replacing code must call
+ * individualReplaced(...) (as steady-state evolution does) or invalidate(...) (as the
+ * exchangers do when immigrants arrive).
+ *
+ * <p>Selection methods which don't need absolute fitness values, such as tournament
+ * selection, may use the snapshot only if it is <i>ordered</i>, that is, if for every
+ * individual a.fitness.betterThan(b.fitness) is the same thing as a.fitness.fitness() &gt;
+ * b.fitness.fitness().  This is the case for SimpleFitness and KozaFitness, unless a
+ * subclass overrides betterThan(...).
+ *
+ * @author Sean Luke
+ * @version 1.0
+ */
+
+public class FitnessSnapshot
+    {
+    /** Subpopulations smaller than this many individuals per breeding thread are snapshot in one thread */
+    public static final int MIN_PARALLEL_SIZE = 10000;
+
+    /** The fitness() values of the individuals */
+    public final float[] fitnesses;
+    /** Is betterThan(...) the same as comparing fitness() values for all the individuals? */
+    public boolean ordered;
+    /** The index of the first individual with a negative fitness, or -1 if there is none */
+    public int negative;
+
+    // what the snapshot was built from
+    final Individual[] individuals;
+    final int generation;
+    // the fitnesses organized into an alias table, built on demand
+    float[] aliasProbabilities;
+    int[] aliases;
+    // the last Fitness class checked for being ordered, and if it was
+    Class orderedClass;
+    boolean lastOrdered;
+
+    FitnessSnapshot(final EvolutionState state, final Individual[] individuals)
+        {
+        this.individuals = individuals;
+        generation = state.generation;
+        fitnesses = new float[individuals.length];
+        ordered = true;
+
+        int numThreads = Math.min(state.breedthreads, individuals.length / MIN_PARALLEL_SIZE);
+        if (numThreads < 2)
+            load(0, individuals.length);
+        else
+            {
+            final FitnessSnapshot[] parts = new FitnessSnapshot[numThreads];
+            Runnable[] r = new Runnable[numThreads];
+            for(int t = 0; t < numThreads; t++)
+                {
+                final int from = (int)((long)individuals.length * t / numThreads);
+                final int to = (int)((long)individuals.length * (t + 1) / numThreads);
+                final int part = t;
+                r[t] = new Runnable()
+                    {
+                    public void run()
+                        {
+                        // each part checks the Fitness classes on its own
+                        parts[part] = new FitnessSnapshot(FitnessSnapshot.this);
+                        parts[part].load(from, to);
+                        }
+                    };
+                }
+            try
+                {
+                state.pool.runAll(r);
+                }
+            catch (InterruptedException e)
+                {
+                state.output.fatal("Whoa! The main breeding thread got interrupted while loading fitnesses!  Dying...");
+                }
+            for(int t = 0; t < numThreads; t++)
+                ordered = ordered && parts[t].ordered;
+            }
+        negative = findNegative();
+        }
+
+    // a helper which shares the arrays of the given snapshot
+    FitnessSnapshot(FitnessSnapshot snapshot)
+        {
+        individuals = snapshot.individuals;
+        generation = snapshot.generation;
+        fitnesses = snapshot.fitnesses;
+        ordered = true;
+        }
+
+    // loads fitnesses[from...to-1]
+    void load(int from, int to)
+        {
+        final Individual[] individuals = this.individuals;
+        final float[] fitnesses = this.fitnesses;
+        for(int x = from; x < to; x++)
+            {
+            Fitness fitness = individuals[x].fitness;
+            fitnesses[x] = fitness.fitness();
+            if (ordered && !isOrdered(fitness)) ordered = false;
+            }
+        }
+
+    boolean isOrdered(Fitness fitness)
+        {
+        Class c = fitness.getClass();
+        if (c != orderedClass)
+            {
+            orderedClass = c;
+            try
+                {
+                Class declarer = c.getMethod("betterThan", new Class[] { Fitness.class }).getDeclaringClass();
+                lastOrdered = (declarer == SimpleFitness.class || declarer == KozaFitness.class);
+                }
+            catch (NoSuchMethodException e) { lastOrdered = false; }  // never happens
+            }
+        return lastOrdered;
+        }
+
+    int findNegative()
+        {
+        for(int x = 0; x < fitnesses.length; x++)
+            if (fitnesses[x] < 0) return x;
+        return -1;
+        }
+
+    /** Returns true if the snapshot may still be used for the given subpopulation. */
+    public boolean isCurrent(final EvolutionState state, final int subpopulation)
+        {
+        return individuals == state.population.subpops[subpopulation].individuals &&
+            generation == state.generation;
+        }
+
+    /** Returns the fitnesses organized into an alias table, as done by
+        RandomChoice.organizeAliasDistribution(fitnesses, true).  The table is
+        built only once and shared, so don't modify it.  Throws an ArithmeticException
+        if some fitness is negative. */
+    public synchronized float[] aliasProbabilities()
+        {
+        organizeAliases();
+        return aliasProbabilities;
+        }
+
+    /** Returns the aliases which go with aliasProbabilities(). */
+    public synchronized int[] aliases()
+        {
+        organizeAliases();
+        return aliases;
+        }
+
+    void organizeAliases()
+        {
+        if (aliasProbabilities == null)
+            {
+            float[] p = (float[])(fitnesses.clone());
+            aliases = RandomChoice.organizeAliasDistribution(p, true);
+            aliasProbabilities = p;
+            }
+        }
+
+    /** Returns the snapshot of the given subpopulation, building it first if there is
+        no current one.  All the individuals in the subpopulation must be there. */
+    public static FitnessSnapshot get(final EvolutionState state, final int subpopulation)
+        {
+        Subpopulation subpop = state.population.subpops[subpopulation];
+        FitnessSnapshot snapshot = subpop.fitnessSnapshot;
+        if (snapshot != null && snapshot.isCurrent(state, subpopulation))
+            return snapshot;
+        synchronized(subpop)
+            {
+            // someone may have beaten us to it
+            snapshot = subpop.fitnessSnapshot;
+            if (snapshot == null || !snapshot.isCurrent(state, subpopulation))
+                {
+                snapshot = new FitnessSnapshot(state, subpop.individuals);
+                subpop.fitnessSnapshot = snapshot;
+                }
+            return snapshot;
+            }
+        }
+
+    /** Throws away the snapshot of the given subpopulation, if any, so that the next get(...) builds a new one. */
+    public static void invalidate(final EvolutionState state, final int subpopulation)
+        {
+        state.population.subpops[subpopulation].fitnessSnapshot = null;
+        }
+
+    /** Throws away the snapshots of all the subpopulations.  Evaluators call this when they
+        have finished evaluating the population, as the fitnesses have changed since any
+        snapshot built during evaluation. */
+    public static void invalidateAll(final EvolutionState state)
+        {
+        for(int x = 0; x < state.population.subpops.length; x++)
+            invalidate(state, x);
+        }
+
+    /** Updates the snapshot of the given subpopulation, if there is a current one, after
+        the individual at the given index has been replaced by an evaluated individual. */
+    public static void individualReplaced(final EvolutionState state, final int subpopulation, final int individual)
+        {
+        FitnessSnapshot snapshot = state.population.subpops[subpopulation].fitnessSnapshot;
+        if (snapshot == null || !snapshot.isCurrent(state, subpopulation)) return;
+        synchronized(snapshot)
+            {
+            Fitness fitness = snapshot.individuals[individual].fitness;
+            float f = fitness.fitness();
+            snapshot.fitnesses[individual] = f;
+            if (snapshot.ordered && !snapshot.isOrdered(fitness))
+                snapshot.ordered = false;
+            if (f < 0 && (snapshot.negative == -1 || individual < snapshot.negative))
+                snapshot.negative = individual;
+            else if (individual == snapshot.negative)
+                snapshot.negative = snapshot.findNegative();
+            snapshot.aliasProbabilities = null;
+            snapshot.aliases = null;
+            }
+        }
+    }
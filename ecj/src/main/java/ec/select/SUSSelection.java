@@ -133,17 +133,14 @@ public class SUSSelection extends SelectionMethod
         lastIndex = 0;
         steps = 0;
         
+        // load fitnesses but don't build distribution yet
+        FitnessSnapshot snapshot = FitnessSnapshot.get(s, subpopulation);
+        if (snapshot.negative >= 0) // uh oh
+            s.output.fatal("Discovered a negative fitness value.  SUSSelection requires that all fitness values be non-negative(offending subpopulation #" + subpopulation + ")");
+        fitnesses = (float[])(snapshot.fitnesses.clone());
+
         // compute offset
         offset = (float)(s.random[thread].nextDouble() / fitnesses.length);
-        
-        // load fitnesses but don't build distribution yet
-        fitnesses = new float[s.population.subpops[subpopulation].individuals.length];
-        for(int x=0;x<fitnesses.length;x++)
-            {
-            fitnesses[x] = ((Individual)(s.population.subpops[subpopulation].individuals[x])).fitness.fitness();
-            if (fitnesses[x] < 0) // uh oh
-                s.output.fatal("Discovered a negative fitness value.  SUSSelection requires that all fitness values be non-negative(offending subpopulation #" + subpopulation + ")");
-            }
 
         // construct and optionally shuffle fitness distribution and indices
         indices = new int[s.population.subpops[subpopulation].individuals.length];
@@ -41,6 +41,10 @@ import ec.*;
  <font size=-1>double = some small number (defaults to 0.1)</font></td>
  <td valign=top>(The sigma scaling formula sometimes returns negative values. This is unacceptable for fitness proportionate style selection so we must substitute 
  the fitnessFloor (some value >= 0) for the sigma scaled fitness when that sigma scaled fitness <= fitnessFloor.)</td></tr>
+
+ <tr><td valign=top><i>base.</i><tt>alias</tt><br>
+ <font size=-1>bool = <tt>true</tt> or <tt>false</tt> (default)</font></td>
+ <td valign=top>(should individuals be picked from an alias table rather than by binary search?  See FitProportionateSelection.)</td></tr>
  </table> 
  
 
@@ -90,19 +94,15 @@ public class SigmaScalingSelection extends FitProportionateSelection
         final int thread)
         {
         // load fitnesses
-        fitnesses = new float[s.population.subpops[subpopulation].individuals.length];
+        FitnessSnapshot snapshot = FitnessSnapshot.get(s, subpopulation);
+        if (snapshot.negative >= 0) // uh oh
+            s.output.fatal("Discovered a negative fitness value.  SigmaScalingSelection requires that all fitness values be non-negative(offending subpopulation #" + subpopulation + ")");
+        fitnesses = (float[])(snapshot.fitnesses.clone());
         
         double sigma;
         double meanFitness;
         double meanSum = 0;
         double squaredDeviationsSum = 0;
-                
-        for(int x=0;x<fitnesses.length;x++)
-            {
-            fitnesses[x] = ((Individual)(s.population.subpops[subpopulation].individuals[x])).fitness.fitness();
-            if (fitnesses[x] < 0) // uh oh
-                s.output.fatal("Discovered a negative fitness value.  SigmaScalingSelection requires that all fitness values be non-negative(offending subpopulation #" + subpopulation + ")");
-            }
                         
         // Calculate meanFitness
         for(int x=0;x<fitnesses.length;x++)
@@ -129,8 +129,8 @@ public class SigmaScalingSelection extends FitProportionateSelection
                 fitnesses[x] = fitnessFloor; 
             }
         
-        // organize the distribution.  All zeros in fitness is fine
-        RandomChoice.organizeDistribution(fitnesses, true);
+        // organize the distribution
+        organizeDistribution();
         }
 
     private double sigmaScaledValue(double fitness, double meanFitness, double sigma, final EvolutionState s)
@@ -83,6 +83,9 @@ public class TournamentSelection extends SelectionMethod implements SteadyStateB
     /** Do we pick the worst instead of the best? */
     public boolean pickWorst;
 
+    /** Is betterThan(...) our own, so that the fitnesses may be compared from the subpopulation's FitnessSnapshot? */
+    boolean defaultBetterThan;
+
     public Parameter defaultBase()
         {
         return SelectDefaults.base().push(P_TOURNAMENT);
@@ -109,6 +112,13 @@ public class TournamentSelection extends SelectionMethod implements SteadyStateB
             }
 
         pickWorst = state.parameters.getBoolean(base.push(P_PICKWORST),def.push(P_PICKWORST),false);
+
+        try
+            {
+            defaultBetterThan = (getClass().getMethod("betterThan", new Class[] { Individual.class, Individual.class,
+                            Integer.TYPE, EvolutionState.class, Integer.TYPE }).getDeclaringClass() == TournamentSelection.class);
+            }
+        catch (NoSuchMethodException e) { defaultBetterThan = false; }  // never happens
         }
 
     /** Returns a tournament size to use, at random, based on base size and probability of picking the size plus one. */
@@ -143,8 +153,28 @@ public class TournamentSelection extends SelectionMethod implements SteadyStateB
         int best = getRandomIndividual(0, subpopulation, state, thread);
         
         int s = getTournamentSizeToUse(state.random[thread]);
-                
-        if (pickWorst)
+        
+        // if betterThan(...) just compares fitness() values, compare them in the snapshot instead
+        FitnessSnapshot snapshot = (defaultBetterThan ? FitnessSnapshot.get(state, subpopulation) : null);
+        if (snapshot != null && snapshot.ordered)
+            {
+            float[] fitnesses = snapshot.fitnesses;
+            if (pickWorst)
+                for (int x=1;x<s;x++)
+                    {
+                    int j = getRandomIndividual(x, subpopulation, state, thread);
+                    if (!(fitnesses[j] > fitnesses[best]))  // j is at least as bad as best
+                        best = j;
+                    }
+            else
+                for (int x=1;x<s;x++)
+                    {
+                    int j = getRandomIndividual(x, subpopulation, state, thread);
+                    if (fitnesses[j] > fitnesses[best])  // j is better than best
+                        best = j;
+                    }
+            }
+        else if (pickWorst)
             for (int x=1;x<s;x++)
                 {
                 int j = getRandomIndividual(x, subpopulation, state, thread);
@@ -125,31 +125,29 @@ public class SimpleBreeder extends Breeder
             }
         else
             {
-            Thread[] t = new Thread[state.breedthreads];
+            Runnable[] r = new Runnable[state.breedthreads];
                 
-            // start up the threads
             for(int y=0;y<state.breedthreads;y++)
                 {
-                SimpleBreederThread r = new SimpleBreederThread();
-                r.threadnum = y;
-                r.newpop = newpop;
-                r.numinds = numinds[y];
-                r.from = from[y];
-                r.me = this;
-                r.state = state;
-                t[y] = new Thread(r);
-                t[y].start();
+                SimpleBreederThread t = new SimpleBreederThread();
+                t.threadnum = y;
+                t.newpop = newpop;
+                t.numinds = numinds[y];
+                t.from = from[y];
+                t.me = this;
+                t.state = state;
+                r[y] = t;
                 }
                 
-            // gather the threads
-            for(int y=0;y<state.breedthreads;y++) try
-                                                      {
-                                                      t[y].join();
-                                                      }
-                catch(InterruptedException e)
-                    {
-                    state.output.fatal("Whoa! The main breeding thread got interrupted!  Dying...");
-                    }
+            // run the threads in the pool and gather them
+            try
+                {
+                state.pool.runAll(r);
+                }
+            catch(InterruptedException e)
+                {
+                state.output.fatal("Whoa! The main breeding thread got interrupted!  Dying...");
+                }
             }
         return newpop;
         }
@@ -224,38 +222,80 @@ public class SimpleBreeder extends Breeder
                 state.output.error("The number of elites for subpopulation " + x + " exceeds the actual size of the subpopulation", new Parameter(EvolutionState.P_BREEDER).push(P_ELITE).push(""+x));
         state.output.exitIfErrors();
 
-        // we assume that we're only grabbing a small number (say <10%), so
-        // it's not being done multithreaded
-        for(int sub=0;sub<state.population.subpops.length;sub++) 
-            // if the number of elites is 1, then we handle this by just finding the best one.
-            if (elite[sub]==1)
+        // the subpopulations are independent, so if there are several of them
+        // we load their elites in parallel
+        int sorting = 0;
+        for(int sub=0;sub<state.population.subpops.length;sub++)
+            if (elite[sub] > 0) sorting++;
+
+        if (state.breedthreads == 1 || sorting < 2)
+            {
+            for(int sub=0;sub<state.population.subpops.length;sub++)
+                loadElites(state, newpop, sub);
+            }
+        else
+            {
+            Runnable[] r = new Runnable[sorting];
+            sorting = 0;
+            for(int sub=0;sub<state.population.subpops.length;sub++)
+                if (elite[sub] > 0)
+                    {
+                    final EvolutionState s = state;
+                    final Population n = newpop;
+                    final int x = sub;
+                    r[sorting++] = new Runnable()
+                        {
+                        public void run() { loadElites(s, n, x); }
+                        };
+                    }
+            try
                 {
-                int best = 0;
-                Individual[] oldinds = state.population.subpops[sub].individuals;
-                for(int x=1;x<oldinds.length;x++)
-                    if (oldinds[x].fitness.betterThan(oldinds[best].fitness))
-                        best = x;
-                Individual[] inds = newpop.subpops[sub].individuals;
-                inds[inds.length-1] = (Individual)(oldinds[best].clone());
+                state.pool.runAll(r);
                 }
-            else if (elite[sub]>0)  // we'll need to sort
+            catch(InterruptedException e)
                 {
-                int[] orderedPop = new int[state.population.subpops[sub].individuals.length];
-                for(int x=0;x<state.population.subpops[sub].individuals.length;x++) orderedPop[x] = x;
-
-                // sort the best so far where "<" means "not as fit as"
-                QuickSort.qsort(orderedPop, new EliteComparator(state.population.subpops[sub].individuals));
-                // load the top N individuals
-
-                Individual[] inds = newpop.subpops[sub].individuals;
-                Individual[] oldinds = state.population.subpops[sub].individuals;
-                for(int x=inds.length-elite[sub];x<inds.length;x++)
-                    inds[x] = (Individual)(oldinds[orderedPop[x]].clone());
+                state.output.fatal("Whoa! The main breeding thread got interrupted while loading elites!  Dying...");
                 }
+            }
                 
         // optionally force reevaluation
         unmarkElitesEvaluated(newpop);
         }
+
+    /** A private helper function for loadElites which loads the elites of one
+        subpopulation.  It may be called for different subpopulations at the same time. */
+
+    protected void loadElites(EvolutionState state, Population newpop, int sub)
+        {
+        // if the number of elites is 1, then we handle this by just finding the best one.
+        if (elite[sub]==1)
+            {
+            int best = 0;
+            Individual[] oldinds = state.population.subpops[sub].individuals;
+            for(int x=1;x<oldinds.length;x++)
+                if (oldinds[x].fitness.betterThan(oldinds[best].fitness))
+                    best = x;
+            Individual[] inds = newpop.subpops[sub].individuals;
+            inds[inds.length-1] = (Individual)(oldinds[best].clone());
+            }
+        else if (elite[sub]>0)  // we'll need to sort
+            {
+            int[] orderedPop = new int[state.population.subpops[sub].individuals.length];
+            for(int x=0;x<state.population.subpops[sub].individuals.length;x++) orderedPop[x] = x;
+
+            Individual[] inds = newpop.subpops[sub].individuals;
+            Individual[] oldinds = state.population.subpops[sub].individuals;
+
+            // sort the best so far where "<" means "not as fit as".  We only need the
+            // part of the order which is loaded below, which is sorted just as a full
+            // sort would do, ties included.
+            QuickSort.partialQsort(orderedPop, inds.length-elite[sub], new EliteComparator(oldinds));
+            
+            // load the top N individuals
+            for(int x=inds.length-elite[sub];x<inds.length;x++)
+                inds[x] = (Individual)(oldinds[orderedPop[x]].clone());
+            }
+        }
     }
 
 
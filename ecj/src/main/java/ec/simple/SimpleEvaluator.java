@@ -10,6 +10,8 @@ import ec.Evaluator;
 import ec.EvolutionState;
 import ec.util.Parameter;
 import ec.Individual;
+import ec.select.FitnessSnapshot;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /* 
  * SimpleEvaluator.java
@@ -22,7 +24,25 @@ import ec.Individual;
  * The SimpleEvaluator is a simple, non-coevolved generational evaluator which
  * evaluates every single member of every subpopulation individually in its
  * own problem space.  One Problem instance is cloned from p_problem for
- * each evaluating thread.  The Problem must implement SimpleProblemForm.
+ * each evaluating thread; the clones are kept from generation to generation.
+ * The evaluating threads are taken from the EvolutionState's thread pool.
+ * The Problem must implement SimpleProblemForm.
+ *
+ * <p>By default every thread evaluates one equal contiguous range of each
+ * subpopulation.  If evaluation costs vary a lot between individuals, some
+ * threads may finish long before the others; with a positive chunk-size the
+ * threads instead keep taking the next chunk-size individuals until none are
+ * left.  Which thread evaluates an individual then depends on timing, so
+ * problems whose evaluations use state.random[threadnum] are no longer
+ * reproducible.  In both cases the time each thread was busy and idle
+ * (waiting for the others) is recorded in busyTime and idleTime.
+ *
+ <p><b>Parameters</b><br>
+ <table>
+ <tr><td valign=top><i>base.</i><tt>chunk-size</tt><br>
+ <font size=-1>int &gt;= 0 (default is 0)</font></td>
+ <td valign=top>(number of individuals handed out to an evaluation thread at a time, or 0 to split the subpopulations statically)</td></tr>
+ </table>
  *
  * @author Sean Luke
  * @version 1.0 
@@ -30,6 +50,24 @@ import ec.Individual;
 
 public class SimpleEvaluator extends Evaluator
     {
+    /** Problem clones of the evaluating threads, indexed by thread number.  They're
+        not checkpointed, but cloned again when needed. */
+    protected transient SimpleProblemForm[] problems;
+
+    public static final String P_CHUNK_SIZE = "chunk-size";
+
+    /** Number of individuals taken by an evaluation thread at a time, 0 if the
+        subpopulations are split statically among the threads. */
+    public int chunkSize;
+
+    /** Nanoseconds each evaluation thread spent evaluating during the last
+        evaluatePopulation(...), indexed by thread number. */
+    public long[] busyTime;
+
+    /** Nanoseconds each evaluation thread spent waiting for the others during
+        the last evaluatePopulation(...), indexed by thread number. */
+    public long[] idleTime;
+
     // checks to make sure that the Problem implements SimpleProblemForm
     public void setup(final EvolutionState state, final Parameter base)
         {
@@ -37,6 +75,10 @@ public class SimpleEvaluator extends Evaluator
         if (!(p_problem instanceof SimpleProblemForm))
             state.output.fatal("" + this.getClass() + " used, but the Problem is not of SimpleProblemForm",
                 base.push(P_PROBLEM));
+
+        chunkSize = state.parameters.getIntWithDefault(base.push(P_CHUNK_SIZE),null,0);
+        if (chunkSize < 0)
+            state.output.fatal("The chunk size must be >= 0", base.push(P_CHUNK_SIZE));
         }
     
     /** A simple evaluator that doesn't do any coevolutionary
@@ -73,38 +115,66 @@ public class SimpleEvaluator extends Evaluator
                     state.evalthreads) * y;
                 }
 
+        SimpleProblemForm[] p = problems(state);
+        if (busyTime == null || busyTime.length != state.evalthreads)
+            {
+            busyTime = new long[state.evalthreads];
+            idleTime = new long[state.evalthreads];
+            }
+
+        long start = System.nanoTime();
         if (state.evalthreads==1)
-            evalPopChunk(state,numinds[0],from[0],0,(SimpleProblemForm)(p_problem.clone()));  
+            evalPopChunk(state,numinds[0],from[0],0,p[0]);
         
         else
             {
-            Thread[] t = new Thread[state.evalthreads];
+            Runnable[] r = new Runnable[state.evalthreads];
+            AtomicInteger next = new AtomicInteger(0);
             
-            // start up the threads
             for(int y=0;y<state.evalthreads;y++)
                 {
-                SimpleEvaluatorThread r = new SimpleEvaluatorThread();
-                r.threadnum = y;
-                r.numinds = numinds[y];
-                r.from = from[y];
-                r.me = this;
-                r.state = state;
-                r.p = (SimpleProblemForm)(p_problem.clone());
-                t[y] = new Thread(r);
-                t[y].start();
+                SimpleEvaluatorThread t = new SimpleEvaluatorThread();
+                t.threadnum = y;
+                t.numinds = numinds[y];
+                t.from = from[y];
+                t.next = (chunkSize > 0 ? next : null);
+                t.me = this;
+                t.state = state;
+                t.p = p[y];
+                r[y] = t;
                 }
 
-            // gather the threads
-            for(int y=0;y<state.evalthreads;y++) try
-                                                     {
-                                                     t[y].join();
-                                                     }
-                catch(InterruptedException e)
-                    {
-                    state.output.fatal("Whoa! The main evaluation thread got interrupted!  Dying...");
-                    }
+            // run the threads in the pool and gather them
+            try
+                {
+                state.pool.runAll(r);
+                }
+            catch(InterruptedException e)
+                {
+                state.output.fatal("Whoa! The main evaluation thread got interrupted!  Dying...");
+                }
+            }
+        long total = System.nanoTime() - start;
+
+        if (state.evalthreads==1)
+            busyTime[0] = total;
+        for(int y=0;y<state.evalthreads;y++)
+            idleTime[y] = Math.max(0, total - busyTime[y]);
+
+        FitnessSnapshot.invalidateAll(state);
+        }
 
+    /** Returns the Problem clones of the evaluating threads, cloning them from p_problem
+        the first time they're needed. */
+    protected SimpleProblemForm[] problems(final EvolutionState state)
+        {
+        if (problems == null || problems.length != state.evalthreads)
+            {
+            problems = new SimpleProblemForm[state.evalthreads];
+            for(int y=0;y<state.evalthreads;y++)
+                problems[y] = (SimpleProblemForm)(p_problem.clone());
             }
+        return problems;
         }
 
     /** A private helper function for evaluatePopulation which evaluates a chunk
@@ -129,6 +199,51 @@ public class SimpleEvaluator extends Evaluator
             }
         ((ec.Problem)p).finishEvaluating(state,threadnum);
         }
+
+    /** A private helper function for evaluatePopulation which evaluates chunks
+        of chunkSize individuals for a given thread, taking the next chunk from
+        <i>next</i> until all the individuals of all subpopulations are taken.
+        Individuals are numbered through all the subpopulations in order.
+        Although this method is declared
+        public (for the benefit of a private helper class in this file),
+        you should not call it. */
+
+    protected void evalPopChunks(EvolutionState state, AtomicInteger next,
+        int threadnum, SimpleProblemForm p)
+        {
+        ((ec.Problem)p).prepareToEvaluate(state,threadnum);
+
+        int pop = 0;
+        int first = 0;  // number of the first individual of subpopulation pop
+        while(true)
+            {
+            int x = next.getAndAdd(chunkSize);
+            int upperbound = x + chunkSize;
+
+            while(x < upperbound)
+                {
+                // find the subpopulation of individual x; chunks are taken in
+                // increasing order, so we never have to go back
+                while(pop < state.population.subpops.length &&
+                    x >= first + state.population.subpops[pop].individuals.length)
+                    {
+                    first += state.population.subpops[pop].individuals.length;
+                    pop++;
+                    }
+                if (pop == state.population.subpops.length)  // all taken
+                    {
+                    ((ec.Problem)p).finishEvaluating(state,threadnum);
+                    return;
+                    }
+
+                Individual[] inds = state.population.subpops[pop].individuals;
+                int end = Math.min(upperbound - first, inds.length);
+                for(int y = x - first; y < end; y++)
+                    p.evaluate(state,inds[y], pop, threadnum);
+                x = first + end;
+                }
+            }
+        }
     
     /** The SimpleEvaluator determines that a run is complete by asking
         each individual in each population if he's optimal; if he 
@@ -152,8 +267,16 @@ class SimpleEvaluatorThread implements Runnable
     public int[] from;
     public SimpleEvaluator me;
     public EvolutionState state;
+    public AtomicInteger next;  // null if the chunks are static
     public int threadnum;
     public SimpleProblemForm p;
     public synchronized void run() 
-        { me.evalPopChunk(state,numinds,from,threadnum,p); }
+        {
+        long start = System.nanoTime();
+        if (next == null)
+            me.evalPopChunk(state,numinds,from,threadnum,p);
+        else
+            me.evalPopChunks(state,next,threadnum,p);
+        me.busyTime[threadnum] = System.nanoTime() - start;
+        }
     }
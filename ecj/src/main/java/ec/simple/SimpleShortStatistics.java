@@ -34,6 +34,7 @@ import ec.eval.*;
  <li> (if gather-full) how many bytes initialization took, or how how many bytes the previous generation took to breed to form this generation.  This utilization is an approximation only, made by the Java system, and does not take into consideration the possibility of garbage collection (which might make the number negative).
  <li> (if gather-full) How long evaluation took in milliseconds this generation
  <li> (if gather-full) how many bytes evaluation took this generation.  This utilization is an approximation only, made by the Java system, and does not take into consideration the possibility of garbage collection (which might make the number negative).
+ <li> (if gather-full, the evaluator is a SimpleEvaluator and there are several evaluation threads) for each evaluation thread, how long it was busy and how long it waited for the other threads in milliseconds
  </ul>
 
  <p>Then the following items appear, per subpopulation:
@@ -197,6 +198,15 @@ public class SimpleShortStatistics extends Statistics // implements ProvidesBest
             long curU =  r.totalMemory() - r.freeMemory();          
             state.output.print("" + (System.currentTimeMillis()-lastTime) + " ",  statisticslog);
             state.output.print("" + (curU-lastUsage) + " ",  statisticslog);            
+
+            // busy and idle time of the evaluation threads
+            if (state.evalthreads > 1 && state.evaluator instanceof SimpleEvaluator &&
+                ((SimpleEvaluator)state.evaluator).busyTime != null)
+                {
+                SimpleEvaluator e = (SimpleEvaluator)state.evaluator;
+                for(int y=0;y<e.busyTime.length;y++)
+                    state.output.print("" + (e.busyTime[y] / 1000000) + " " + (e.idleTime[y] / 1000000) + " ", statisticslog);
+                }
             }
         
 
@@ -11,6 +11,7 @@ import ec.util.Parameter;
 import ec.util.Checkpoint;
 import ec.util.Output;
 import ec.simple.*;
+import ec.select.FitnessSnapshot;
 //import ec.eval.MasterProblem;
 import java.util.*; 
 
@@ -220,6 +221,7 @@ public class SteadyStateEvolutionState extends EvolutionState
             if ( partiallyFullSubpop ) // is subpopulation full? 
                 {  
                 population.subpops[subpop].individuals[individualCount[subpop]++]=ind; 
+                FitnessSnapshot.invalidate(this, subpop);
                                 
                 // STATISTICS FOR GENERATION ZERO 
                 if ( individualCount[subpop] == population.subpops[subpop].individuals.length ) 
@@ -234,6 +236,7 @@ public class SteadyStateEvolutionState extends EvolutionState
                                 
                 // replace dead individual with new individual 
                 population.subpops[subpop].individuals[deadIndividual] = ind; 
+                FitnessSnapshot.individualReplaced(this, subpop, deadIndividual);
                                 
                 // update duplicate hash table 
                 individualHash[subpop].remove(deadInd); 
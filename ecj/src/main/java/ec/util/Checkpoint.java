@@ -7,7 +7,13 @@
 
 package ec.util;
 import java.util.zip.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import ec.EvolutionState;
+import ec.Fitness;
+import ec.Individual;
+import ec.Population;
 import java.io.*;
 
 /* 
@@ -29,45 +35,344 @@ import java.io.*;
  * also given in ec.EvolutionState.
  * The ".gz" is added because the file is GZIPped to save space.
  *
+ * <p>A full checkpoint holds the whole EvolutionState, written with Java
+ * serialization.  If the EvolutionState's checkpointFullModulo is greater
+ * than 1, only every checkpointFullModulo-th checkpoint is a full one.  The
+ * others are partial: they hold the name of the last full checkpoint, the
+ * EvolutionState written with Java serialization but without the individuals
+ * of the population, the parameter database and the output, and then the
+ * individuals, written with Individual.writeIndividual(...).  If some individual
+ * doesn't implement writeGenotype(...) and readGenotype(...), or its fitness doesn't
+ * implement writeFitness(...) and readFitness(...), a full checkpoint is written
+ * instead, with a warning.  Restoring from a partial
+ * checkpoint takes the parameter database and the output, which don't change
+ * during a run, from the last full checkpoint, and everything else (the
+ * generation, random number generators, statistics, breeder etc.) from the
+ * partial checkpoint itself.
+ *
+ * <p>So a partial checkpoint is not a delta against the full one: it is the
+ * whole EvolutionState minus the individuals, the parameter database and the
+ * output.  It saves the cost of Java serialization of the individuals, which
+ * are usually most of the state, but everything else (statistics, breeder,
+ * evaluator and problem, species etc.) is still serialized every time.
+ *
+ * <p>The checkpoint data is always gathered in memory by the calling thread,
+ * and the run waits for that.  If the EvolutionState's checkpointAsync is true,
+ * only the compression and the writing to disk are done in the background, while
+ * the run goes on.  Each EvolutionState has its own background writer, so that
+ * jobs or islands running in the same JVM don't wait for one another's checkpoints.
+ * The message announcing a checkpoint file gives the time the calling thread spent
+ * on it, and for a partial checkpoint how much of that went to serializing the
+ * state other than the individuals.
+ *
  * @author Sean Luke
  * @version 1.0 
  */
 
 public class Checkpoint
     {
+    /** The first int of a partial checkpoint.  Full checkpoints begin with the
+        magic number of Java serialization instead. */
+    public static final int PARTIAL_CHECKPOINT_MAGIC = 0x45434a50;
 
     /** Writes the evolution state out to a file. */
 
     public static void setCheckpoint(EvolutionState state)
         {
+        final String filename = "" + state.checkpointPrefix + "." + state.generation + ".gz";
+        long start = System.currentTimeMillis();
+        final byte[] data;
+        long stateTime = 0;
+        final boolean full = state.lastFullCheckpoint == null ||
+            state.checkpointsSinceFull + 1 >= state.checkpointFullModulo ||
+            !canWritePartialCheckpoint(state);
+
         try
             {
-            ObjectOutputStream s = 
-                new ObjectOutputStream(
-                    new GZIPOutputStream (
-                        new BufferedOutputStream(
-                            new FileOutputStream ("" + state.checkpointPrefix + 
-                                "." + state.generation + ".gz"))));
-            s.writeObject(state);
-            s.close();
-            state.output.message("Wrote out checkpoint file " + 
-                state.checkpointPrefix + "." + 
-                state.generation + ".gz");
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            if (full)
+                {
+                // the state remembers the full checkpoint it's written to
+                String lastFull = state.lastFullCheckpoint;
+                int sinceFull = state.checkpointsSinceFull;
+                state.lastFullCheckpoint = filename;
+                state.checkpointsSinceFull = 0;
+                try
+                    {
+                    ObjectOutputStream s = new ObjectOutputStream(bytes);
+                    s.writeObject(state);
+                    s.close();
+                    }
+                catch (IOException e)
+                    {
+                    state.lastFullCheckpoint = lastFull;
+                    state.checkpointsSinceFull = sinceFull;
+                    throw e;
+                    }
+                }
+            else
+                {
+                // the state is written out with this partial checkpoint counted
+                state.checkpointsSinceFull++;
+                try
+                    {
+                    DataOutputStream s = new DataOutputStream(bytes);
+                    stateTime = writePartialCheckpoint(state, s);
+                    s.close();
+                    }
+                catch (IOException e)
+                    {
+                    state.checkpointsSinceFull--;
+                    throw e;
+                    }
+                }
+            data = bytes.toByteArray();
             }
         catch (IOException e)
             {
-            state.output.warning("Unable to create the checkpoint file " + 
-                state.checkpointPrefix + "." +
-                state.generation + ".gz" + 
-                "because of an IOException:\n--EXCEPTION--\n" +
-                e + 
-                "\n--EXCEPTION-END--\n");
+            warnCheckpoint(state, filename, e);
+            return;
+            }
+        final long snapshot = System.currentTimeMillis() - start;
+        final String snapshotTime = (full ? snapshot + " ms to snapshot" :
+            snapshot + " ms to snapshot, " + stateTime + " ms of it for the state other than the individuals");
+        final EvolutionState st = state;
+
+        Runnable write = new Runnable()
+            {
+            public void run()
+                {
+                long start = System.currentTimeMillis();
+                try
+                    {
+                    CountingOutputStream counter = new CountingOutputStream(
+                        new BufferedOutputStream(new FileOutputStream(filename)));
+                    OutputStream s = new GZIPOutputStream(counter);
+                    s.write(data);
+                    s.close();
+                    st.output.message("Wrote out " + (full ? "" : "partial ") + "checkpoint file " + 
+                        filename + " (" + counter.count + " bytes, " + data.length + " uncompressed; " +
+                        snapshotTime + ", " + (System.currentTimeMillis() - start) + " ms to write)");
+                    }
+                catch (IOException e)
+                    {
+                    warnCheckpoint(st, filename, e);
+                    }
+                }
+            };
+
+        if (state.checkpointAsync)
+            synchronized(state)
+                {
+                if (state.checkpointWriter == null)
+                    state.checkpointWriter = Executors.newSingleThreadExecutor(new ThreadFactory()
+                        {
+                        public Thread newThread(Runnable r)
+                            {
+                            Thread thread = new Thread(r, "ECJ Checkpoint Writer");
+                            thread.setDaemon(true);
+                            return thread;
+                            }
+                        });
+                state.lastCheckpointWrite = state.checkpointWriter.submit(write);
+                }
+        else write.run();
+        }
+
+    /** Waits until all the checkpoint files being written in the background for the given
+        EvolutionState are written, then stops its background writer.  A later checkpoint
+        starts a new one. */
+
+    public static void waitForCheckpoints(EvolutionState state)
+        {
+        Future f;
+        synchronized(state)
+            {
+            f = state.lastCheckpointWrite;
+            if (state.checkpointWriter != null)
+                state.checkpointWriter.shutdown();  // runs what it has been given already
+            state.checkpointWriter = null;
+            state.lastCheckpointWrite = null;
+            }
+        if (f == null) return;
+        try
+            {
+            f.get();
+            }
+        catch (Exception e)
+            {
+            state.output.warning("Interrupted while waiting for the checkpoint files to be written:\n" + e);
+            }
+        }
+
+    static void warnCheckpoint(EvolutionState state, String filename, IOException e)
+        {
+        state.output.warning("Unable to create the checkpoint file " + 
+            filename + 
+            "because of an IOException:\n--EXCEPTION--\n" +
+            e + 
+            "\n--EXCEPTION-END--\n");
+        }
+
+    // Stands in, in a partial checkpoint, for something taken from the last full checkpoint
+    // or written out separately
+    static class Reference implements Serializable
+        {
+        static final long serialVersionUID = 1L;
+        static final int PARAMETERS = 0;
+        static final int OUTPUT = 1;
+        static final int INDIVIDUALS = 2;  // those of subpopulation 0, then 3 for subpopulation 1, etc.
+        int which;
+        Reference(int which) { this.which = which; }
+        }
+
+    /** Returns true if all the individuals and their fitnesses implement the methods which write
+        them out to a partial checkpoint and read them back in.  Else warns (once) and returns false. */
+
+    static boolean canWritePartialCheckpoint(EvolutionState state)
+        {
+        Class individualClass = null;
+        Class fitnessClass = null;
+        Population pop = state.population;
+        for(int x=0;x<pop.subpops.length;x++)
+            {
+            Individual[] inds = pop.subpops[x].individuals;
+            for(int y=0;y<inds.length;y++)
+                {
+                Class c = inds[y].getClass();
+                if (c != individualClass)
+                    {
+                    if (!overrides(c, Individual.class, "writeGenotype", DataOutput.class) ||
+                        !overrides(c, Individual.class, "readGenotype", DataInput.class))
+                        {
+                        state.output.warnOnce(c + " doesn't implement writeGenotype(...) and readGenotype(...), so full checkpoints are written rather than partial ones.");
+                        return false;
+                        }
+                    individualClass = c;
+                    }
+                c = inds[y].fitness.getClass();
+                if (c != fitnessClass)
+                    {
+                    if (!overrides(c, Fitness.class, "writeFitness", DataOutput.class) ||
+                        !overrides(c, Fitness.class, "readFitness", DataInput.class))
+                        {
+                        state.output.warnOnce(c + " doesn't implement writeFitness(...) and readFitness(...), so full checkpoints are written rather than partial ones.");
+                        return false;
+                        }
+                    fitnessClass = c;
+                    }
+                }
+            }
+        return true;
+        }
+
+    // does c override the given method taking (EvolutionState, argument), first declared in base?
+    static boolean overrides(Class c, Class base, String method, Class argument)
+        {
+        try
+            {
+            return c.getMethod(method, new Class[] { EvolutionState.class, argument }).getDeclaringClass() != base;
             }
+        catch (NoSuchMethodException e) { return false; }  // never happens
         }
 
+    /** Writes a partial checkpoint, and returns how many milliseconds it took to serialize
+        the state other than the individuals. */
+
+    static long writePartialCheckpoint(final EvolutionState state, DataOutputStream s)
+        throws IOException
+        {
+        s.writeInt(PARTIAL_CHECKPOINT_MAGIC);
+        s.writeUTF(state.lastFullCheckpoint);
+
+        final Population pop = state.population;
+        ObjectOutputStream o = new ObjectOutputStream(s)
+            {
+            { enableReplaceObject(true); }
+            protected Object replaceObject(Object obj)
+                {
+                if (obj == state.parameters) return new Reference(Reference.PARAMETERS);
+                if (obj == state.output) return new Reference(Reference.OUTPUT);
+                if (obj instanceof Individual[])
+                    for(int x=0;x<pop.subpops.length;x++)
+                        if (obj == pop.subpops[x].individuals)
+                            return new Reference(Reference.INDIVIDUALS + x);
+                return obj;
+                }
+            };
+        long start = System.currentTimeMillis();
+        o.writeObject(state);
+        long stateTime = System.currentTimeMillis() - start;
+
+        o.writeInt(pop.subpops.length);
+        for(int x=0;x<pop.subpops.length;x++)
+            {
+            Individual[] inds = pop.subpops[x].individuals;
+            o.writeInt(inds.length);
+            for(int y=0;y<inds.length;y++)
+                inds[y].writeIndividual(state, o);
+            }
+        o.flush();
+        return stateTime;
+        }
+
+    /** Reads a partial checkpoint whose magic number has been read already. */
+
+    static EvolutionState readPartialCheckpoint(String checkpoint, DataInputStream s)
+        throws IOException, ClassNotFoundException
+        {
+        // the full checkpoint is looked for where it was written, then next to this one
+        String fullCheckpoint = s.readUTF();
+        File fullFile = new File(fullCheckpoint);
+        if (!fullFile.exists())
+            fullFile = new File(new File(checkpoint).getAbsoluteFile().getParentFile(), fullFile.getName());
+        final EvolutionState full = readFullCheckpoint(fullFile.getPath());
+
+        ObjectInputStream o = new ObjectInputStream(s)
+            {
+            { enableResolveObject(true); }
+            protected Object resolveObject(Object obj)
+                {
+                if (!(obj instanceof Reference)) return obj;
+                switch(((Reference)obj).which)
+                    {
+                    case Reference.PARAMETERS: return full.parameters;
+                    case Reference.OUTPUT: return full.output;
+                    default: return null;  // the individuals, read in below
+                    }
+                }
+            };
+        EvolutionState state = (EvolutionState)(o.readObject());
+
+        Population pop = state.population;
+        if (o.readInt() != pop.subpops.length)
+            throw new IOException("The number of subpopulations in " + checkpoint + " is inconsistent");
+        for(int x=0;x<pop.subpops.length;x++)
+            {
+            Individual[] inds = new Individual[o.readInt()];
+            for(int y=0;y<inds.length;y++)
+                inds[y] = pop.subpops[x].species.newIndividual(state, o);
+            pop.subpops[x].individuals = inds;
+            }
+        return state;
+        }
+
+    static EvolutionState readFullCheckpoint(String checkpoint)
+        throws IOException, ClassNotFoundException
+        {
+        ObjectInputStream s = 
+            new ObjectInputStream(
+                new GZIPInputStream (
+                    new BufferedInputStream (
+                        new FileInputStream (checkpoint))));
+
+        EvolutionState e = (EvolutionState) s.readObject();
+        s.close();
+        return e;
+        }
 
     /** Returns an EvolutionState object read from a checkpoint file
-        whose filename is <i>checkpoint</i> 
+        whose filename is <i>checkpoint</i>.  The file may be a full or a partial checkpoint.
         *
         @exception java.lang.ClassNotFoundException thrown when the checkpoint file contains a class reference which doesn't exist in your class hierarchy.
     **/
@@ -76,19 +381,36 @@ public class Checkpoint
     /* must throw something if error -- NEVER return null */
         { 
         // load from the file
-        ObjectInputStream s = 
-            new ObjectInputStream(
+        DataInputStream s = 
+            new DataInputStream(
                 new GZIPInputStream (
                     new BufferedInputStream (
                         new FileInputStream (checkpoint))));
 
-        EvolutionState e = (EvolutionState) s.readObject();
-        s.close();
+        EvolutionState e;
+        try
+            {
+            if (s.readInt() == PARTIAL_CHECKPOINT_MAGIC)
+                e = readPartialCheckpoint(checkpoint, s);
+            else e = readFullCheckpoint(checkpoint);
+            }
+        finally
+            {
+            s.close();
+            }
 
         // restart from the checkpoint
     
         e.resetFromCheckpoint();
         return e; 
         }
-    }
 
+    /** Counts the bytes written through it */
+    static class CountingOutputStream extends FilterOutputStream
+        {
+        long count;
+        CountingOutputStream(OutputStream out) { super(out); }
+        public void write(int b) throws IOException { out.write(b); count++; }
+        public void write(byte[] b, int off, int len) throws IOException { out.write(b, off, len); count += len; }
+        }
+    }
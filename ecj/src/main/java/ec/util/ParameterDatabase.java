@@ -16,6 +16,7 @@ import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.Comparator;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.HashSet;
@@ -23,6 +24,7 @@ import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeModel;
@@ -367,6 +369,15 @@ import javax.swing.tree.TreeModel;
  * that parameter from every database.
  * 
  * <p>
+ * Lookups don't lock the database.  The first lookup resolves the whole tree
+ * of databases into a single table, which later lookups (from any number of
+ * threads) read directly; <tt>set</tt>, <tt>remove</tt>, <tt>removeDeeply</tt>
+ * and <tt>addParent</tt> throw the table away again.  If you change a parent
+ * database directly, call <tt>invalidateSnapshot</tt> on its children.
+ * Recording which parameters were looked up, for <tt>listGotten</tt> and
+ * friends, may be turned off with <tt>setTracking</tt>.
+ * 
+ * <p>
  * The values stored in a parameter database must not contain "#", "=",
  * non-ascii values, or whitespace.
  * 
@@ -396,10 +407,18 @@ public class ParameterDatabase extends Properties implements Serializable
     File directory;
     String filename;
     boolean checked;
-    Hashtable gotten;
-    Hashtable accessed;
+    ConcurrentHashMap gotten;
+    ConcurrentHashMap accessed;
     Vector listeners;
 
+    /** Should lookups be recorded for listGotten(...), listAccessed(...) etc.? */
+    volatile boolean tracking = true;
+
+    /** All the parameters of this database and its parents, resolved just like _get(...) would.
+        Built on the first lookup and thrown away when this database changes, so that lookups
+        neither walk the parents nor lock the database. */
+    transient volatile HashMap snapshot;
+
     /**
      * Searches down through databases to find a given parameter, whose value
      * must be a full Class name, and the class must be a descendent of but not
@@ -1588,7 +1607,7 @@ public class ParameterDatabase extends Properties implements Serializable
      * is empty. The parameter chosen is marked "used" if it exists.
      */
 
-    public synchronized String getString(Parameter parameter,
+    public String getString(Parameter parameter,
         Parameter defaultParameter) 
         {
         printGotten(parameter, defaultParameter, false);
@@ -1604,7 +1623,7 @@ public class ParameterDatabase extends Properties implements Serializable
      * is empty. The parameter chosen is marked "used" if it exists.
      */
 
-    /*protected*/ synchronized String getString(Parameter parameter) 
+    /*protected*/ String getString(Parameter parameter) 
         {
         if (_exists(parameter))
             return get(parameter);
@@ -1685,6 +1704,7 @@ public class ParameterDatabase extends Properties implements Serializable
         {
         String tmp = value.trim();
         put(parameter.param, tmp);
+        invalidateSnapshot();
         // fireParameterSet(parameter, tmp);
         }
 
@@ -1839,20 +1859,20 @@ public class ParameterDatabase extends Properties implements Serializable
     /** Returns true if parameter exist in the database
         @ deprecated use exists(Parameter, null) 
     */
-    public synchronized boolean exists(Parameter parameter) 
+    public boolean exists(Parameter parameter) 
         {
         printGotten(parameter, null, true);
         return _exists(parameter);
         }
 
 
-    /*protected*/ synchronized boolean _exists(Parameter parameter) 
+    /*protected*/ boolean _exists(Parameter parameter) 
         {
         if (parameter == null) return false;
-        String result = _get(parameter.param);
-        uncheck();
+        String result = lookup(parameter.param);
         
-        accessed.put(parameter.param, Boolean.TRUE);
+        if (tracking)
+            accessed.put(parameter.param, Boolean.TRUE);
         return (result != null);
         }
 
@@ -1860,7 +1880,7 @@ public class ParameterDatabase extends Properties implements Serializable
      * Returns true if either parameter or defaultParameter exists in the
      * database
      */
-    public synchronized boolean exists(Parameter parameter,
+    public boolean exists(Parameter parameter,
         Parameter defaultParameter) 
         {
         printGotten(parameter, defaultParameter, true);
@@ -1957,19 +1977,83 @@ public class ParameterDatabase extends Properties implements Serializable
             }
         }
 
-    /*protected*/ synchronized String get(Parameter parameter) 
+    /*protected*/ String get(Parameter parameter) 
         {
-        String result = _get(parameter.param);
-        uncheck();
+        String result = lookup(parameter.param);
 
         // set hashtable appropriately
-        if (parameter != null)
+        if (tracking)
+            {
             accessed.put(parameter.param, Boolean.TRUE);
-        if (parameter != null)
             gotten.put(parameter.param, Boolean.TRUE);
+            }
         return result;
         }
 
+    /** Looks a parameter up in the snapshot, building the snapshot first if there is none.
+        Returns the same as _get(...), but without locking the database. */
+    String lookup(String parameter)
+        {
+        if (parameter == null)
+            return null;
+        HashMap s = snapshot;
+        if (s == null)
+            s = buildSnapshot();
+        return (String)(s.get(parameter));
+        }
+
+    synchronized HashMap buildSnapshot()
+        {
+        if (snapshot == null)
+            {
+            HashMap s = new HashMap();
+            _snapshot(s);
+            uncheck();
+            snapshot = s;
+            }
+        return snapshot;
+        }
+
+    /** Private helper function.  Adds the parameters of this database which aren't
+        in <i>s</i> yet, then the ones of the parents, so <i>s</i> maps every parameter
+        to what _get(...) would return for it. */
+    synchronized void _snapshot(HashMap s)
+        {
+        if (checked)
+            return; // we already added this path
+        checked = true;
+        Enumeration e = propertyNames();
+        while (e.hasMoreElements())
+            {
+            String key = (String)(e.nextElement());
+            if (!s.containsKey(key))
+                {
+                String result = getProperty(key).trim();
+                // empty values hide the ones in the parents
+                s.put(key, result.length() == 0 ? null : result);
+                }
+            }
+        int size = parents.size();
+        for (int x = 0; x < size; x++)
+            ((ParameterDatabase) (parents.elementAt(x)))._snapshot(s);
+        }
+
+    /** Throws away the snapshot of the parameters.  Called whenever this database
+        changes.  If you change a parent database directly after the child has been used,
+        call this on the child. */
+    public void invalidateSnapshot()
+        {
+        snapshot = null;
+        }
+
+    /** Sets whether lookups should be recorded, which listGotten(...), listNotGotten(...),
+        listAccessed(...) and listNotAccessed(...) need.  Recording is on by default;
+        turning it off saves some work on every lookup. */
+    public void setTracking(boolean tracking)
+        {
+        this.tracking = tracking;
+        }
+
     /** Private helper function */
     synchronized String _get(String parameter) 
         {
@@ -2130,6 +2214,7 @@ public class ParameterDatabase extends Properties implements Serializable
         {
         if (parameter.param.equals(PRINT_PARAMS)) printState = PS_UNKNOWN;
         remove(parameter.param);
+        invalidateSnapshot();
         }
 
     /** Removes a parameter from the database and all its parent databases. */
@@ -2155,14 +2240,15 @@ public class ParameterDatabase extends Properties implements Serializable
     public void addParent(ParameterDatabase database)
         {
         parents.addElement(database);
+        invalidateSnapshot();
         }
 
     /** Creates an empty parameter database. */
     public ParameterDatabase() 
         {
         super();
-        accessed = new Hashtable();
-        gotten = new Hashtable();
+        accessed = new ConcurrentHashMap();
+        gotten = new ConcurrentHashMap();
         directory = new File(new File("").getAbsolutePath()); // uses the user
                                                               // path
         filename = "";
@@ -2257,9 +2343,19 @@ public class ParameterDatabase extends Properties implements Serializable
      * parent files.
      */
     public ParameterDatabase(File filename)
+        throws FileNotFoundException, IOException 
+        {
+        this(filename, new HashMap());
+        }
+
+    /** Loads a database file and its parents.  <i>loaded</i> maps the canonical paths of the
+        files loaded so far to their databases, so a parent file reached through more than one
+        parent.n chain is read and parsed only once, and its database is shared. */
+    ParameterDatabase(File filename, HashMap loaded)
         throws FileNotFoundException, IOException 
         {
         this();
+        loaded.put(filename.getCanonicalPath(), this);
         this.filename = filename.getName();
         directory = new File(filename.getParent()); // get the directory
                                                     // filename is in
@@ -2274,12 +2370,16 @@ public class ParameterDatabase extends Properties implements Serializable
             if (s == null)
                 return; // we're done
 
+            File parent;
             if (new File(s).isAbsolute()) // it's an absolute file definition
-                parents.addElement(new ParameterDatabase(new File(s)));
+                parent = new File(s);
             else
                 // it's relative to my path
-                parents.addElement(new ParameterDatabase(new File(filename
-                            .getParent(), s)));
+                parent = new File(filename.getParent(), s);
+            ParameterDatabase database = (ParameterDatabase)(loaded.get(parent.getCanonicalPath()));
+            if (database == null)
+                database = new ParameterDatabase(parent, loaded);
+            parents.addElement(database);
             }
         }
 
@@ -768,6 +768,135 @@ public class QuickSort
             }
         inssort(array,comp);             // Final Insertion Sort
         }
+
+    /** Partial Non-Recursive QuickSort.  Puts into array[from...array.length-1]
+        exactly what qsort(array, comp) would put there, in the same order (even
+        for ties), but leaves the rest of the array partitioned only.  Only the
+        subarrays reaching into the top part are sorted, so this takes about
+        O(n + k log k) for the top k elements instead of O(n log n). */
+    static public void partialQsort(int[] array, int from, SortComparatorL comp) 
+        {
+        if (from < 0) from = 0;
+        if (from >= array.length) return;
+        partialQsort_h(array, 0, array.length-1, from, comp);
+        }
+    
+    // the same as qsort_h, except that subarrays ending before <from> are left alone.
+    // Partitioning a subarray only looks at its own elements, so every subarray which
+    // is processed ends up just like in qsort_h.  The final insertion sort never moves
+    // an element from one subarray into another, so only the subarrays reaching into
+    // the top part need it: a subarray left unsorted (of at most THRESHOLD elements)
+    // begins no earlier than from-THRESHOLD.
+    static private void partialQsort_h(int[] array, int oi, int oj, int from, SortComparatorL comp) 
+        {
+        int[] stack = new int[MAXSTACKSIZE]; // Stack for array bounds
+        int top = -1;
+        int pivot;
+        int pivotindex, l, r;
+        int tmp;
+        
+        stack[++top] = oi;  // Initialize stack
+        stack[++top] = oj;
+        
+        while (top > 0)    // While there are unprocessed subarrays
+            {
+            // Pop stack
+            int j = stack[top--];
+            int i = stack[top--];
+            
+            // Findpivot
+            pivotindex = (i+j)/2;
+            pivot = array[pivotindex];
+            tmp = array[pivotindex]; array[pivotindex] = array[j]; array[j] = tmp; 
+            // Partition
+            l = i-1;
+            r = j;
+            do 
+                {
+                while (comp.lt(array[++l],pivot));
+                while ((r!=0) && (comp.gt(array[--r],pivot)));
+                tmp = array[l]; array[l] = array[r]; array[r] = tmp;
+                } while (l < r);
+            tmp = array[l]; array[l] = array[r]; array[r] = tmp;  // Undo final swap
+            tmp = array[l]; array[l] = array[j]; array[j] = tmp;  // Put pivot value in place
+            
+            // Put new subarrays onto stack if they are small and reach the top part
+            if ((l-i) > THRESHOLD && l-1 >= from)   // Left partition
+                { 
+                stack[++top] = i;
+                stack[++top] = l-1;
+                }
+            if ((j-l) > THRESHOLD) // Right partition, always reaches the top part 
+                {   
+                stack[++top] = l+1;
+                stack[++top] = j;
+                }
+            }
+        inssort(array, Math.max(oi, from - THRESHOLD), oj, comp);  // Final Insertion Sort of the top part
+        }
+
+    // insertion sort of array[from...to]
+    static private void inssort(int[] array, int from, int to, SortComparatorL comp)
+        {
+        int tmp;
+
+        for (int i=from+1; i<=to; i++) // Insert i'th record
+            for (int j=i; (j>from) && (comp.lt(array[j],array[j-1])); j--)
+                { tmp = array[j]; array[j] = array[j-1]; array[j-1] = tmp; }
+        }
+
+    /** Benchmarks partialQsort against qsort on arrays of various lengths with many
+        ties, as found when picking elites, and checks that the top parts are the same. */
+
+    public static void main(String[] args)
+        {
+        MersenneTwisterFast random = new MersenneTwisterFast(4357);
+        int[] lengths = new int[] { 1000, 10000, 100000, 1000000 };
+        int[] tops = new int[] { 2, 10, 100, 1000 };
+        System.out.println("length\ttop\tqsort ms\tpartialQsort ms");
+        for(int l=0;l<lengths.length;l++)
+            {
+            int n = lengths[l];
+            final int[] fitness = new int[n];
+            for(int x=0;x<n;x++)
+                fitness[x] = random.nextInt(n / 10);  // about ten individuals per fitness value
+            SortComparatorL comp = new SortComparatorL()
+                {
+                public boolean lt(long a, long b) { return fitness[(int)a] < fitness[(int)b]; }
+                public boolean gt(long a, long b) { return fitness[(int)a] > fitness[(int)b]; }
+                };
+            for(int t=0;t<tops.length && tops[t] <= n;t++)
+                {
+                int k = tops[t];
+                int rounds = Math.max(1, 10000000 / n);
+                long fullTime = 0;
+                long partialTime = 0;
+                int[] full = null;
+                int[] partial = null;
+                for(int pass=0;pass<2;pass++)  // the first pass warms up
+                    {
+                    fullTime = 0;
+                    partialTime = 0;
+                    for(int r=0;r<rounds;r++)
+                        {
+                        full = new int[n];
+                        partial = new int[n];
+                        for(int x=0;x<n;x++) full[x] = partial[x] = x;
+                        long time = System.nanoTime();
+                        qsort(full, comp);
+                        fullTime += System.nanoTime() - time;
+                        time = System.nanoTime();
+                        partialQsort(partial, n - k, comp);
+                        partialTime += System.nanoTime() - time;
+                        }
+                    }
+                for(int x=n-k;x<n;x++)
+                    if (full[x] != partial[x])
+                        throw new RuntimeException("partialQsort differs from qsort at " + x + " of " + n);
+                System.out.println(n + "\t" + k + "\t" + (fullTime / 1000000.0 / rounds) + "\t" + (partialTime / 1000000.0 / rounds));
+                }
+            }
+        }
     }
     
 
@@ -47,6 +47,18 @@ package ec.util;
  * after which you may call pickFromDistribution() as many times as you like.
  * You should not modify the array thereafter.
  *
+ * <p>Alternatively you can organize your array into an <i>alias table</i> with
+ * organizeAliasDistribution(), which returns an array of aliases to go with it,
+ * and then pick items with pickFromAliasDistribution().  Organizing takes a bit
+ * longer, but picking takes the same short time no matter how long the array is,
+ * rather than the time of a binary search.  This pays off for long arrays (such as
+ * the fitnesses of a whole population) from which many items are picked.
+ * Each item of an alias table is the probability of picking that item, rather than
+ * its alias, when the random value falls in its slot.  Items of zero probability are
+ * never picked here either.  Because the random value has to pick both the slot and
+ * whether to take the alias, pass a random double (such as nextDouble()) rather
+ * than a float, else long arrays come out less precise than they should.
+ *
  * @author Sean Luke
  * @version 1.0 
  */
@@ -641,8 +653,294 @@ public class RandomChoice
             }
         }
 
-    }
+    
+
+
+    /** Same as organizeAliasDistribution(probabilities, <b>false</b>); */
+    public static int[] organizeAliasDistribution(final float[] probabilities)
+        {
+        return organizeAliasDistribution(probabilities, false);
+        }
+
+    /** Converts probabilities into an alias table, and returns the aliases to go with it.
+        This prepares them for being usable in pickFromAliasDistribution.
+        If the probabilities are all 0, then selection is uniform, unless allowAllZeros
+        is false, in which case an ArithmeticException is thrown.  If any of them are negative,
+        or if the distribution is empty, then an ArithmeticException is thrown.
+        For example, 
+        {0.6, 0.4, 0.2, 0.8} -> {1.0, 0.8, 0.4, 0.8} with aliases {0, 3, 3, 0} */
+
+    public static int[] organizeAliasDistribution(final float[] probabilities, final boolean allowAllZeros)
+        {
+        double[] p = new double[probabilities.length];
+        for(int x=0;x<p.length;x++)
+            p[x] = probabilities[x];
+        int[] aliases = organizeAliases(p, allowAllZeros);
+        for(int x=0;x<p.length;x++)
+            probabilities[x] = (float)p[x];
+        return aliases;
+        }
+
+    /** Same as organizeAliasDistribution(probabilities, <b>false</b>); */
+    public static int[] organizeAliasDistribution(final double[] probabilities)
+        {
+        return organizeAliasDistribution(probabilities, false);
+        }
+
+    /** Converts probabilities into an alias table, and returns the aliases to go with it.
+        This prepares them for being usable in pickFromAliasDistribution.
+        If the probabilities are all 0, then selection is uniform, unless allowAllZeros
+        is false, in which case an ArithmeticException is thrown.  If any of them are negative,
+        or if the distribution is empty, then an ArithmeticException is thrown.
+        For example, 
+        {0.6, 0.4, 0.2, 0.8} -> {1.0, 0.8, 0.4, 0.8} with aliases {0, 3, 3, 0} */
+
+    public static int[] organizeAliasDistribution(final double[] probabilities, final boolean allowAllZeros)
+        {
+        return organizeAliases(probabilities, allowAllZeros);
+        }
+
+    /** Same as organizeAliasDistribution(objs, chooser, <b>false</b>); */
+    public static int[] organizeAliasDistribution(final Object[] objs, 
+        final RandomChoiceChooser chooser)
+        {
+        return organizeAliasDistribution(objs, chooser, false);
+        }
 
+    /** Converts the probabilities associated with an array of objects into an alias
+        table, and returns the aliases to go with it.
+        This prepares them for being usable in pickFromAliasDistribution.
+        If the probabilities are all 0, then selection is uniform, unless allowAllZeros
+        is false, in which case an ArithmeticException is thrown.  If any of them are negative,
+        or if the distribution is empty, then an ArithmeticException is thrown.
+        The probabilities are retrieved and set using chooser.*/
 
+    public static int[] organizeAliasDistribution(final Object[] objs, 
+        final RandomChoiceChooser chooser, final boolean allowAllZeros)
+        {
+        double[] p = new double[objs.length];
+        for(int x=0;x<p.length;x++)
+            p[x] = chooser.getProbability(objs[x]);
+        int[] aliases = organizeAliases(p, allowAllZeros);
+        for(int x=0;x<p.length;x++)
+            chooser.setProbability(objs[x], (float)p[x]);
+        return aliases;
+        }
 
+    /** Same as organizeAliasDistribution(objs, chooser, <b>false</b>); */
+    public static int[] organizeAliasDistribution(final Object[] objs, 
+        final RandomChoiceChooserD chooser)
+        {
+        return organizeAliasDistribution(objs, chooser, false);
+        }
 
+    /** Converts the probabilities associated with an array of objects into an alias
+        table, and returns the aliases to go with it.
+        This prepares them for being usable in pickFromAliasDistribution.
+        If the probabilities are all 0, then selection is uniform, unless allowAllZeros
+        is false, in which case an ArithmeticException is thrown.  If any of them are negative,
+        or if the distribution is empty, then an ArithmeticException is thrown.
+        The probabilities are retrieved and set using chooser.*/
+
+    public static int[] organizeAliasDistribution(final Object[] objs, 
+        final RandomChoiceChooserD chooser, final boolean allowAllZeros)
+        {
+        double[] p = new double[objs.length];
+        for(int x=0;x<p.length;x++)
+            p[x] = chooser.getProbability(objs[x]);
+        int[] aliases = organizeAliases(p, allowAllZeros);
+        for(int x=0;x<p.length;x++)
+            chooser.setProbability(objs[x], p[x]);
+        return aliases;
+        }
+
+    // Builds an alias table in p by Vose's method and returns the aliases
+    static int[] organizeAliases(final double[] p, final boolean allowAllZeros)
+        {
+        int n = p.length;
+        if (n == 0)
+            throw new ArithmeticException("Distribution has no elements");
+
+        double sum = 0.0;
+        for(int x=0;x<n;x++)
+            {
+            if (p[x]<0.0)
+                throw new ArithmeticException("Distribution has negative probabilities");
+            sum += p[x];
+            }
+
+        if (sum==0.0)
+            if (!allowAllZeros)
+                throw new ArithmeticException("Distribution has all zero probabilities");
+            else
+                {
+                for(int x=0;x<n;x++)
+                    p[x] = 1.0;
+                sum = n;
+                }
+
+        // scale so that the average item is 1.0, and sort the items into those
+        // below average (which will get an alias) and the rest
+        int[] aliases = new int[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int numSmall = 0;
+        int numLarge = 0;
+        for(int x=0;x<n;x++)
+            {
+            p[x] = p[x] * n / sum;
+            aliases[x] = x;
+            if (p[x] < 1.0) small[numSmall++] = x;
+            else large[numLarge++] = x;
+            }
+
+        // fill up each small item's slot with some large item, which then has that
+        // much less left over for its own slot
+        int lastLarge = -1;
+        while(numSmall > 0 && numLarge > 0)
+            {
+            int s = small[--numSmall];
+            int l = large[--numLarge];
+            aliases[s] = l;
+            p[l] = (p[l] + p[s]) - 1.0;
+            if (p[l] < 1.0) small[numSmall++] = l;
+            else large[numLarge++] = l;
+            lastLarge = l;
+            }
+
+        // whatever is left over is off from 1.0 only by roundoff error, except for
+        // zero-probability items, which we must never pick
+        while(numLarge > 0)
+            p[large[--numLarge]] = 1.0;
+        while(numSmall > 0)
+            {
+            int s = small[--numSmall];
+            if (p[s] > 0.0 || lastLarge == -1) p[s] = 1.0;
+            else { p[s] = 0.0; aliases[s] = lastLarge; }
+            }
+        return aliases;
+        }
+
+    /** Picks a random item from an alias table built by organizeAliasDistribution(...),
+        using prob (0.0 &lt;= prob &lt;= 1.0) as the random value.  This takes constant
+        time no matter how long the distribution is. */
+
+    public static int pickFromAliasDistribution(final float[] probabilities, final int[] aliases,
+        final double prob)
+        {
+        if (prob<0.0 || prob>1.0)
+            throw new ArithmeticException("Invalid probability for pickFromAliasDistribution (must be 0.0<=x<=1.0)");
+        double slot = prob * probabilities.length;
+        int x = (int)slot;
+        if (x == probabilities.length) x--;  // prob was 1.0
+        return (slot - x < probabilities[x] ? x : aliases[x]);
+        }
+
+    /** Picks a random item from an alias table built by organizeAliasDistribution(...),
+        using prob (0.0 &lt;= prob &lt;= 1.0) as the random value.  This takes constant
+        time no matter how long the distribution is. */
+
+    public static int pickFromAliasDistribution(final double[] probabilities, final int[] aliases,
+        final double prob)
+        {
+        if (prob<0.0 || prob>1.0)
+            throw new ArithmeticException("Invalid probability for pickFromAliasDistribution (must be 0.0<=x<=1.0)");
+        double slot = prob * probabilities.length;
+        int x = (int)slot;
+        if (x == probabilities.length) x--;  // prob was 1.0
+        return (slot - x < probabilities[x] ? x : aliases[x]);
+        }
+
+    /** Picks a random item from an array of objects whose probabilities, accessed
+        with chooser.getProbability(obj), were made into an alias table by
+        organizeAliasDistribution(...), using prob (0.0 &lt;= prob &lt;= 1.0) as the random
+        value.  This takes constant time no matter how long the distribution is. */
+
+    public static int pickFromAliasDistribution(final Object[] objs, 
+        final RandomChoiceChooser chooser, final int[] aliases,
+        final double prob)
+        {
+        if (prob<0.0 || prob>1.0)
+            throw new ArithmeticException("Invalid probability for pickFromAliasDistribution (must be 0.0<=x<=1.0)");
+        double slot = prob * objs.length;
+        int x = (int)slot;
+        if (x == objs.length) x--;  // prob was 1.0
+        return (slot - x < chooser.getProbability(objs[x]) ? x : aliases[x]);
+        }
+
+    /** Picks a random item from an array of objects whose probabilities, accessed
+        with chooser.getProbability(obj), were made into an alias table by
+        organizeAliasDistribution(...), using prob (0.0 &lt;= prob &lt;= 1.0) as the random
+        value.  This takes constant time no matter how long the distribution is. */
+
+    public static int pickFromAliasDistribution(final Object[] objs, 
+        final RandomChoiceChooserD chooser, final int[] aliases,
+        final double prob)
+        {
+        if (prob<0.0 || prob>1.0)
+            throw new ArithmeticException("Invalid probability for pickFromAliasDistribution (must be 0.0<=x<=1.0)");
+        double slot = prob * objs.length;
+        int x = (int)slot;
+        if (x == objs.length) x--;  // prob was 1.0
+        return (slot - x < chooser.getProbability(objs[x]) ? x : aliases[x]);
+        }
+
+
+    /** Benchmarks pickFromAliasDistribution against pickFromDistribution on random
+        distributions of various lengths, and checks that both pick items as often as
+        they should. */
+
+    public static void main(String[] args)
+        {
+        MersenneTwisterFast random = new MersenneTwisterFast(4357);
+        int[] lengths = new int[] { 4, 8, 16, 64, 256, 1024, 10000, 100000, 1000000 };
+        int picks = 20000000;
+        System.out.println("length\tbinary ns/pick\talias ns/pick\tbinary error\talias error");
+        for(int l=0;l<lengths.length;l++)
+            {
+            int n = lengths[l];
+            float[] original = new float[n];
+            for(int x=0;x<n;x++)
+                original[x] = (x % 5 == 0 ? 0.0f : random.nextFloat());  // some zeros too
+            float[] cumulative = (float[])(original.clone());
+            organizeDistribution(cumulative, true);
+            float[] table = (float[])(original.clone());
+            int[] aliases = organizeAliasDistribution(table, true);
+
+            int[] binaryCounts = new int[n];
+            int[] aliasCounts = new int[n];
+            for(int pass=0;pass<2;pass++)  // the first pass warms up
+                {
+                java.util.Arrays.fill(binaryCounts, 0);
+                java.util.Arrays.fill(aliasCounts, 0);
+                long binaryTime = System.nanoTime();
+                for(int x=0;x<picks;x++)
+                    binaryCounts[pickFromDistribution(cumulative, random.nextFloat())]++;
+                binaryTime = System.nanoTime() - binaryTime;
+                long aliasTime = System.nanoTime();
+                for(int x=0;x<picks;x++)
+                    aliasCounts[pickFromAliasDistribution(table, aliases, random.nextDouble())]++;
+                aliasTime = System.nanoTime() - aliasTime;
+                if (pass == 0) continue;
+
+                // compare the counts with the expected counts: the total variation distance
+                // between what was picked and what should have been
+                double sum = 0;
+                for(int x=0;x<n;x++) sum += original[x];
+                double binaryError = 0;
+                double aliasError = 0;
+                for(int x=0;x<n;x++)
+                    {
+                    double expected = original[x] / sum;
+                    if (expected == 0 && (binaryCounts[x] != 0 || aliasCounts[x] != 0))
+                        throw new RuntimeException("Picked item " + x + " of zero probability");
+                    binaryError += Math.abs(binaryCounts[x] / (double)picks - expected);
+                    aliasError += Math.abs(aliasCounts[x] / (double)picks - expected);
+                    }
+                System.out.println(n + "\t" + (binaryTime / (double)picks) + "\t" + (aliasTime / (double)picks) + 
+                    "\t" + (binaryError / 2) + "\t" + (aliasError / 2));
+                }
+            }
+        }
+
+    }
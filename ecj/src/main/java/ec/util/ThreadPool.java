@@ -0,0 +1,99 @@
+/*
+  Copyright 2006 by Sean Luke
+  Licensed under the Academic Free License version 3.0
+  See the file "LICENSE" for more information
+*/
+
+
+package ec.util;
+import java.io.Serializable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ * ThreadPool.java
+ *
+ */
+
+/**
+ * ThreadPool keeps worker threads alive between generations, so that the
+ * evaluator and the breeder don't have to start and join fresh threads every
+ * time they go multithreaded.  The workers are daemon threads and are created
+ * lazily, the first time they are needed (and again after the pool has been
+ * restored from a checkpoint or killed).
+ *
+ * <p>Work is handed out as an array of Runnables which are run in parallel.
+ * The caller decides which thread number each Runnable stands for, so the
+ * mapping from thread numbers to random number generators doesn't depend on
+ * which worker happens to run a Runnable.
+ */
+
+public class ThreadPool implements Serializable
+    {
+    // the workers, not checkpointed
+    transient ExecutorService executor;
+
+    /** Runs all the given Runnables in parallel and returns when all of them
+        have finished.  The first Runnable is run in the calling thread, the
+        others in worker threads.  If a Runnable throws an exception, it is
+        rethrown here (wrapped in a RuntimeException if it's checked) after
+        all the others have finished. */
+    public void runAll(Runnable[] runnables) throws InterruptedException
+        {
+        if (runnables.length == 0) return;
+
+        Future[] futures = new Future[runnables.length - 1];
+        ExecutorService e = executor();
+        for(int x=1;x<runnables.length;x++)
+            futures[x-1] = e.submit(runnables[x]);
+
+        Throwable error = null;
+        try
+            {
+            runnables[0].run();
+            }
+        catch (RuntimeException ex) { error = ex; }
+        catch (Error ex) { error = ex; }
+
+        for(int x=0;x<futures.length;x++) try
+                                              {
+                                              futures[x].get();
+                                              }
+            catch (ExecutionException ex)
+                {
+                if (error == null) error = ex.getCause();
+                }
+
+        if (error instanceof RuntimeException) throw (RuntimeException)error;
+        if (error instanceof Error) throw (Error)error;
+        if (error != null) throw new RuntimeException(error);
+        }
+
+    /** Stops all the worker threads.  The pool may still be used afterwards,
+        in which case new workers are started. */
+    public synchronized void kill()
+        {
+        if (executor != null)
+            executor.shutdown();
+        executor = null;
+        }
+
+    synchronized ExecutorService executor()
+        {
+        if (executor == null)
+            executor = Executors.newCachedThreadPool(new ThreadFactory()
+                {
+                int count = 0;
+                public Thread newThread(Runnable r)
+                    {
+                    Thread thread = new Thread(r, "ECJ Worker " + (count++));
+                    thread.setDaemon(true);
+                    return thread;
+                    }
+                });
+        return executor;
+        }
+    }